@@ -52,6 +52,11 @@ public class AccessControlList implements Externalizable
 
    private final List<AccessControlEntry> accessList;
 
+   /**
+    * The compiled form of the access list, built lazily and reset on each change of the access list
+    */
+   private transient volatile CompiledAccessControlList compiled;
+
    public AccessControlList()
    {
       this(IdentityConstants.SYSTEM);
@@ -116,6 +121,7 @@ public class AccessControlList implements Externalizable
          try
          {
             accessList.add(AccessControlEntry.parse(entry));
+            compiled = null;
          }
          catch (IllegalArgumentException e)
          {
@@ -134,6 +140,7 @@ public class AccessControlList implements Externalizable
       {
          accessList.add(new AccessControlEntry(identity, p));
       }
+      compiled = null;
    }
    /**
     * Removes all the permissions of a given identity
@@ -147,6 +154,7 @@ public class AccessControlList implements Externalizable
          if (a.getIdentity().equals(identity))
             iter.remove();
       }
+      compiled = null;
    }
    /**
     * Removes the permission corresponding to the given identity and the given permission type
@@ -161,6 +169,7 @@ public class AccessControlList implements Externalizable
          if (a.getIdentity().equals(identity) && a.getPermission().equals(permission))
             iter.remove();
       }
+      compiled = null;
    }
 
    /**
@@ -312,6 +321,7 @@ public class AccessControlList implements Externalizable
 
          accessList.add(new AccessControlEntry(ident, perm));
       }
+      compiled = null;
    }
 
    /**
@@ -363,4 +373,25 @@ public class AccessControlList implements Externalizable
    {
       return accessList;
    }
+
+   /**
+    * Special method for internal JCR use, gives the compiled form of the access list which is
+    * rebuilt if the access list has been modified since the last call.
+    * 
+    * @return the compiled access list or <code>null</code> if there is no access list
+    */
+   CompiledAccessControlList getCompiledList()
+   {
+      if (accessList == null)
+      {
+         return null;
+      }
+      CompiledAccessControlList compiled = this.compiled;
+      // The size is checked too as the list given to the constructor could still be modified by the caller
+      if (compiled == null || compiled.size() != accessList.size())
+      {
+         this.compiled = compiled = new CompiledAccessControlList(accessList);
+      }
+      return compiled;
+   }
 }
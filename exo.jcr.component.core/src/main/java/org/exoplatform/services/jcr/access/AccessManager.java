@@ -122,7 +122,22 @@ public abstract class AccessManager
          // Current user is owner of node so has all privileges
          return true;
       }
-      else if (userId.equals(IdentityConstants.ANONIM))
+      int required = CompiledAccessControlList.mask(permission);
+      if (required != CompiledAccessControlList.UNKNOWN)
+      {
+         CompiledAccessControlList compiled = acl.getCompiledList();
+         if (compiled != null)
+         {
+            if (userId.equals(IdentityConstants.ANONIM))
+            {
+               return compiled.getAnyCount() >= permission.length && (compiled.getAnyMask() & required) == required;
+            }
+            return compiled.size() > 0 && permission.length > 0
+               && (compiled.getGrantedMask(user) & required) == required;
+         }
+      }
+      // The requested permissions cannot be compiled, the entries are checked one by one
+      if (userId.equals(IdentityConstants.ANONIM))
       {
          List<String> anyPermissions = acl.getPermissions(IdentityConstants.ANY);
 
@@ -0,0 +1,254 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.access;
+
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityConstants;
+import org.exoplatform.services.security.MembershipEntry;
+
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled form of the entries of an {@link AccessControlList}: each known permission type is
+ * a bit, the permissions granted to <code>any</code>, to each user and to each membership are merged
+ * into bitmasks so that a permission check is reduced to a few mask operations instead of a scan of
+ * the entries for each requested permission. The masks granted to the last identities checked against
+ * this list are kept into a small cache, the identities are weakly referenced in order not to retain
+ * the sessions that are gone.
+ *
+ * @version $Id$
+ */
+final class CompiledAccessControlList
+{
+   /**
+    * The amount of identities whose granted permissions are cached, must be a power of 2
+    */
+   private static final int DECISION_CACHE_SIZE = 8;
+
+   /**
+    * The value returned by {@link #mask(String[])} when a permission is not a known permission type
+    */
+   static final int UNKNOWN = -1;
+
+   /**
+    * The amount of entries that have been compiled
+    */
+   private final int size;
+
+   /**
+    * The amount of entries of <code>any</code>
+    */
+   private final int anyCount;
+
+   /**
+    * The permissions granted to <code>any</code>
+    */
+   private final int anyMask;
+
+   /**
+    * The permissions granted to each user
+    */
+   private final Map<String, Integer> userMasks;
+
+   /**
+    * The memberships of the entries
+    */
+   private final MembershipEntry[] memberships;
+
+   /**
+    * The permissions granted to the membership with the same index
+    */
+   private final int[] membershipMasks;
+
+   /**
+    * The permissions granted to the last checked identities
+    */
+   private final Decision[] decisions = new Decision[DECISION_CACHE_SIZE];
+
+   CompiledAccessControlList(List<AccessControlEntry> entries)
+   {
+      int anyCount = 0;
+      int anyMask = 0;
+      Map<String, Integer> userMasks = new HashMap<String, Integer>();
+      Map<String, Integer> membershipMasks = new LinkedHashMap<String, Integer>();
+      Map<String, MembershipEntry> memberships = new HashMap<String, MembershipEntry>();
+      for (int i = 0, length = entries.size(); i < length; i++)
+      {
+         AccessControlEntry entry = entries.get(i);
+         String identity = entry.getIdentity();
+         // an unknown permission type is compiled to no bit since it can only match itself
+         int mask = mask(entry.getPermission());
+         if (identity.equals(IdentityConstants.ANY))
+         {
+            anyCount++;
+            anyMask |= mask;
+         }
+         else if (identity.indexOf(":") == -1)
+         {
+            Integer previous = userMasks.get(identity);
+            userMasks.put(identity, previous == null ? mask : previous | mask);
+         }
+         else
+         {
+            Integer previous = membershipMasks.get(identity);
+            if (previous == null)
+            {
+               memberships.put(identity, entry.getMembershipEntry());
+            }
+            membershipMasks.put(identity, previous == null ? mask : previous | mask);
+         }
+      }
+      this.size = entries.size();
+      this.anyCount = anyCount;
+      this.anyMask = anyMask;
+      this.userMasks = userMasks;
+      this.memberships = new MembershipEntry[membershipMasks.size()];
+      this.membershipMasks = new int[membershipMasks.size()];
+      int i = 0;
+      for (Map.Entry<String, Integer> entry : membershipMasks.entrySet())
+      {
+         this.memberships[i] = memberships.get(entry.getKey());
+         this.membershipMasks[i++] = entry.getValue();
+      }
+   }
+
+   /**
+    * Gives the bit of the given permission type.
+    *
+    * @param permission the permission type
+    * @return the bit of the permission or 0 if it is not a known permission type
+    */
+   static int mask(String permission)
+   {
+      if (PermissionType.READ.equals(permission))
+      {
+         return 1;
+      }
+      else if (PermissionType.ADD_NODE.equals(permission))
+      {
+         return 2;
+      }
+      else if (PermissionType.SET_PROPERTY.equals(permission))
+      {
+         return 4;
+      }
+      else if (PermissionType.REMOVE.equals(permission))
+      {
+         return 8;
+      }
+      return 0;
+   }
+
+   /**
+    * Gives the bits of the given permission types.
+    *
+    * @param permissions the permission types
+    * @return the bits of the permissions or {@link #UNKNOWN} if one of them is not a known permission type
+    */
+   static int mask(String[] permissions)
+   {
+      int mask = 0;
+      for (int i = 0; i < permissions.length; i++)
+      {
+         int bit = mask(permissions[i]);
+         if (bit == 0)
+         {
+            return UNKNOWN;
+         }
+         mask |= bit;
+      }
+      return mask;
+   }
+
+   /**
+    * @return the amount of entries that have been compiled
+    */
+   int size()
+   {
+      return size;
+   }
+
+   /**
+    * @return the amount of entries of <code>any</code>
+    */
+   int getAnyCount()
+   {
+      return anyCount;
+   }
+
+   /**
+    * @return the permissions granted to <code>any</code>
+    */
+   int getAnyMask()
+   {
+      return anyMask;
+   }
+
+   /**
+    * Gives the permissions granted to the given identity by the entries of <code>any</code>, of its user
+    * and of its memberships.
+    *
+    * @param user the identity to check
+    * @return the bits of the granted permissions
+    */
+   int getGrantedMask(Identity user)
+   {
+      int slot = System.identityHashCode(user) & (DECISION_CACHE_SIZE - 1);
+      Decision decision = decisions[slot];
+      if (decision != null && decision.get() == user)
+      {
+         return decision.mask;
+      }
+      int mask = anyMask;
+      Integer userMask = userMasks.get(user.getUserId());
+      if (userMask != null)
+      {
+         mask |= userMask;
+      }
+      for (int i = 0; i < memberships.length; i++)
+      {
+         // The membership is only checked if it could grant more permissions
+         if ((mask | membershipMasks[i]) != mask && user.isMemberOf(memberships[i]))
+         {
+            mask |= membershipMasks[i];
+         }
+      }
+      // Decision is immutable so it can be published without synchronization
+      decisions[slot] = new Decision(user, mask);
+      return mask;
+   }
+
+   /**
+    * The permissions granted to an identity
+    */
+   private static class Decision extends WeakReference<Identity>
+   {
+      private final int mask;
+
+      Decision(Identity user, int mask)
+      {
+         super(user);
+         this.mask = mask;
+      }
+   }
+}
@@ -47,6 +47,10 @@ public interface QueryHandlerParams
 
    public static final String PARAM_EXTRACTOR_TIMEOUT = "extractor-timeout";
 
+   public static final String PARAM_EXTRACTED_TEXT_CACHE_DIR = "extracted-text-cache-dir";
+
+   public static final String PARAM_EXTRACTED_TEXT_CACHE_SIZE = "extracted-text-cache-size";
+
    public static final String PARAM_FORCE_CONSISTENCYCHECK = "force-consistencycheck";
 
    /**
@@ -108,12 +112,16 @@ public interface QueryHandlerParams
    public static final String PARAM_REINDEXING_PAGE_SIZE = "reindexing-page-size";
 
    public static final String PARAM_RDBMS_REINDEXING = "rdbms-reindexing";
+
+   public static final String PARAM_REINDEXING_CHECKPOINT_INTERVAL = "reindexing-checkpoint-interval";
    
    public static final String PARAM_ASYNC_REINDEXING = "async-reindexing";
    
    public static final String PARAM_INDEX_RECOVERY_MODE = "index-recovery-mode";
    
    public static final String PARAM_INDEX_RECOVERY_FILTER = "index-recovery-filter";
+
+   public static final String PARAM_INDEX_RECOVERY_THREADS = "index-recovery-threads";
    
    public static final String PARAM_INDEXING_THREAD_POOL_SIZE = "indexing-thread-pool-size";
 
@@ -128,4 +136,6 @@ public interface QueryHandlerParams
 
    public static final String PARAM_INDEXING_LOAD_BATCHING_THRESHOLD_NODE = "indexing-load-batching-threshold-node";
 
+   public static final String PARAM_INDEX_ACCESS_CONTROL = "index-access-control";
+
 }
@@ -46,6 +46,8 @@ public class WorkspaceEntry
 
    protected LockManagerEntry lockManager;
 
+   protected ObservationManagerEntry observationManager;
+
    protected WorkspaceInitializerEntry initializer;
 
    public WorkspaceEntry()
@@ -144,6 +146,20 @@ public class WorkspaceEntry
    {
       this.lockManager = lockManager;
    }
+   /**
+    * @return returns the Observation Manager
+    */
+   public ObservationManagerEntry getObservationManager()
+   {
+      return observationManager;
+   }
+   /**
+    * @param observationManager the Observation Manager
+    */
+   public void setObservationManager(ObservationManagerEntry observationManager)
+   {
+      this.observationManager = observationManager;
+   }
    /**
     * @return returns the Query Handler
     */
@@ -0,0 +1,402 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.dataflow;
+
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.datamodel.QPathEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Path prefix index of the {@link ItemState} of a {@link PlainChangesLogImpl}. The states are stored
+ * into two tries keyed by the {@link QPathEntry} sequence of the path of the item and of its ancestor to save
+ * (only when it is not the path of the item itself, which is the most common case), so the states of a subtree
+ * can be retrieved and removed in a time proportional to the size of the subtree instead of the size of the
+ * whole changes log. Each state is tagged with its insertion order, allowing to give back the states of a
+ * subtree in the order of the changes log.
+ * 
+ * This class is not thread safe, like the changes log itself.
+ *
+ * @version $Id$
+ */
+class ItemStatePathIndex
+{
+   /**
+    * Sorts the entries by insertion order.
+    */
+   private static final Comparator<Entry> ORDER_COMPARATOR = new Comparator<Entry>()
+   {
+      public int compare(Entry e1, Entry e2)
+      {
+         return e1.order < e2.order ? -1 : (e1.order == e2.order ? 0 : 1);
+      }
+   };
+
+   /**
+    * The trie of the item paths.
+    */
+   private final Node paths = new Node(null, null);
+
+   /**
+    * The trie of the ancestors to save.
+    */
+   private final Node ancestors = new Node(null, null);
+
+   /**
+    * The next insertion order.
+    */
+   private long order;
+
+   /**
+    * Indexes the given state.
+    */
+   void add(ItemState state)
+   {
+      QPath path = state.getData().getQPath();
+      QPath ancestor = state.getAncestorToSave();
+      Entry entry =
+         new Entry(order++, state, ancestor != path && !Arrays.equals(ancestor.getEntries(), path.getEntries()));
+      getNode(paths, path, true).add(entry);
+      if (entry.ancestorIndexed)
+      {
+         getNode(ancestors, ancestor, true).add(entry);
+      }
+   }
+
+   /**
+    * Removes the first indexed occurrence of the given state.
+    * 
+    * @return <code>true</code> if the state was indexed, <code>false</code> otherwise
+    */
+   boolean remove(ItemState state)
+   {
+      Node node = getNode(paths, state.getData().getQPath(), false);
+      if (node == null)
+      {
+         return false;
+      }
+      Entry entry = node.find(state);
+      if (entry == null)
+      {
+         return false;
+      }
+      node.remove(entry);
+      if (entry.ancestorIndexed)
+      {
+         getNode(ancestors, state.getAncestorToSave(), false).remove(entry);
+      }
+      return true;
+   }
+
+   /**
+    * Gives the states whose ancestor to save is the given path or one of its descendants,
+    * in the order of the changes log.
+    */
+   List<ItemState> getDescendants(QPath rootPath)
+   {
+      List<Entry> entries = new ArrayList<Entry>();
+      Node root = getNode(paths, rootPath, false);
+      if (root != null)
+      {
+         // the ancestor to save of the other entries is checked below
+         root.collect(entries, false);
+      }
+      root = getNode(ancestors, rootPath, false);
+      if (root != null)
+      {
+         root.collect(entries, true);
+      }
+      Collections.sort(entries, ORDER_COMPARATOR);
+
+      List<ItemState> states = new ArrayList<ItemState>(entries.size());
+      for (int i = 0, length = entries.size(); i < length; i++)
+      {
+         states.add(entries.get(i).state);
+      }
+      return states;
+   }
+
+   /**
+    * Removes and gives the states whose path or ancestor to save is the given path or one of its descendants,
+    * in the order of the changes log.
+    */
+   List<ItemState> removeDescendants(QPath rootPath)
+   {
+      List<Entry> entries = new ArrayList<Entry>();
+      Node root = getNode(paths, rootPath, false);
+      if (root != null)
+      {
+         root.collect(entries, true);
+      }
+      root = getNode(ancestors, rootPath, false);
+      if (root != null)
+      {
+         root.collect(entries, true);
+      }
+      if (entries.isEmpty())
+      {
+         return Collections.emptyList();
+      }
+      Collections.sort(entries, ORDER_COMPARATOR);
+
+      List<ItemState> states = new ArrayList<ItemState>(entries.size());
+      Entry previous = null;
+      for (int i = 0, length = entries.size(); i < length; i++)
+      {
+         Entry entry = entries.get(i);
+         if (entry == previous)
+         {
+            // Found in both tries
+            continue;
+         }
+         previous = entry;
+         states.add(entry.state);
+
+         getNode(paths, entry.state.getData().getQPath(), false).remove(entry);
+         if (entry.ancestorIndexed)
+         {
+            getNode(ancestors, entry.state.getAncestorToSave(), false).remove(entry);
+         }
+      }
+      return states;
+   }
+
+   /**
+    * Removes all the states from the index.
+    */
+   void clear()
+   {
+      paths.clear();
+      ancestors.clear();
+      order = 0;
+   }
+
+   /**
+    * Gives the node of the given trie corresponding to the given path.
+    * 
+    * @param create indicates whether the missing nodes must be created
+    * @return the node or <code>null</code> if it doesn't exist and <code>create</code> is <code>false</code>
+    */
+   private static Node getNode(Node trie, QPath path, boolean create)
+   {
+      Node node = trie;
+      QPathEntry[] entries = path.getEntries();
+      for (int i = 0; i < entries.length; i++)
+      {
+         Node child = node.children == null ? null : node.children.get(entries[i]);
+         if (child == null)
+         {
+            if (!create)
+            {
+               return null;
+            }
+            child = new Node(node, entries[i]);
+            if (node.children == null)
+            {
+               node.children = new HashMap<QPathEntry, Node>();
+            }
+            node.children.put(entries[i], child);
+         }
+         node = child;
+      }
+      return node;
+   }
+
+   /**
+    * An indexed state.
+    */
+   private static class Entry
+   {
+      private final long order;
+
+      private final ItemState state;
+
+      /**
+       * Indicates whether the entry is also stored into the trie of the ancestors to save.
+       */
+      private final boolean ancestorIndexed;
+
+      Entry(long order, ItemState state, boolean ancestorIndexed)
+      {
+         this.order = order;
+         this.state = state;
+         this.ancestorIndexed = ancestorIndexed;
+      }
+   }
+
+   /**
+    * A node of a trie.
+    */
+   private static class Node
+   {
+      private final Node parent;
+
+      private final QPathEntry name;
+
+      /**
+       * The child nodes, created lazily as most of the nodes are leaves.
+       */
+      private Map<QPathEntry, Node> children;
+
+      /**
+       * The entries of this exact path: <code>null</code>, a single {@link Entry} which is by far the most
+       * common case or a set of entries. {@link Entry} doesn't override equals so removals from the set
+       * are identity based and in constant time, which matters when a large subtree is deleted as all the
+       * deleted items share the same ancestor to save.
+       */
+      private Object entries;
+
+      Node(Node parent, QPathEntry name)
+      {
+         this.parent = parent;
+         this.name = name;
+      }
+
+      @SuppressWarnings("unchecked")
+      void add(Entry entry)
+      {
+         if (entries == null)
+         {
+            entries = entry;
+         }
+         else if (entries instanceof Entry)
+         {
+            Set<Entry> set = new HashSet<Entry>();
+            set.add((Entry)entries);
+            set.add(entry);
+            entries = set;
+         }
+         else
+         {
+            ((Set<Entry>)entries).add(entry);
+         }
+      }
+
+      /**
+       * Removes the given entry and prunes the trie if needed.
+       */
+      @SuppressWarnings("unchecked")
+      void remove(Entry entry)
+      {
+         if (entries == entry)
+         {
+            entries = null;
+         }
+         else if (entries instanceof Set)
+         {
+            Set<Entry> set = (Set<Entry>)entries;
+            set.remove(entry);
+            if (set.isEmpty())
+            {
+               entries = null;
+            }
+         }
+         prune();
+      }
+
+      /**
+       * Gives the oldest entry of the given state.
+       */
+      @SuppressWarnings("unchecked")
+      Entry find(ItemState state)
+      {
+         if (entries instanceof Entry)
+         {
+            return ((Entry)entries).state == state ? (Entry)entries : null;
+         }
+         Entry result = null;
+         if (entries != null)
+         {
+            for (Entry entry : (Set<Entry>)entries)
+            {
+               if (entry.state == state && (result == null || entry.order < result.order))
+               {
+                  result = entry;
+               }
+            }
+         }
+         return result;
+      }
+
+      /**
+       * Adds the entries of this node and of all its descendants.
+       * 
+       * @param all indicates whether the entries whose ancestor to save is indexed must be added too
+       */
+      @SuppressWarnings("unchecked")
+      void collect(List<Entry> result, boolean all)
+      {
+         List<Node> stack = new ArrayList<Node>();
+         stack.add(this);
+         while (!stack.isEmpty())
+         {
+            Node node = stack.remove(stack.size() - 1);
+            if (node.entries instanceof Entry)
+            {
+               Entry entry = (Entry)node.entries;
+               if (all || !entry.ancestorIndexed)
+               {
+                  result.add(entry);
+               }
+            }
+            else if (node.entries != null)
+            {
+               for (Entry entry : (Set<Entry>)node.entries)
+               {
+                  if (all || !entry.ancestorIndexed)
+                  {
+                     result.add(entry);
+                  }
+               }
+            }
+            if (node.children != null)
+            {
+               stack.addAll(node.children.values());
+            }
+         }
+      }
+
+      /**
+       * Detaches this node and its ancestors from the trie as long as they are empty.
+       */
+      void prune()
+      {
+         Node node = this;
+         while (node.parent != null && node.entries == null && (node.children == null || node.children.isEmpty()))
+         {
+            node.parent.children.remove(node.name);
+            node = node.parent;
+         }
+      }
+
+      void clear()
+      {
+         children = null;
+         entries = null;
+      }
+   }
+}
@@ -34,6 +34,7 @@ import java.io.ObjectOutput;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -120,6 +121,12 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
     */
    protected List<ItemState> allPathsChanged;
 
+   /**
+    * Index of the items by path and by ancestor to save, used to find the changes of a subtree
+    * without scanning the whole log.
+    */
+   private final ItemStatePathIndex pathIndex = new ItemStatePathIndex();
+
    /** 
     * Index in <code>childNodesInfo</code> value array to store child nodes count.
    */
@@ -244,6 +251,7 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
    public PlainChangesLog add(ItemState change)
    {
       items.add(change);
+      pathIndex.add(change);
       addItem(change);
 
       return this;
@@ -257,6 +265,7 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
       items.addAll(changes);
       for (int i = 0, length = changes.size(); i < length; i++)
       {
+         pathIndex.add(changes.get(i));
          addItem(changes.get(i));
       }
 
@@ -276,6 +285,7 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
       childPropertyStates.clear();
       childNodesInfo.clear();
       allPathsChanged = null;
+      pathIndex.clear();
    }
 
    /**
@@ -369,7 +379,12 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
       }
       else 
       {
-         removeProperty(item, -1);
+         int i = items.indexOf(item);
+         if (i != -1)
+         {
+            pathIndex.remove(items.remove(i));
+         }
+         removeProperty(item);
       }
    }
 
@@ -481,37 +496,81 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
     */
    public void remove(QPath rootPath)
    {
-      for (int i = items.size() - 1; i >= 0; i--)
+      List<ItemState> removed = pathIndex.removeDescendants(rootPath);
+      if (removed.isEmpty())
       {
-         ItemState item = items.get(i);
+         return;
+      }
+      for (int i = removed.size() - 1; i >= 0; i--)
+      {
+         ItemState item = removed.get(i);
+         if (item.isNode())
+         {
+            removeNode(item);
+         }
+         else
+         {
+            removeProperty(item);
+         }
+      }
+      removeAll(removed);
+   }
 
-         QPath qPath = item.getData().getQPath();
-         if (qPath.isDescendantOf(rootPath) || item.getAncestorToSave().isDescendantOf(rootPath)
-            || item.getAncestorToSave().equals(rootPath) || qPath.equals(rootPath))
+   /**
+    * Removes the given states from the list of items. As the removed states are usually the most recent
+    * ones, only the tail of the list starting from the oldest removed state is compacted.
+    * 
+    * @param removed
+    *          the states to remove, each state being removed as many times as it is contained
+    */
+   private void removeAll(List<ItemState> removed)
+   {
+      Map<ItemState, Integer> counts = new IdentityHashMap<ItemState, Integer>();
+      for (int i = 0, length = removed.size(); i < length; i++)
+      {
+         Integer count = counts.get(removed.get(i));
+         counts.put(removed.get(i), count == null ? 1 : count + 1);
+      }
+
+      // Find the oldest removed state
+      int from = items.size();
+      for (int found = 0, length = removed.size(); found < length && from > 0;)
+      {
+         if (counts.containsKey(items.get(--from)))
          {
-            
-            if (item.isNode())
-            {
-               removeNode(item, i);
-            }
-            else
-            {
-               removeProperty(item, i);
-            }
+            found++;
          }
       }
+
+      int to = from;
+      for (int i = from, length = items.size(); i < length; i++)
+      {
+         ItemState item = items.get(i);
+         Integer count = counts.get(item);
+         if (count == null)
+         {
+            items.set(to++, item);
+         }
+         else if (count == 1)
+         {
+            counts.remove(item);
+         }
+         else
+         {
+            counts.put(item, count - 1);
+         }
+      }
+      items.subList(to, items.size()).clear();
    }
-   
+
    /**
-    * Removes the node from the log
+    * Removes the node from the log indexes
     * 
     * @param item
     *          ItemState
     */
-   private void removeNode(ItemState item, int indexItem)
+   private void removeNode(ItemState item)
    {
-
-      items.remove(indexItem);
       index.remove(item.getData().getIdentifier());
       index.remove(item.getData().getQPath());
       index.remove(new ParentIDQPathBasedKey(item));
@@ -572,21 +631,13 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
    }
    
    /**
-    * Removes the property from the log
+    * Removes the property from the log indexes
     * 
     * @param item
     *          ItemState
     */
-   private void removeProperty(ItemState item, int indexItem)
+   private void removeProperty(ItemState item)
    {
-      if (indexItem == -1)
-      {
-         items.remove(item);
-      }
-      else
-      {
-         items.remove(indexItem);
-      }
       index.remove(item.getData().getIdentifier());
       index.remove(item.getData().getQPath());
       index.remove(new ParentIDQPathBasedKey(item));
@@ -736,24 +787,12 @@ public class PlainChangesLogImpl implements Externalizable, PlainChangesLog
     */
    public List<ItemState> getDescendantsChanges(QPath rootPath)
    {
-      List<ItemState> list = new ArrayList<ItemState>();
       if (rootPath.equals(Constants.ROOT_PATH))
       {
-         list.addAll(items);
-      }
-      else
-      {
-         for (int i = 0, length = items.size(); i < length; i++)
-         {
-            ItemState item = items.get(i);
-            if (item.isDescendantOf(rootPath))
-            {
-               list.add(item);
-            }
-         }
+         return new ArrayList<ItemState>(items);
       }
 
-      return list;
+      return pathIndex.getDescendants(rootPath);
    }
 
    /**
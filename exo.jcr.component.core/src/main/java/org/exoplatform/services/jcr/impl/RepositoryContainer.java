@@ -243,6 +243,11 @@ public class RepositoryContainer extends ExoContainer
          entries.add(workspaceEntry.getLockManager());
       }
 
+      if (workspaceEntry.getObservationManager() != null)
+      {
+         entries.add(workspaceEntry.getObservationManager());
+      }
+
       if (workspaceEntry.getQueryHandler() != null)
       {
          entries.add(workspaceEntry.getQueryHandler());
@@ -25,6 +25,7 @@ import org.exoplatform.services.jcr.core.security.JCRRuntimePermissions;
 import org.exoplatform.services.jcr.impl.Constants;
 import org.exoplatform.services.jcr.impl.backup.BackupException;
 import org.exoplatform.services.jcr.impl.dataflow.serialization.ZipObjectWriter;
+import org.exoplatform.services.jcr.impl.storage.jdbc.db.WorkspaceStorageConnectionFactory;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
@@ -38,10 +39,24 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipEntry;
 
+import javax.jcr.RepositoryException;
+
 /**
  * @author <a href="mailto:anatoliy.bazko@gmail.com">Anatoliy Bazko</a>
  * @version $Id: DBBackup.java 34360 2009-07-22 23:58:59Z tolusha $
@@ -73,6 +88,21 @@ public class DBBackup
     */
    public static final String CONTENT_LEN_ZIP_FILE = "dump-len.zip";
 
+   /**
+    * Separator between the table name and the partition number in the name of the zip entries.
+    */
+   public static final String PARTITION_SEPARATOR = "#";
+
+   /**
+    *  Name of the property parameter defining the amount of tables partitions dumped concurrently.
+    */
+   private static final String FULL_BACKUP_JOB_THREADS = "exo.jcr.component.ext.FullBackupJob.threads";
+
+   /**
+    *  Name of the property parameter defining the size of the ID range of a table partition.
+    */
+   private static final String FULL_BACKUP_JOB_PARTITION_SIZE = "exo.jcr.component.ext.FullBackupJob.partition-size";
+
    /**
     *  Name of fetch size property parameter in configuration.
     */
@@ -100,6 +130,126 @@ public class DBBackup
       }
       FETCH_SIZE = value;
    }
+
+   /**
+    * The amount of tables partitions dumped concurrently, each of them with its own connection.
+    */
+   public static final int THREADS = getIntProperty(FULL_BACKUP_JOB_THREADS,
+      Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+   /**
+    * The size of the ID range of a table partition, 0 or less disables the partitioning.
+    */
+   public static final long PARTITION_SIZE = getIntProperty(FULL_BACKUP_JOB_PARTITION_SIZE, 100000);
+
+   private static int getIntProperty(String name, int defaultValue)
+   {
+      String value = PropertyManager.getProperty(name);
+      if (value != null)
+      {
+         try
+         {
+            return Integer.valueOf(value);
+         }
+         catch (NumberFormatException e)
+         {
+            LOG.warn("The value of the property '" + name + "' must be an integer, the default value will be used.");
+         }
+      }
+      return defaultValue;
+   }
+
+   /**
+    * Returns the name of the content file written by the given dump worker.
+    */
+   public static String getContentZipFile(int worker)
+   {
+      return worker == 0 ? CONTENT_ZIP_FILE : "dump-" + worker + ".zip";
+   }
+
+   /**
+    * Returns the name of the content length file written by the given dump worker.
+    */
+   public static String getContentLenZipFile(int worker)
+   {
+      return worker == 0 ? CONTENT_LEN_ZIP_FILE : "dump-len-" + worker + ".zip";
+   }
+
+   /**
+    * Returns the name of the zip entry containing the given partition of a table.
+    */
+   public static String getEntryName(String tableName, int partition)
+   {
+      return partition == 0 ? tableName : tableName + PARTITION_SEPARATOR + partition;
+   }
+
+   /**
+    * Indicates whether the zip entry of the given name contains a partition of the given table.
+    */
+   public static boolean isTableEntry(String entryName, String tableName)
+   {
+      return entryName.equals(tableName)
+         || (entryName.startsWith(tableName) && entryName.startsWith(PARTITION_SEPARATOR, tableName.length()));
+   }
+
+   /**
+    * Splits the given script into scripts returning the rows of contiguous ranges of the numeric
+    * column <code>idColumn</code>. The first and the last ranges are open, so the rows whose ID is out
+    * of the range known at the time of the split are dumped anyway.
+    * 
+    * @param jdbcConn
+    *          the connection to database
+    * @param tableName
+    *          the table on which the range of IDs is computed
+    * @param script
+    *          the SQL query to get the data, with a where clause or not
+    * @param idColumn
+    *          the name of numeric column used to split the data as known in the script
+    * @param partitionSize
+    *          the size of the ID range of each partition
+    * @return the list of the scripts of all the partitions
+    * @throws SQLException
+    *        if the range of the IDs can not be retrieved
+    */
+   public static List<String> getPartitionScripts(Connection jdbcConn, String tableName, String script,
+      String idColumn, long partitionSize) throws SQLException
+   {
+      List<String> scripts = new ArrayList<String>();
+      if (partitionSize > 0)
+      {
+         Statement stmt = null;
+         ResultSet rs = null;
+         try
+         {
+            stmt = jdbcConn.createStatement();
+            rs = stmt.executeQuery("select min(ID), max(ID) from " + tableName);
+            if (rs.next())
+            {
+               long min = rs.getLong(1);
+               long max = rs.getLong(2);
+               String condition = (script.toLowerCase().contains(" where ") ? " and " : " where ") + idColumn;
+               for (long lower = min + partitionSize; lower <= max; lower += partitionSize)
+               {
+                  scripts.add(script + condition + " < " + lower
+                     + (scripts.isEmpty() ? "" : " and " + idColumn + " >= " + (lower - partitionSize)));
+               }
+               if (!scripts.isEmpty())
+               {
+                  scripts.add(script + condition + " >= " + (min + scripts.size() * partitionSize));
+               }
+            }
+         }
+         finally
+         {
+            JDBCUtils.freeResources(rs, stmt, null);
+         }
+      }
+      if (scripts.isEmpty())
+      {
+         scripts.add(script);
+      }
+      return scripts;
+   }
     
    /**
     * Backup tables.
@@ -192,6 +342,154 @@ public class DBBackup
       }
    }
 
+   /**
+    * Backup tables concurrently. Each partition of a table is dumped into its own zip entry by one of
+    * the <code>threads</code> workers, each worker uses its own connection and writes into its own
+    * zip files, see {@link #getContentZipFile(int)} and {@link #getContentLenZipFile(int)}.
+    * 
+    * @param storageDir
+    *          the directory to store data
+    * @param connFactory
+    *          the factory of the connections to database
+    * @param scripts
+    *          map which contains table name and respective SQL queries to get the data of each partition
+    * @param threads
+    *          the maximum amount of partitions dumped concurrently
+    * @throws BackupException
+    *        if any exception occurred
+    */
+   public static void backup(final File storageDir, final WorkspaceStorageConnectionFactory connFactory,
+      Map<String, List<String>> scripts, int threads) throws BackupException
+   {
+      SecurityManager security = System.getSecurityManager();
+      if (security != null)
+      {
+         security.checkPermission(JCRRuntimePermissions.MANAGE_REPOSITORY_PERMISSION);
+      }
+
+      final Queue<String[]> partitions = new ConcurrentLinkedQueue<String[]>();
+      for (Entry<String, List<String>> entry : scripts.entrySet())
+      {
+         List<String> tableScripts = entry.getValue();
+         for (int i = 0; i < tableScripts.size(); i++)
+         {
+            partitions.add(new String[]{getEntryName(entry.getKey(), i), tableScripts.get(i)});
+         }
+      }
+
+      int workers = Math.max(1, Math.min(threads, partitions.size()));
+      ExecutorService executor = Executors.newFixedThreadPool(workers, new ThreadFactory()
+      {
+         private final AtomicInteger count = new AtomicInteger();
+
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "DBBackup-" + count.getAndIncrement());
+            t.setDaemon(true);
+            return t;
+         }
+      });
+
+      final AtomicBoolean failed = new AtomicBoolean();
+      List<Future<Void>> results = new ArrayList<Future<Void>>();
+      try
+      {
+         for (int i = 0; i < workers; i++)
+         {
+            final int worker = i;
+            results.add(executor.submit(new Callable<Void>()
+            {
+               public Void call() throws Exception
+               {
+                  try
+                  {
+                     dumpPartitions(worker, storageDir, connFactory, partitions, failed);
+                  }
+                  catch (Exception e)
+                  {
+                     failed.set(true);
+                     throw e;
+                  }
+                  return null;
+               }
+            }));
+         }
+
+         for (Future<Void> result : results)
+         {
+            result.get();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         failed.set(true);
+         Thread.currentThread().interrupt();
+         throw new BackupException(e);
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof SQLException)
+         {
+            throw new BackupException("SQL Exception: " + JDBCUtils.getFullMessage((SQLException)cause), cause);
+         }
+         throw new BackupException(cause);
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Dumps the partitions of the queue until it is empty or another worker failed.
+    */
+   private static void dumpPartitions(int worker, File storageDir, WorkspaceStorageConnectionFactory connFactory,
+      Queue<String[]> partitions, AtomicBoolean failed) throws IOException, SQLException, RepositoryException
+   {
+      Connection jdbcConn = null;
+      ZipObjectWriter contentWriter = null;
+      ZipObjectWriter contentLenWriter = null;
+      try
+      {
+         jdbcConn = connFactory.getJdbcConnection();
+
+         contentWriter =
+            new ZipObjectWriter(PrivilegedFileHelper.zipOutputStream(new File(storageDir, getContentZipFile(worker))));
+         contentLenWriter =
+            new ZipObjectWriter(PrivilegedFileHelper.zipOutputStream(new File(storageDir,
+               getContentLenZipFile(worker))));
+
+         String[] partition;
+         while (!failed.get() && (partition = partitions.poll()) != null)
+         {
+            dumpTable(jdbcConn, partition[0], partition[1], storageDir, contentWriter, contentLenWriter);
+         }
+      }
+      finally
+      {
+         try
+         {
+            if (contentWriter != null)
+            {
+               contentWriter.close();
+            }
+
+            if (contentLenWriter != null)
+            {
+               contentLenWriter.close();
+            }
+         }
+         finally
+         {
+            if (jdbcConn != null)
+            {
+               jdbcConn.close();
+            }
+         }
+      }
+   }
+
    /**
     * Dump table.
     * 
@@ -45,12 +45,22 @@ import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
 
 import javax.naming.NamingException;
 
@@ -72,7 +82,7 @@ public class DBRestore implements DataRestore
    /**
     * List of temporary files.
     */
-   private final List<File> spoolFileList = new ArrayList<File>();
+   private final List<File> spoolFileList = Collections.synchronizedList(new ArrayList<File>());
 
    /**
     *  The file cleaner.
@@ -273,12 +283,10 @@ public class DBRestore implements DataRestore
          security.checkPermission(JCRRuntimePermissions.MANAGE_REPOSITORY_PERMISSION);
       }
 
-      ZipObjectReader contentReader = null;
-      ZipObjectReader contentLenReader = null;
-
       PreparedStatement insertNode = null;
       ResultSet tableMetaData = null;
       Statement stmt = null;
+      ExecutorService readers = null;
 
       // switch table name to lower case
       if (dialect.startsWith(DBConstants.DB_DIALECT_PGSQL))
@@ -288,79 +296,106 @@ public class DBRestore implements DataRestore
 
       try
       {
+         List<File[]> dumpFiles = new ArrayList<File[]>();
          File contentFile = new File(storageDir, restoreRule.getSrcTableName() + DBBackup.CONTENT_FILE_SUFFIX);
 
          // check old style backup format, when for every table was dedicated zip file 
-         if (PrivilegedFileHelper.exists(contentFile))
+         boolean dedicatedFile = PrivilegedFileHelper.exists(contentFile);
+         if (dedicatedFile)
          {
-            contentReader = new ZipObjectReader(PrivilegedFileHelper.zipInputStream(contentFile));
-            contentReader.getNextEntry();
-
-            File contentLenFile =
-               new File(storageDir, restoreRule.getSrcTableName() + DBBackup.CONTENT_LEN_FILE_SUFFIX);
-
-            contentLenReader = new ZipObjectReader(PrivilegedFileHelper.zipInputStream(contentLenFile));
-            contentLenReader.getNextEntry();
+            dumpFiles.add(new File[]{contentFile,
+               new File(storageDir, restoreRule.getSrcTableName() + DBBackup.CONTENT_LEN_FILE_SUFFIX)});
          }
          else
          {
-            contentFile = new File(storageDir, DBBackup.CONTENT_ZIP_FILE);
-            contentReader = new ZipObjectReader(PrivilegedFileHelper.zipInputStream(contentFile));
-
-            while (!contentReader.getNextEntry().getName().equals(restoreRule.getSrcTableName()));
-
-            File contentLenFile = new File(storageDir, DBBackup.CONTENT_LEN_ZIP_FILE);
-            contentLenReader = new ZipObjectReader(PrivilegedFileHelper.zipInputStream(contentLenFile));
-
-            while (!contentLenReader.getNextEntry().getName().equals(restoreRule.getSrcTableName()));
+            // the partitions of the table can be spread over the files of all the backup workers
+            for (int i = 0;; i++)
+            {
+               contentFile = new File(storageDir, DBBackup.getContentZipFile(i));
+               if (i > 0 && !PrivilegedFileHelper.exists(contentFile))
+               {
+                  break;
+               }
+               dumpFiles.add(new File[]{contentFile, new File(storageDir, DBBackup.getContentLenZipFile(i))});
+            }
          }
 
-         // get information about source table
-         int sourceColumnCount = contentReader.readInt();
-
-         List<Integer> columnType = new ArrayList<Integer>();
-         List<String> columnName = new ArrayList<String>();
-
-         for (int i = 0; i < sourceColumnCount; i++)
+         // the dump files are read and decompressed concurrently while the rows are inserted
+         BlockingQueue<DumpRecord> records = new ArrayBlockingQueue<DumpRecord>(MAXIMUM_BATCH_SIZE);
+         readers = Executors.newFixedThreadPool(dumpFiles.size(), new ThreadFactory()
          {
-            columnType.add(contentReader.readInt());
-            columnName.add(contentReader.readString());
-         }
+            private final AtomicInteger count = new AtomicInteger();
 
-         int targetColumnCount = sourceColumnCount;
-         if (restoreRule.getNewColumnIndex() != null)
+            public Thread newThread(Runnable r)
+            {
+               Thread t = new Thread(r, "DBRestore-" + count.getAndIncrement());
+               t.setDaemon(true);
+               return t;
+            }
+         });
+         for (File[] files : dumpFiles)
          {
-            targetColumnCount++;
+            readers.execute(new DumpReader(files[0], files[1], dedicatedFile ? null : restoreRule.getSrcTableName(),
+               records));
+         }
 
-            columnType.add(restoreRule.getNewColumnIndex(), restoreRule.getNewColumnType());
+         int sourceColumnCount = 0;
+         List<Integer> columnType = null;
+         List<String> columnName = null;
 
-            String newColumnName =
-               dialect.startsWith(DBConstants.DB_DIALECT_PGSQL) ? restoreRule.getNewColumnName().toLowerCase()
-                  : restoreRule.getNewColumnName();
-            columnName.add(restoreRule.getNewColumnIndex(), newColumnName);
-         }
+         int batchSize = 0;
 
-         // construct statement
-         StringBuilder names = new StringBuilder();
-         StringBuilder parameters = new StringBuilder();
-         for (int i = 0; i < targetColumnCount; i++)
+         // set data
+         for (int finishedReaders = 0; finishedReaders < dumpFiles.size();)
          {
-            if (restoreRule.getSkipColumnIndex() != null && restoreRule.getSkipColumnIndex() == i)
+            DumpRecord record;
+            try
             {
-               continue;
+               record = records.take();
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+               throw new InterruptedIOException("The restore of the table " + tableName + " has been interrupted");
             }
-            names.append(columnName.get(i)).append(i == targetColumnCount - 1 ? "" : ",");
-            parameters.append("?").append(i == targetColumnCount - 1 ? "" : ",");
-         }
 
-         int batchSize = 0;
-         insertNode =
-            jdbcConn.prepareStatement("INSERT INTO " + tableName + " (" + names + ") VALUES(" + parameters + ")");
+            if (record.error instanceof IOException)
+            {
+               throw (IOException)record.error;
+            }
+            else if (record.error instanceof Error)
+            {
+               throw (Error)record.error;
+            }
+            else if (record.error != null)
+            {
+               throw new IOException("The dump of the table " + restoreRule.getSrcTableName() + " cannot be read",
+                  record.error);
+            }
+            else if (record == DumpRecord.END)
+            {
+               finishedReaders++;
+               continue;
+            }
+            else if (record.columnType != null)
+            {
+               // get information about source table
+               if (columnType == null)
+               {
+                  sourceColumnCount = record.columnType.size();
+                  columnType = record.columnType;
+                  columnName = record.columnName;
+                  insertNode = prepareInsertStatement(tableName, restoreRule, columnType, columnName);
+               }
+               else if (record.columnType.size() != sourceColumnCount)
+               {
+                  throw new IOException("The partitions of the table " + restoreRule.getSrcTableName()
+                     + " have different columns");
+               }
+               continue;
+            }
 
-         // set data
-         outer : while (true)
-         {
-            for (int i = 0, targetIndex = 0; i < columnType.size(); i++, targetIndex++)
+            for (int i = 0, targetIndex = 0, sourceIndex = 0; i < columnType.size(); i++, targetIndex++)
             {
                InputStream stream;
                long len;
@@ -373,28 +408,8 @@ public class DBRestore implements DataRestore
                }
                else
                {
-                  try
-                  {
-                     len = contentLenReader.readLong();
-                  }
-                  catch (EOFException e)
-                  {
-                     if (i == 0)
-                     {
-                        // content length file is empty check content file
-                        try
-                        {
-                           contentReader.readByte();
-                        }
-                        catch (EOFException e1)
-                        {
-                           break outer;
-                        }
-                     }
-
-                     throw new IOException("Content length file is empty but content still present", e);
-                  }
-                  stream = len == -1 ? null : spoolInputStream(contentReader, len);
+                  len = record.len[sourceIndex];
+                  stream = record.values[sourceIndex++];
                }
 
                if (restoreRule.getSkipColumnIndex() != null && restoreRule.getSkipColumnIndex() == i)
@@ -585,14 +600,18 @@ public class DBRestore implements DataRestore
       }
       finally
       {
-         if (contentReader != null)
-         {
-            contentReader.close();
-         }
-
-         if (contentLenReader != null)
+         if (readers != null)
          {
-            contentLenReader.close();
+            // stops the readers still waiting for room in the queue in case of failure
+            readers.shutdownNow();
+            try
+            {
+               readers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+               Thread.currentThread().interrupt();
+            }
          }
 
          if (insertNode != null)
@@ -621,6 +640,42 @@ public class DBRestore implements DataRestore
       }
    }
 
+   /**
+    * Constructs the statement inserting the rows of the table, the new column of the restore rule is
+    * added to the given columns.
+    */
+   private PreparedStatement prepareInsertStatement(String tableName, TableTransformationRule restoreRule,
+      List<Integer> columnType, List<String> columnName) throws SQLException
+   {
+      int targetColumnCount = columnType.size();
+      if (restoreRule.getNewColumnIndex() != null)
+      {
+         targetColumnCount++;
+
+         columnType.add(restoreRule.getNewColumnIndex(), restoreRule.getNewColumnType());
+
+         String newColumnName =
+            dialect.startsWith(DBConstants.DB_DIALECT_PGSQL) ? restoreRule.getNewColumnName().toLowerCase()
+               : restoreRule.getNewColumnName();
+         columnName.add(restoreRule.getNewColumnIndex(), newColumnName);
+      }
+
+      // construct statement
+      StringBuilder names = new StringBuilder();
+      StringBuilder parameters = new StringBuilder();
+      for (int i = 0; i < targetColumnCount; i++)
+      {
+         if (restoreRule.getSkipColumnIndex() != null && restoreRule.getSkipColumnIndex() == i)
+         {
+            continue;
+         }
+         names.append(columnName.get(i)).append(i == targetColumnCount - 1 ? "" : ",");
+         parameters.append("?").append(i == targetColumnCount - 1 ? "" : ",");
+      }
+
+      return jdbcConn.prepareStatement("INSERT INTO " + tableName + " (" + names + ") VALUES(" + parameters + ")");
+   }
+
    /**
     * Committing changes from batch.
     */
@@ -774,6 +829,167 @@ public class DBRestore implements DataRestore
       }
       return false;
    }
-}
 
+   /**
+    * A record read from the dump files: the columns of a table partition, a row, the end of a dump file
+    * or the error which occurred while reading it.
+    */
+   private static class DumpRecord
+   {
+      /**
+       * The record indicating that a dump file has been entirely read.
+       */
+      static final DumpRecord END = new DumpRecord(null, null, null, null, null);
+
+      final List<Integer> columnType;
+
+      final List<String> columnName;
+
+      final long[] len;
+
+      final InputStream[] values;
+
+      final Throwable error;
+
+      DumpRecord(List<Integer> columnType, List<String> columnName, long[] len, InputStream[] values,
+         Throwable error)
+      {
+         this.columnType = columnType;
+         this.columnName = columnName;
+         this.len = len;
+         this.values = values;
+         this.error = error;
+      }
+   }
+
+   /**
+    * Reads the partitions of a table from a pair of dump files and puts the read records into the queue.
+    */
+   private class DumpReader implements Runnable
+   {
+      private final File contentFile;
+
+      private final File contentLenFile;
+
+      /**
+       * The name of the entries to read, <code>null</code> if the files are dedicated to the table.
+       */
+      private final String tableName;
+
+      private final BlockingQueue<DumpRecord> records;
+
+      DumpReader(File contentFile, File contentLenFile, String tableName, BlockingQueue<DumpRecord> records)
+      {
+         this.contentFile = contentFile;
+         this.contentLenFile = contentLenFile;
+         this.tableName = tableName;
+         this.records = records;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void run()
+      {
+         ZipObjectReader contentReader = null;
+         ZipObjectReader contentLenReader = null;
+         try
+         {
+            try
+            {
+               contentReader = new ZipObjectReader(PrivilegedFileHelper.zipInputStream(contentFile));
+               contentLenReader = new ZipObjectReader(PrivilegedFileHelper.zipInputStream(contentLenFile));
+
+               ZipEntry entry;
+               while ((entry = contentReader.getNextEntry()) != null)
+               {
+                  contentLenReader.getNextEntry();
+                  if (tableName == null || DBBackup.isTableEntry(entry.getName(), tableName))
+                  {
+                     readEntry(contentReader, contentLenReader);
+                  }
+               }
+               records.put(DumpRecord.END);
+            }
+            catch (InterruptedException e)
+            {
+               throw e;
+            }
+            catch (Throwable e) //NOSONAR
+            {
+               // whatever the failure, the restore must stop instead of waiting for the end of this dump file
+               records.put(new DumpRecord(null, null, null, null, e));
+            }
+            finally
+            {
+               if (contentReader != null)
+               {
+                  contentReader.close();
+               }
 
+               if (contentLenReader != null)
+               {
+                  contentLenReader.close();
+               }
+            }
+         }
+         catch (InterruptedException e)
+         {
+            // the restore of the table has been stopped
+            Thread.currentThread().interrupt();
+         }
+         catch (IOException e)
+         {
+            LOG.warn("Can't close the dump file " + contentFile.getName(), e);
+         }
+      }
+
+      private void readEntry(ZipObjectReader contentReader, ZipObjectReader contentLenReader) throws IOException,
+         InterruptedException
+      {
+         int columnCount = contentReader.readInt();
+
+         List<Integer> columnType = new ArrayList<Integer>();
+         List<String> columnName = new ArrayList<String>();
+
+         for (int i = 0; i < columnCount; i++)
+         {
+            columnType.add(contentReader.readInt());
+            columnName.add(contentReader.readString());
+         }
+         records.put(new DumpRecord(columnType, columnName, null, null, null));
+
+         while (true)
+         {
+            long[] len = new long[columnCount];
+            InputStream[] values = new InputStream[columnCount];
+            for (int i = 0; i < columnCount; i++)
+            {
+               try
+               {
+                  len[i] = contentLenReader.readLong();
+               }
+               catch (EOFException e)
+               {
+                  if (i == 0)
+                  {
+                     // content length file is empty check content file
+                     try
+                     {
+                        contentReader.readByte();
+                     }
+                     catch (EOFException e1)
+                     {
+                        return;
+                     }
+                  }
+
+                  throw new IOException("Content length file is empty but content still present", e);
+               }
+               values[i] = len[i] == -1 ? null : spoolInputStream(contentReader, len[i]);
+            }
+            records.put(new DumpRecord(null, null, len, values, null));
+         }
+      }
+   }
+}
@@ -75,7 +75,9 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.RepositoryException;
 import javax.jcr.lock.LockException;
@@ -159,6 +161,30 @@ public abstract class AbstractCacheableLockManager implements CacheableLockManag
 
    protected LockActionNonTxAware<List<LockData>, Object> getLockList;
 
+   /**
+    * The identifiers of the nodes holding a deep lock, only relevant if {@link #deepLocksIndexed} is
+    * <code>true</code>. As the locks of the parents of a node only matter if they are deep, it allows to
+    * know that a node is not locked by one of its parents without visiting them in the common case where
+    * there is no deep lock.
+    */
+   private final Set<String> deepLocks = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+   /**
+    * Indicates whether the sub class keeps {@link #deepLocks} up to date with the content of the lock cache
+    * of all the cluster nodes thanks to {@link #onLockPut(LockData)} and {@link #onLockRemoved(String)}.
+    */
+   private volatile boolean deepLocksIndexed;
+
+   /**
+    * The number of lock checks answered with a single lookup.
+    */
+   private final AtomicLong fastLockChecks = new AtomicLong();
+
+   /**
+    * The number of lock checks that needed to visit the parents of the node.
+    */
+   private final AtomicLong slowLockChecks = new AtomicLong();
+
    /**
     * Constructor.
     * 
@@ -215,6 +241,36 @@ public abstract class AbstractCacheableLockManager implements CacheableLockManag
       return -1;
    }
 
+   /**
+    * Returns the number of active deep locks.
+    */
+   @Managed
+   @ManagedDescription("The number of active deep locks or -1 if they are not indexed")
+   public int getNumDeepLocks()
+   {
+      return deepLocksIndexed ? deepLocks.size() : -1;
+   }
+
+   /**
+    * Returns the number of lock checks answered with a single lookup.
+    */
+   @Managed
+   @ManagedDescription("The number of lock checks answered with a single lookup")
+   public long getFastLockChecks()
+   {
+      return fastLockChecks.get();
+   }
+
+   /**
+    * Returns the number of lock checks that needed to visit the parents of the node.
+    */
+   @Managed
+   @ManagedDescription("The number of lock checks that needed to visit the parents of the node")
+   public long getSlowLockChecks()
+   {
+      return slowLockChecks.get();
+   }
+
    /**
     * Indicates if some locks have already been created.
     */
@@ -648,17 +704,29 @@ public abstract class AbstractCacheableLockManager implements CacheableLockManag
       {
          return null;
       }
-      LockData retval = null;
-      retval = getLockDataById(node.getIdentifier());
-      if (retval == null)
+      LockData retval = getLockDataById(node.getIdentifier());
+      if (retval != null || (deepLocksIndexed && deepLocks.isEmpty()))
       {
-         NodeData parentData = (NodeData)dataManager.getItemData(node.getParentIdentifier());
-         if (parentData != null)
+         fastLockChecks.incrementAndGet();
+         return retval;
+      }
+
+      slowLockChecks.incrementAndGet();
+      NodeData parentData = (NodeData)dataManager.getItemData(node.getParentIdentifier());
+      while (parentData != null)
+      {
+         // only probe the lock cache for the parents known to hold a deep lock if they are indexed
+         if (!deepLocksIndexed || deepLocks.contains(parentData.getIdentifier()))
          {
-            retval = getExactNodeOrCloseParentLock(parentData, false);
+            retval = getLockDataById(parentData.getIdentifier());
+            if (retval != null && retval.isDeep())
+            {
+               return retval;
+            }
          }
+         parentData = (NodeData)dataManager.getItemData(parentData.getParentIdentifier());
       }
-      return retval;
+      return null;
    }
 
    /**
@@ -714,6 +782,62 @@ public abstract class AbstractCacheableLockManager implements CacheableLockManag
 
 
 
+   /**
+    * Enables or disables the index of the deep locks. It must only be enabled if {@link #onLockPut(LockData)}
+    * and {@link #onLockRemoved(String)} are called for every change of the lock cache made by any cluster
+    * node, the index is then rebuilt from the current locks.
+    * 
+    * @param enabled
+    *          <code>true</code> to enable the index, <code>false</code> otherwise
+    */
+   protected void setDeepLocksIndexed(boolean enabled)
+   {
+      deepLocksIndexed = false;
+      deepLocks.clear();
+      if (enabled)
+      {
+         List<LockData> locks = getLockList();
+         if (locks == null)
+         {
+            return;
+         }
+         for (LockData lockData : locks)
+         {
+            onLockPut(lockData);
+         }
+         deepLocksIndexed = true;
+      }
+   }
+
+   /**
+    * Updates the index of the deep locks after a put into the lock cache.
+    * 
+    * @param lockData
+    *          the lock data that has been put
+    */
+   protected void onLockPut(LockData lockData)
+   {
+      if (lockData.isDeep())
+      {
+         deepLocks.add(lockData.getNodeIdentifier());
+      }
+      else
+      {
+         deepLocks.remove(lockData.getNodeIdentifier());
+      }
+   }
+
+   /**
+    * Updates the index of the deep locks after a removal from the lock cache.
+    * 
+    * @param nodeIdentifier
+    *          the identifier of the node whose lock has been removed
+    */
+   protected void onLockRemoved(String nodeIdentifier)
+   {
+      deepLocks.remove(nodeIdentifier);
+   }
+
    /**
     * Remove lock, used by Lock remover.
     * 
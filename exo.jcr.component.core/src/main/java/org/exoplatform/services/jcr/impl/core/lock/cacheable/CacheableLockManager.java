@@ -67,7 +67,8 @@ public interface CacheableLockManager extends WorkspaceLockManager
    String getLockTokenHash(String lockToken);
 
    /**
-    * Return Lock holding node or its parent.
+    * Return Lock holding node or the closest deep Lock holding one of its parents. The locks of the parents
+    * which are not deep are ignored as they don't apply to the node.
     * 
     * @param node - NodeData
     * @return LockData for node or null;
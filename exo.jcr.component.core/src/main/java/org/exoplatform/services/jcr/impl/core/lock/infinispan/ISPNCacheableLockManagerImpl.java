@@ -34,8 +34,14 @@ import org.exoplatform.services.jcr.infinispan.PrivilegedISPNCacheHelper;
 import org.exoplatform.services.naming.InitialContextInitializer;
 import org.exoplatform.services.transaction.TransactionService;
 import org.infinispan.AdvancedCache;
+import org.infinispan.configuration.cache.CacheMode;
 import org.infinispan.context.Flag;
 import org.infinispan.lifecycle.ComponentStatus;
+import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 
 import java.io.Serializable;
 import java.util.ArrayList;
@@ -79,6 +85,11 @@ public class ISPNCacheableLockManagerImpl extends AbstractCacheableLockManager
 
    private AdvancedCache<Serializable, Object> cache;
 
+   /**
+    * The listener maintaining the index of the deep locks.
+    */
+   private final DeepLocksListener deepLocksListener = new DeepLocksListener();
+
    public ISPNCacheableLockManagerImpl(WorkspacePersistentDataManager dataManager, WorkspaceEntry config,
       InitialContextInitializer context, TransactionService transactionService, ConfigurationManager cfm,
       LockRemoverHolder lockRemoverHolder) throws RepositoryConfigurationException, RepositoryException
@@ -209,6 +220,15 @@ public class ISPNCacheableLockManagerImpl extends AbstractCacheableLockManager
    {
       PrivilegedISPNCacheHelper.start(cache);
       super.start();
+
+      // In distributed mode the listeners are only notified of the changes of the local keys,
+      // the index of the deep locks would then be incomplete
+      CacheMode mode = cache.getCacheConfiguration().clustering().cacheMode();
+      if (mode != CacheMode.DIST_SYNC && mode != CacheMode.DIST_ASYNC)
+      {
+         cache.addListener(deepLocksListener);
+         setDeepLocksIndexed(true);
+      }
    }
 
    /**
@@ -216,6 +236,8 @@ public class ISPNCacheableLockManagerImpl extends AbstractCacheableLockManager
     */
    public void stop()
    {
+      setDeepLocksIndexed(false);
+      cache.removeListener(deepLocksListener);
       super.stop();
       PrivilegedISPNCacheHelper.stop(cache);
       ISPNCacheFactory.releaseUniqueInstance(cache.getCacheManager());
@@ -318,4 +340,32 @@ public class ISPNCacheableLockManagerImpl extends AbstractCacheableLockManager
    {
       return new ISPNLockTableHandler(config, dataSource);
    }
+
+   /**
+    * Keeps the index of the deep locks up to date with the changes of the lock cache, including the
+    * changes made by the other cluster nodes as the lock cache is replicated.
+    */
+   @SuppressWarnings("rawtypes")
+   @Listener
+   public class DeepLocksListener
+   {
+
+      @CacheEntryModified
+      public void cacheEntryModified(CacheEntryModifiedEvent evt)
+      {
+         if (!evt.isPre() && evt.getValue() instanceof LockData)
+         {
+            onLockPut((LockData)evt.getValue());
+         }
+      }
+
+      @CacheEntryRemoved
+      public void cacheEntryRemoved(CacheEntryRemovedEvent evt)
+      {
+         if (!evt.isPre() && evt.getKey() instanceof String)
+         {
+            onLockRemoved((String)evt.getKey());
+         }
+      }
+   }
 }
@@ -40,6 +40,7 @@ import org.exoplatform.services.jcr.observation.ExtendedEvent;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,7 +48,6 @@ import java.util.Map;
 import javax.jcr.RepositoryException;
 import javax.jcr.observation.Event;
 import javax.jcr.observation.EventListener;
-import javax.jcr.observation.EventListenerIterator;
 
 /**
  * Created by The eXo Platform SAS.
@@ -79,93 +79,129 @@ public class ActionLauncher implements ItemsPersistenceListener
 
    public void onSaveItems(ItemStateChangesLog changesLog)
    {
-      EventListenerIterator eventListeners = observationRegistry.getEventListeners();
+      ListenerDispatchIndex index = observationRegistry.getDispatchIndex();
+      if (index.size() == 0)
+      {
+         return;
+      }
+
+      // The events of each listener, indexed by the ordinal of the listener into the dispatch index
+      EntityCollection[] events = new EntityCollection[index.size()];
+      List<ListenerDispatchIndex.Entry> candidates = new ArrayList<ListenerDispatchIndex.Entry>();
 
-      while (eventListeners.hasNext())
+      ChangesLogIterator logIterator = ((CompositeChangesLog)changesLog).getLogIterator();
+      while (logIterator.hasNextLog())
       {
 
-         EventListener listener = eventListeners.nextEventListener();
-         if (listener == null)
+         PlainChangesLog subLog = logIterator.nextLog();
+         String sessionId = subLog.getSessionId();
+
+         ExtendedSession userSession;
+
+         if (subLog.getSession() != null)
          {
-            if (LOG.isDebugEnabled())
-            {
-                LOG.debug("The listener has probably been removed thus it will be skipped");
-            }
-            continue;
+            userSession = subLog.getSession();
          }
-
-         ListenerCriteria criteria = observationRegistry.getListenerFilter(listener);
-         if (criteria == null)
+         else
          {
-            if (LOG.isDebugEnabled())
-            {
-                LOG.debug("The criteria of the listener could not be found thus it will be skipped");
-            }
-            continue;
+            userSession = sessionRegistry.getSession(sessionId);
          }
-         EntityCollection events = new EntityCollection();
 
-         ChangesLogIterator logIterator = ((CompositeChangesLog)changesLog).getLogIterator();
-         while (logIterator.hasNextLog())
+         if (userSession != null)
          {
-
-            PlainChangesLog subLog = logIterator.nextLog();
-            String sessionId = subLog.getSessionId();
-
-            ExtendedSession userSession;
-
-            if (subLog.getSession() != null)
+            for (ItemState itemState : subLog.getAllStates())
             {
-               userSession = subLog.getSession();
-            }
-            else
-            {
-               userSession = sessionRegistry.getSession(sessionId);
-            }
-
-            if (userSession != null)
-            {
-               for (ItemState itemState : subLog.getAllStates())
+               if (itemState.isEventFire())
                {
-                  if (itemState.isEventFire())
+
+                  ItemData item = itemState.getData();
+                  int eventType;
+                  try
                   {
+                     eventType = eventType(itemState);
+                  }
+                  catch (RepositoryException e)
+                  {
+                     LOG.error("Can not fire ActionLauncher.onSaveItems() for " + item.getQPath().getAsString()
+                        + " reason: " + e.getMessage());
+                     continue;
+                  }
+                  if (eventType == SKIP_EVENT || !index.accept(eventType))
+                  {
+                     continue;
+                  }
 
-                     ItemData item = itemState.getData();
+                  candidates.clear();
+                  index.collect(item, eventType, candidates);
+                  for (ListenerDispatchIndex.Entry entry : index.getUnresolved())
+                  {
+                     if (isTypeMatch(entry.criteria, eventType) && isPathMatch(entry.criteria, item, userSession)
+                        && isIdentifierMatch(entry.criteria, item))
+                     {
+                        candidates.add(entry);
+                     }
+                  }
+                  if (candidates.isEmpty())
+                  {
+                     continue;
+                  }
+
+                  // The associated parent node and the path are resolved once for all the candidates
+                  NodeData parent = null;
+                  boolean parentLoaded = false;
+                  String path = null;
+                  for (int i = 0, length = candidates.size(); i < length; i++)
+                  {
+                     ListenerDispatchIndex.Entry entry = candidates.get(i);
+                     ListenerCriteria criteria = entry.criteria;
                      try
                      {
-                        int eventType = eventType(itemState);
-                        if (eventType != SKIP_EVENT && isTypeMatch(criteria, eventType)
-                           && isPathMatch(criteria, item, userSession) && isIdentifierMatch(criteria, item)
-                           && isNodeTypeMatch(criteria, item, userSession, subLog)
-                           && isSessionMatch(criteria, sessionId))
+                        if (!isSessionMatch(criteria, sessionId))
                         {
-
-                           String path =
-                              userSession.getLocationFactory().createJCRPath(item.getQPath()).getAsString(false);
-                           if (eventType== ExtendedEvent.NODE_MOVED)
+                           continue;
+                        }
+                        if (criteria.getNodeTypeName() != null)
+                        {
+                           if (!parentLoaded)
                            {
-                               String oldPath =
-                                       userSession.getLocationFactory().createJCRPath(itemState.getOldPath()).getAsString(false);
-                               Map<String, String> info = new HashMap<String, String>();
-                               if(itemState.isMoved())
-                               {
-                                   info.put(ExtendedEvent.SRC_ABS_PATH, oldPath);
-                                   info.put(ExtendedEvent.DEST_ABS_PATH, path);
-                               }
-                               else if (itemState.isOrdered())
-                               {
-                                   info.put(ExtendedEvent.SRC_CHILD_REL_PATH, oldPath);
-                                   info.put(ExtendedEvent.DEST_CHILD_REL_PATH, path);
-                               }
-
-                               events.add(new EventImpl(eventType, path, userSession.getUserID(), info));
+                              parent = getParent(item, subLog);
+                              parentLoaded = true;
                            }
-                            else
+                           if (!isNodeTypeMatch(criteria, parent, userSession))
                            {
-                               events.add(new EventImpl(eventType, path, userSession.getUserID()));
+                              continue;
+                           }
+                        }
 
+                        if (path == null)
+                        {
+                           path = userSession.getLocationFactory().createJCRPath(item.getQPath()).getAsString(false);
+                        }
+                        if (events[entry.ordinal] == null)
+                        {
+                           events[entry.ordinal] = new EntityCollection();
+                        }
+                        if (eventType == ExtendedEvent.NODE_MOVED)
+                        {
+                           String oldPath =
+                              userSession.getLocationFactory().createJCRPath(itemState.getOldPath()).getAsString(false);
+                           Map<String, String> info = new HashMap<String, String>();
+                           if (itemState.isMoved())
+                           {
+                              info.put(ExtendedEvent.SRC_ABS_PATH, oldPath);
+                              info.put(ExtendedEvent.DEST_ABS_PATH, path);
+                           }
+                           else if (itemState.isOrdered())
+                           {
+                              info.put(ExtendedEvent.SRC_CHILD_REL_PATH, oldPath);
+                              info.put(ExtendedEvent.DEST_CHILD_REL_PATH, path);
                            }
 
+                           events[entry.ordinal].add(new EventImpl(eventType, path, userSession.getUserID(), info));
+                        }
+                        else
+                        {
+                           events[entry.ordinal].add(new EventImpl(eventType, path, userSession.getUserID()));
                         }
                      }
                      catch (RepositoryException e)
@@ -177,10 +213,23 @@ public class ActionLauncher implements ItemsPersistenceListener
                }
             }
          }
-         if (events.getSize() > 0)
+      }
+
+      for (int i = 0; i < events.length; i++)
+      {
+         // TCK says, no events - no onEvent() action
+         if (events[i] != null && events[i].getSize() > 0)
          {
-            // TCK says, no events - no onEvent() action
-            listener.onEvent(events);
+            EventListener listener = index.getEntry(i).listener;
+            if (observationRegistry.getListenerFilter(listener) == null)
+            {
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.debug("The listener has probably been removed thus it will be skipped");
+               }
+               continue;
+            }
+            observationRegistry.dispatch(listener, events[i]);
          }
       }
    }
@@ -244,14 +293,13 @@ public class ActionLauncher implements ItemsPersistenceListener
 
    }
 
-   private boolean isNodeTypeMatch(ListenerCriteria criteria, ItemData item, ExtendedSession userSession,
-      PlainChangesLog changesLog) throws RepositoryException
+   /**
+    * Gives the associated parent node of the item from the workspace or from the changes log.
+    *
+    * @return the associated parent node or <code>null</code> if it cannot be found
+    */
+   private NodeData getParent(ItemData item, PlainChangesLog changesLog) throws RepositoryException
    {
-      if (criteria.getNodeTypeName() == null)
-      {
-         return true;
-      }
-
       NodeData node = (NodeData)workspaceDataManager.getItemData(item.getParentIdentifier());
       if (node == null)
       {
@@ -271,15 +319,42 @@ public class ActionLauncher implements ItemsPersistenceListener
          {
             LOG.warn("Item's " + item.getQPath().getAsString() + " associated parent (" + item.getParentIdentifier()
                + ") can't be found nor in workspace nor in current changes. Nodetype filter is rejected.");
-            return false;
          }
       }
+      return node;
+   }
+
+   private boolean isNodeTypeMatch(ListenerCriteria criteria, NodeData node, ExtendedSession userSession) throws RepositoryException
+   {
+      if (criteria.getNodeTypeName() == null)
+      {
+         return true;
+      }
+
+      if (node == null)
+      {
+         return false;
+      }
 
       NodeTypeDataManager ntManager = ((ExtendedWorkspace)userSession.getWorkspace()).getNodeTypesHolder();
       LocationFactory locationFactory = userSession.getLocationFactory();
+      InternalQName[] names = criteria.getNodeTypeQNames();
       for (int i = 0; i < criteria.getNodeTypeName().length; i++)
       {
-         InternalQName name = locationFactory.parseJCRName(criteria.getNodeTypeName()[i]).getInternalName();
+         InternalQName name;
+         if (names != null && names[i] != null)
+         {
+            name = names[i];
+         }
+         else if (criteria.isResolved())
+         {
+            LOG.warn("The nodetype '{}' defined in the criteria of the listener is unknown.", criteria.getNodeTypeName()[i]);
+            continue;
+         }
+         else
+         {
+            name = locationFactory.parseJCRName(criteria.getNodeTypeName()[i]).getInternalName();
+         }
          NodeTypeData criteriaNT = ntManager.getNodeType(name);
          InternalQName[] testQNames;
          if (criteriaNT == null)
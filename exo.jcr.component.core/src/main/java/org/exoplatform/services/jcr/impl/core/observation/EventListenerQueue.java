@@ -0,0 +1,692 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.observation;
+
+import org.exoplatform.commons.utils.PrivilegedFileHelper;
+import org.exoplatform.container.ExoContainer;
+import org.exoplatform.container.ExoContainerContext;
+import org.exoplatform.services.jcr.impl.util.EntityCollection;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.security.ConversationState;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventListener;
+
+/**
+ * Bounded queue of the events to deliver asynchronously to a given {@link EventListener}.
+ * The queue is drained by a shared {@link Executor}, at most one thread delivers the events of
+ * a given listener at a time and all the batches of events pending at that time are coalesced
+ * into a single <code>EventIterator</code>. The capacity of the queue is expressed in amount of events,
+ * a batch is always accepted when the queue is empty whatever its size, otherwise the {@link OverflowPolicy}
+ * defines what happens when the capacity is reached. The events are delivered within the
+ * {@link ExoContainer} and the {@link ConversationState} of the thread that queued them, only the
+ * consecutive batches queued within the same context are coalesced.
+ *
+ * @version $Id$
+ */
+class EventListenerQueue implements Runnable
+{
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.EventListenerQueue");
+
+   /**
+    * The behavior of the queue when a new batch of events exceeds its capacity
+    */
+   enum OverflowPolicy {
+      /**
+       * The thread that saves the changes waits until enough events have been delivered
+       */
+      BLOCK,
+
+      /**
+       * The oldest batches of events are discarded
+       */
+      DROP_OLDEST,
+
+      /**
+       * The new batches are written into a temporary file and read back once the queue has been drained
+       */
+      SPILL;
+
+      /**
+       * Gives the policy corresponding to the given value, <code>block</code>, <code>drop-oldest</code> or
+       * <code>spill</code>
+       */
+      static OverflowPolicy parse(String value)
+      {
+         return valueOf(value.trim().toUpperCase().replace('-', '_'));
+      }
+   }
+
+   /**
+    * The container and the conversation state of the thread that queued a batch
+    */
+   private static final class Context
+   {
+      private final ExoContainer container;
+
+      private final ConversationState state;
+
+      private Context(ExoContainer container, ConversationState state)
+      {
+         this.container = container;
+         this.state = state;
+      }
+
+      private boolean isSame(Context context)
+      {
+         return container == context.container && state == context.state;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public boolean equals(Object obj)
+      {
+         return obj instanceof Context && isSame((Context)obj);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public int hashCode()
+      {
+         return 31 * System.identityHashCode(container) + System.identityHashCode(state);
+      }
+   }
+
+   /**
+    * A context referenced by spilled batches, the batches only store its id on disk
+    */
+   private static final class SpilledContext
+   {
+      private final int id;
+
+      private final Context context;
+
+      /**
+       * The amount of spilled batches that refer to this context
+       */
+      private int batches;
+
+      private SpilledContext(int id, Context context)
+      {
+         this.id = id;
+         this.context = context;
+      }
+   }
+
+   /**
+    * The events of a given save
+    */
+   private static final class Batch
+   {
+      private final List<Event> events;
+
+      /**
+       * The time at which the batch has been queued
+       */
+      private final long time;
+
+      private final Context context;
+
+      private Batch(List<Event> events, long time, Context context)
+      {
+         this.events = events;
+         this.time = time;
+         this.context = context;
+      }
+   }
+
+   private final EventListener listener;
+
+   private final Executor executor;
+
+   private final int capacity;
+
+   private final OverflowPolicy policy;
+
+   private final LinkedList<Batch> batches = new LinkedList<Batch>();
+
+   /**
+    * The amount of events kept in memory
+    */
+   private int size;
+
+   /**
+    * The file into which the batches are spilled, created on first need
+    */
+   private File spillFile;
+
+   private RandomAccessFile spill;
+
+   private long spillReadPosition;
+
+   private long spillWritePosition;
+
+   private int spilledBatches;
+
+   private int spilledEvents;
+
+   /**
+    * The contexts referenced by the spilled batches indexed by id, they cannot be serialized so only their
+    * id is written with each batch, the memory used is bounded by the amount of distinct contexts not by
+    * the amount of spilled batches
+    */
+   private final Map<Integer, SpilledContext> spilledContexts = new HashMap<Integer, SpilledContext>();
+
+   /**
+    * The same contexts indexed by context to find the id of the context of a new spilled batch
+    */
+   private final Map<Context, SpilledContext> spilledContextIds = new HashMap<Context, SpilledContext>();
+
+   private int nextSpilledContextId;
+
+   /**
+    * Indicates whether a task has been submitted to the executor to drain the queue
+    */
+   private boolean scheduled;
+
+   /**
+    * The thread currently delivering the events, it must never wait for the queue to avoid dead locks
+    * when the listener saves changes itself
+    */
+   private Thread drainingThread;
+
+   private boolean closed;
+
+   // Metrics
+
+   private long deliveredEvents;
+
+   private long deliveries;
+
+   private long droppedEvents;
+
+   private long totalSpilledEvents;
+
+   private long totalLatency;
+
+   private long maxLatency;
+
+   private int maxBacklog;
+
+   EventListenerQueue(EventListener listener, Executor executor, int capacity, OverflowPolicy policy)
+   {
+      this.listener = listener;
+      this.executor = executor;
+      this.capacity = capacity;
+      this.policy = policy;
+   }
+
+   /**
+    * Queues the given events, the caller may be blocked if the policy is {@link OverflowPolicy#BLOCK}
+    * and the queue is full. The events are rejected once the queue has been closed, including when the
+    * queue is closed while the caller is blocked.
+    */
+   synchronized void offer(List<Event> events)
+   {
+      if (closed || events.isEmpty())
+      {
+         return;
+      }
+      Batch batch =
+         new Batch(events, System.currentTimeMillis(), new Context(ExoContainerContext.getCurrentContainerIfPresent(),
+            ConversationState.getCurrent()));
+      if (spilledBatches > 0)
+      {
+         // Some batches are already on disk, the new ones must follow them to keep the order
+         spill(batch);
+      }
+      else if (isFull(events.size()))
+      {
+         switch (policy)
+         {
+            case BLOCK :
+               if (Thread.currentThread() != drainingThread)
+               {
+                  try
+                  {
+                     while (!closed && isFull(events.size()))
+                     {
+                        wait();
+                     }
+                  }
+                  catch (InterruptedException e)
+                  {
+                     Thread.currentThread().interrupt();
+                     LOG.warn("The thread has been interrupted while waiting for the queue of the listener "
+                        + listener + ", the events are queued anyway");
+                  }
+                  if (closed)
+                  {
+                     // The listener has been removed while waiting, the events are rejected
+                     return;
+                  }
+               }
+               add(batch);
+               break;
+            case DROP_OLDEST :
+               while (isFull(events.size()))
+               {
+                  Batch oldest = batches.removeFirst();
+                  size -= oldest.events.size();
+                  droppedEvents += oldest.events.size();
+               }
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.debug("The queue of the listener " + listener + " is full, the oldest events have been dropped");
+               }
+               add(batch);
+               break;
+            case SPILL :
+               spill(batch);
+               break;
+         }
+      }
+      else
+      {
+         add(batch);
+      }
+      int backlog = size + spilledEvents;
+      if (backlog > maxBacklog)
+      {
+         maxBacklog = backlog;
+      }
+      schedule();
+   }
+
+   private boolean isFull(int count)
+   {
+      return size > 0 && size + count > capacity;
+   }
+
+   private void add(Batch batch)
+   {
+      batches.add(batch);
+      size += batch.events.size();
+   }
+
+   private void schedule()
+   {
+      if (!scheduled && !closed)
+      {
+         scheduled = true;
+         try
+         {
+            executor.execute(this);
+         }
+         catch (RejectedExecutionException e)
+         {
+            scheduled = false;
+            LOG.error("The events of the listener " + listener + " cannot be delivered: " + e.getMessage());
+         }
+      }
+   }
+
+   /**
+    * Delivers the pending events queued within the same context then re-submits itself if events remain
+    * or have been queued meanwhile so that a busy listener does not monopolize a thread of the executor.
+    */
+   public void run()
+   {
+      List<Event> events;
+      long oldest;
+      Context context;
+      synchronized (this)
+      {
+         if (batches.isEmpty() && spilledBatches > 0)
+         {
+            unspill();
+         }
+         if (closed || batches.isEmpty())
+         {
+            scheduled = false;
+            return;
+         }
+         oldest = batches.getFirst().time;
+         context = batches.getFirst().context;
+         events = new ArrayList<Event>(size);
+         while (!batches.isEmpty() && batches.getFirst().context.isSame(context))
+         {
+            Batch batch = batches.removeFirst();
+            events.addAll(batch.events);
+            size -= batch.events.size();
+         }
+         drainingThread = Thread.currentThread();
+         // Wakes up the writers blocked by a full queue
+         notifyAll();
+      }
+      long start = System.currentTimeMillis();
+      ExoContainer previousContainer = ExoContainerContext.getCurrentContainerIfPresent();
+      ConversationState previousState = ConversationState.getCurrent();
+      try
+      {
+         ExoContainerContext.setCurrentContainer(context.container);
+         ConversationState.setCurrent(context.state);
+         listener.onEvent(new EntityCollection(events));
+      }
+      catch (RuntimeException e)
+      {
+         LOG.error("The listener " + listener + " failed to process " + events.size() + " events", e);
+      }
+      finally
+      {
+         ExoContainerContext.setCurrentContainer(previousContainer);
+         ConversationState.setCurrent(previousState);
+         synchronized (this)
+         {
+            drainingThread = null;
+            long latency = start - oldest;
+            totalLatency += latency;
+            if (latency > maxLatency)
+            {
+               maxLatency = latency;
+            }
+            deliveries++;
+            deliveredEvents += events.size();
+
+            scheduled = false;
+            if (!batches.isEmpty() || spilledBatches > 0)
+            {
+               schedule();
+            }
+         }
+      }
+   }
+
+   /**
+    * Discards the pending events and releases the spill file, the blocked writers are released.
+    */
+   synchronized void close()
+   {
+      closed = true;
+      batches.clear();
+      size = 0;
+      closeSpill();
+      notifyAll();
+   }
+
+   /**
+    * Writes the batch at the end of the spill file.
+    */
+   private void spill(Batch batch)
+   {
+      try
+      {
+         if (spill == null)
+         {
+            spillFile = PrivilegedFileHelper.createTempFile("jcr-observation", ".spill");
+            PrivilegedFileHelper.deleteOnExit(spillFile);
+            spill = PrivilegedFileHelper.randomAccessFile(spillFile, "rw");
+         }
+         SpilledContext context = spilledContextIds.get(batch.context);
+         if (context == null)
+         {
+            context = new SpilledContext(nextSpilledContextId++, batch.context);
+         }
+         ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+         DataOutputStream out = new DataOutputStream(buffer);
+         out.writeLong(batch.time);
+         out.writeInt(batch.events.size());
+         out.writeInt(context.id);
+         for (Event event : batch.events)
+         {
+            writeEvent(out, event);
+         }
+         out.flush();
+         spill.seek(spillWritePosition);
+         spill.writeInt(buffer.size());
+         spill.write(buffer.toByteArray());
+         spillWritePosition = spill.getFilePointer();
+         spilledBatches++;
+         if (context.batches++ == 0)
+         {
+            spilledContexts.put(context.id, context);
+            spilledContextIds.put(context.context, context);
+         }
+         spilledEvents += batch.events.size();
+         totalSpilledEvents += batch.events.size();
+      }
+      catch (IOException e)
+      {
+         LOG.error("The events of the listener " + listener + " cannot be spilled to disk, they are kept in memory",
+            e);
+         add(batch);
+      }
+      catch (RepositoryException e)
+      {
+         LOG.error("The events of the listener " + listener + " cannot be spilled to disk, they are kept in memory",
+            e);
+         add(batch);
+      }
+   }
+
+   /**
+    * Reads back from the spill file as many batches as the capacity allows, at least one.
+    */
+   private void unspill()
+   {
+      try
+      {
+         while (spilledBatches > 0 && (size == 0 || size + peekSpilledBatchSize() <= capacity))
+         {
+            spill.seek(spillReadPosition);
+            byte[] data = new byte[spill.readInt()];
+            spill.readFully(data);
+            spillReadPosition = spill.getFilePointer();
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            long time = in.readLong();
+            int count = in.readInt();
+            SpilledContext context = spilledContexts.get(in.readInt());
+            List<Event> events = new ArrayList<Event>(count);
+            for (int i = 0; i < count; i++)
+            {
+               events.add(readEvent(in));
+            }
+            spilledBatches--;
+            spilledEvents -= count;
+            if (--context.batches == 0)
+            {
+               spilledContexts.remove(context.id);
+               spilledContextIds.remove(context.context);
+            }
+            add(new Batch(events, time, context.context));
+         }
+         if (spilledBatches == 0)
+         {
+            // Everything has been read back, the file can be reused from the beginning
+            spill.setLength(0);
+            spillReadPosition = 0;
+            spillWritePosition = 0;
+            nextSpilledContextId = 0;
+         }
+      }
+      catch (IOException e)
+      {
+         LOG.error("The spilled events of the listener " + listener + " cannot be read, they are lost", e);
+         droppedEvents += spilledEvents;
+         closeSpill();
+      }
+   }
+
+   /**
+    * Gives the amount of events of the next spilled batch without moving the read position.
+    */
+   private int peekSpilledBatchSize() throws IOException
+   {
+      // length of the record then the time of the batch
+      spill.seek(spillReadPosition + 4 + 8);
+      return spill.readInt();
+   }
+
+   private void closeSpill()
+   {
+      spilledBatches = 0;
+      spilledEvents = 0;
+      spilledContexts.clear();
+      spilledContextIds.clear();
+      nextSpilledContextId = 0;
+      spillReadPosition = 0;
+      spillWritePosition = 0;
+      if (spill != null)
+      {
+         try
+         {
+            spill.close();
+         }
+         catch (IOException e)
+         {
+            LOG.warn("The spill file " + spillFile + " cannot be closed: " + e.getMessage());
+         }
+         if (!PrivilegedFileHelper.delete(spillFile))
+         {
+            LOG.warn("The spill file " + spillFile + " cannot be deleted");
+         }
+         spill = null;
+         spillFile = null;
+      }
+   }
+
+   private static void writeEvent(DataOutputStream out, Event event) throws IOException, RepositoryException
+   {
+      out.writeInt(event.getType());
+      out.writeUTF(event.getPath());
+      writeString(out, event.getUserID());
+      Map<String, String> info = event instanceof EventImpl ? ((EventImpl)event).getInfo() : null;
+      if (info == null)
+      {
+         out.writeInt(-1);
+      }
+      else
+      {
+         out.writeInt(info.size());
+         for (Map.Entry<String, String> entry : info.entrySet())
+         {
+            out.writeUTF(entry.getKey());
+            writeString(out, entry.getValue());
+         }
+      }
+   }
+
+   private static Event readEvent(DataInputStream in) throws IOException
+   {
+      int type = in.readInt();
+      String path = in.readUTF();
+      String userId = readString(in);
+      int infoSize = in.readInt();
+      if (infoSize < 0)
+      {
+         return new EventImpl(type, path, userId);
+      }
+      Map<String, String> info = new HashMap<String, String>();
+      for (int i = 0; i < infoSize; i++)
+      {
+         info.put(in.readUTF(), readString(in));
+      }
+      return new EventImpl(type, path, userId, info);
+   }
+
+   private static void writeString(DataOutputStream out, String value) throws IOException
+   {
+      out.writeBoolean(value != null);
+      if (value != null)
+      {
+         out.writeUTF(value);
+      }
+   }
+
+   private static String readString(DataInputStream in) throws IOException
+   {
+      return in.readBoolean() ? in.readUTF() : null;
+   }
+
+   EventListener getListener()
+   {
+      return listener;
+   }
+
+   /**
+    * @return the amount of events waiting to be delivered
+    */
+   synchronized int getBacklog()
+   {
+      return size + spilledEvents;
+   }
+
+   synchronized int getMaxBacklog()
+   {
+      return maxBacklog;
+   }
+
+   synchronized long getDeliveredEvents()
+   {
+      return deliveredEvents;
+   }
+
+   /**
+    * @return the amount of calls to {@link EventListener#onEvent(javax.jcr.observation.EventIterator)}
+    */
+   synchronized long getDeliveries()
+   {
+      return deliveries;
+   }
+
+   synchronized long getDroppedEvents()
+   {
+      return droppedEvents;
+   }
+
+   synchronized long getSpilledEvents()
+   {
+      return totalSpilledEvents;
+   }
+
+   /**
+    * @return the average time in ms between the queuing of the oldest batch of a delivery and the delivery itself
+    */
+   synchronized long getAverageLatency()
+   {
+      return deliveries == 0 ? 0 : totalLatency / deliveries;
+   }
+
+   synchronized long getMaxLatency()
+   {
+      return maxLatency;
+   }
+}
@@ -18,6 +18,12 @@
  */
 package org.exoplatform.services.jcr.impl.core.observation;
 
+import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.impl.core.LocationFactory;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
 import javax.jcr.RepositoryException;
 
 /**
@@ -30,6 +36,8 @@ import javax.jcr.RepositoryException;
 public class ListenerCriteria
 {
 
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.ListenerCriteria");
+
    private int eventTypes;
 
    private String absPath;
@@ -44,8 +52,39 @@ public class ListenerCriteria
 
    private String sessionId;
 
+   /**
+    * The internal form of the absPath, <code>null</code> if no absPath has been defined or if
+    * it could not be resolved at registration time.
+    */
+   private QPath qPath;
+
+   /**
+    * The internal form of the node type names, an entry is <code>null</code> if the
+    * corresponding name could not be resolved at registration time.
+    */
+   private InternalQName[] nodeTypeQNames;
+
+   /**
+    * Indicates whether the names have been resolved at registration time
+    */
+   private boolean resolved;
+
    public ListenerCriteria(int eventTypes, String absPath, boolean isDeep, String[] identifier, String[] nodeTypeName,
       boolean noLocal, String sessionId) throws RepositoryException
+   {
+      this(eventTypes, absPath, isDeep, identifier, nodeTypeName, noLocal, sessionId, null);
+   }
+
+   /**
+    * Creates the criteria and resolves once for all the absPath and the node type names
+    * with the given {@link LocationFactory} in order to avoid parsing them for each
+    * item to dispatch.
+    * 
+    * @param locationFactory the location factory of the session that registers the listener,
+    * if <code>null</code> the names will be resolved at dispatch time
+    */
+   public ListenerCriteria(int eventTypes, String absPath, boolean isDeep, String[] identifier, String[] nodeTypeName,
+      boolean noLocal, String sessionId, LocationFactory locationFactory) throws RepositoryException
    {
       this.eventTypes = eventTypes;
       this.absPath = absPath;
@@ -54,6 +93,42 @@ public class ListenerCriteria
       this.nodeTypeName = nodeTypeName;
       this.noLocal = noLocal;
       this.sessionId = sessionId;
+      if (locationFactory != null)
+      {
+         this.resolved = true;
+         if (absPath != null)
+         {
+            try
+            {
+               this.qPath = locationFactory.parseAbsPath(absPath).getInternalPath();
+            }
+            catch (RepositoryException e)
+            {
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.debug("The absPath '" + absPath + "' could not be resolved: " + e.getMessage());
+               }
+            }
+         }
+         if (nodeTypeName != null)
+         {
+            this.nodeTypeQNames = new InternalQName[nodeTypeName.length];
+            for (int i = 0; i < nodeTypeName.length; i++)
+            {
+               try
+               {
+                  nodeTypeQNames[i] = locationFactory.parseJCRName(nodeTypeName[i]).getInternalName();
+               }
+               catch (RepositoryException e)
+               {
+                  if (LOG.isDebugEnabled())
+                  {
+                     LOG.debug("The nodetype '" + nodeTypeName[i] + "' could not be resolved: " + e.getMessage());
+                  }
+               }
+            }
+         }
+      }
    }
 
    public int getEventTypes()
@@ -95,4 +170,29 @@ public class ListenerCriteria
       return this.sessionId;
    }
 
+   /**
+    * @return <code>true</code> if the absPath and the node type names have been resolved at
+    * registration time, <code>false</code> if they still need to be resolved at dispatch time
+    */
+   boolean isResolved()
+   {
+      return resolved;
+   }
+
+   /**
+    * @return the internal form of the absPath or <code>null</code> if it has not been resolved
+    */
+   QPath getQPath()
+   {
+      return qPath;
+   }
+
+   /**
+    * @return the internal form of the node type names or <code>null</code> if they have not been resolved
+    */
+   InternalQName[] getNodeTypeQNames()
+   {
+      return nodeTypeQNames;
+   }
+
 }
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.observation;
+
+import org.exoplatform.services.jcr.datamodel.ItemData;
+import org.exoplatform.services.jcr.datamodel.QPathEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.jcr.observation.EventListener;
+
+/**
+ * Immutable index of the registered {@link EventListener} allowing to find the listeners
+ * interested in a given item without evaluating the criteria of all the listeners.
+ * Each listener is indexed only once according to its most selective criteria:
+ * <ul>
+ * <li>the listeners with an absPath are stored into a trie of {@link QPathEntry} in which
+ * each node keeps the deep and the shallow listeners registered at this location</li>
+ * <li>the listeners with only identifiers are stored into a map whose key is the identifier</li>
+ * <li>the other listeners are always candidates</li>
+ * </ul>
+ * The event types are checked thanks to a bitmask and the remaining criteria of the candidates
+ * (the node types and noLocal) are left to the caller as they depend on the changes log.
+ *
+ * @version $Id$
+ */
+class ListenerDispatchIndex
+{
+   /**
+    * An indexed listener with its criteria
+    */
+   static final class Entry
+   {
+      /**
+       * The position of the listener into the index
+       */
+      final int ordinal;
+
+      final EventListener listener;
+
+      final ListenerCriteria criteria;
+
+      /**
+       * The identifiers of the criteria or <code>null</code> if any identifier is accepted
+       */
+      private final Set<String> identifiers;
+
+      Entry(int ordinal, EventListener listener, ListenerCriteria criteria)
+      {
+         this.ordinal = ordinal;
+         this.listener = listener;
+         this.criteria = criteria;
+         this.identifiers =
+            criteria.getIdentifier() == null ? null : new HashSet<String>(Arrays.asList(criteria.getIdentifier()));
+      }
+
+      private boolean isTypeMatch(int eventType)
+      {
+         return (criteria.getEventTypes() & eventType) > 0;
+      }
+
+      private boolean isIdentifierMatch(String identifier)
+      {
+         return identifiers == null || identifiers.contains(identifier);
+      }
+   }
+
+   /**
+    * A node of the path trie
+    */
+   private static final class PathNode
+   {
+      private final Map<QPathEntry, PathNode> children = new HashMap<QPathEntry, PathNode>();
+
+      /**
+       * Listeners interested in the whole subtree of this location
+       */
+      private final List<Entry> deep = new ArrayList<Entry>();
+
+      /**
+       * Listeners interested only in the direct children of this location
+       */
+      private final List<Entry> shallow = new ArrayList<Entry>();
+
+      private PathNode getOrCreateChild(QPathEntry name)
+      {
+         PathNode child = children.get(name);
+         if (child == null)
+         {
+            child = new PathNode();
+            children.put(name, child);
+         }
+         return child;
+      }
+   }
+
+   private final Entry[] entries;
+
+   private final PathNode root = new PathNode();
+
+   private final Map<String, List<Entry>> byIdentifier = new HashMap<String, List<Entry>>();
+
+   /**
+    * Listeners without path nor identifier
+    */
+   private final List<Entry> anyItem = new ArrayList<Entry>();
+
+   /**
+    * Listeners whose absPath could not be resolved at registration time and must be
+    * checked by the caller
+    */
+   private final List<Entry> unresolved = new ArrayList<Entry>();
+
+   /**
+    * The union of the event types of all the listeners
+    */
+   private final int eventTypes;
+
+   ListenerDispatchIndex(Map<EventListener, ListenerCriteria> listeners)
+   {
+      List<Entry> all = new ArrayList<Entry>(listeners.size());
+      int types = 0;
+      for (Map.Entry<EventListener, ListenerCriteria> e : listeners.entrySet())
+      {
+         ListenerCriteria criteria = e.getValue();
+         Entry entry = new Entry(all.size(), e.getKey(), criteria);
+         if (criteria.getAbsPath() != null && criteria.getQPath() == null)
+         {
+            if (criteria.isResolved())
+            {
+               // The path is invalid so the listener can never match
+               continue;
+            }
+            unresolved.add(entry);
+         }
+         else if (criteria.getQPath() != null)
+         {
+            PathNode node = root;
+            for (QPathEntry name : criteria.getQPath().getEntries())
+            {
+               node = node.getOrCreateChild(name);
+            }
+            (criteria.isDeep() ? node.deep : node.shallow).add(entry);
+         }
+         else if (criteria.getIdentifier() != null)
+         {
+            for (String identifier : criteria.getIdentifier())
+            {
+               List<Entry> list = byIdentifier.get(identifier);
+               if (list == null)
+               {
+                  list = new ArrayList<Entry>();
+                  byIdentifier.put(identifier, list);
+               }
+               if (!list.contains(entry))
+               {
+                  list.add(entry);
+               }
+            }
+         }
+         else
+         {
+            anyItem.add(entry);
+         }
+         all.add(entry);
+         types |= criteria.getEventTypes();
+      }
+      this.entries = all.toArray(new Entry[all.size()]);
+      this.eventTypes = types;
+   }
+
+   /**
+    * @return the amount of indexed listeners
+    */
+   int size()
+   {
+      return entries.length;
+   }
+
+   /**
+    * @return the indexed listener corresponding to the given ordinal
+    */
+   Entry getEntry(int ordinal)
+   {
+      return entries[ordinal];
+   }
+
+   /**
+    * @return <code>true</code> if at least one listener is interested in the given event type
+    */
+   boolean accept(int eventType)
+   {
+      return (eventTypes & eventType) > 0;
+   }
+
+   /**
+    * @return the listeners whose absPath must still be checked by the caller, they are not
+    * part of the result of {@link #collect(ItemData, int, List)}. The returned list must not be modified.
+    */
+   List<Entry> getUnresolved()
+   {
+      return unresolved;
+   }
+
+   /**
+    * Adds to the given list the listeners whose event types, absPath and identifiers match
+    * with the given item.
+    * 
+    * @param item the changed item
+    * @param eventType the type of event triggered by the change
+    * @param result the list into which the matching listeners are added
+    */
+   void collect(ItemData item, int eventType, List<Entry> result)
+   {
+      // associated parent is node itself for node and parent for property
+      String identifier = item.isNode() ? item.getIdentifier() : item.getParentIdentifier();
+
+      // 8.3.3 Only events whose associated parent node is at absPath (or
+      // within its subtree, if isDeep is true) will be received.
+      QPathEntry[] names = item.getQPath().getEntries();
+      PathNode node = root;
+      for (int i = 0; node != null && i < names.length; i++)
+      {
+         // the listeners of the current node are registered on the first i entries of the item path
+         addMatches(node.deep, identifier, eventType, result);
+         if (i == names.length - 1)
+         {
+            addMatches(node.shallow, identifier, eventType, result);
+         }
+         node = node.children.get(names[i]);
+      }
+
+      List<Entry> list = byIdentifier.get(identifier);
+      if (list != null)
+      {
+         addMatches(list, identifier, eventType, result);
+      }
+      addMatches(anyItem, identifier, eventType, result);
+   }
+
+   private void addMatches(List<Entry> candidates, String identifier, int eventType, List<Entry> result)
+   {
+      for (int i = 0, length = candidates.size(); i < length; i++)
+      {
+         Entry entry = candidates.get(i);
+         if (entry.isTypeMatch(eventType) && entry.isIdentifierMatch(identifier))
+         {
+            result.add(entry);
+         }
+      }
+   }
+}
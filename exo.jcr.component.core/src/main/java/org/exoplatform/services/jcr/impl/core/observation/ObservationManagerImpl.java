@@ -20,6 +20,7 @@ package org.exoplatform.services.jcr.impl.core.observation;
 
 import org.exoplatform.services.jcr.core.ExtendedSession;
 import org.exoplatform.services.jcr.core.SessionLifecycleListener;
+import org.exoplatform.services.jcr.impl.core.LocationFactory;
 import org.exoplatform.services.jcr.impl.core.SessionImpl;
 import org.exoplatform.services.jcr.impl.core.SessionRegistry;
 import org.exoplatform.services.jcr.impl.util.EntityCollection;
@@ -48,15 +49,27 @@ public class ObservationManagerImpl implements ObservationManager, SessionLifecy
 
    private ObservationManagerRegistry registry;
 
+   private final LocationFactory locationFactory;
+
    /**
     * Protected constructor for subclasses
     * 
     * @param session
     */
    ObservationManagerImpl(ObservationManagerRegistry registry, String sessionId)
+   {
+      this(registry, sessionId, null);
+   }
+
+   /**
+    * @param locationFactory the location factory of the session used to resolve the criteria
+    * of the listeners
+    */
+   ObservationManagerImpl(ObservationManagerRegistry registry, String sessionId, LocationFactory locationFactory)
    {
       this.sessionId = sessionId;
       this.registry = registry;
+      this.locationFactory = locationFactory;
    }
 
    /**
@@ -67,7 +80,7 @@ public class ObservationManagerImpl implements ObservationManager, SessionLifecy
    {
 
       registry.addEventListener(listener, new ListenerCriteria(eventTypes, absPath, isDeep, uuid, nodeTypeName,
-         noLocal, sessionId));
+         noLocal, sessionId, locationFactory));
 
       sessionListeners.add(listener);
    }
@@ -18,18 +18,30 @@
  */
 package org.exoplatform.services.jcr.impl.core.observation;
 
+import org.exoplatform.management.annotations.Managed;
+import org.exoplatform.management.annotations.ManagedDescription;
+import org.exoplatform.management.jmx.annotations.NameTemplate;
+import org.exoplatform.management.jmx.annotations.Property;
+import org.exoplatform.services.jcr.config.ObservationManagerEntry;
+import org.exoplatform.services.jcr.config.WorkspaceEntry;
 import org.exoplatform.services.jcr.impl.core.SessionImpl;
 import org.exoplatform.services.jcr.impl.core.SessionRegistry;
 import org.exoplatform.services.jcr.impl.dataflow.persistent.WorkspacePersistentDataManager;
 import org.exoplatform.services.jcr.impl.util.EntityCollection;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.picocontainer.Startable;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import javax.jcr.observation.Event;
 import javax.jcr.observation.EventListener;
 import javax.jcr.observation.EventListenerIterator;
 
@@ -39,40 +51,189 @@ import javax.jcr.observation.EventListenerIterator;
  * @author <a href="mailto:gennady.azarenkov@exoplatform.com">Gennady Azarenkov</a>
  * @version $Id: ObservationManagerRegistry.java 11907 2008-03-13 15:36:21Z ksm $
  */
-
-public class ObservationManagerRegistry
+@Managed
+@NameTemplate(@Property(key = "service", value = "ObservationManager"))
+public class ObservationManagerRegistry implements Startable
 {
 
    protected static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.ObservationManagerRegistry");
 
+   /**
+    * The name of the parameter of the observation manager that enables the asynchronous delivery of the events,
+    * disabled by default
+    */
+   public static final String PARAM_ASYNC = "async";
+
+   /**
+    * The name of the parameter of the observation manager that defines the maximum amount of events queued
+    * per listener
+    */
+   public static final String PARAM_QUEUE_SIZE = "queue-size";
+
+   /**
+    * The name of the parameter of the observation manager that defines what happens when the queue of a listener
+    * is full, the possible values are <code>block</code>, <code>drop-oldest</code> and <code>spill</code>
+    */
+   public static final String PARAM_OVERFLOW_POLICY = "overflow-policy";
+
+   /**
+    * The name of the parameter of the observation manager that defines the amount of threads used to deliver
+    * the events
+    */
+   public static final String PARAM_THREADS = "threads";
+
+   private static final int DEFAULT_QUEUE_SIZE = 10000;
+
    protected Map<EventListener, ListenerCriteria> listenersMap;
 
    protected ActionLauncher launcher;
 
    private final SessionRegistry sessionRegistry;
 
+   /**
+    * The dispatch index of the registered listeners, rebuilt lazily after any change
+    */
+   private volatile ListenerDispatchIndex dispatchIndex;
+
+   /**
+    * The queues of the listeners when the events are delivered asynchronously
+    */
+   private final Map<EventListener, EventListenerQueue> queues =
+      new ConcurrentHashMap<EventListener, EventListenerQueue>();
+
+   /**
+    * The executor delivering the events, <code>null</code> if the events are delivered synchronously
+    */
+   private final ExecutorService executor;
+
+   private final int queueSize;
+
+   private final EventListenerQueue.OverflowPolicy overflowPolicy;
+
    public ObservationManagerRegistry(WorkspacePersistentDataManager workspaceDataManager,
       SessionRegistry sessionRegistry)
    {
+      this(null, workspaceDataManager, sessionRegistry);
+   }
 
-      this.listenersMap = new HashMap<EventListener, ListenerCriteria>();
+   public ObservationManagerRegistry(WorkspaceEntry wsConfig, WorkspacePersistentDataManager workspaceDataManager,
+      SessionRegistry sessionRegistry)
+   {
+
+      this.listenersMap = new ConcurrentHashMap<EventListener, ListenerCriteria>();
       this.launcher = new ActionLauncher(this, workspaceDataManager, sessionRegistry);
       this.sessionRegistry=sessionRegistry;
+
+      ObservationManagerEntry config = wsConfig == null ? null : wsConfig.getObservationManager();
+      if (config != null && config.getParameterBoolean(PARAM_ASYNC, false))
+      {
+         this.queueSize = getPositiveInteger(config, PARAM_QUEUE_SIZE, DEFAULT_QUEUE_SIZE);
+         EventListenerQueue.OverflowPolicy policy = EventListenerQueue.OverflowPolicy.BLOCK;
+         String value = config.getParameterValue(PARAM_OVERFLOW_POLICY, null);
+         if (value != null)
+         {
+            try
+            {
+               policy = EventListenerQueue.OverflowPolicy.parse(value);
+            }
+            catch (IllegalArgumentException e)
+            {
+               LOG.warn("The value of the parameter '" + PARAM_OVERFLOW_POLICY + "' of the workspace "
+                  + wsConfig.getName() + " must be block, drop-oldest or spill, the default value will be used.");
+            }
+         }
+         this.overflowPolicy = policy;
+
+         final String threadName = "JCR observation " + wsConfig.getUniqueName() + " thread-";
+         this.executor =
+            Executors.newFixedThreadPool(
+               getPositiveInteger(config, PARAM_THREADS, Runtime.getRuntime().availableProcessors()),
+               new ThreadFactory()
+               {
+                  private final AtomicInteger count = new AtomicInteger(1);
+
+                  public Thread newThread(Runnable r)
+                  {
+                     Thread t = new Thread(r, threadName + count.getAndIncrement());
+                     t.setDaemon(true);
+                     return t;
+                  }
+               });
+      }
+      else
+      {
+         this.queueSize = 0;
+         this.overflowPolicy = null;
+         this.executor = null;
+      }
+   }
+
+   private static int getPositiveInteger(ObservationManagerEntry config, String name, int defaultValue)
+   {
+      if (config.getParameterValue(name, null) != null)
+      {
+         Integer result = config.getParameterInteger(name, null);
+         if (result != null && result > 0)
+         {
+            return result;
+         }
+         LOG.warn("The value of the parameter '" + name
+            + "' of the observation manager must be a positive integer, the default value will be used.");
+      }
+      return defaultValue;
    }
 
    public ObservationManagerImpl createObservationManager(SessionImpl session)
    {
-      return new ObservationManagerImpl(this, session.getId());
+      return new ObservationManagerImpl(this, session.getId(), session.getLocationFactory());
    }
 
-   public void addEventListener(EventListener listener, ListenerCriteria filter)
+   public synchronized void addEventListener(EventListener listener, ListenerCriteria filter)
    {
       listenersMap.put(listener, filter);
+      if (executor != null && !queues.containsKey(listener))
+      {
+         queues.put(listener, new EventListenerQueue(listener, executor, queueSize, overflowPolicy));
+      }
+      dispatchIndex = null;
    }
 
-   public void removeEventListener(EventListener listener)
+   public synchronized void removeEventListener(EventListener listener)
    {
       listenersMap.remove(listener);
+      closeQueue(listener);
+      dispatchIndex = null;
+   }
+
+   private void closeQueue(EventListener listener)
+   {
+      EventListenerQueue queue = queues.remove(listener);
+      if (queue != null)
+      {
+         queue.close();
+      }
+   }
+
+   /**
+    * Delivers the events to the listener, directly or through the queue of the listener if the
+    * asynchronous delivery is enabled.
+    */
+   void dispatch(EventListener listener, EntityCollection events)
+   {
+      EventListenerQueue queue = queues.get(listener);
+      if (queue == null)
+      {
+         listener.onEvent(events);
+      }
+      else
+      {
+         List<Event> list = new ArrayList<Event>((int)events.getSize());
+         while (events.hasNext())
+         {
+            list.add(events.nextEvent());
+         }
+         queue.offer(list);
+      }
    }
 
    public EventListenerIterator getEventListeners()
@@ -85,12 +246,33 @@ public class ObservationManagerRegistry
       return listenersMap.get(listener);
    }
 
+   /**
+    * Gives the dispatch index of the listeners currently registered, the index is built
+    * on first access after a registration change.
+    */
+   ListenerDispatchIndex getDispatchIndex()
+   {
+      ListenerDispatchIndex index = dispatchIndex;
+      if (index == null)
+      {
+         synchronized (this)
+         {
+            index = dispatchIndex;
+            if (index == null)
+            {
+               dispatchIndex = index = new ListenerDispatchIndex(listenersMap);
+            }
+         }
+      }
+      return index;
+   }
+
    SessionRegistry getSessionRegistry()
    {
        return sessionRegistry;
    }
 
-   public void removeSessionEventListeners(SessionImpl session)
+   public synchronized void removeSessionEventListeners(SessionImpl session)
    {
       // Iterating without ConcurrentModificationException
       List<EventListener> eventsForRemove = new ArrayList<EventListener>();
@@ -106,7 +288,85 @@ public class ObservationManagerRegistry
       for (EventListener listener : eventsForRemove)
       {
          listenersMap.remove(listener);
+         closeQueue(listener);
+      }
+      if (!eventsForRemove.isEmpty())
+      {
+         dispatchIndex = null;
       }
    }
 
+   /**
+    * @return <code>true</code> if the events are delivered asynchronously
+    */
+   @Managed
+   @ManagedDescription("Indicates whether the events are delivered asynchronously")
+   public boolean isAsyncDelivery()
+   {
+      return executor != null;
+   }
+
+   @Managed
+   @ManagedDescription("The total amount of events waiting to be delivered")
+   public long getBacklog()
+   {
+      long backlog = 0;
+      for (EventListenerQueue queue : queues.values())
+      {
+         backlog += queue.getBacklog();
+      }
+      return backlog;
+   }
+
+   @Managed
+   @ManagedDescription("The total amount of events dropped because of full queues")
+   public long getDroppedEvents()
+   {
+      long dropped = 0;
+      for (EventListenerQueue queue : queues.values())
+      {
+         dropped += queue.getDroppedEvents();
+      }
+      return dropped;
+   }
+
+   @Managed
+   @ManagedDescription("The delivery statistics of each listener")
+   public String getListenersStatistics()
+   {
+      StringBuilder result = new StringBuilder();
+      for (EventListenerQueue queue : queues.values())
+      {
+         result.append(queue.getListener()).append(": backlog=").append(queue.getBacklog()).append(", max backlog=")
+            .append(queue.getMaxBacklog()).append(", delivered=").append(queue.getDeliveredEvents())
+            .append(", deliveries=").append(queue.getDeliveries()).append(", dropped=")
+            .append(queue.getDroppedEvents()).append(", spilled=").append(queue.getSpilledEvents())
+            .append(", avg latency=").append(queue.getAverageLatency()).append(" ms, max latency=")
+            .append(queue.getMaxLatency()).append(" ms\n");
+      }
+      return result.toString();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void start()
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void stop()
+   {
+      if (executor != null)
+      {
+         executor.shutdown();
+         for (EventListenerQueue queue : queues.values())
+         {
+            queue.close();
+         }
+         queues.clear();
+      }
+   }
 }
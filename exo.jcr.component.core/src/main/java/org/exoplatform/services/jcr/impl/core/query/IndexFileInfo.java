@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query;
+
+import org.exoplatform.services.jcr.impl.core.query.lucene.OfflinePersistentIndex;
+import org.exoplatform.services.jcr.impl.util.io.DirectoryHelper;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The relative path, the length and the checksum of a file of the index directory. They allow
+ * a cluster node to find the files of its index that differ from the ones of the coordinator.
+ *
+ * @version $Id$
+ */
+public class IndexFileInfo implements Serializable
+{
+   private static final long serialVersionUID = 4519260412317432271L;
+
+   /**
+    * The relative path of the file, with '/' as separator.
+    */
+   private final String path;
+
+   /**
+    * The length of the file.
+    */
+   private final long length;
+
+   /**
+    * The CRC32 of the content of the file.
+    */
+   private final long checksum;
+
+   /**
+    * IndexFileInfo constructor.
+    */
+   public IndexFileInfo(String path, long length, long checksum)
+   {
+      this.path = path;
+      this.length = length;
+      this.checksum = checksum;
+   }
+
+   /**
+    * @return the relative path of the file, with '/' as separator
+    */
+   public String getPath()
+   {
+      return path;
+   }
+
+   /**
+    * @return the length of the file
+    */
+   public long getLength()
+   {
+      return length;
+   }
+
+   /**
+    * @return the CRC32 of the content of the file
+    */
+   public long getChecksum()
+   {
+      return checksum;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean equals(Object obj)
+   {
+      if (this == obj)
+      {
+         return true;
+      }
+      if (!(obj instanceof IndexFileInfo))
+      {
+         return false;
+      }
+      IndexFileInfo info = (IndexFileInfo)obj;
+      return path.equals(info.path) && length == info.length && checksum == info.checksum;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int hashCode()
+   {
+      return path.hashCode() ^ (int)(checksum ^ (checksum >>> 32));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      return path + " (" + length + " bytes, CRC32 " + Long.toHexString(checksum) + ")";
+   }
+
+   /**
+    * Lists the files of the index directory, except the ones of the offline index.
+    *
+    * @param indexDirectory
+    *          the index directory
+    * @return the files indexed by their relative path, with '/' as separator
+    * @throws IOException
+    *          if the directory can't be listed
+    */
+   public static Map<String, File> listFiles(File indexDirectory) throws IOException
+   {
+      int indexDirLen = indexDirectory.getAbsolutePath().length() + 1;
+      Map<String, File> result = new LinkedHashMap<String, File>();
+      for (File file : DirectoryHelper.listFiles(indexDirectory))
+      {
+         // the files of the offline index are not part of the index
+         if (!file.isDirectory() && !file.getParent().endsWith(OfflinePersistentIndex.NAME))
+         {
+            result.put(file.getAbsolutePath().substring(indexDirLen).replace(File.separatorChar, '/'), file);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Gives the path, the length and the checksum of all the files of the index directory, except
+    * the ones of the offline index. The segment files of Lucene are never modified once written, so
+    * their checksums are kept in the given cache and are only computed again if their length or
+    * their last modification date change.
+    *
+    * @param indexDirectory
+    *          the index directory
+    * @param cache
+    *          the checksums computed by a previous call, the caller must synchronize on it
+    * @return the description of the files of the index
+    * @throws IOException
+    *          if a file can't be read
+    */
+   public static ArrayList<IndexFileInfo> list(File indexDirectory, Map<String, IndexFileInfo> cache)
+      throws IOException
+   {
+      ArrayList<IndexFileInfo> result = new ArrayList<IndexFileInfo>();
+      Map<String, IndexFileInfo> computed = new HashMap<String, IndexFileInfo>();
+      for (Map.Entry<String, File> entry : listFiles(indexDirectory).entrySet())
+      {
+         File file = entry.getValue();
+         long length = file.length();
+         String key = entry.getKey() + ':' + length + ':' + file.lastModified();
+
+         IndexFileInfo info = cache.get(key);
+         if (info == null)
+         {
+            info = new IndexFileInfo(entry.getKey(), length, checksum(file));
+         }
+         computed.put(key, info);
+         result.add(info);
+      }
+
+      // forget the files that don't exist anymore
+      cache.clear();
+      cache.putAll(computed);
+      return result;
+   }
+
+   /**
+    * Computes the CRC32 of the content of a file.
+    *
+    * @param file
+    *          the file
+    * @return the CRC32 of the file
+    * @throws IOException
+    *          if the file can't be read
+    */
+   public static long checksum(File file) throws IOException
+   {
+      CRC32 crc = new CRC32();
+      InputStream in = new FileInputStream(file);
+      try
+      {
+         byte[] buffer = new byte[64 * 1024];
+         int len;
+         while ((len = in.read(buffer)) != -1)
+         {
+            crc.update(buffer, 0, len);
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+      return crc.getValue();
+   }
+}
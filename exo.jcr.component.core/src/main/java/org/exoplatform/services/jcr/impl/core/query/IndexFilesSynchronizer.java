@@ -0,0 +1,338 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query;
+
+import org.exoplatform.services.jcr.impl.util.io.DirectoryHelper;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * Makes the files of a local index directory identical to the ones of the coordinator. Only the
+ * files that are missing or whose length or checksum differ are retrieved, by chunks of
+ * {@link #CHUNK_SIZE} bytes read concurrently, the files that the coordinator doesn't have are
+ * removed and the other ones are kept as they are. So a node that has only been stopped for a
+ * while mainly retrieves the segments created since then.
+ *
+ * @version $Id$
+ */
+public class IndexFilesSynchronizer
+{
+   /**
+    * Logger instance for this class.
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.IndexFilesSynchronizer");
+
+   /**
+    * The size of the chunks of the files to retrieve.
+    */
+   public static final int CHUNK_SIZE = IndexRecoveryImpl.BUFFER_SIZE;
+
+   /**
+    * The suffix of the files being retrieved.
+    */
+   private static final String TEMP_SUFFIX = ".recovery";
+
+   /**
+    * The index recovery giving access to the index of the coordinator.
+    */
+   private final IndexRecovery indexRecovery;
+
+   /**
+    * The local index directory.
+    */
+   private final File indexDirectory;
+
+   /**
+    * The amount of threads retrieving the chunks.
+    */
+   private final int threads;
+
+   /**
+    * IndexFilesSynchronizer constructor.
+    *
+    * @param indexRecovery
+    *          the index recovery giving access to the index of the coordinator
+    * @param indexDirectory
+    *          the local index directory
+    * @param threads
+    *          the amount of threads retrieving the chunks
+    */
+   public IndexFilesSynchronizer(IndexRecovery indexRecovery, File indexDirectory, int threads)
+   {
+      this.indexRecovery = indexRecovery;
+      this.indexDirectory = indexDirectory;
+      this.threads = Math.max(1, threads);
+   }
+
+   /**
+    * Synchronizes the local index directory with the index of the coordinator. The index of the
+    * coordinator must not change meanwhile.
+    *
+    * @return the amount of bytes retrieved from the coordinator
+    * @throws RepositoryException
+    *          if the index of the coordinator can't be read
+    * @throws IOException
+    *          if the local index directory can't be updated
+    */
+   public long synchronize() throws RepositoryException, IOException
+   {
+      long time = System.currentTimeMillis();
+      List<IndexFileInfo> remoteFiles = indexRecovery.getIndexFiles();
+
+      if (!indexDirectory.exists() && !indexDirectory.mkdirs())
+      {
+         throw new IOException("Can't create the directory " + indexDirectory.getAbsolutePath());
+      }
+      Map<String, File> localFiles = IndexFileInfo.listFiles(indexDirectory);
+      removeTempFiles(localFiles);
+
+      List<IndexFileInfo> changedFiles = new ArrayList<IndexFileInfo>();
+      long size = 0;
+      for (IndexFileInfo remoteFile : remoteFiles)
+      {
+         File localFile = localFiles.remove(remoteFile.getPath());
+         // the checksum is only computed when the lengths are the same
+         if (localFile == null || localFile.length() != remoteFile.getLength()
+            || IndexFileInfo.checksum(localFile) != remoteFile.getChecksum())
+         {
+            changedFiles.add(remoteFile);
+            size += remoteFile.getLength();
+         }
+      }
+
+      try
+      {
+         retrieve(changedFiles);
+
+         for (IndexFileInfo changedFile : changedFiles)
+         {
+            File tempFile = new File(indexDirectory, changedFile.getPath() + TEMP_SUFFIX);
+            if (IndexFileInfo.checksum(tempFile) != changedFile.getChecksum())
+            {
+               throw new IOException("The file " + changedFile.getPath()
+                  + " has been modified on the coordinator while being retrieved");
+            }
+         }
+      }
+      catch (IOException e)
+      {
+         removeTempFiles(changedFiles);
+         throw e;
+      }
+      catch (RepositoryException e)
+      {
+         removeTempFiles(changedFiles);
+         throw e;
+      }
+
+      for (IndexFileInfo changedFile : changedFiles)
+      {
+         DirectoryHelper.deleteDstAndRename(new File(indexDirectory, changedFile.getPath() + TEMP_SUFFIX), new File(
+            indexDirectory, changedFile.getPath()));
+      }
+
+      // the remaining local files don't exist on the coordinator
+      for (File obsoleteFile : localFiles.values())
+      {
+         if (!obsoleteFile.delete())
+         {
+            throw new IOException("Can't remove the file " + obsoleteFile.getAbsolutePath());
+         }
+         File parent = obsoleteFile.getParentFile();
+         String[] children = parent.list();
+         if (!parent.equals(indexDirectory) && children != null && children.length == 0)
+         {
+            parent.delete();
+         }
+      }
+
+      LOG.info("Index synchronized with the coordinator in " + (System.currentTimeMillis() - time) + " ms: "
+         + changedFiles.size() + " file(s) retrieved (" + size + " bytes), "
+         + (remoteFiles.size() - changedFiles.size()) + " file(s) kept, " + localFiles.size() + " file(s) removed");
+      return size;
+   }
+
+   /**
+    * Retrieves the given files from the coordinator into temporary files.
+    */
+   private void retrieve(List<IndexFileInfo> files) throws RepositoryException, IOException
+   {
+      if (files.isEmpty())
+      {
+         return;
+      }
+
+      List<Callable<Object>> chunks = new ArrayList<Callable<Object>>();
+      for (IndexFileInfo file : files)
+      {
+         File tempFile = new File(indexDirectory, file.getPath() + TEMP_SUFFIX);
+         File parent = tempFile.getParentFile();
+         if (!parent.exists() && !parent.mkdirs())
+         {
+            throw new IOException("Can't create the directory " + parent.getAbsolutePath());
+         }
+         RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+         try
+         {
+            raf.setLength(file.getLength());
+         }
+         finally
+         {
+            raf.close();
+         }
+
+         for (long offset = 0; offset < file.getLength(); offset += CHUNK_SIZE)
+         {
+            chunks.add(new ChunkRetrieval(file.getPath(), tempFile, offset, (int)Math.min(CHUNK_SIZE,
+               file.getLength() - offset)));
+         }
+      }
+
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, Math.max(1, chunks.size())));
+      try
+      {
+         List<Future<Object>> futures = new ArrayList<Future<Object>>();
+         for (Callable<Object> chunk : chunks)
+         {
+            futures.add(executor.submit(chunk));
+         }
+         for (Future<Object> future : futures)
+         {
+            future.get();
+         }
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         throw new IOException("The retrieval of the index has been interrupted", e);
+      }
+      catch (ExecutionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof RepositoryException)
+         {
+            throw (RepositoryException)cause;
+         }
+         else if (cause instanceof IOException)
+         {
+            throw (IOException)cause;
+         }
+         throw new RepositoryException(cause);
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   /**
+    * Removes the temporary files left by a previous synchronization that has been interrupted.
+    */
+   private void removeTempFiles(Map<String, File> files) throws IOException
+   {
+      for (Iterator<Map.Entry<String, File>> it = files.entrySet().iterator(); it.hasNext();)
+      {
+         File file = it.next().getValue();
+         if (file.getName().endsWith(TEMP_SUFFIX))
+         {
+            if (!file.delete())
+            {
+               throw new IOException("Can't remove the file " + file.getAbsolutePath());
+            }
+            it.remove();
+         }
+      }
+   }
+
+   /**
+    * Removes the temporary files of an aborted synchronization.
+    */
+   private void removeTempFiles(List<IndexFileInfo> files)
+   {
+      for (IndexFileInfo file : files)
+      {
+         File tempFile = new File(indexDirectory, file.getPath() + TEMP_SUFFIX);
+         if (tempFile.exists() && !tempFile.delete())
+         {
+            LOG.warn("Can't remove the file " + tempFile.getAbsolutePath());
+         }
+      }
+   }
+
+   /**
+    * Retrieves a chunk of a file from the coordinator and writes it at its place in the local file.
+    */
+   private class ChunkRetrieval implements Callable<Object>
+   {
+      private final String path;
+
+      private final File target;
+
+      private final long offset;
+
+      private final int length;
+
+      ChunkRetrieval(String path, File target, long offset, int length)
+      {
+         this.path = path;
+         this.target = target;
+         this.offset = offset;
+         this.length = length;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public Object call() throws Exception
+      {
+         byte[] data = indexRecovery.getIndexFileChunk(path, offset, length);
+         if (data.length != length)
+         {
+            throw new IOException("The file " + path + " has been modified on the coordinator while being retrieved");
+         }
+
+         RandomAccessFile raf = new RandomAccessFile(target, "rw");
+         try
+         {
+            raf.seek(offset);
+            raf.write(data);
+         }
+         finally
+         {
+            raf.close();
+         }
+         return null;
+      }
+   }
+}
@@ -66,6 +66,30 @@ public interface IndexRecovery
     *          if any exception occurred
     */
    public InputStream getIndexFile(String filePath) throws RepositoryException;
+
+   /**
+    * Get the relative path, the length and the checksum of all files from index directory.
+    *
+    * @return List
+    * @throws RepositoryException
+    *          if any exception occurred
+    */
+   public List<IndexFileInfo> getIndexFiles() throws RepositoryException;
+
+   /**
+    * Get a part of an index file.
+    *
+    * @param filePath
+    *         String, relative file path
+    * @param offset
+    *         the position of the first byte to read
+    * @param length
+    *         the amount of bytes to read
+    * @return the bytes read, less than <code>length</code> if the end of the file is reached
+    * @throws RepositoryException
+    *          if any exception occurred
+    */
+   public byte[] getIndexFileChunk(String filePath, long offset, int length) throws RepositoryException;
    
    /**
     * Check if index is ready and can be retrieved.
@@ -28,6 +28,7 @@ import org.exoplatform.services.rpc.RemoteCommand;
 import org.exoplatform.services.rpc.TopologyChangeEvent;
 import org.exoplatform.services.rpc.TopologyChangeListener;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
@@ -35,7 +36,12 @@ import java.io.RandomAccessFile;
 import java.io.Serializable;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import javax.jcr.RepositoryException;
 
@@ -75,6 +81,21 @@ public class IndexRecoveryImpl implements IndexRecovery, TopologyChangeListener
     */
    private RemoteCommand getIndexFile;
 
+   /**
+    * Remote command responsible for getting the path, the length and the checksum of all files from index directory.
+    */
+   private RemoteCommand getIndexFiles;
+
+   /**
+    * Remote command responsible for getting a compressed part of target file.
+    */
+   private RemoteCommand getIndexFileChunk;
+
+   /**
+    * The checksums of the index files already computed.
+    */
+   private final Map<String, IndexFileInfo> checksums = new HashMap<String, IndexFileInfo>();
+
    /**
     * Remote command to switch index between RO/RW state.
     */
@@ -209,6 +230,68 @@ public class IndexRecoveryImpl implements IndexRecovery, TopologyChangeListener
          }
       });
 
+      getIndexFiles = rpcService.registerCommand(new RemoteCommand()
+      {
+         public String getId()
+         {
+            return "org.exoplatform.services.jcr.impl.core.query.IndexRecoveryImpl-getIndexFiles-" + commandSuffix;
+         }
+
+         public Serializable execute(Serializable[] args) throws Throwable
+         {
+            return SecurityHelper.doPrivilegedIOExceptionAction(new PrivilegedExceptionAction<Serializable>()
+            {
+               public Serializable run() throws IOException
+               {
+                  synchronized (checksums)
+                  {
+                     return IndexFileInfo.list(indexDirectory, checksums);
+                  }
+               }
+            });
+         }
+      });
+
+      getIndexFileChunk = rpcService.registerCommand(new RemoteCommand()
+      {
+         public String getId()
+         {
+            return "org.exoplatform.services.jcr.impl.core.query.IndexRecoveryImpl-getIndexFileChunk-" + commandSuffix;
+         }
+
+         public Serializable execute(Serializable[] args) throws Throwable
+         {
+            String filePath = (String)args[0];
+            long offset = (Long)args[1];
+            int length = (Integer)args[2];
+
+            RandomAccessFile file = new RandomAccessFile(new File(indexDirectory, filePath), "r");
+            try
+            {
+               file.seek(offset);
+               byte[] buffer = new byte[length];
+               int total = 0;
+               int len;
+               while (total < length && (len = file.read(buffer, total, length - total)) != -1)
+               {
+                  total += len;
+               }
+               return compress(buffer, total);
+            }
+            finally
+            {
+               try
+               {
+                  file.close();
+               }
+               catch (IOException e)
+               {
+                  log.debug("Could not close the file", e);
+               }
+            }
+         }
+      });
+
       requestForResponsibleToSetIndexOnline = rpcService.registerCommand(new RemoteCommand()
       {
 
@@ -320,6 +403,112 @@ public class IndexRecoveryImpl implements IndexRecovery, TopologyChangeListener
       }
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @SuppressWarnings("unchecked")
+   public List<IndexFileInfo> getIndexFiles() throws RepositoryException
+   {
+      try
+      {
+         return (List<IndexFileInfo>)rpcService.executeCommandOnCoordinator(getIndexFiles, true);
+      }
+      catch (SecurityException e)
+      {
+         throw new RepositoryException(e);
+      }
+      catch (RPCException e)
+      {
+         throw new RepositoryException(e);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public byte[] getIndexFileChunk(String filePath, long offset, int length) throws RepositoryException
+   {
+      try
+      {
+         byte[] data =
+            (byte[])rpcService.executeCommandOnCoordinator(getIndexFileChunk, true, filePath, offset, length);
+         return decompress(data, length);
+      }
+      catch (SecurityException e)
+      {
+         throw new RepositoryException(e);
+      }
+      catch (RPCException e)
+      {
+         throw new RepositoryException(e);
+      }
+      catch (DataFormatException e)
+      {
+         throw new RepositoryException(e);
+      }
+   }
+
+   /**
+    * Compresses the first bytes of the given array.
+    */
+   static byte[] compress(byte[] data, int length)
+   {
+      Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+      try
+      {
+         deflater.setInput(data, 0, length);
+         deflater.finish();
+         ByteArrayOutputStream out = new ByteArrayOutputStream(length / 2 + 64);
+         byte[] buffer = new byte[8192];
+         while (!deflater.finished())
+         {
+            out.write(buffer, 0, deflater.deflate(buffer));
+         }
+         return out.toByteArray();
+      }
+      finally
+      {
+         deflater.end();
+      }
+   }
+
+   /**
+    * Decompresses data compressed with {@link #compress(byte[], int)}.
+    *
+    * @param maxLength
+    *          the maximum length of the decompressed data
+    */
+   static byte[] decompress(byte[] data, int maxLength) throws DataFormatException
+   {
+      Inflater inflater = new Inflater();
+      try
+      {
+         inflater.setInput(data);
+         byte[] buffer = new byte[maxLength];
+         int length = 0;
+         while (!inflater.finished() && length < maxLength)
+         {
+            int len = inflater.inflate(buffer, length, maxLength - length);
+            if (len == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+            {
+               throw new DataFormatException("Truncated compressed data");
+            }
+            length += len;
+         }
+         if (length == maxLength)
+         {
+            return buffer;
+         }
+         byte[] result = new byte[length];
+         System.arraycopy(buffer, 0, result, 0, length);
+         return result;
+      }
+      finally
+      {
+         inflater.end();
+      }
+   }
+
    /**
     * @see org.exoplatform.services.jcr.impl.core.query.IndexRecovery#checkIndexReady()
     */
@@ -503,6 +692,8 @@ public class IndexRecoveryImpl implements IndexRecovery, TopologyChangeListener
       rpcService.unregisterCommand(changeIndexMode);
       rpcService.unregisterCommand(getIndexList);
       rpcService.unregisterCommand(getIndexFile);
+      rpcService.unregisterCommand(getIndexFiles);
+      rpcService.unregisterCommand(getIndexFileChunk);
       rpcService.unregisterCommand(requestForResponsibleToSetIndexOnline);
       rpcService.unregisterCommand(checkIndexReady);
 
@@ -23,6 +23,9 @@ import org.exoplatform.services.jcr.config.QueryHandlerEntry;
 import org.exoplatform.services.jcr.dataflow.ItemState;
 import org.exoplatform.services.jcr.dataflow.ItemStateChangesLog;
 import org.exoplatform.services.jcr.dataflow.persistent.ItemsPersistenceListener;
+import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.NodeData;
+import org.exoplatform.services.jcr.impl.Constants;
 import org.exoplatform.services.jcr.impl.core.query.lucene.ChangesHolder;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -32,9 +35,18 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
 
 /**
  * @author <a href="mailto:Sergey.Kabashnyuk@exoplatform.org">Sergey Kabashnyuk</a>
@@ -48,6 +60,11 @@ public abstract class IndexerChangesFilter implements ItemsPersistenceListener
     */
    private static final Log log = ExoLogger.getLogger("exo.jcr.component.core.IndexerChangesFilter");
 
+   /**
+    * The maximum amount of nodes reindexed at once when the ACL of their ancestor has changed.
+    */
+   private static final int ACL_REINDEXING_BATCH_SIZE = 500;
+
    protected final SearchManager searchManager;
 
    protected final QueryHandlerEntry config;
@@ -62,6 +79,17 @@ public abstract class IndexerChangesFilter implements ItemsPersistenceListener
 
    protected final IndexingTree parentIndexingTree;
 
+   /**
+    * The thread that reindexes the descendants of the nodes whose ACL has changed, created on
+    * first use, guarded by this.
+    */
+   private ExecutorService aclReindexer;
+
+   /**
+    * Indicates whether this filter has been closed, guarded by this.
+    */
+   private boolean closed;
+
    /**
     * @param searchManager
     * @param parentSearchManager
@@ -127,6 +155,8 @@ public abstract class IndexerChangesFilter implements ItemsPersistenceListener
       final Set<String> parentAddedNodes = new HashSet<String>();
       //updated
       final Map<String, List<ItemState>> parentUpdatedNodes = new HashMap<String, List<ItemState>>();
+      // nodes whose ACL has changed
+      final Set<String> aclChangedNodes = new HashSet<String>();
 
       for (Iterator<ItemState> iter = itemStates.getAllStates().iterator(); iter.hasNext();)
       {
@@ -134,6 +164,10 @@ public abstract class IndexerChangesFilter implements ItemsPersistenceListener
 
          if (itemState.isPersisted())
          {
+            if (!itemState.isNode() && isACLProperty(itemState.getData().getQPath().getName()))
+            {
+               aclChangedNodes.add(itemState.getData().getParentIdentifier());
+            }
             if (!indexingTree.isExcluded(itemState))
             {
                acceptChanges(removedNodes, addedNodes, updatedNodes, itemState);
@@ -145,6 +179,11 @@ public abstract class IndexerChangesFilter implements ItemsPersistenceListener
          }
       }
 
+      if (!aclChangedNodes.isEmpty())
+      {
+         scheduleACLReindexing(aclChangedNodes, removedNodes, parentRemovedNodes);
+      }
+
       for (String uuid : updatedNodes.keySet())
       {
          removedNodes.add(uuid);
@@ -160,11 +199,160 @@ public abstract class IndexerChangesFilter implements ItemsPersistenceListener
       doUpdateIndex(removedNodes, addedNodes, parentRemovedNodes, parentAddedNodes);
    }
 
+   /**
+    * @return <code>true</code> if the given name is the name of a property defining the ACL of a node,
+    * <code>false</code> otherwise
+    */
+   private static boolean isACLProperty(InternalQName name)
+   {
+      return Constants.EXO_PERMISSIONS.equals(name) || Constants.EXO_OWNER.equals(name);
+   }
+
+   /**
+    * Schedules the reindexing of all the descendants of the given nodes that inherit their ACL
+    * when the access control is indexed. The sub trees are walked by a background thread and
+    * reindexed by batches, so that neither the save nor the index are blocked during the walk.
+    */
+   private void scheduleACLReindexing(Set<String> aclChangedNodes, Set<String> removedNodes,
+      Set<String> parentRemovedNodes)
+   {
+      final boolean indexed = searchManager.isAccessControlIndexed();
+      final boolean parentIndexed = parentSearchManager != null && parentSearchManager.isAccessControlIndexed();
+      if (!indexed && !parentIndexed)
+      {
+         return;
+      }
+      final List<String> roots = new ArrayList<String>();
+      for (String uuid : aclChangedNodes)
+      {
+         // the descendants of a removed node have been removed too
+         if (!removedNodes.contains(uuid) && !parentRemovedNodes.contains(uuid))
+         {
+            roots.add(uuid);
+         }
+      }
+      if (roots.isEmpty())
+      {
+         return;
+      }
+      ExecutorService executor = getACLReindexer();
+      if (executor == null)
+      {
+         return;
+      }
+      try
+      {
+         executor.execute(new Runnable()
+         {
+            public void run()
+            {
+               for (String uuid : roots)
+               {
+                  reindexACLInheritingDescendants(uuid, indexed, parentIndexed);
+               }
+            }
+         });
+      }
+      catch (RejectedExecutionException e)
+      {
+         // the filter has just been closed
+         getLogger().warn("The descendants of the nodes " + roots + " whose ACL has changed won't be reindexed");
+      }
+   }
+
+   /**
+    * @return the thread that reindexes the descendants of the nodes whose ACL has changed or
+    * <code>null</code> if this filter has been closed
+    */
+   private synchronized ExecutorService getACLReindexer()
+   {
+      if (aclReindexer == null && !closed)
+      {
+         final String name = "ACL Reindexer " + searchManager.getWsId();
+         aclReindexer =
+            new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+               new ThreadFactory()
+               {
+                  public Thread newThread(Runnable r)
+                  {
+                     Thread t = new Thread(r, name);
+                     t.setDaemon(true);
+                     return t;
+                  }
+               });
+      }
+      return aclReindexer;
+   }
+
+   /**
+    * Reindexes by batches all the descendants of the given node that inherit its ACL.
+    */
+   private void reindexACLInheritingDescendants(String uuid, boolean indexed, boolean parentIndexed)
+   {
+      Set<String> updatedNodes = new HashSet<String>();
+      Set<String> parentUpdatedNodes = new HashSet<String>();
+      LinkedList<String> toVisit = new LinkedList<String>();
+      toVisit.add(uuid);
+      try
+      {
+         while (!toVisit.isEmpty())
+         {
+            for (NodeData child : searchManager.getACLInheritingChildren(toVisit.removeLast()))
+            {
+               String id = child.getIdentifier();
+               toVisit.add(id);
+               if (!indexingTree.isExcluded(child))
+               {
+                  if (indexed)
+                  {
+                     updatedNodes.add(id);
+                  }
+               }
+               else if (parentIndexed && parentIndexingTree != null && !parentIndexingTree.isExcluded(child))
+               {
+                  parentUpdatedNodes.add(id);
+               }
+               if (updatedNodes.size() + parentUpdatedNodes.size() >= ACL_REINDEXING_BATCH_SIZE)
+               {
+                  doUpdateIndex(updatedNodes, new HashSet<String>(updatedNodes), parentUpdatedNodes,
+                     new HashSet<String>(parentUpdatedNodes));
+                  updatedNodes = new HashSet<String>();
+                  parentUpdatedNodes = new HashSet<String>();
+               }
+            }
+         }
+         if (!updatedNodes.isEmpty() || !parentUpdatedNodes.isEmpty())
+         {
+            doUpdateIndex(updatedNodes, new HashSet<String>(updatedNodes), parentUpdatedNodes,
+               new HashSet<String>(parentUpdatedNodes));
+         }
+      }
+      catch (RepositoryException e)
+      {
+         getLogger().error("Could not get the descendants of the node " + uuid + " whose ACL has changed", e);
+      }
+      catch (RuntimeException e)
+      {
+         getLogger().error("Could not reindex the descendants of the node " + uuid + " whose ACL has changed", e);
+      }
+   }
+
    /**
     * Frees resources associated with changes filter
     */
    public void close()
    {
+      ExecutorService executor;
+      synchronized (this)
+      {
+         closed = true;
+         executor = aclReindexer;
+         aclReindexer = null;
+      }
+      if (executor != null)
+      {
+         executor.shutdownNow();
+      }
    }
 
    /**
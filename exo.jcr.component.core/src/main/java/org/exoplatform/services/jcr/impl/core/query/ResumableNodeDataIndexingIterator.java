@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * A {@link NodeDataIndexingIterator} whose position can be saved, so that an interrupted
+ * re-indexing can be resumed later from it instead of starting over.
+ *
+ * @version $Id$
+ */
+public interface ResumableNodeDataIndexingIterator extends NodeDataIndexingIterator
+{
+   /**
+    * Gives the current position of the iteration. It must only be called while no call
+    * to {@link #next()} is in progress, all the nodes returned so far are then before
+    * this position and all the other nodes are after it.
+    *
+    * @return the current position of the iteration
+    */
+   String getCheckpoint();
+
+   /**
+    * Moves the iteration to a position given by {@link #getCheckpoint()}, it must be
+    * called before the first call to {@link #next()}.
+    *
+    * @param checkpoint the position from which the iteration is resumed
+    * @throws RepositoryException if the position is not valid for this iterator
+    */
+   void resume(String checkpoint) throws RepositoryException;
+}
@@ -102,6 +102,14 @@ public class SearchIndexConfigurationHelper
       {
          searchIndex.setExtractorTimeout(StringNumberParser.parseLong(value));
       }
+      else if (QueryHandlerParams.PARAM_EXTRACTED_TEXT_CACHE_DIR.equals(name))
+      {
+         searchIndex.setExtractedTextCacheDir(value);
+      }
+      else if (QueryHandlerParams.PARAM_EXTRACTED_TEXT_CACHE_SIZE.equals(name))
+      {
+         searchIndex.setExtractedTextCacheSize(StringNumberParser.parseLong(value));
+      }
       else if (QueryHandlerParams.PARAM_FORCE_CONSISTENCYCHECK.equals(name))
       {
          searchIndex.setForceConsistencyCheck(Boolean.parseBoolean(value));
@@ -194,6 +202,10 @@ public class SearchIndexConfigurationHelper
       {
          searchIndex.setRDBMSReindexing(Boolean.parseBoolean(value));
       }
+      else if (QueryHandlerParams.PARAM_REINDEXING_CHECKPOINT_INTERVAL.equals(name))
+      {
+         searchIndex.setReindexingCheckpointInterval(StringNumberParser.parseTime(value));
+      }
       else if (QueryHandlerParams.PARAM_INDEX_RECOVERY_MODE.equals(name))
       {
          searchIndex.setIndexRecoveryMode(value);
@@ -206,6 +218,10 @@ public class SearchIndexConfigurationHelper
       {
          searchIndex.addRecoveryFilterClass(value);
       }
+      else if (QueryHandlerParams.PARAM_INDEX_RECOVERY_THREADS.equals(name))
+      {
+         searchIndex.setIndexRecoveryThreads(Integer.parseInt(value));
+      }
       else if (QueryHandlerParams.PARAM_INDEXING_THREAD_POOL_SIZE.equals(name))
       {
          searchIndex.setIndexingThreadPoolSize(Integer.parseInt(value));
@@ -226,6 +242,10 @@ public class SearchIndexConfigurationHelper
       {
          searchIndex.setIndexingLoadBatchingThresholdNode(Integer.parseInt(value));
       }
+      else if (QueryHandlerParams.PARAM_INDEX_ACCESS_CONTROL.equals(name))
+      {
+         searchIndex.setIndexAccessControl(Boolean.parseBoolean(value));
+      }
       else
       {
          searchIndex.addOptionalParameter(name, value);
@@ -700,6 +700,67 @@ public class SearchManager implements Startable, MandatoryItemsPersistenceListen
       apply(changes);
    }
 
+   /**
+    * Indicates whether the access control of the nodes is indexed, in which case the
+    * descendants of a node whose ACL has changed need to be reindexed too.
+    *
+    * @return <code>true</code> if the access control is indexed, <code>false</code> otherwise
+    */
+   public boolean isAccessControlIndexed()
+   {
+      return handler instanceof SearchIndex && ((SearchIndex)handler).isIndexAccessControl();
+   }
+
+   /**
+    * Gives the child nodes of the given node that inherit its ACL, which means all the child
+    * nodes except the ones that define both their own owner and their own permissions.
+    *
+    * @param nodeId the identifier of the node
+    * @return the list of child nodes that inherit the ACL of the given node, empty if the node
+    * doesn't exist anymore
+    * @throws RepositoryException if the child nodes could not be loaded
+    */
+   public List<NodeData> getACLInheritingChildren(String nodeId) throws RepositoryException
+   {
+      List<NodeData> result = new ArrayList<NodeData>();
+      ItemData item = itemMgr.getItemData(nodeId);
+      if (item == null || !item.isNode())
+      {
+         return result;
+      }
+      for (NodeData child : itemMgr.getChildNodesData((NodeData)item))
+      {
+         if (!hasOwnACL(child))
+         {
+            result.add(child);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * @return <code>true</code> if the node defines both its own owner and its own permissions,
+    * <code>false</code> otherwise
+    */
+   private static boolean hasOwnACL(NodeData node)
+   {
+      boolean owneable = false;
+      boolean privilegeable = false;
+      InternalQName[] mixins = node.getMixinTypeNames();
+      for (int i = 0; mixins != null && i < mixins.length; i++)
+      {
+         if (Constants.EXO_OWNEABLE.equals(mixins[i]))
+         {
+            owneable = true;
+         }
+         else if (Constants.EXO_PRIVILEGEABLE.equals(mixins[i]))
+         {
+            privilegeable = true;
+         }
+      }
+      return owneable && privilegeable;
+   }
+
    public void apply(ChangesHolder changes) throws RepositoryException, IOException
    {
       if (handler != null && changes != null && (!changes.getAdd().isEmpty() || !changes.getRemove().isEmpty()))
@@ -1491,6 +1552,18 @@ public class SearchManager implements Startable, MandatoryItemsPersistenceListen
       return hotReindexingState;
    }
 
+   @Managed
+   @ManagedDescription("Progress and estimated remaining time of the indexing in progress")
+   public String getIndexingProgress()
+   {
+      if (!(handler instanceof SearchIndex) || ((SearchIndex)handler).getIndex() == null)
+      {
+         return "not initialized";
+      }
+      String progress = ((SearchIndex)handler).getIndex().getIndexingProgress();
+      return progress == null ? "not running" : progress;
+   }
+
    @Managed
    @ManagedDescription("Index IO mode (READ_ONLY/READ_WRITE)")
    public String getIOMode()
@@ -193,6 +193,7 @@ public class ISPNIndexChangesFilter extends IndexerChangesFilter
     */
    public void close()
    {
+      super.close();
       PrivilegedISPNCacheHelper.stop(cache);
       ISPNCacheFactory.releaseUniqueInstance(cache.getCacheManager());
    }
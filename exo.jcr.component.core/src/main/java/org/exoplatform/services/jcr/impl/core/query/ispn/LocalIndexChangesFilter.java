@@ -128,6 +128,7 @@ public class LocalIndexChangesFilter extends IndexerChangesFilter implements Loc
     */
    public void close()
    {
+      super.close();
       PrivilegedISPNCacheHelper.stop(cache);
       ISPNCacheFactory.releaseUniqueInstance(cache.getCacheManager());
    }
@@ -18,8 +18,6 @@ package org.exoplatform.services.jcr.impl.core.query.lucene;
 
 import java.io.FileNotFoundException;
 import java.util.Arrays;
-import java.util.concurrent.ConcurrentHashMap;
-import org.apache.commons.collections.map.LRUMap;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.FieldSelector;
@@ -37,7 +35,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.text.NumberFormat;
 import java.util.BitSet;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
@@ -76,7 +73,7 @@ class CachingIndexReader extends FilterIndexReader
    /**
     * Cache of nodes parent relation that point to a foreign index segment.
     */
-   private final Map<Integer, DocId> foreignParentDocIds = new ConcurrentHashMap<Integer, DocId>();
+   private final IntObjectHashMap<DocId> foreignParentDocIds;
 
    /**
     * Initializes the {@link #inSegmentParents} and {@link #foreignParentDocIds}
@@ -95,9 +92,16 @@ class CachingIndexReader extends FilterIndexReader
    private final DocNumberCache cache;
 
    /**
-    * Maps document number to node UUID.
+    * Maps document number to node UUID. This is a direct mapped cache: the
+    * document number n is stored in the slot n & {@link #docNumber2uuidMask},
+    * consecutive document numbers therefore never evict each other.
     */
-   private final Map<Integer, String> docNumber2uuid;
+   private final UUIDEntry[] docNumber2uuid;
+
+   /**
+    * Mask to calculate the slot of a document number in {@link #docNumber2uuid}.
+    */
+   private final int docNumber2uuidMask;
 
    /**
     * A cache of TermDocs that are regularly read from the index.
@@ -115,12 +119,13 @@ class CachingIndexReader extends FilterIndexReader
     *                  when this index reader is constructed.
     * @throws IOException if an error occurs while reading from the index.
     */
-   @SuppressWarnings("unchecked")
    CachingIndexReader(IndexReader delegatee, DocNumberCache cache, boolean initCache) throws IOException
    {
       super(delegatee);
       this.cache = cache;
       this.inSegmentParents = new int[delegatee.maxDoc()];
+      // most of the parents are usually in the same segment
+      this.foreignParentDocIds = new IntObjectHashMap<DocId>(delegatee.maxDoc() >> 6);
       Arrays.fill(this.inSegmentParents, -1);
       this.shareableNodes = initShareableNodes(delegatee);
       this.cacheInitializer = new CacheInitializer(delegatee);
@@ -128,9 +133,14 @@ class CachingIndexReader extends FilterIndexReader
       {
          cacheInitializer.run();
       }
-      // limit cache to 1% of maxDoc(), but at least 10.
-      this.docNumber2uuid =
-         (Map<Integer, String>)Collections.synchronizedMap(new LRUMap(Math.max(10, delegatee.maxDoc() / 100)));
+      // limit cache to 1% of maxDoc() rounded up to a power of two, but at least 16.
+      int size = 16;
+      while (size < delegatee.maxDoc() / 100)
+      {
+         size <<= 1;
+      }
+      this.docNumber2uuid = new UUIDEntry[size];
+      this.docNumber2uuidMask = size - 1;
       this.termDocsCache = new TermDocsCache(delegatee, FieldNames.PROPERTIES);
    }
 
@@ -277,19 +287,22 @@ class CachingIndexReader extends FilterIndexReader
    {
       if (fieldSelector == FieldSelectors.UUID)
       {
-         Integer docNum = new Integer(n);
          Document doc;
-         String uuid = docNumber2uuid.get(docNum);
-         if (uuid == null)
+         int slot = n & docNumber2uuidMask;
+         UUIDEntry entry = docNumber2uuid[slot];
+         if (entry == null || entry.doc != n)
          {
             doc = super.document(n, fieldSelector);
-            uuid = doc.get(FieldNames.UUID);
-            docNumber2uuid.put(docNum, uuid);
+            String uuid = doc.get(FieldNames.UUID);
+            if (uuid != null)
+            {
+               docNumber2uuid[slot] = new UUIDEntry(n, uuid);
+            }
          }
          else
          {
             doc = new Document();
-            doc.add(new Field(FieldNames.UUID, uuid.toString(), Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
+            doc.add(new Field(FieldNames.UUID, entry.uuid, Field.Store.YES, Field.Index.NOT_ANALYZED_NO_NORMS));
          }
          return doc;
       }
@@ -722,6 +735,24 @@ class CachingIndexReader extends FilterIndexReader
       void collect(Term term, TermDocs tDocs) throws IOException;
    }
 
+   /**
+    * An immutable entry of the {@link CachingIndexReader#docNumber2uuid} cache,
+    * replaced as a whole so that it can be read without lock.
+    */
+   private final static class UUIDEntry
+   {
+
+      final int doc;
+
+      final String uuid;
+
+      UUIDEntry(int doc, String uuid)
+      {
+         this.doc = doc;
+         this.uuid = uuid;
+      }
+   }
+
    private final static class NodeInfo
    {
 
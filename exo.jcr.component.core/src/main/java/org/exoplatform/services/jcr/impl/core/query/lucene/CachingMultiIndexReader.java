@@ -151,6 +151,22 @@ public final class CachingMultiIndexReader
         refCount++;
     }
 
+    /**
+     * Increments the reference count of this reader unless it has already been
+     * closed. A successful call must later be acknowledged by a call to
+     * {@link #release()}.
+     *
+     * @return <code>true</code> if the reader has been acquired,
+     *         <code>false</code> if it is closed.
+     */
+    synchronized boolean tryAcquire() {
+        if (refCount <= 0) {
+            return false;
+        }
+        refCount++;
+        return true;
+    }
+
     /**
      * {@inheritDoc}
      */
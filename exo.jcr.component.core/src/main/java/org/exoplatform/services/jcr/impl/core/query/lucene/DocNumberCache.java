@@ -16,12 +16,18 @@
  */
 package org.exoplatform.services.jcr.impl.core.query.lucene;
 
-import org.apache.commons.collections.map.LRUMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Implements a Document number cache with a fixed size and a LRU strategy.
+ * The cache is split into segments selected by the hash code of the uuid, each
+ * segment being locked independently. The hits and misses are counted by each
+ * segment under its own lock, so that they are always available as metrics.
  */
 final class DocNumberCache
 {
@@ -37,9 +43,19 @@ final class DocNumberCache
    private static final long LOG_INTERVAL = 1000 * 10;
 
    /**
-    * The number of cache segments.
+    * The number of cache segments, a power of two of at least 0x10 and of
+    * about 4 segments per processor.
     */
-   private static final int CACHE_SEGMENTS = 0x10;
+   private static final int CACHE_SEGMENTS;
+   static
+   {
+      int segments = 0x10;
+      while (segments < Runtime.getRuntime().availableProcessors() * 4 && segments < 0x100)
+      {
+         segments <<= 1;
+      }
+      CACHE_SEGMENTS = segments;
+   }
 
    /**
     * Mask to calculate segment number.
@@ -49,22 +65,22 @@ final class DocNumberCache
    /**
     * LRU Maps where key=uuid value=reader;docNumber
     */
-   private final LRUMap[] docNumbers = new LRUMap[CACHE_SEGMENTS];
+   private final Segment[] docNumbers = new Segment[CACHE_SEGMENTS];
 
    /**
     * Timestamp of the last cache statistics log.
     */
-   private long lastLog;
+   private final AtomicLong lastLog = new AtomicLong();
 
    /**
-    * Cache misses.
+    * Cache accesses at the time of the last cache statistics log.
     */
-   private long misses;
+   private long lastAccesses;
 
    /**
-    * Cache accesses;
+    * Cache misses at the time of the last cache statistics log.
     */
-   private long accesses;
+   private long lastMisses;
 
    /**
     * Creates a new <code>DocNumberCache</code> with a limiting
@@ -77,12 +93,12 @@ final class DocNumberCache
       size = size / CACHE_SEGMENTS;
       if (size < 0x40)
       {
-         // minimum size is 0x40 * 0x10 = 1024
+         // minimum size is 0x40 per segment
          size = 0x40;
       }
       for (int i = 0; i < docNumbers.length; i++)
       {
-         docNumbers[i] = new LRUMap(size);
+         docNumbers[i] = new Segment(size);
       }
    }
 
@@ -97,12 +113,10 @@ final class DocNumberCache
     */
    void put(String uuid, CachingIndexReader reader, int n)
    {
-      LRUMap cacheSegment = docNumbers[getSegmentIndex(uuid.charAt(0))];
-      //UUID key = UUID.fromString(uuid);
-      String key = uuid;
+      Segment cacheSegment = docNumbers[getSegmentIndex(uuid)];
       synchronized (cacheSegment)
       {
-         Entry e = (Entry)cacheSegment.get(key);
+         Entry e = cacheSegment.get(uuid);
          if (e != null)
          {
             // existing entry
@@ -125,7 +139,7 @@ final class DocNumberCache
 
          if (e != null)
          {
-            cacheSegment.put(key, e);
+            cacheSegment.put(uuid, e);
          }
       }
    }
@@ -139,63 +153,175 @@ final class DocNumberCache
     */
    Entry get(String uuid)
    {
-      LRUMap cacheSegment = docNumbers[getSegmentIndex(uuid.charAt(0))];
-      // uuid may be invalid
-      //        if (uuid.length() != UUID.UUID_FORMATTED_LENGTH) {
-      //            return null;
-      //        }
-      String key = uuid;
+      Segment cacheSegment = docNumbers[getSegmentIndex(uuid)];
       Entry entry;
       synchronized (cacheSegment)
       {
-         entry = (Entry)cacheSegment.get(key);
+         entry = cacheSegment.get(uuid);
+         if (entry == null)
+         {
+            cacheSegment.misses++;
+         }
+         else
+         {
+            cacheSegment.hits++;
+         }
       }
       if (log.isDebugEnabled())
       {
-         accesses++;
-         if (entry == null)
+         logStatistics();
+      }
+      return entry;
+   }
+
+   /**
+    * Returns the total amount of cache hits.
+    */
+   long getHits()
+   {
+      long hits = 0;
+      for (Segment segment : docNumbers)
+      {
+         synchronized (segment)
          {
-            misses++;
+            hits += segment.hits;
          }
-         // log at most after 1000 accesses and every 10 seconds
-         if (accesses > 1000 && System.currentTimeMillis() - lastLog > LOG_INTERVAL)
+      }
+      return hits;
+   }
+
+   /**
+    * Returns the total amount of cache misses.
+    */
+   long getMisses()
+   {
+      long misses = 0;
+      for (Segment segment : docNumbers)
+      {
+         synchronized (segment)
          {
-            long ratio = 100;
-            if (misses != 0)
-            {
-               ratio -= misses * 100L / accesses;
-            }
-            StringBuilder statistics = new StringBuilder();
-            int inUse = 0;
-            for (int i = 0; i < docNumbers.length; i++)
-            {
-               inUse += docNumbers[i].size();
-            }
-            statistics.append("size=").append(inUse);
-            statistics.append("/").append(docNumbers[0].maxSize() * CACHE_SEGMENTS);
-            statistics.append(", #accesses=").append(accesses);
-            statistics.append(", #hits=").append((accesses - misses));
-            statistics.append(", #misses=").append(misses);
-            statistics.append(", cacheRatio=").append(ratio).append("%");
-            log.debug(statistics.toString());
-            accesses = 0;
-            misses = 0;
-            lastLog = System.currentTimeMillis();
+            misses += segment.misses;
          }
       }
-      return entry;
+      return misses;
+   }
+
+   /**
+    * Returns the amount of entries in the cache.
+    */
+   int getSize()
+   {
+      int size = 0;
+      for (Segment segment : docNumbers)
+      {
+         synchronized (segment)
+         {
+            size += segment.size();
+         }
+      }
+      return size;
    }
 
    /**
-    * Returns the segment index for character c.
+    * Returns the maximum amount of entries in the cache.
     */
-   private static int getSegmentIndex(char c)
+   int getMaxSize()
    {
-      if (c > '9')
+      return docNumbers[0].maxSize * CACHE_SEGMENTS;
+   }
+
+   /**
+    * Logs the statistics of the accesses since the last log, at most every
+    * {@link #LOG_INTERVAL} and after 1000 accesses.
+    */
+   private void logStatistics()
+   {
+      long last = lastLog.get();
+      long now = System.currentTimeMillis();
+      if (now - last <= LOG_INTERVAL || !lastLog.compareAndSet(last, now))
+      {
+         return;
+      }
+      long misses = getMisses();
+      long accesses = getHits() + misses;
+      synchronized (lastLog)
+      {
+         long intervalAccesses = accesses - lastAccesses;
+         long intervalMisses = misses - lastMisses;
+         if (intervalAccesses <= 1000)
+         {
+            // not enough accesses, they will be part of the next interval
+            return;
+         }
+         lastAccesses = accesses;
+         lastMisses = misses;
+
+         long ratio = 100;
+         if (intervalMisses != 0)
+         {
+            ratio -= intervalMisses * 100L / intervalAccesses;
+         }
+         StringBuilder statistics = new StringBuilder();
+         statistics.append("size=").append(getSize());
+         statistics.append("/").append(getMaxSize());
+         statistics.append(", #accesses=").append(intervalAccesses);
+         statistics.append(", #hits=").append((intervalAccesses - intervalMisses));
+         statistics.append(", #misses=").append(intervalMisses);
+         statistics.append(", cacheRatio=").append(ratio).append("%");
+         statistics.append(", #totalHits=").append(accesses - misses);
+         statistics.append(", #totalMisses=").append(misses);
+         log.debug(statistics.toString());
+      }
+   }
+
+   /**
+    * Returns the segment index for the given uuid.
+    */
+   private static int getSegmentIndex(String uuid)
+   {
+      int h = uuid.hashCode();
+      h ^= (h >>> 20) ^ (h >>> 12);
+      h ^= (h >>> 7) ^ (h >>> 4);
+      return h & CACHE_SEGMENTS_MASK;
+   }
+
+   /**
+    * A segment of the cache, all the accesses must be synchronized on the segment.
+    */
+   private static final class Segment extends LinkedHashMap<String, Entry>
+   {
+
+      private static final long serialVersionUID = -4404735717366813734L;
+
+      /**
+       * The maximum amount of entries of the segment.
+       */
+      final int maxSize;
+
+      /**
+       * Cache hits.
+       */
+      long hits;
+
+      /**
+       * Cache misses.
+       */
+      long misses;
+
+      Segment(int maxSize)
+      {
+         super(maxSize * 4 / 3 + 1, 0.75f, true);
+         this.maxSize = maxSize;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
       {
-         c += 9;
+         return size() > maxSize;
       }
-      return c & CACHE_SEGMENTS_MASK;
    }
 
    public static final class Entry
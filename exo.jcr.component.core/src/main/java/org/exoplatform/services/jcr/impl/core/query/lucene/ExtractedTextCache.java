@@ -0,0 +1,351 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+import org.exoplatform.services.jcr.datamodel.ValueData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps on disk the text extracted from the binary values, keyed by a hash of their content, so that the
+ * same content is never extracted twice, whether it is re-indexed, versioned or copied. The texts are
+ * stored compressed, one file per content, and the least recently used ones are removed once the total
+ * size of the cache exceeds its maximum size.
+ *
+ * @version $Id$
+ */
+public class ExtractedTextCache
+{
+   /**
+    * The logger instance for this class.
+    */
+   private static final Logger log = LoggerFactory.getLogger("exo.jcr.component.core.ExtractedTextCache");
+
+   /**
+    * The default maximum size of the cache in bytes.
+    */
+   public static final long DEFAULT_MAX_SIZE = 512L * 1024 * 1024;
+
+   /**
+    * The extension of the files of the cache.
+    */
+   private static final String EXTENSION = ".txt.gz";
+
+   private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+   /**
+    * The root directory of the cache.
+    */
+   private final File directory;
+
+   /**
+    * The maximum size of the cache in bytes.
+    */
+   private final long maxSize;
+
+   /**
+    * The current size of the cache in bytes.
+    */
+   private final AtomicLong size = new AtomicLong();
+
+   /**
+    * The amount of texts found in the cache.
+    */
+   private final AtomicLong hits = new AtomicLong();
+
+   /**
+    * The amount of texts not found in the cache.
+    */
+   private final AtomicLong misses = new AtomicLong();
+
+   /**
+    * Creates a cache in the given directory which is created if needed.
+    *
+    * @param directory the root directory of the cache
+    * @param maxSize the maximum size of the cache in bytes
+    * @throws IOException if the directory cannot be created
+    */
+   public ExtractedTextCache(File directory, long maxSize) throws IOException
+   {
+      if (!directory.exists() && !directory.mkdirs())
+      {
+         throw new IOException("Cannot create the directory of the extracted text cache " + directory);
+      }
+      this.directory = directory;
+      this.maxSize = maxSize;
+      for (File file : listFiles())
+      {
+         size.addAndGet(file.length());
+      }
+   }
+
+   /**
+    * Gives the key of the text extracted from the given value.
+    *
+    * @param value the value from which the text is extracted
+    * @param mimeType the mime type of the value
+    * @param encoding the encoding of the value, <code>null</code> if unknown
+    * @return the key of the text
+    * @throws IOException if the value cannot be read
+    */
+   public String getKey(ValueData value, String mimeType, String encoding) throws IOException
+   {
+      MessageDigest digest;
+      try
+      {
+         digest = MessageDigest.getInstance("SHA-1");
+      }
+      catch (NoSuchAlgorithmException e)
+      {
+         throw new IOException("The SHA-1 algorithm is not available", e);
+      }
+      digest.update((mimeType + '\n' + encoding + '\n').getBytes("UTF-8"));
+      InputStream in = value.getAsStream();
+      try
+      {
+         byte[] buffer = new byte[8192];
+         int len;
+         while ((len = in.read(buffer)) > 0)
+         {
+            digest.update(buffer, 0, len);
+         }
+      }
+      finally
+      {
+         in.close();
+      }
+      byte[] hash = digest.digest();
+      char[] key = new char[hash.length * 2];
+      for (int i = 0; i < hash.length; i++)
+      {
+         key[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+         key[i * 2 + 1] = HEX[hash[i] & 0xF];
+      }
+      return new String(key);
+   }
+
+   /**
+    * Gives the text stored under the given key.
+    *
+    * @param key the key of the text
+    * @return the text or <code>null</code> if it is not in the cache
+    */
+   public String get(String key)
+   {
+      File file = getFile(key);
+      if (!file.exists())
+      {
+         misses.incrementAndGet();
+         return null;
+      }
+      try
+      {
+         Reader reader = new InputStreamReader(new GZIPInputStream(new FileInputStream(file)), "UTF-8");
+         try
+         {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[4096];
+            int len;
+            while ((len = reader.read(buffer)) > -1)
+            {
+               text.append(buffer, 0, len);
+            }
+            hits.incrementAndGet();
+            // keep track of the last access for the eviction
+            file.setLastModified(System.currentTimeMillis());
+            return text.toString();
+         }
+         finally
+         {
+            reader.close();
+         }
+      }
+      catch (IOException e)
+      {
+         // the file may have been evicted meanwhile
+         if (log.isDebugEnabled())
+         {
+            log.debug("Cannot read the extracted text " + key + ": " + e.getMessage());
+         }
+         misses.incrementAndGet();
+         return null;
+      }
+   }
+
+   /**
+    * Stores a text under the given key.
+    *
+    * @param key the key of the text
+    * @param text the text to store
+    */
+   public void put(String key, String text)
+   {
+      File file = getFile(key);
+      File parent = file.getParentFile();
+      if (!parent.exists() && !parent.mkdirs() && !parent.exists())
+      {
+         log.warn("Cannot create the directory " + parent + " of the extracted text cache");
+         return;
+      }
+      try
+      {
+         // the text is written into a temporary file first so that it is never read partially
+         File tmp = File.createTempFile(key, ".tmp", parent);
+         Writer writer = new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmp)), "UTF-8");
+         try
+         {
+            writer.write(text);
+         }
+         finally
+         {
+            writer.close();
+         }
+         long length = tmp.length();
+         long previous = file.length();
+         if (!tmp.renameTo(file) && !(file.delete() && tmp.renameTo(file)))
+         {
+            tmp.delete();
+            return;
+         }
+         if (size.addAndGet(length - previous) > maxSize)
+         {
+            evict();
+         }
+      }
+      catch (IOException e)
+      {
+         log.warn("Cannot store the extracted text " + key + ": " + e.getMessage());
+      }
+   }
+
+   /**
+    * @return the amount of texts found in the cache.
+    */
+   public long getHits()
+   {
+      return hits.get();
+   }
+
+   /**
+    * @return the amount of texts not found in the cache.
+    */
+   public long getMisses()
+   {
+      return misses.get();
+   }
+
+   /**
+    * @return the current size of the cache in bytes.
+    */
+   public long getSize()
+   {
+      return size.get();
+   }
+
+   /**
+    * Removes the least recently used texts until the cache is back to 90% of its maximum size.
+    */
+   private synchronized void evict()
+   {
+      if (size.get() <= maxSize)
+      {
+         // already done by another thread
+         return;
+      }
+      List<File> files = listFiles();
+      final long[] lastModified = new long[files.size()];
+      Integer[] order = new Integer[files.size()];
+      for (int i = 0; i < order.length; i++)
+      {
+         order[i] = i;
+         lastModified[i] = files.get(i).lastModified();
+      }
+      Arrays.sort(order, new Comparator<Integer>()
+      {
+         public int compare(Integer o1, Integer o2)
+         {
+            return lastModified[o1] < lastModified[o2] ? -1 : (lastModified[o1] == lastModified[o2] ? 0 : 1);
+         }
+      });
+      long target = maxSize / 10 * 9;
+      for (int i = 0; i < order.length && size.get() > target; i++)
+      {
+         File file = files.get(order[i]);
+         long length = file.length();
+         if (file.delete())
+         {
+            size.addAndGet(-length);
+         }
+      }
+   }
+
+   /**
+    * Gives the file of the given key, the files are spread over 256 sub directories.
+    */
+   private File getFile(String key)
+   {
+      return new File(new File(directory, key.substring(0, 2)), key + EXTENSION);
+   }
+
+   /**
+    * Lists all the files of the cache.
+    */
+   private List<File> listFiles()
+   {
+      List<File> files = new ArrayList<File>();
+      File[] dirs = directory.listFiles();
+      if (dirs != null)
+      {
+         for (File dir : dirs)
+         {
+            File[] children = dir.listFiles();
+            if (children != null)
+            {
+               for (File child : children)
+               {
+                  if (child.getName().endsWith(EXTENSION))
+                  {
+                     files.add(child);
+                  }
+               }
+            }
+         }
+      }
+      return files;
+   }
+}
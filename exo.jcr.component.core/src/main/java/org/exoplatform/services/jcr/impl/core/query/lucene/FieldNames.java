@@ -112,7 +112,7 @@ public class FieldNames {
 
     /**
      * Name of the field that marks nodes that require reindexing because the
-     * text extraction process timed out. See also IndexingQueue.
+     * text extraction process timed out. See also SearchIndex.
      */
     public static final String REINDEXING_REQUIRED = "_:REINDEXING_REQUIRED".intern();
 
@@ -121,6 +121,25 @@ public class FieldNames {
      */
     public static final String SHAREABLE_NODE = "_:SHAREABLE_NODE".intern();
 
+    /**
+     * Name of the field that contains the owner of the node. Terms are not
+     * tokenized and not stored, only indexed.
+     */
+    public static final String ACL_OWNER = "_:ACL_OWNER".intern();
+
+    /**
+     * Name of the field that contains the identities (user ids, memberships
+     * and "any") allowed to read the node. Terms are not tokenized and not
+     * stored, only indexed.
+     */
+    public static final String ACL_READ = "_:ACL_READ".intern();
+
+    /**
+     * Name of the field that contains the groups of the memberships allowed to
+     * read the node. Terms are not tokenized and not stored, only indexed.
+     */
+    public static final String ACL_READ_GROUP = "_:ACL_READ_GROUP".intern();
+
     /**
      * Returns a named length for use as a term in the index. The named length
      * is of the form: <code>propertyName</code> + '[' +
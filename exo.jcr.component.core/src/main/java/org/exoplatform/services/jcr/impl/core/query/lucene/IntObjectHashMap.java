@@ -0,0 +1,175 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+/**
+ * A map of <code>int</code> keys to objects based on open addressing with linear probing, which
+ * avoids the boxing of the keys. The lookups are lock free, the modifications are serialized.
+ * Entries can only be added or replaced, never removed, which keeps the probe sequences valid
+ * for the concurrent lookups.
+ *
+ * @param <V> the type of the values
+ * @version $Id$
+ */
+final class IntObjectHashMap<V>
+{
+
+   /**
+    * The minimum capacity of the table.
+    */
+   private static final int MIN_CAPACITY = 16;
+
+   /**
+    * The slots of the table, the length is always a power of two.
+    */
+   private volatile Entry<V>[] table;
+
+   /**
+    * The amount of entries.
+    */
+   private int size;
+
+   /**
+    * Creates a new map able to contain <code>expectedSize</code> entries without being resized.
+    *
+    * @param expectedSize the expected amount of entries.
+    */
+   IntObjectHashMap(int expectedSize)
+   {
+      this.table = newTable(capacityFor(expectedSize));
+   }
+
+   /**
+    * Returns the value mapped to <code>key</code>, or <code>null</code> if there is none.
+    *
+    * @param key the key.
+    * @return the value or <code>null</code>.
+    */
+   V get(int key)
+   {
+      Entry<V>[] tab = table;
+      int mask = tab.length - 1;
+      for (int i = hash(key) & mask;; i = (i + 1) & mask)
+      {
+         Entry<V> e = tab[i];
+         if (e == null)
+         {
+            return null;
+         }
+         else if (e.key == key)
+         {
+            return e.value;
+         }
+      }
+   }
+
+   /**
+    * Maps <code>value</code> to <code>key</code>, replacing the previous value if any.
+    *
+    * @param key the key.
+    * @param value the value, can not be <code>null</code>.
+    */
+   synchronized void put(int key, V value)
+   {
+      Entry<V>[] tab = table;
+      if (insert(tab, new Entry<V>(key, value)))
+      {
+         if (++size > tab.length >> 1)
+         {
+            // keep the load factor under 0.5 so that the probe sequences remain short
+            Entry<V>[] newTab = newTable(tab.length << 1);
+            for (Entry<V> e : tab)
+            {
+               if (e != null)
+               {
+                  insert(newTab, e);
+               }
+            }
+            table = newTab;
+         }
+      }
+   }
+
+   /**
+    * Returns the amount of entries.
+    */
+   synchronized int size()
+   {
+      return size;
+   }
+
+   /**
+    * Inserts the entry, returns <code>true</code> if the key was not present.
+    */
+   private static <V> boolean insert(Entry<V>[] tab, Entry<V> entry)
+   {
+      int mask = tab.length - 1;
+      for (int i = hash(entry.key) & mask;; i = (i + 1) & mask)
+      {
+         Entry<V> e = tab[i];
+         if (e == null || e.key == entry.key)
+         {
+            tab[i] = entry;
+            return e == null;
+         }
+      }
+   }
+
+   /**
+    * Spreads the keys, the document numbers being mostly consecutive.
+    */
+   private static int hash(int key)
+   {
+      int h = key * 0x9E3779B9;
+      return h ^ (h >>> 16);
+   }
+
+   private static int capacityFor(int expectedSize)
+   {
+      int capacity = MIN_CAPACITY;
+      while (capacity < expectedSize << 1 && capacity < 1 << 30)
+      {
+         capacity <<= 1;
+      }
+      return capacity;
+   }
+
+   @SuppressWarnings("unchecked")
+   private static <V> Entry<V>[] newTable(int capacity)
+   {
+      return new Entry[capacity];
+   }
+
+   /**
+    * An immutable entry, replaced as a whole so that a lookup never sees a key with the value of
+    * another key.
+    */
+   private static final class Entry<V>
+   {
+      final int key;
+
+      final V value;
+
+      Entry(int key, V value)
+      {
+         this.key = key;
+         this.value = value;
+      }
+   }
+}
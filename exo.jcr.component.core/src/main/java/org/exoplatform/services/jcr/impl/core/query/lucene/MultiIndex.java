@@ -24,6 +24,8 @@ import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.IndexInput;
+import org.apache.lucene.store.IndexOutput;
 import org.exoplatform.commons.utils.PrivilegedFileHelper;
 import org.exoplatform.commons.utils.SecurityHelper;
 import org.exoplatform.services.jcr.dataflow.ItemDataConsumer;
@@ -31,6 +33,7 @@ import org.exoplatform.services.jcr.datamodel.ItemData;
 import org.exoplatform.services.jcr.datamodel.NodeData;
 import org.exoplatform.services.jcr.datamodel.NodeDataIndexing;
 import org.exoplatform.services.jcr.impl.Constants;
+import org.exoplatform.services.jcr.impl.core.query.IndexFilesSynchronizer;
 import org.exoplatform.services.jcr.impl.core.query.IndexRecovery;
 import org.exoplatform.services.jcr.impl.core.query.IndexerIoMode;
 import org.exoplatform.services.jcr.impl.core.query.IndexerIoModeHandler;
@@ -38,6 +41,7 @@ import org.exoplatform.services.jcr.impl.core.query.IndexerIoModeListener;
 import org.exoplatform.services.jcr.impl.core.query.IndexingTree;
 import org.exoplatform.services.jcr.impl.core.query.NodeDataIndexingIterator;
 import org.exoplatform.services.jcr.impl.core.query.Reindexable;
+import org.exoplatform.services.jcr.impl.core.query.ResumableNodeDataIndexingIterator;
 import org.exoplatform.services.jcr.impl.core.query.lucene.directory.DirectoryManager;
 import org.exoplatform.services.jcr.impl.util.io.DirectoryHelper;
 import org.exoplatform.services.rpc.RPCException;
@@ -47,8 +51,6 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
 import java.text.DecimalFormat;
@@ -73,6 +75,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.jcr.ItemNotFoundException;
 import javax.jcr.RepositoryException;
@@ -101,7 +105,9 @@ import javax.jcr.RepositoryException;
  * <br>
  * Note on implementation: Multiple modifying threads are synchronized on a
  * <code>MultiIndex</code> instance itself. Sychronization between a modifying
- * thread and reader threads is done using {@link #updateMonitor}.
+ * thread and reader threads is done using {@link #updateMonitor}. As long as
+ * the current {@link #multiReader} is valid, it is acquired by the reader
+ * threads without any lock, so that searches are not blocked by updates.
  */
 public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorListener
 {
@@ -172,7 +178,7 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
     * If not <code>null</code> points to a valid <code>IndexReader</code> that
     * reads from all indexes, including volatile and persistent indexes.
     */
-   private CachingMultiIndexReader multiReader;
+   private volatile CachingMultiIndexReader multiReader;
 
    /**
     * Shared document number cache across all persistent indexes.
@@ -263,6 +269,22 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
     */
    private AtomicLong nodesCount;
 
+   /**
+    * The name of the file where the position of a re-indexing from the database is saved,
+    * so that it can be resumed if it is interrupted.
+    */
+   private static final String REINDEXING_CHECKPOINT = "reindexing.checkpoint";
+
+   /**
+    * The indexing in progress, <code>null</code> if none.
+    */
+   private volatile MultithreadedIndexing indexing;
+
+   /**
+    * Saves the position of the re-indexing in progress from the database, <code>null</code> if none.
+    */
+   private volatile ReindexingCheckpointer checkpointer;
+
    /**
     * The shutdown hook
     */
@@ -481,24 +503,37 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
 
       try
       {
-         if (doForceReindexing && !indexes.isEmpty())
+         // a re-indexing from the database interrupted before its end is resumed from its last checkpoint
+         NodeDataIndexingIterator resumed = doForceReindexing ? null : resumeReindexing();
+         if ((doForceReindexing || (resumed == null && hasReindexingCheckpoint())) && !indexes.isEmpty())
          {
-            LOG.info("Removing stale indexes (" + handler.getContext().getWorkspacePath(true) + ").");
+            // the files of the stale indexes that did not change on the coordinator are kept
+            if (resumed == null && isIndexRecoverableFromCoordinator())
+            {
+               LOG.info("Synchronizing index with coordinator (" + handler.getContext().getWorkspacePath(true)
+                  + ")...");
+               indexCreated = recoveryIndexFromCoordinator();
+            }
 
-            List<PersistentIndex> oldIndexes = new ArrayList<PersistentIndex>(indexes);
-            for (PersistentIndex persistentIndex : oldIndexes)
+            if (!indexCreated && !indexes.isEmpty())
             {
-               deleteIndex(persistentIndex);
+               LOG.info("Removing stale indexes (" + handler.getContext().getWorkspacePath(true) + ").");
+
+               List<PersistentIndex> oldIndexes = new ArrayList<PersistentIndex>(indexes);
+               for (PersistentIndex persistentIndex : oldIndexes)
+               {
+                  deleteIndex(persistentIndex);
+               }
+               attemptDelete();
             }
-            attemptDelete();
          }
 
-         if (indexNames.size() == 0)
+         if (indexNames.size() == 0 || resumed != null || indexCreated)
          {
             try
             {
                // isRecoveryFilterUsed returns true only if LocalIndex strategy used
-               if (handler.getContext().isRecoveryFilterUsed())
+               if (!indexCreated && resumed == null && handler.getContext().isRecoveryFilterUsed())
                {
                   // if "from-coordinator" index recovery configured 
                   if (SearchIndex.INDEX_RECOVERY_MODE_FROM_COORDINATOR.equals(handler.getIndexRecoveryMode()))
@@ -511,12 +546,7 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
                            + ")...");
                         indexCreated = recoveryIndexFromCoordinator();
 
-                        if (indexCreated)
-                        {
-                           indexNames.read();
-                           refreshIndexList();
-                        }
-                        else
+                        if (!indexCreated)
                         {
                            LOG.info("Switching to local re-indexing.");
                         }
@@ -568,13 +598,17 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
 
                   long count;
 
-                  if (handler.isRDBMSReindexing() && rdbmsReindexableComponent != null
+                  if (resumed != null)
+                  {
+                     count = createIndex(resumed, indexingTree.getIndexingRoot(), true);
+                  }
+                  else if (handler.isRDBMSReindexing() && rdbmsReindexableComponent != null
                      && rdbmsReindexableComponent.isReindexingSupported())
                   {
                      count =
                         createIndex(
                            rdbmsReindexableComponent.getNodeDataIndexingIterator(handler.getReindexingPageSize()),
-                           indexingTree.getIndexingRoot());
+                           indexingTree.getIndexingRoot(), true);
                   }
                   else
                   {
@@ -582,6 +616,7 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
                   }
 
                   executeAndLog(new Commit(getTransactionId()));
+                  deleteReindexingCheckpoint();
                   LOG.info("Initial index for {} nodes created ({}).", new Long(count), handler.getContext()
                      .getWorkspacePath(true));
                   releaseMultiReader();
@@ -648,12 +683,14 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
       Reindexable rdbmsReindexableComponent =
          (Reindexable)handler.getContext().getContainer().getComponent(Reindexable.class);
 
+      createThreadFindNodesCount(rdbmsReindexableComponent).start();
+
       if (handler.isRDBMSReindexing() && rdbmsReindexableComponent != null
          && rdbmsReindexableComponent.isReindexingSupported())
       {
          count =
             createIndex(rdbmsReindexableComponent.getNodeDataIndexingIterator(handler.getReindexingPageSize()),
-               indexingTree.getIndexingRoot());
+               indexingTree.getIndexingRoot(), false);
       }
       else
       {
@@ -1373,7 +1410,26 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
     * @throws IOException
     *             if an error occurs constructing the <code>IndexReader</code>.
     */
-   public synchronized CachingMultiIndexReader getIndexReader(final boolean initCache) throws IOException
+   public CachingMultiIndexReader getIndexReader(final boolean initCache) throws IOException
+   {
+      // the reader is a snapshot of the indexes, as long as it has not been
+      // released by an update it can be shared without waiting for the writers
+      CachingMultiIndexReader reader = multiReader;
+      if (reader != null && reader.tryAcquire())
+      {
+         return reader;
+      }
+      synchronized (this)
+      {
+         return getIndexReaderUnderLock(initCache);
+      }
+   }
+
+   /**
+    * Returns the current {@link #multiReader} or creates it, the caller must
+    * hold the lock of this <code>MultiIndex</code>.
+    */
+   private CachingMultiIndexReader getIndexReaderUnderLock(final boolean initCache) throws IOException
    {
       return SecurityHelper.doPrivilegedIOExceptionAction(new PrivilegedExceptionAction<CachingMultiIndexReader>()
       {
@@ -1494,7 +1550,8 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
             {
                LOG.error("Exception while closing search index.", e);
             }
-            if (modeHandler.getMode().equals(IndexerIoMode.READ_WRITE))
+            // an interrupted re-indexing is rolled back to its last checkpoint instead
+            if (modeHandler.getMode().equals(IndexerIoMode.READ_WRITE) && checkpointer == null)
             {
                try
                {
@@ -2071,17 +2128,39 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
     *             the NodeDataIndexing iterator            
     * @param rootNode
     *            the root node of the index 
+    * @param resumable
+    *            indicates whether the position of the iterator is saved from time to time
+    *            so that the indexing can be resumed if it is interrupted
     * @return the total amount of indexed nodes           
     * @throws IOException
     *             if an error occurs while writing to the index.
     * @throws RepositoryException
     *             if any other error occurs
     */
-   private long createIndex(NodeDataIndexingIterator iterator, NodeData rootNode) throws IOException,
-      RepositoryException
+   private long createIndex(NodeDataIndexingIterator iterator, NodeData rootNode, boolean resumable)
+      throws IOException, RepositoryException
    {
       MultithreadedIndexing indexing = new MultithreadedIndexing(iterator, rootNode);
-      return indexing.launch(false);
+      if (resumable && iterator instanceof ResumableNodeDataIndexingIterator
+         && handler.getReindexingCheckpointInterval() > 0)
+      {
+         checkpointer = new ReindexingCheckpointer((ResumableNodeDataIndexingIterator)iterator);
+         // a crash from now on leaves a checkpoint so that the partial index is not taken for a complete one
+         checkpointer.checkpoint();
+         synchronized (this)
+         {
+            // the nodes indexed before the re-indexing has been interrupted
+            indexing.processing.set(getPersistentNumDocuments());
+         }
+      }
+      try
+      {
+         return indexing.launch(false);
+      }
+      finally
+      {
+         checkpointer = null;
+      }
    }
 
    /**
@@ -2103,7 +2182,45 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
    private void createIndex(final NodeDataIndexingIterator iterator, NodeData rootNode, final AtomicLong count,
       final AtomicLong processed) throws RepositoryException, InterruptedException, IOException
    {
-      for (NodeDataIndexing node : iterator.next())
+      ReindexingCheckpointer checkpointer = this.checkpointer;
+      if (checkpointer == null)
+      {
+         createIndex(iterator.next(), rootNode, count, processed);
+         return;
+      }
+      // a checkpoint can only be done once the pages read from the iterator have been fully indexed
+      checkpointer.lock.readLock().lock();
+      try
+      {
+         createIndex(iterator.next(), rootNode, count, processed);
+      }
+      finally
+      {
+         checkpointer.lock.readLock().unlock();
+      }
+      checkpointer.checkpointIfNeeded();
+   }
+
+   /**
+    * Indexes a page of nodes.
+    * 
+    * @param nodes
+    *             the nodes to index
+    * @param rootNode
+    *            the root node of the index                          
+    * @param count
+    *            the number of nodes already indexed.
+    * @throws IOException
+    *             if an error occurs while writing to the index.
+    * @throws RepositoryException
+    *             if any other error occurs
+    * @throws InterruptedException
+    *             if the task has been interrupted 
+    */
+   private void createIndex(List<NodeDataIndexing> nodes, NodeData rootNode, final AtomicLong count,
+      final AtomicLong processed) throws RepositoryException, InterruptedException, IOException
+   {
+      for (NodeDataIndexing node : nodes)
       {
          processed.incrementAndGet();
          if (stopped.get() || Thread.interrupted())
@@ -2187,6 +2304,169 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
       }
    }
 
+   /**
+    * Gives the iterator of an interrupted re-indexing from the database moved to its last checkpoint.
+    * 
+    * @return the iterator or <code>null</code> if there is no re-indexing to resume or if it cannot be
+    *         resumed
+    * @throws IOException
+    *             if an error occurs while reading the index
+    */
+   private NodeDataIndexingIterator resumeReindexing() throws IOException
+   {
+      if (!hasReindexingCheckpoint())
+      {
+         return null;
+      }
+      Reindexable rdbmsReindexableComponent =
+         (Reindexable)handler.getContext().getContainer().getComponent(Reindexable.class);
+      if (!handler.isRDBMSReindexing() || rdbmsReindexableComponent == null
+         || !rdbmsReindexableComponent.isReindexingSupported())
+      {
+         LOG.warn("The interrupted re-indexing of {} cannot be resumed without the RDBMS re-indexing, the index"
+            + " will be created from scratch.", handler.getContext().getWorkspacePath(true));
+         return null;
+      }
+      long numDocs;
+      synchronized (this)
+      {
+         numDocs = getPersistentNumDocuments();
+      }
+      // the new checkpoint is written first, so the previous one is used if the last writing was not completed
+      for (String fileName : new String[]{REINDEXING_CHECKPOINT, REINDEXING_CHECKPOINT + ".new"})
+      {
+         if (!indexDir.fileExists(fileName))
+         {
+            continue;
+         }
+         String position;
+         IndexInput in = indexDir.openInput(fileName);
+         try
+         {
+            if (in.readLong() != numDocs)
+            {
+               // the index has been flushed after this checkpoint
+               continue;
+            }
+            position = in.readString();
+         }
+         catch (IOException e)
+         {
+            LOG.debug("Cannot read the checkpoint " + fileName, e);
+            continue;
+         }
+         finally
+         {
+            in.close();
+         }
+         try
+         {
+            NodeDataIndexingIterator iterator =
+               rdbmsReindexableComponent.getNodeDataIndexingIterator(handler.getReindexingPageSize());
+            if (iterator instanceof ResumableNodeDataIndexingIterator)
+            {
+               ((ResumableNodeDataIndexingIterator)iterator).resume(position);
+               LOG.info("Resuming the interrupted re-indexing of {} from {} indexed nodes.", handler.getContext()
+                  .getWorkspacePath(true), new Long(numDocs));
+               return iterator;
+            }
+         }
+         catch (RepositoryException e)
+         {
+            LOG.warn("Cannot resume the interrupted re-indexing: " + e.getMessage());
+         }
+         break;
+      }
+      LOG.warn("The interrupted re-indexing of {} cannot be resumed, the index will be created from scratch.",
+         handler.getContext().getWorkspacePath(true));
+      return null;
+   }
+
+   /**
+    * Indicates whether a re-indexing has been interrupted.
+    * 
+    * @return <code>true</code> if the checkpoint of a re-indexing from the database exists
+    * @throws IOException
+    *             if an error occurs while reading the index directory
+    */
+   boolean hasReindexingCheckpoint() throws IOException
+   {
+      return indexDir.fileExists(REINDEXING_CHECKPOINT) || indexDir.fileExists(REINDEXING_CHECKPOINT + ".new");
+   }
+
+   /**
+    * Saves the position of the re-indexing from the database, twice so that one of the checkpoints can
+    * always be read.
+    * 
+    * @param numDocs
+    *            the amount of documents in the persistent indexes at this position
+    * @param position
+    *            the position of the iterator
+    * @throws IOException
+    *             if an error occurs while writing the checkpoint
+    */
+   private void writeReindexingCheckpoint(long numDocs, String position) throws IOException
+   {
+      for (String fileName : new String[]{REINDEXING_CHECKPOINT + ".new", REINDEXING_CHECKPOINT})
+      {
+         IndexOutput out = indexDir.createOutput(fileName);
+         try
+         {
+            out.writeLong(numDocs);
+            out.writeString(position);
+         }
+         finally
+         {
+            out.close();
+         }
+         indexDir.sync(Collections.singleton(fileName));
+      }
+   }
+
+   /**
+    * Removes the checkpoints of the re-indexing from the database once it is over.
+    * 
+    * @throws IOException
+    *             if an error occurs while deleting the checkpoints
+    */
+   private void deleteReindexingCheckpoint() throws IOException
+   {
+      for (String fileName : new String[]{REINDEXING_CHECKPOINT, REINDEXING_CHECKPOINT + ".new"})
+      {
+         if (indexDir.fileExists(fileName))
+         {
+            indexDir.deleteFile(fileName);
+         }
+      }
+   }
+
+   /**
+    * Gives the amount of documents in the persistent indexes.
+    */
+   private long getPersistentNumDocuments() throws IOException
+   {
+      long numDocs = 0;
+      for (PersistentIndex index : indexes)
+      {
+         if (indexNames.contains(index.getName()))
+         {
+            numDocs += index.getNumDocuments();
+         }
+      }
+      return numDocs;
+   }
+
+   /**
+    * Gives the progress of the indexing in progress.
+    * 
+    * @return the description of the progress or <code>null</code> if no indexing is in progress
+    */
+   public String getIndexingProgress()
+   {
+      MultithreadedIndexing indexing = this.indexing;
+      return indexing == null || indexing.endSignal.getCount() == 0 ? null : indexing.getProgress();
+   }
+
    /**
     * Attempts to delete all files recorded in {@link #deletable}.
     */
@@ -3610,6 +3890,16 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
 
       private final AtomicLong processing = new AtomicLong();
 
+      /**
+       * The amount of nodes already processed when the indexing started
+       */
+      private long initialProcessing;
+
+      /**
+       * The time at which the indexing started
+       */
+      private long startTime;
+
       /**
        * All the indexing threads
        */
@@ -3765,6 +4055,9 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
        */
       public long launch(boolean asynchronous) throws IOException, RepositoryException
       {
+         initialProcessing = processing.get();
+         startTime = System.currentTimeMillis();
+         indexing = this;
          startThreads();
          if (!asynchronous)
          {
@@ -3796,6 +4089,35 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
          return -1L;
       }
 
+      /**
+       * Gives the progress of the indexing.
+       * 
+       * @return the amount of processed nodes, the throughput and the estimated remaining time if
+       *         the total amount of nodes is known
+       */
+      String getProgress()
+      {
+         long processed = processing.get();
+         long time = Math.max(System.currentTimeMillis() - startTime, 1);
+         double rate = 1000d * (processed - initialProcessing) / time;
+         DecimalFormat format = new DecimalFormat("###.#");
+         StringBuilder progress = new StringBuilder();
+         progress.append(processed).append(" nodes processed, ").append(count.get()).append(" indexed, ")
+            .append(format.format(rate)).append(" nodes/s");
+         AtomicLong total = nodesCount;
+         if (total != null && total.get() > 0)
+         {
+            progress.append(", ").append(format.format(Math.min(100d * processed / total.get(), 100))).append('%');
+            if (rate > 0)
+            {
+               long remaining = (long)(Math.max(total.get() - processed, 0) / rate);
+               progress.append(", ETA ").append(String.format("%d:%02d:%02d", remaining / 3600, remaining / 60 % 60,
+                  remaining % 60));
+            }
+         }
+         return progress.toString();
+      }
+
       /**
        * Starts all the indexing threads
        */
@@ -3821,8 +4143,116 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
       }
    }
 
+   /**
+    * Saves from time to time the position of a re-indexing from the database. A checkpoint waits for the
+    * pages being indexed and prevents the reading of the next ones, then it flushes the index and saves the
+    * position of the iterator along with the amount of documents of the index. The changes done after a
+    * checkpoint belong to a transaction which is rolled back by the recovery of the index if the re-indexing
+    * is interrupted, so that the re-indexing can be resumed from the last checkpoint.
+    */
+   private class ReindexingCheckpointer
+   {
+      /**
+       * The read lock is held while a page is indexed, the write lock while a checkpoint is done
+       */
+      private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+      /**
+       * The iterator of the re-indexing
+       */
+      private final ResumableNodeDataIndexingIterator iterator;
+
+      /**
+       * The time of the next checkpoint, {@link Long#MAX_VALUE} while a checkpoint is done
+       */
+      private final AtomicLong nextCheckpoint = new AtomicLong();
+
+      ReindexingCheckpointer(ResumableNodeDataIndexingIterator iterator)
+      {
+         this.iterator = iterator;
+      }
+
+      /**
+       * Does a checkpoint if the checkpoint interval has elapsed since the last one.
+       * 
+       * @throws IOException
+       *             if an error occurs while flushing the index or saving the checkpoint
+       */
+      void checkpointIfNeeded() throws IOException
+      {
+         long next = nextCheckpoint.get();
+         if (System.currentTimeMillis() < next || !nextCheckpoint.compareAndSet(next, Long.MAX_VALUE))
+         {
+            return;
+         }
+         lock.writeLock().lock();
+         try
+         {
+            checkpoint();
+         }
+         finally
+         {
+            lock.writeLock().unlock();
+         }
+      }
+
+      /**
+       * Does a checkpoint, the caller must ensure that no page is being indexed.
+       * 
+       * @throws IOException
+       *             if an error occurs while flushing the index or saving the checkpoint
+       */
+      void checkpoint() throws IOException
+      {
+         try
+         {
+            long time = System.currentTimeMillis();
+            flush();
+            long numDocs;
+            synchronized (MultiIndex.this)
+            {
+               // the next changes are rolled back by the recovery if the re-indexing is interrupted
+               executeAndLog(new Start(Action.INTERNAL_TRANSACTION));
+               numDocs = getPersistentNumDocuments();
+            }
+            writeReindexingCheckpoint(numDocs, iterator.getCheckpoint());
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("Re-indexing checkpoint with {} nodes done in {} ms", new Long(numDocs), new Long(System
+                  .currentTimeMillis() - time));
+            }
+         }
+         finally
+         {
+            nextCheckpoint.set(System.currentTimeMillis() + handler.getReindexingCheckpointInterval());
+         }
+      }
+   }
+
+   /**
+    * Indicates whether the index can be retrieved from the coordinator.
+    */
+   private boolean isIndexRecoverableFromCoordinator()
+   {
+      try
+      {
+         // isRecoveryFilterUsed returns true only if LocalIndex strategy used
+         return handler.getContext().isRecoveryFilterUsed()
+            && SearchIndex.INDEX_RECOVERY_MODE_FROM_COORDINATOR.equals(handler.getIndexRecoveryMode())
+            && handler.getContext().getIndexRecovery() != null && handler.getContext().getRPCService() != null
+            && !handler.getContext().getRPCService().isCoordinator();
+      }
+      catch (RPCException e)
+      {
+         LOG.error("Cannot check if this node is the coordinator", e);
+         return false;
+      }
+   }
+
    /** 
-    * Retrieves index from other node.
+    * Retrieves index from other node. Only the files that are missing or that differ from the ones
+    * of the coordinator are retrieved, then the changes that the coordinator had not yet flushed
+    * into its persistent indexes are replayed from its redo log.
     *  
     * @throws IOException if can't clean up directory after retrieving being failed 
     */
@@ -3838,32 +4268,42 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
          {
             return false;
          }
-         indexRecovery.setIndexOffline();
 
-         for (String filePath : indexRecovery.getIndexList())
+         // the current indexes are reopened once their files are synchronized
+         synchronized (updateMonitor)
          {
-            File indexFile = new File(indexDirectory, filePath);
-            if (!PrivilegedFileHelper.exists(indexFile.getParentFile()))
-            {
-               PrivilegedFileHelper.mkdirs(indexFile.getParentFile());
-            }
-
-            // transfer file 
-            InputStream in = indexRecovery.getIndexFile(filePath);
-            OutputStream out = PrivilegedFileHelper.fileOutputStream(indexFile);
-            try
-            {
-               DirectoryHelper.transfer(in, out);
-            }
-            finally
+            releaseMultiReader();
+            for (PersistentIndex index : indexes)
             {
-               DirectoryHelper.safeClose(in);
-               DirectoryHelper.safeClose(out);
+               index.releaseWriterAndReaders();
             }
+         }
+         if (redoLog != null)
+         {
+            // the redo log of the coordinator replaces the local one
+            redoLog.clear();
+         }
 
+         indexRecovery.setIndexOffline();
+         try
+         {
+            new IndexFilesSynchronizer(indexRecovery, indexDirectory, handler.getIndexRecoveryThreads())
+               .synchronize();
+         }
+         finally
+         {
             indexRecovery.setIndexOnline();
          }
 
+         indexNames.read();
+         refreshIndexList();
+
+         if (modeHandler.getMode() == IndexerIoMode.READ_WRITE)
+         {
+            redoLog = new RedoLog(indexDir);
+            Recovery.run(this, redoLog);
+         }
+
          return true;
       }
       catch (RepositoryException e)
@@ -3879,6 +4319,13 @@ public class MultiIndex implements IndexerIoModeListener, IndexUpdateMonitorList
 
       LOG.info("Clean up index directory " + indexDirectory.getAbsolutePath());
       DirectoryHelper.removeDirectory(indexDirectory);
+      if (!indexes.isEmpty())
+      {
+         // forget the indexes whose files have just been removed
+         PrivilegedFileHelper.mkdirs(indexDirectory);
+         indexNames.read();
+         refreshIndexList();
+      }
 
       return false;
    }
@@ -19,15 +19,18 @@ package org.exoplatform.services.jcr.impl.core.query.lucene;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.Fieldable;
-import org.exoplatform.services.document.AdvancedDocumentReader;
-import org.exoplatform.services.document.DocumentReadException;
 import org.exoplatform.services.document.DocumentReader;
 import org.exoplatform.services.document.DocumentReaderService;
 import org.exoplatform.services.document.HandlerNotFoundException;
+import org.exoplatform.services.jcr.access.AccessControlEntry;
+import org.exoplatform.services.jcr.access.AccessControlList;
+import org.exoplatform.services.jcr.access.PermissionType;
 import org.exoplatform.services.jcr.core.ExtendedPropertyType;
 import org.exoplatform.services.jcr.dataflow.ItemDataConsumer;
 import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.ItemData;
 import org.exoplatform.services.jcr.datamodel.ItemType;
+import org.exoplatform.services.jcr.datamodel.NodeData;
 import org.exoplatform.services.jcr.datamodel.NodeDataIndexing;
 import org.exoplatform.services.jcr.datamodel.PropertyData;
 import org.exoplatform.services.jcr.datamodel.QPathEntry;
@@ -40,16 +43,15 @@ import org.exoplatform.services.jcr.impl.dataflow.ValueDataUtil;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.IOException;
-import java.io.InputStream;
 import java.io.Reader;
-import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import javax.jcr.NamespaceException;
 import javax.jcr.PropertyType;
@@ -125,6 +127,13 @@ public class NodeIndexer
 
    private boolean loadPropertyByName;
 
+   private boolean indexAccessControl;
+
+   /**
+    * The cache of the texts extracted from the binary values, <code>null</code> if disabled.
+    */
+   private ExtractedTextCache textCache;
+
    /**
     * Creates a new node indexer.
     *
@@ -213,6 +222,24 @@ public class NodeIndexer
       this.loadPropertyByName = loadPropertyByName;
    }
 
+   /**
+    * Indicates whether the owner and the identities allowed to read the node should be
+    * stored in the index, in order to be able to filter the query results by read permission
+    * directly in the index.
+    */
+   public void setIndexAccessControl(boolean indexAccessControl)
+   {
+      this.indexAccessControl = indexAccessControl;
+   }
+
+   /**
+    * Sets the cache from which the texts of the binary values are taken when already extracted.
+    */
+   public void setExtractedTextCache(ExtractedTextCache textCache)
+   {
+      this.textCache = textCache;
+   }
+
    /**
     * Creates a lucene Document.
     *
@@ -270,6 +297,11 @@ public class NodeIndexer
          doc.add(new Field(FieldNames.PATH, path.toString(), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
       }
 
+      if (indexAccessControl)
+      {
+         addAccessControl(doc);
+      }
+
       Collection<PropertyData> props = node.getChildPropertiesData();
       if (props == null)
       {
@@ -390,8 +422,8 @@ public class NodeIndexer
                      return;
                   }
 
-                  DocumentReader dreader =
-                     extractor.getDocumentReader(ValueDataUtil.getString(pmime.getValues().get(0)));
+                  String mimeType = ValueDataUtil.getString(pmime.getValues().get(0));
+                  DocumentReader dreader = extractor.getDocumentReader(mimeType);
 
                   // check the jcr:encoding property
                   PropertyData encProp = node.getProperty(Constants.JCR_ENCODING.getAsString());
@@ -416,63 +448,11 @@ public class NodeIndexer
                      }
                   }
 
-                  if (dreader instanceof AdvancedDocumentReader)
-                  {
-                     // its a tika document reader that supports getContentAsReader
-                     for (ValueData pvd : data)
-                     {
-                        // tikaDocumentReader will close inputStream, so no need to close it at finally 
-                        // statement
-
-                        InputStream is = null;
-                        is = pvd.getAsStream();
-                        Reader reader;
-                        if (encoding != null)
-                        {
-                           reader = ((AdvancedDocumentReader)dreader).getContentAsReader(is, encoding);
-                        }
-                        else
-                        {
-                           reader = ((AdvancedDocumentReader)dreader).getContentAsReader(is);
-                        }
-                        doc.add(createFulltextField(reader));
-                     }
-                  }
-                  else
+                  for (ValueData pvd : data)
                   {
-                     // old-style document reader
-                     for (ValueData pvd : data)
-                     {
-                        InputStream is = null;
-                        try
-                        {
-                           is = pvd.getAsStream();
-                           Reader reader;
-                           if (encoding != null)
-                           {
-                              reader = new StringReader(dreader.getContentAsText(is, encoding));
-                           }
-                           else
-                           {
-                              reader = new StringReader(dreader.getContentAsText(is));
-                           }
-                           doc.add(createFulltextField(reader));
-                        }
-                        finally
-                        {
-                           try
-                           {
-                              is.close();
-                           }
-                           catch (Throwable e) //NOSONAR
-                           {
-                              if (LOG.isTraceEnabled())
-                              {
-                                 LOG.trace("An exception occurred: " + e.getMessage());
-                              }
-                           }
-                        }
-                     }
+                     // the text is extracted when the field is read for the first time
+                     doc.add(createFulltextField(new TextExtractionReader(dreader, pvd, mimeType, encoding,
+                        textCache, propData.getQPath().getAsString())));
                   }
 
                   if (data.size() > 1)
@@ -482,19 +462,6 @@ public class NodeIndexer
                   }
 
                }
-               catch (DocumentReadException e)
-               {
-                  if (LOG.isDebugEnabled())
-                  {
-                     LOG.debug("Cannot extract the full text content of the property " + propData.getQPath().getAsString()
-                        + ", propery id '" + propData.getIdentifier() + "' : " + e, e);
-                  }
-                  else
-                  {
-                     LOG.warn("Cannot extract the full text content of the property " + propData.getQPath().getAsString()
-                        + ", propery id '" + propData.getIdentifier());
-                  }
-               }
                catch (HandlerNotFoundException e)
                {
                   // no handler - no index
@@ -504,20 +471,6 @@ public class NodeIndexer
                         + ", propery id '" + propData.getIdentifier() + "' : " + e, e);
                   }
                }
-               catch (IOException e)
-               {
-                  // no data - no index
-                  if (LOG.isDebugEnabled())
-                  {
-                     LOG.debug("An IO exception occurred while trying to extract the full text content of the property " + propData.getQPath().getAsString()
-                        + ", propery id '" + propData.getIdentifier() + "' : " + e, e);
-                  }
-                  else
-                  {
-                     LOG.warn("An IO exception occurred while trying to extract the full text content of the property " + propData.getQPath().getAsString()
-                        + ", propery id '" + propData.getIdentifier());
-                  }
-               }
                catch (Exception e)
                {
                   if (LOG.isDebugEnabled())
@@ -1085,4 +1038,78 @@ public class NodeIndexer
       InternalQName name = node.getQPath().getName();
       addNodeName(doc, name.getNamespace(), name.getName());
    }
+
+   /**
+    * Adds the fields {@link FieldNames#ACL_OWNER}, {@link FieldNames#ACL_READ} and
+    * {@link FieldNames#ACL_READ_GROUP} to the given <code>doc</code> from the effective
+    * ACL of the node.
+    *
+    * @param doc the document.
+    * @throws RepositoryException if the effective ACL of the node cannot be retrieved
+    */
+   protected void addAccessControl(Document doc) throws RepositoryException
+   {
+      AccessControlList acl = node.getACL();
+      if (acl == null || !acl.hasOwner() || !acl.hasPermissions())
+      {
+         // The ACL has not been fully resolved, which is the case for the nodes loaded
+         // for a RDBMS reindexing, so we get it from the data manager
+         ItemData data = stateProvider.getItemData(node.getIdentifier());
+         if (data instanceof NodeData && ((NodeData)data).getACL() != null)
+         {
+            acl = ((NodeData)data).getACL();
+         }
+      }
+      if (acl == null)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("No ACL could be found for the node located at " + node.getQPath().getAsString());
+         }
+         return;
+      }
+      addAccessControlFields(doc, acl);
+   }
+
+   /**
+    * Adds the fields {@link FieldNames#ACL_OWNER}, {@link FieldNames#ACL_READ} and
+    * {@link FieldNames#ACL_READ_GROUP} corresponding to the given ACL.
+    *
+    * @param doc the document.
+    * @param acl the effective ACL of the node.
+    */
+   static void addAccessControlFields(Document doc, AccessControlList acl)
+   {
+      if (acl.hasOwner())
+      {
+         doc.add(new Field(FieldNames.ACL_OWNER, acl.getOwner(), Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+      }
+      if (acl.hasPermissions())
+      {
+         Set<String> identities = new HashSet<String>();
+         Set<String> groups = new HashSet<String>();
+         List<AccessControlEntry> entries = acl.getPermissionEntries();
+         for (int i = 0, length = entries.size(); i < length; i++)
+         {
+            AccessControlEntry entry = entries.get(i);
+            if (!PermissionType.READ.equals(entry.getPermission()))
+            {
+               continue;
+            }
+            String identity = entry.getIdentity();
+            if (identities.add(identity) && identity.indexOf(':') != -1)
+            {
+               groups.add(entry.getMembershipEntry().getGroup());
+            }
+         }
+         for (String identity : identities)
+         {
+            doc.add(new Field(FieldNames.ACL_READ, identity, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+         }
+         for (String group : groups)
+         {
+            doc.add(new Field(FieldNames.ACL_READ_GROUP, group, Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS));
+         }
+      }
+   }
 }
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.OpenBitSet;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityConstants;
+import org.exoplatform.services.security.MembershipEntry;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A lucene {@link Filter} that only accepts the documents of the nodes that a given {@link Identity}
+ * is allowed to read, according to the fields {@link FieldNames#ACL_OWNER}, {@link FieldNames#ACL_READ}
+ * and {@link FieldNames#ACL_READ_GROUP} added by the {@link NodeIndexer} when the access control
+ * is indexed. The rules are the same as the ones of the default <code>AccessManager</code>: the owner
+ * has all the permissions, the anonymous user only gets the permissions granted to <i>any</i> and the
+ * other users get the permissions granted to their user id, to <i>any</i> and to their memberships.
+ *
+ * @version $Id$
+ */
+public class ReadPermissionFilter extends Filter
+{
+   private static final long serialVersionUID = -3415418375385925567L;
+
+   /**
+    * The terms matching the documents that can be read
+    */
+   private final Term[] terms;
+
+   /**
+    * @param terms the terms matching the documents that can be read
+    */
+   private ReadPermissionFilter(Term[] terms)
+   {
+      this.terms = terms;
+   }
+
+   /**
+    * Creates the filter corresponding to the given identity.
+    *
+    * @param identity the identity of the user executing the query
+    * @return the filter to apply or <code>null</code> if the identity can read everything
+    */
+   public static ReadPermissionFilter create(Identity identity)
+   {
+      String userId = identity.getUserId();
+      if (IdentityConstants.SYSTEM.equals(userId))
+      {
+         return null;
+      }
+      Set<Term> terms = new LinkedHashSet<Term>();
+      terms.add(new Term(FieldNames.ACL_OWNER, userId));
+      terms.add(new Term(FieldNames.ACL_READ, IdentityConstants.ANY));
+      if (!IdentityConstants.ANONIM.equals(userId))
+      {
+         terms.add(new Term(FieldNames.ACL_READ, userId));
+         Collection<MembershipEntry> memberships = identity.getMemberships();
+         if (memberships != null)
+         {
+            for (MembershipEntry membership : memberships)
+            {
+               String group = membership.getGroup();
+               if (MembershipEntry.ANY_TYPE.equals(membership.getMembershipType()))
+               {
+                  // Any membership type of the group is matched
+                  terms.add(new Term(FieldNames.ACL_READ_GROUP, group));
+               }
+               else
+               {
+                  terms.add(new Term(FieldNames.ACL_READ, membership.getMembershipType() + ":" + group));
+                  terms.add(new Term(FieldNames.ACL_READ, MembershipEntry.ANY_TYPE + ":" + group));
+               }
+            }
+         }
+      }
+      return new ReadPermissionFilter(terms.toArray(new Term[terms.size()]));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public DocIdSet getDocIdSet(IndexReader reader) throws IOException
+   {
+      OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+      for (int i = 0; i < terms.length; i++)
+      {
+         TermDocs termDocs = reader.termDocs(terms[i]);
+         try
+         {
+            while (termDocs.next())
+            {
+               bits.fastSet(termDocs.doc());
+            }
+         }
+         finally
+         {
+            termDocs.close();
+         }
+      }
+      return bits;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public String toString()
+   {
+      StringBuilder sb = new StringBuilder("ReadPermissionFilter(");
+      for (int i = 0; i < terms.length; i++)
+      {
+         if (i > 0)
+         {
+            sb.append(' ');
+         }
+         sb.append(terms[i]);
+      }
+      return sb.append(')').toString();
+   }
+}
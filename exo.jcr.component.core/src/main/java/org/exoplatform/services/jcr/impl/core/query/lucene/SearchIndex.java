@@ -31,6 +31,7 @@ import org.apache.lucene.index.MultiReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.index.TermDocs;
 import org.apache.lucene.search.FieldComparatorSource;
+import org.apache.lucene.search.FilteredQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.Similarity;
@@ -62,6 +63,7 @@ import org.exoplatform.services.jcr.impl.checker.InspectionReport;
 import org.exoplatform.services.jcr.impl.core.LocationFactory;
 import org.exoplatform.services.jcr.impl.core.SessionDataManager;
 import org.exoplatform.services.jcr.impl.core.SessionImpl;
+import org.exoplatform.services.jcr.impl.core.access.DefaultAccessManagerImpl;
 import org.exoplatform.services.jcr.impl.core.query.AbstractQueryHandler;
 import org.exoplatform.services.jcr.impl.core.query.DefaultQueryNodeFactory;
 import org.exoplatform.services.jcr.impl.core.query.ErrorLog;
@@ -104,6 +106,11 @@ import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
@@ -187,6 +194,11 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
     */
    public static final int DEFAULT_REINDEXING_PAGE_SIZE = 100;
 
+   /**
+    * The default value for {@link #reindexingCheckpointInterval}.
+    */
+   public static final long DEFAULT_REINDEXING_CHECKPOINT_INTERVAL = 5 * 60 * 1000L;
+
    /**
     * The default value for {@link #rdbmsReindexing}.
     */
@@ -223,6 +235,11 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
     */
    public static final String INDEX_RECOVERY_MODE_FROM_COORDINATOR = "from-coordinator";
 
+   /**
+    * The default value for {@link #indexRecoveryThreads}.
+    */
+   public static final int DEFAULT_INDEX_RECOVERY_THREADS = 4;
+
    /**
     * Default name of the error log file
     */
@@ -298,11 +315,46 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
     */
    private int extractorBackLog = DEFAULT_EXTRACTOR_BACK_LOG;
 
+   /**
+    * The pool of {@link #extractorPoolSize} threads extracting the texts of
+    * the documents of the added nodes before the index is updated.
+    * <code>null</code> if the texts are extracted when the documents are added
+    * to the index.
+    */
+   private volatile ThreadPoolExecutor extractorPool;
+
    /**
     * extractorTimeout config parameter
     */
    private long extractorTimeout = DEFAULT_EXTRACTOR_TIMEOUT;
 
+   /**
+    * The directory of the cache of the extracted texts, by default a sibling
+    * of the index directory so that it survives the re-indexing.
+    */
+   private String extractedTextCacheDir;
+
+   /**
+    * The maximum size in bytes of the cache of the extracted texts, 0 to
+    * disable the cache.
+    */
+   private long extractedTextCacheSize = ExtractedTextCache.DEFAULT_MAX_SIZE;
+
+   /**
+    * The cache of the extracted texts, <code>null</code> if disabled.
+    */
+   private ExtractedTextCache textCache;
+
+   /**
+    * The text extractions that exceeded the {@link #extractorTimeout}, by
+    * node identifier. Their documents have been indexed without the text
+    * still being extracted and are indexed again once it is available. Such
+    * documents are marked with the field {@link FieldNames#REINDEXING_REQUIRED}
+    * so that the nodes are indexed again at the next start if the index is
+    * closed before.
+    */
+   private final Map<String, TextExtraction> deferredExtractions = new HashMap<String, TextExtraction>();
+
    /**
     * Number of documents that are buffered before they are added to the index.
     */
@@ -528,6 +580,12 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
     */
    private int reindexingPageSize = DEFAULT_REINDEXING_PAGE_SIZE;
 
+   /**
+    * The minimum time in milliseconds between two checkpoints of the re-indexing from the database,
+    * 0 to disable the checkpoints.
+    */
+   private long reindexingCheckpointInterval = DEFAULT_REINDEXING_CHECKPOINT_INTERVAL;
+
    /**
     * Indicates what reindexing mechanism need to use. 
     */
@@ -538,6 +596,11 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
     */
    private String indexRecoveryMode = INDEX_RECOVERY_MODE_FROM_COORDINATOR;
 
+   /**
+    * The amount of threads retrieving the chunks of the index files from the coordinator.
+    */
+   private int indexRecoveryThreads = DEFAULT_INDEX_RECOVERY_THREADS;
+
    /**
     * Defines reindexing synchronization policy. Whether or not start it asynchronously  
     */
@@ -576,6 +639,13 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
 
    private boolean indexingLoadPropertyByName;
 
+   /**
+    * Indicates whether the owner and the identities allowed to read a node are indexed in order
+    * to filter the query results by read permission directly in the index. Enabling it on an
+    * existing index requires a reindexing.
+    */
+   private boolean indexAccessControl;
+
    /**
     * This timer is used to update the load batching thresholds when they are enabled and the dynamic mode is enabled too
     */
@@ -665,6 +735,17 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       log.info("Index created: " + path);
 
       extractor = context.getExtractor();
+      if (extractorPoolSize > 0 && extractorPool == null)
+      {
+         extractorPool = createExtractorPool();
+      }
+      if (extractedTextCacheSize > 0)
+      {
+         File textCacheDirectory =
+            extractedTextCacheDir == null ? new File(indexDirectory.getParentFile(), indexDirectory.getName()
+               + "-text") : new File(extractedTextCacheDir);
+         textCache = new ExtractedTextCache(textCacheDirectory, extractedTextCacheSize);
+      }
       synProvider = createSynonymProvider();
       directoryManager = createDirectoryManager();
 
@@ -706,7 +787,9 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       if (modeHandler.getMode() == IndexerIoMode.READ_WRITE)
       {
          // set true if indexRecoveryFilters are required and some filter gives positive flag
-         final boolean doReindexing = (index.numDocs() == 0 && context.isCreateInitialIndex());
+         // or if a previous re-indexing has been interrupted
+         final boolean doReindexing =
+            ((index.numDocs() == 0 || index.hasReindexingCheckpoint()) && context.isCreateInitialIndex());
          // if existing index should be removed
          final boolean doForceReindexing = (context.isRecoveryFilterUsed() && isIndexRecoveryRequired());
 
@@ -754,6 +837,7 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       if (modeHandler.getMode() == IndexerIoMode.READ_WRITE)
       {
          recoverErrorLog(errorLog);
+         recoverDeferredExtractions();
       }
 
       modeHandler.addIndexerIoModeListener(this);
@@ -1279,6 +1363,20 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       if (index != null)
       {
          index.update(changes.getRemove(), changes.getAdd());
+         synchronized (deferredExtractions)
+         {
+            if (!deferredExtractions.isEmpty())
+            {
+               for (String id : changes.getAddIds())
+               {
+                  TextExtraction extraction = deferredExtractions.get(id);
+                  if (extraction != null)
+                  {
+                     extraction.applied();
+                  }
+               }
+            }
+         }
       }
    }
 
@@ -1302,33 +1400,36 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
          }
       }));
       final AtomicInteger totalAddedDoc = new AtomicInteger();
-      Collection<Document> docsToAdd = IteratorUtils.toList(new TransformIterator(add, new Transformer()
+      List<NodeData> addedNodes = new ArrayList<NodeData>();
+      while (add.hasNext())
       {
-         public Object transform(Object input)
+         NodeData state = add.next();
+         addedNodes.add(state);
+         if (state != null)
          {
-            NodeData state = (NodeData)input;
-            if (state == null)
-            {
-               return null;
-            }
-            boolean loadAllProperties =
-               indexingLoadBatchingThresholdNode > -1 && totalAddedDoc.incrementAndGet() > indexingLoadBatchingThresholdNode;
             String uuid = state.getIdentifier();
             addedNodeIds.add(uuid);
             removedNodeIds.remove(uuid);
-            Document doc = null;
-            try
-            {
-               doc = createDocument(state, getNamespaceMappings(), index.getIndexFormatVersion(), loadAllProperties);
-               retrieveAggregateRoot(state, aggregateRoots);
-            }
-            catch (RepositoryException e)
-            {
-               log.warn("Exception while creating document for node: " + state.getIdentifier() + ": " + e.toString(), e);
-            }
-            return doc;
          }
-      }));
+      }
+      synchronized (deferredExtractions)
+      {
+         if (!deferredExtractions.isEmpty())
+         {
+            // the documents of the pending extractions are outdated
+            deferredExtractions.keySet().removeAll(docIdsToRemove);
+            deferredExtractions.keySet().removeAll(addedNodeIds);
+         }
+      }
+      Collection<Document> docsToAdd = createDocuments(addedNodes, totalAddedDoc);
+      Iterator<Document> docs = docsToAdd.iterator();
+      for (NodeData state : addedNodes)
+      {
+         if (docs.next() != null)
+         {
+            retrieveAggregateRoot(state, aggregateRoots);
+         }
+      }
 
       // remove any aggregateRoot nodes that are new
       // and therefore already up-to-date
@@ -1344,20 +1445,7 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
          {
             public Object transform(Object input)
             {
-               NodeData state = (NodeData)input;
-               boolean loadAllProperties =
-                  indexingLoadBatchingThresholdNode > -1
-                     && totalAddedDoc.incrementAndGet() > indexingLoadBatchingThresholdNode;
-
-               try
-               {
-                  return createDocument(state, getNamespaceMappings(), index.getIndexFormatVersion(), loadAllProperties);
-               }
-               catch (RepositoryException e)
-               {
-                  log.warn("Exception while creating document for node: " + state.getIdentifier() + ": " + e.toString());
-               }
-               return null;
+               return createDocument((NodeData)input, totalAddedDoc);
             }
          });
          modified.addAll(aggregateRoots.values());
@@ -1371,6 +1459,274 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       return new ChangesHolder(docIdsToRemove, docsToAdd);
    }
 
+   /**
+    * Creates the documents of the given nodes. If the {@link #extractorPool}
+    * is available, the texts of their binary values are extracted
+    * concurrently, the documents whose texts are not extracted within the
+    * {@link #extractorTimeout} are returned without these texts and indexed
+    * again once they are available. The returned list has the same order as
+    * the nodes, it contains <code>null</code> for the <code>null</code>
+    * nodes and for the documents which could not be created.
+    */
+   private List<Document> createDocuments(List<NodeData> nodes, AtomicInteger totalAddedDoc)
+   {
+      List<Document> docs = new ArrayList<Document>(nodes.size());
+      for (NodeData node : nodes)
+      {
+         docs.add(node == null ? null : createDocument(node, totalAddedDoc));
+      }
+      ThreadPoolExecutor pool = extractorPool;
+      if (pool == null)
+      {
+         // the texts are extracted when the documents are added
+         return docs;
+      }
+
+      List<TextExtraction> extractions = new ArrayList<TextExtraction>();
+      for (int i = 0; i < docs.size(); i++)
+      {
+         Document doc = docs.get(i);
+         if (doc == null)
+         {
+            extractions.add(null);
+            continue;
+         }
+         List<TextFieldExtractor> fields = new ArrayList<TextFieldExtractor>();
+         for (Fieldable field : doc.getFields())
+         {
+            if (field instanceof TextFieldExtractor && !((TextFieldExtractor)field).isExtracted())
+            {
+               fields.add((TextFieldExtractor)field);
+            }
+         }
+         extractions.add(fields.isEmpty() ? null : new TextExtraction(nodes.get(i).getIdentifier(), doc,
+            fields, pool));
+      }
+
+      // the documents can only be indexed again by this node if it writes the index
+      boolean deferrable = modeHandler.getMode() == IndexerIoMode.READ_WRITE;
+      long deadline = System.currentTimeMillis() + extractorTimeout;
+      for (int i = 0; i < extractions.size(); i++)
+      {
+         TextExtraction extraction = extractions.get(i);
+         if (extraction != null && !extraction.await(deferrable ? deadline - System.currentTimeMillis() : -1))
+         {
+            docs.set(i, extraction.defer());
+         }
+      }
+      return docs;
+   }
+
+   /**
+    * Creates the pool of threads used to extract the texts of the documents.
+    */
+   private ThreadPoolExecutor createExtractorPool()
+   {
+      ThreadPoolExecutor pool =
+         new ThreadPoolExecutor(extractorPoolSize, extractorPoolSize, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(extractorBackLog), new ThreadFactory()
+            {
+               private final AtomicInteger count = new AtomicInteger();
+
+               public Thread newThread(Runnable r)
+               {
+                  Thread t = new Thread(r, "SearchIndex Extractor " + wsId + "-" + count.incrementAndGet());
+                  t.setDaemon(true);
+                  return t;
+               }
+            }, new RejectedExecutionHandler()
+            {
+               public void rejectedExecution(Runnable r, ThreadPoolExecutor executor)
+               {
+                  // the back log is full or the pool is being shut down, the
+                  // text is extracted within the current thread
+                  r.run();
+               }
+            });
+      pool.allowCoreThreadTimeOut(true);
+      return pool;
+   }
+
+   /**
+    * Creates the document of the given node within the current thread, all
+    * its properties are loaded at once when more than
+    * {@link #indexingLoadBatchingThresholdNode} documents have already been
+    * created for the same changes.
+    *
+    * @param node the node to index
+    * @param totalAddedDoc the amount of documents already created for the changes
+    * @return the document or <code>null</code> if it could not be created
+    */
+   private Document createDocument(NodeData node, AtomicInteger totalAddedDoc)
+   {
+      boolean loadAllProperties =
+         indexingLoadBatchingThresholdNode > -1 && totalAddedDoc.incrementAndGet() > indexingLoadBatchingThresholdNode;
+      try
+      {
+         return createDocument(node, getNamespaceMappings(), index.getIndexFormatVersion(), loadAllProperties);
+      }
+      catch (RepositoryException e)
+      {
+         log.warn("Exception while creating document for node: " + node.getIdentifier() + ": " + e.toString(), e);
+      }
+      return null;
+   }
+
+   /**
+    * The extraction of the texts of a document by the {@link #extractorPool}.
+    * If it takes longer than the {@link #extractorTimeout}, the document is
+    * first indexed without the texts still being extracted, then the whole
+    * document is indexed again once both the extraction is over and the first
+    * version of the document has been applied to the index.
+    */
+   private class TextExtraction
+   {
+      private final String id;
+
+      private final Document doc;
+
+      private final List<TextFieldExtractor> fields;
+
+      private final CountDownLatch done;
+
+      /**
+       * Indicates whether the document without the pending texts has been
+       * applied to the index, guarded by {@link #deferredExtractions}.
+       */
+      private boolean applied;
+
+      TextExtraction(String id, Document doc, List<TextFieldExtractor> fields, ThreadPoolExecutor pool)
+      {
+         this.id = id;
+         this.doc = doc;
+         this.fields = fields;
+         this.done = new CountDownLatch(fields.size());
+         for (final TextFieldExtractor field : fields)
+         {
+            pool.execute(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     field.stringValue();
+                  }
+                  finally
+                  {
+                     done.countDown();
+                     if (done.getCount() == 0)
+                     {
+                        reindex();
+                     }
+                  }
+               }
+            });
+         }
+      }
+
+      /**
+       * Waits for the end of the extraction.
+       *
+       * @param timeout the maximum time to wait in milliseconds, a negative
+       *          value to wait until the end of the extraction
+       * @return <code>true</code> if the extraction is over
+       */
+      boolean await(long timeout)
+      {
+         try
+         {
+            if (timeout < 0)
+            {
+               done.await();
+            }
+            else
+            {
+               done.await(timeout, TimeUnit.MILLISECONDS);
+            }
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            if (timeout < 0)
+            {
+               // the texts are then extracted when the document is added
+               return true;
+            }
+         }
+         return done.getCount() == 0;
+      }
+
+      /**
+       * Registers this extraction as deferred.
+       *
+       * @return the document without the texts still being extracted
+       */
+      Document defer()
+      {
+         Document partial = new Document();
+         partial.setBoost(doc.getBoost());
+         for (Fieldable field : doc.getFields())
+         {
+            if (!fields.contains(field) || ((TextFieldExtractor)field).isExtracted())
+            {
+               partial.add(field);
+            }
+         }
+         // the node is indexed again at the next start if the complete document is never indexed
+         partial.add(new Field(FieldNames.REINDEXING_REQUIRED, "", Field.Store.NO,
+            Field.Index.NOT_ANALYZED_NO_NORMS));
+         synchronized (deferredExtractions)
+         {
+            deferredExtractions.put(id, this);
+         }
+         if (log.isDebugEnabled())
+         {
+            log.debug("The text extraction of the node " + id + " exceeds " + extractorTimeout
+               + " ms, the node will be indexed again once it is over");
+         }
+         return partial;
+      }
+
+      /**
+       * Notifies that the document without the pending texts has been
+       * applied to the index.
+       */
+      void applied()
+      {
+         applied = true;
+         reindex();
+      }
+
+      /**
+       * Indexes again the whole document if both the extraction is over and
+       * the document without the pending texts has been applied, unless it
+       * has been updated or removed in the meantime.
+       */
+      private void reindex()
+      {
+         synchronized (deferredExtractions)
+         {
+            if (!applied || done.getCount() != 0 || deferredExtractions.get(id) != this)
+            {
+               return;
+            }
+            deferredExtractions.remove(id);
+            if (closed.get())
+            {
+               return;
+            }
+            try
+            {
+               index.update(Collections.singleton(id), Collections.singleton(doc));
+            }
+            catch (IOException e)
+            {
+               log.warn("Cannot index the extracted text of the node " + id + ": " + e.getMessage(), e);
+            }
+         }
+      }
+   }
+
    /**
     * Creates a new query by specifying the query statement itself and the
     * language in which the query is stated. If the query statement is
@@ -1457,6 +1813,15 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
          }
          errorLog.close();
          index.close();
+         if (extractorPool != null)
+         {
+            extractorPool.shutdown();
+            extractorPool = null;
+         }
+         synchronized (deferredExtractions)
+         {
+            deferredExtractions.clear();
+         }
          getContext().destroy();
          closed.set(true);
          log.info("Index closed: " + path);
@@ -1513,7 +1878,8 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
          @SuppressWarnings("resource")
          JcrIndexSearcher searcher = new JcrIndexSearcher(session, reader, getContext().getItemStateManager());
          searcher.setSimilarity(getSimilarity());
-         return new FilterMultiColumnQueryHits(searcher.execute(query, sort, resultFetchHint,
+         return new FilterMultiColumnQueryHits(searcher.execute(applyReadPermissionFilter(session, query), sort,
+            resultFetchHint,
             QueryImpl.DEFAULT_SELECTOR_NAME))
          {
             @Override
@@ -1545,6 +1911,26 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       }
    }
 
+   /**
+    * Restricts the given query to the nodes that the user of the session is allowed to read
+    * if the access control is indexed. The access is still checked on each result afterwards,
+    * so this filter only avoids loading the nodes that cannot be read.
+    *
+    * @param session the session executing the query
+    * @param query the query to restrict
+    * @return the restricted query or the given query if no restriction can be applied
+    */
+   protected Query applyReadPermissionFilter(SessionImpl session, Query query)
+   {
+      // The filter relies on the rules of the default access manager
+      if (!indexAccessControl || session.getAccessManager().getClass() != DefaultAccessManagerImpl.class)
+      {
+         return query;
+      }
+      ReadPermissionFilter filter = ReadPermissionFilter.create(session.getUserState().getIdentity());
+      return filter == null ? query : new FilteredQuery(query, filter);
+   }
+
    /**
     * Creates an excerpt provider for the given <code>query</code>.
     * 
@@ -1820,6 +2206,8 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       indexer.setLoadBatchingThreshold(indexingLoadBatchingThresholdProperty);
       indexer.setLoadPropertyByName(indexingLoadPropertyByName);
       indexer.setLoadAllProperties(loadAllProperties);
+      indexer.setIndexAccessControl(indexAccessControl);
+      indexer.setExtractedTextCache(textCache);
       Document doc = indexer.createDoc();
       mergeAggregatedNodeIndexes(node, doc, loadAllProperties, volatileIndex);
       return doc;
@@ -2824,6 +3212,64 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       return extractorTimeout;
    }
 
+   /**
+    * @return the text extractor for extracting text content of binary properties.
+    */
+   DocumentReaderService getExtractor()
+   {
+      return extractor;
+   }
+
+   /**
+    * Sets the text extractor for extracting text content of binary properties.
+    *
+    * @param extractor
+    *            the text extractor.
+    */
+   void setExtractor(DocumentReaderService extractor)
+   {
+      this.extractor = extractor;
+   }
+
+   /**
+    * Sets the directory of the cache of the extracted texts.
+    * 
+    * @param dir
+    *            the path of the directory.
+    */
+   public void setExtractedTextCacheDir(String dir)
+   {
+      extractedTextCacheDir = dir;
+   }
+
+   /**
+    * @return the directory of the cache of the extracted texts.
+    */
+   public String getExtractedTextCacheDir()
+   {
+      return extractedTextCacheDir;
+   }
+
+   /**
+    * Sets the maximum size of the cache of the extracted texts, 0 disables
+    * the cache.
+    * 
+    * @param size
+    *            the maximum size in bytes.
+    */
+   public void setExtractedTextCacheSize(long size)
+   {
+      extractedTextCacheSize = size;
+   }
+
+   /**
+    * @return the maximum size in bytes of the cache of the extracted texts.
+    */
+   public long getExtractedTextCacheSize()
+   {
+      return extractedTextCacheSize;
+   }
+
    /**
     * If set to <code>true</code> additional information is stored in the index
     * to support highlighting using the rep:excerpt pseudo property.
@@ -3220,6 +3666,14 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       return indexRecoveryMode;
    }
 
+   /**
+    * @return the current value for indexRecoveryThreads
+    */
+   public int getIndexRecoveryThreads()
+   {
+      return indexRecoveryThreads;
+   }
+
    /**
     * Sets a new value for termInfosIndexDivisor.
     * 
@@ -3274,6 +3728,26 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       this.rdbmsReindexing = rdbmsReindexing;
    }
 
+   /**
+    * Set a new value for reindexingCheckpointInterval.
+    * 
+    * @param reindexingCheckpointInterval
+    *            the new value in milliseconds, 0 to disable the checkpoints
+    */
+   public void setReindexingCheckpointInterval(long reindexingCheckpointInterval)
+   {
+      this.reindexingCheckpointInterval = reindexingCheckpointInterval;
+   }
+
+   /**
+    * @return the minimum time in milliseconds between two checkpoints of the re-indexing
+    *         from the database
+    */
+   public long getReindexingCheckpointInterval()
+   {
+      return reindexingCheckpointInterval;
+   }
+
    /**
     *  Set a new value for indexRecoveryMode. 
     * 
@@ -3285,6 +3759,17 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       this.indexRecoveryMode = indexRecoveryMode;
    }
 
+   /**
+    * Sets a new value for indexRecoveryThreads.
+    *
+    * @param indexRecoveryThreads
+    *          the new value for indexRecoveryThreads
+    */
+   public void setIndexRecoveryThreads(int indexRecoveryThreads)
+   {
+      this.indexRecoveryThreads = indexRecoveryThreads;
+   }
+
    /**
     *  Set a new value for asyncReindexing. 
     * 
@@ -3414,6 +3899,62 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       errlog.clear();
    }
 
+   /**
+    * Indexes again the nodes whose documents have been indexed without the
+    * texts whose extraction exceeded the {@link #extractorTimeout} and whose
+    * complete documents have not been indexed before the index was closed.
+    */
+   private void recoverDeferredExtractions() throws IOException, RepositoryException
+   {
+      Set<String> ids = getReindexingRequiredNodes();
+      if (ids.isEmpty())
+      {
+         return;
+      }
+      log.info("Indexing again " + ids.size() + " nodes whose text extraction was not over");
+      ItemDataConsumer itemStateManager = getContext().getItemStateManager();
+      List<NodeData> nodes = new ArrayList<NodeData>(ids.size());
+      for (String id : ids)
+      {
+         ItemData item = itemStateManager.getItemData(id);
+         if (item != null && item.isNode())
+         {
+            nodes.add((NodeData)item);
+         }
+      }
+      updateNodes(ids.iterator(), nodes.iterator());
+   }
+
+   /**
+    * @return the identifiers of the nodes whose documents are marked with the
+    *         field {@link FieldNames#REINDEXING_REQUIRED}.
+    */
+   Set<String> getReindexingRequiredNodes() throws IOException
+   {
+      Set<String> ids = new HashSet<String>();
+      CachingMultiIndexReader reader = index.getIndexReader();
+      try
+      {
+         TermDocs tDocs = reader.termDocs(new Term(FieldNames.REINDEXING_REQUIRED, ""));
+         try
+         {
+            while (tDocs.next())
+            {
+               ids.add(reader.document(tDocs.doc(), FieldSelectors.UUID).get(FieldNames.UUID));
+            }
+         }
+         finally
+         {
+            tDocs.close();
+         }
+      }
+      finally
+      {
+         reader.release();
+      }
+      return ids;
+   }
+
    /**
     *
     */
@@ -3459,6 +4000,7 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
             // reprocess any notfinished notifies;
             log.info("Processing error log ...");
             recoverErrorLog(errorLog);
+            recoverDeferredExtractions();
          }
       }
       catch (IOException e)
@@ -3673,6 +4215,22 @@ public class SearchIndex extends AbstractQueryHandler implements IndexerIoModeLi
       this.indexingLoadBatchingThresholdNode = indexingLoadBatchingThresholdNode;
    }
 
+   /**
+    * @return <code>true</code> if the access control is indexed, <code>false</code> otherwise
+    */
+   public boolean isIndexAccessControl()
+   {
+      return indexAccessControl;
+   }
+
+   /**
+    * @param indexAccessControl indicates whether the access control should be indexed
+    */
+   public void setIndexAccessControl(boolean indexAccessControl)
+   {
+      this.indexAccessControl = indexAccessControl;
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+import org.exoplatform.services.document.AdvancedDocumentReader;
+import org.exoplatform.services.document.DocumentReadException;
+import org.exoplatform.services.document.DocumentReader;
+import org.exoplatform.services.jcr.datamodel.ValueData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+
+/**
+ * A reader giving the text extracted from a binary value. Nothing is done until the text is read for the
+ * first time, the text is then taken from the {@link ExtractedTextCache} if available, otherwise it is
+ * extracted thanks to the {@link DocumentReader} and stored into the cache unless the extraction failed.
+ *
+ * @version $Id$
+ */
+class TextExtractionReader extends Reader
+{
+   /**
+    * The logger instance for this class.
+    */
+   private static final Logger LOG = LoggerFactory.getLogger("exo.jcr.component.core.TextExtractionReader");
+
+   private final DocumentReader documentReader;
+
+   private final ValueData value;
+
+   private final String mimeType;
+
+   private final String encoding;
+
+   /**
+    * The cache of the extracted texts, <code>null</code> if disabled.
+    */
+   private final ExtractedTextCache cache;
+
+   /**
+    * The path of the property, only used for the logs.
+    */
+   private final String propertyPath;
+
+   /**
+    * The reader of the extracted text, <code>null</code> until the first read.
+    */
+   private Reader text;
+
+   TextExtractionReader(DocumentReader documentReader, ValueData value, String mimeType, String encoding,
+      ExtractedTextCache cache, String propertyPath)
+   {
+      this.documentReader = documentReader;
+      this.value = value;
+      this.mimeType = mimeType;
+      this.encoding = encoding;
+      this.cache = cache;
+      this.propertyPath = propertyPath;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public int read(char[] cbuf, int off, int len) throws IOException
+   {
+      if (text == null)
+      {
+         text = new StringReader(getText());
+      }
+      return text.read(cbuf, off, len);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void close() throws IOException
+   {
+      if (text != null)
+      {
+         text.close();
+      }
+   }
+
+   /**
+    * Gives the text of the value from the cache or extracts it.
+    */
+   private String getText() throws IOException
+   {
+      String key = null;
+      if (cache != null)
+      {
+         key = cache.getKey(value, mimeType, encoding);
+         String cached = cache.get(key);
+         if (cached != null)
+         {
+            return cached;
+         }
+      }
+      String extracted;
+      try
+      {
+         extracted = extract();
+      }
+      catch (DocumentReadException e)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("Cannot extract the full text content of the property " + propertyPath + " : " + e, e);
+         }
+         else
+         {
+            LOG.warn("Cannot extract the full text content of the property " + propertyPath);
+         }
+         // the failure is not cached, the extraction is tried again at the next indexing
+         return "";
+      }
+      catch (RuntimeException e)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("An exception occurred while trying to extract the full text content of the property "
+               + propertyPath + " : " + e, e);
+         }
+         else
+         {
+            LOG.warn("An exception occurred while trying to extract the full text content of the property "
+               + propertyPath);
+         }
+         return "";
+      }
+      if (key != null)
+      {
+         cache.put(key, extracted);
+      }
+      return extracted;
+   }
+
+   /**
+    * Extracts the text of the value.
+    */
+   private String extract() throws IOException, DocumentReadException
+   {
+      InputStream is = value.getAsStream();
+      try
+      {
+         if (documentReader instanceof AdvancedDocumentReader)
+         {
+            // its a tika document reader that supports getContentAsReader
+            Reader reader =
+               encoding != null ? ((AdvancedDocumentReader)documentReader).getContentAsReader(is, encoding)
+                  : ((AdvancedDocumentReader)documentReader).getContentAsReader(is);
+            try
+            {
+               StringBuilder sb = new StringBuilder();
+               char[] buffer = new char[4096];
+               int len;
+               while ((len = reader.read(buffer)) > -1)
+               {
+                  sb.append(buffer, 0, len);
+               }
+               return sb.toString();
+            }
+            finally
+            {
+               reader.close();
+            }
+         }
+         // old-style document reader
+         return encoding != null ? documentReader.getContentAsText(is, encoding) : documentReader
+            .getContentAsText(is);
+      }
+      finally
+      {
+         try
+         {
+            is.close();
+         }
+         catch (IOException e)
+         {
+            if (LOG.isTraceEnabled())
+            {
+               LOG.trace("An exception occurred: " + e.getMessage());
+            }
+         }
+      }
+   }
+}
@@ -110,6 +110,14 @@ public class TextFieldExtractor extends AbstractField
       return extract;
    }
 
+   /**
+    * @return <code>true</code> if the text has already been extracted.
+    */
+   public boolean isExtracted()
+   {
+      return extract != null;
+   }
+
    /**
     * @return always <code>null</code>.
     */
@@ -36,6 +36,7 @@ import org.exoplatform.services.jcr.impl.dataflow.persistent.DoublePersistedValu
 import org.exoplatform.services.jcr.impl.dataflow.persistent.FilePersistedValueData;
 import org.exoplatform.services.jcr.impl.dataflow.persistent.LongPersistedValueData;
 import org.exoplatform.services.jcr.impl.dataflow.persistent.PersistedValueData;
+import org.exoplatform.services.jcr.impl.dataflow.persistent.StreamPersistedValueData;
 import org.exoplatform.services.jcr.impl.dataflow.persistent.StringPersistedValueData;
 import org.exoplatform.services.jcr.impl.storage.value.fs.operations.ValueFileIOHelper;
 import org.exoplatform.services.jcr.impl.util.JCRDateFormat;
@@ -47,6 +48,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.URL;
 import java.util.Calendar;
 
 import javax.jcr.PropertyType;
@@ -212,6 +214,58 @@ public class ValueDataUtil
       return vdDataWrapper;
    }
 
+   /**
+    * Read value data from an URL of a value storage.
+    * 
+    * @param type
+    *          property type, {@link PropertyType}
+    * @param orderNumber
+    *          value data order number
+    * @param url
+    *          the URL of the content of the value
+    * @param size
+    *          the size of the content of the value
+    * @param spoolConfig
+    *          contains threshold for spooling
+    * @return PersistedValueData
+    * @throws IOException
+    *           if any error is occurred
+    */
+   public static ValueDataWrapper readValueData(int type, int orderNumber, URL url, long size,
+      SpoolConfig spoolConfig) throws IOException
+   {
+      ValueDataWrapper vdDataWrapper = new ValueDataWrapper();
+      vdDataWrapper.size = size;
+
+      if (size > spoolConfig.maxBufferSize)
+      {
+         vdDataWrapper.value = new StreamPersistedValueData(orderNumber, url, null, spoolConfig);
+      }
+      else
+      {
+         InputStream is = url.openStream();
+         try
+         {
+            byte[] data = new byte[(int)size];
+            int rpos = 0;
+            int read;
+
+            while (rpos < data.length && (read = is.read(data, rpos, data.length - rpos)) >= 0)
+            {
+               rpos += read;
+            }
+
+            vdDataWrapper.value = createValueData(type, orderNumber, data);
+         }
+         finally
+         {
+            is.close();
+         }
+      }
+
+      return vdDataWrapper;
+   }
+
    /**
     * Creates value data depending on its type. It avoids storing unnecessary bytes in memory 
     * every time.
@@ -52,6 +52,7 @@ import org.exoplatform.services.jcr.impl.dataflow.TransientNodeData;
 import org.exoplatform.services.jcr.impl.dataflow.session.TransactionableResourceManager;
 import org.exoplatform.services.jcr.impl.dataflow.session.TransactionableResourceManagerListener;
 import org.exoplatform.services.jcr.impl.storage.SystemDataContainerHolder;
+import org.exoplatform.services.jcr.impl.storage.jdbc.ReadReplicaRouter;
 import org.exoplatform.services.jcr.storage.WorkspaceDataContainer;
 import org.exoplatform.services.jcr.storage.WorkspaceStorageConnection;
 import org.exoplatform.services.rpc.RPCException;
@@ -132,9 +133,9 @@ public class CacheableWorkspaceDataManager extends WorkspacePersistentDataManage
 
    private final boolean bfEnabled ;
 
-   private volatile BloomFilter<String> filterPermissions;
+   private volatile ConcurrentBloomFilter<String> filterPermissions;
 
-   private volatile BloomFilter<String> filterOwner;
+   private volatile ConcurrentBloomFilter<String> filterOwner;
 
    /**
     * The service for executing commands on all nodes of cluster.
@@ -2342,6 +2343,8 @@ public class CacheableWorkspaceDataManager extends WorkspacePersistentDataManage
 
    private <T> T executeAction(PrivilegedExceptionAction<T> action) throws RepositoryException
    {
+      // The loaded data are cached, they must not come from a read replica
+      ReadReplicaRouter.beginCachedRead();
       try
       {
          return SecurityHelper.doPrivilegedExceptionAction(action);
@@ -2362,6 +2365,10 @@ public class CacheableWorkspaceDataManager extends WorkspacePersistentDataManage
             throw new RuntimeException(cause);
          }
       }
+      finally
+      {
+         ReadReplicaRouter.endCachedRead();
+      }
    }
 
    /**
@@ -2491,8 +2498,8 @@ public class CacheableWorkspaceDataManager extends WorkspacePersistentDataManage
       if (id != null)
       {
          boolean filtersEnabled = this.filtersEnabled.get();
-         BloomFilter<String> filterPermissions = this.filterPermissions;
-         BloomFilter<String> filterOwner = this.filterOwner;
+         ConcurrentBloomFilter<String> filterPermissions = this.filterPermissions;
+         ConcurrentBloomFilter<String> filterOwner = this.filterOwner;
          if (filtersEnabled && filterOwner != null && filterPermissions != null)
          {
             QPathEntry[] entries = node.getQPath().getEntries();
@@ -2649,8 +2656,8 @@ public class CacheableWorkspaceDataManager extends WorkspacePersistentDataManage
          return false;
       }
       filtersEnabled.set(false);
-      this.filterPermissions = new BloomFilter<String>(bfProbability, bfElementNumber);
-      this.filterOwner = new BloomFilter<String>(bfProbability, bfElementNumber);
+      this.filterPermissions = new ConcurrentBloomFilter<String>(bfProbability, bfElementNumber);
+      this.filterOwner = new ConcurrentBloomFilter<String>(bfProbability, bfElementNumber);
 
       if (asynchronous)
       {
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread safe implementation of a Bloom filter that can be used concurrently without any lock.
+ * The bits are stored into an {@link AtomicLongArray} and are set thanks to CAS operations. The
+ * k indexes of an element are computed with the double hashing technique (see "Less Hashing, Same
+ * Performance: Building a Better Bloom Filter" by Kirsch and Mitzenmacher) from a single 64-bit
+ * hash of the characters of <code>element.toString()</code> mixed with the MurmurHash3 finalizer,
+ * so neither {@link #add(Object)} nor {@link #contains(Object)} allocate anything when the
+ * element is already a {@link String}.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ * @version $Id$
+ */
+public class ConcurrentBloomFilter<E>
+{
+   /**
+    * The golden ratio constant used to seed the hash function
+    */
+   private static final long SEED = 0x9E3779B97F4A7C15L;
+
+   /**
+    * The bits of the filter
+    */
+   private final AtomicLongArray bits;
+
+   /**
+    * The total amount of bits of the filter
+    */
+   private final int bitSetSize;
+
+   /**
+    * The expected (maximum) number of elements to be added
+    */
+   private final int expectedNumberOfFilterElements;
+
+   /**
+    * The number of hash functions
+    */
+   private final int k;
+
+   /**
+    * The number of elements actually added to the Bloom filter
+    */
+   private final AtomicInteger numberOfAddedElements = new AtomicInteger();
+
+   /**
+    * Constructs an empty Bloom filter. The total length of the Bloom filter will be c*n.
+    *
+    * @param c is the number of bits used per element.
+    * @param n is the expected number of elements the filter will contain.
+    * @param k is the number of hash functions used.
+    */
+   public ConcurrentBloomFilter(double c, int n, int k)
+   {
+      if (n <= 0)
+      {
+         throw new IllegalArgumentException("The expected number of elements must be positive");
+      }
+      if (k <= 0)
+      {
+         throw new IllegalArgumentException("The number of hash functions must be positive");
+      }
+      long size = (long)Math.ceil(c * n);
+      // Round up to the next multiple of 64 to use all the bits of the last long
+      size = Math.max(64, (size + 63) & ~63L);
+      if (size > Integer.MAX_VALUE - 63)
+      {
+         throw new IllegalArgumentException("The Bloom filter is too big: " + size + " bits");
+      }
+      this.bitSetSize = (int)size;
+      this.expectedNumberOfFilterElements = n;
+      this.k = k;
+      this.bits = new AtomicLongArray(bitSetSize >>> 6);
+   }
+
+   /**
+    * Constructs an empty Bloom filter with a given false positive probability. The number of bits per
+    * element and the number of hash functions is estimated to match the false positive probability.
+    *
+    * @param falsePositiveProbability is the desired false positive probability.
+    * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+    */
+   public ConcurrentBloomFilter(double falsePositiveProbability, int expectedNumberOfElements)
+   {
+      this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
+         expectedNumberOfElements, (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2)))); // k = ceil(-log_2(false prob.))
+   }
+
+   /**
+    * Computes a 64-bit hash of the given characters without any allocation.
+    *
+    * @param value the value to hash
+    * @return the hash of the value
+    */
+   static long hash(CharSequence value)
+   {
+      long h = SEED ^ value.length();
+      for (int i = 0, length = value.length(); i < length; i++)
+      {
+         h ^= value.charAt(i);
+         h *= 0xC6A4A7935BD1E995L;
+         h ^= h >>> 47;
+      }
+      // MurmurHash3 64-bit finalizer
+      h ^= h >>> 33;
+      h *= 0xFF51AFD7ED558CCDL;
+      h ^= h >>> 33;
+      h *= 0xC4CEB9FE1A85EC53L;
+      h ^= h >>> 33;
+      return h;
+   }
+
+   /**
+    * Gives the index of the bit corresponding to the i-th hash function
+    */
+   private int index(int h1, int h2, int i)
+   {
+      int combined = h1 + i * h2;
+      if (combined < 0)
+      {
+         combined = ~combined;
+      }
+      return combined % bitSetSize;
+   }
+
+   /**
+    * Adds an object to the Bloom filter. The output from the object's
+    * toString() method is used as input to the hash functions.
+    *
+    * @param element is an element to register in the Bloom filter.
+    */
+   public void add(E element)
+   {
+      long hash = hash(element.toString());
+      int h1 = (int)hash;
+      int h2 = (int)(hash >>> 32);
+      for (int i = 1; i <= k; i++)
+      {
+         setBit(index(h1, h2, i));
+      }
+      numberOfAddedElements.incrementAndGet();
+   }
+
+   /**
+    * Adds all elements from a Collection to the Bloom filter.
+    * @param c Collection of elements.
+    */
+   public void addAll(Collection<? extends E> c)
+   {
+      for (E element : c)
+      {
+         add(element);
+      }
+   }
+
+   /**
+    * Returns true if the element could have been inserted into the Bloom filter.
+    * Use getFalsePositiveProbability() to calculate the probability of this
+    * being correct.
+    *
+    * @param element element to check.
+    * @return true if the element could have been inserted into the Bloom filter.
+    */
+   public boolean contains(E element)
+   {
+      long hash = hash(element.toString());
+      int h1 = (int)hash;
+      int h2 = (int)(hash >>> 32);
+      for (int i = 1; i <= k; i++)
+      {
+         if (!getBit(index(h1, h2, i)))
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Returns true if all the elements of a Collection could have been inserted
+    * into the Bloom filter.
+    * @param c elements to check.
+    * @return true if all the elements in c could have been inserted into the Bloom filter.
+    */
+   public boolean containsAll(Collection<? extends E> c)
+   {
+      for (E element : c)
+      {
+         if (!contains(element))
+         {
+            return false;
+         }
+      }
+      return true;
+   }
+
+   /**
+    * Read a single bit from the Bloom filter.
+    * @param bit the bit to read.
+    * @return true if the bit is set, false if it is not.
+    */
+   public boolean getBit(int bit)
+   {
+      return (bits.get(bit >>> 6) & (1L << bit)) != 0;
+   }
+
+   /**
+    * Sets a single bit of the Bloom filter, the CAS is only attempted if the bit is not yet set.
+    * @param bit is the bit to set.
+    */
+   private void setBit(int bit)
+   {
+      int i = bit >>> 6;
+      long mask = 1L << bit;
+      long current;
+      while (((current = bits.get(i)) & mask) == 0)
+      {
+         if (bits.compareAndSet(i, current, current | mask))
+         {
+            return;
+         }
+      }
+   }
+
+   /**
+    * Sets all bits to false in the Bloom filter. This method is not atomic, concurrent
+    * additions may be partially kept.
+    */
+   public void clear()
+   {
+      for (int i = 0, length = bits.length(); i < length; i++)
+      {
+         bits.set(i, 0L);
+      }
+      numberOfAddedElements.set(0);
+   }
+
+   /**
+    * Calculate the probability of a false positive given the specified
+    * number of inserted elements.
+    *
+    * @param numberOfElements number of inserted elements.
+    * @return probability of a false positive.
+    */
+   public double getFalsePositiveProbability(double numberOfElements)
+   {
+      // (1 - e^(-k * n / m)) ^ k
+      return Math.pow((1 - Math.exp(-k * numberOfElements / bitSetSize)), k);
+   }
+
+   /**
+    * Get the current probability of a false positive. The probability is calculated from
+    * the size of the Bloom filter and the current number of elements added to it.
+    *
+    * @return probability of false positives.
+    */
+   public double getFalsePositiveProbability()
+   {
+      return getFalsePositiveProbability(numberOfAddedElements.get());
+   }
+
+   /**
+    * Calculates the expected probability of false positives based on
+    * the number of expected filter elements and the size of the Bloom filter.
+    *
+    * @return expected probability of false positives.
+    */
+   public double expectedFalsePositiveProbability()
+   {
+      return getFalsePositiveProbability(expectedNumberOfFilterElements);
+   }
+
+   /**
+    * Returns the number of hash functions.
+    */
+   public int getK()
+   {
+      return k;
+   }
+
+   /**
+    * Returns the number of bits in the Bloom filter. Use count() to retrieve
+    * the number of inserted elements.
+    *
+    * @return the size of the bitset used by the Bloom filter.
+    */
+   public int size()
+   {
+      return bitSetSize;
+   }
+
+   /**
+    * Returns the number of elements added to the Bloom filter after it
+    * was constructed or after clear() was called.
+    *
+    * @return number of elements added to the Bloom filter.
+    */
+   public int count()
+   {
+      return numberOfAddedElements.get();
+   }
+
+   /**
+    * Returns the expected number of elements to be inserted into the filter.
+    *
+    * @return expected number of elements.
+    */
+   public int getExpectedNumberOfElements()
+   {
+      return expectedNumberOfFilterElements;
+   }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent;
+
+/**
+ * Statistic of the {@link SegmentedWorkspaceStorageCacheImpl}, in addition to the
+ * {@link CacheStatistic} it gives the amount of evictions and how often the threads had to
+ * wait for the lock of a segment.
+ *
+ * @version $Id$
+ */
+public class SegmentedCacheStatistic extends CacheStatistic
+{
+
+   protected final long evictions;
+
+   protected final long lockAcquisitions;
+
+   protected final long lockContentions;
+
+   protected final int segments;
+
+   SegmentedCacheStatistic(long miss, long hits, long size, long nodesSize, long propertiesSize, long maxSize,
+      long liveTime, long totalGetTime, long evictions, long lockAcquisitions, long lockContentions, int segments)
+   {
+      super(miss, hits, size, nodesSize, propertiesSize, maxSize, liveTime, totalGetTime);
+      this.evictions = evictions;
+      this.lockAcquisitions = lockAcquisitions;
+      this.lockContentions = lockContentions;
+      this.segments = segments;
+   }
+
+   /**
+    * @return the ratio of the get operations which found the requested data, between 0 and 1
+    */
+   public double getHitRatio()
+   {
+      long total = hits + miss;
+      return total == 0 ? 0 : (double)hits / total;
+   }
+
+   /**
+    * @return the amount of entries removed to respect the maximum size of the cache
+    */
+   public long getEvictions()
+   {
+      return evictions;
+   }
+
+   /**
+    * @return the amount of times a lock of segment has been acquired
+    */
+   public long getLockAcquisitions()
+   {
+      return lockAcquisitions;
+   }
+
+   /**
+    * @return the amount of times a thread had to wait for the lock of a segment
+    */
+   public long getLockContentions()
+   {
+      return lockContentions;
+   }
+
+   /**
+    * @return the ratio of the lock acquisitions which had to wait, between 0 and 1
+    */
+   public double getContentionRatio()
+   {
+      return lockAcquisitions == 0 ? 0 : (double)lockContentions / lockAcquisitions;
+   }
+
+   /**
+    * @return the amount of segments of the cache
+    */
+   public int getSegments()
+   {
+      return segments;
+   }
+}
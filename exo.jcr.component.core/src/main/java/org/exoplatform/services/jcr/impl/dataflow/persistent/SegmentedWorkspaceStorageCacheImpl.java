@@ -0,0 +1,1808 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent;
+
+import org.exoplatform.services.jcr.config.CacheEntry;
+import org.exoplatform.services.jcr.config.RepositoryConfigurationException;
+import org.exoplatform.services.jcr.config.WorkspaceEntry;
+import org.exoplatform.services.jcr.dataflow.ItemState;
+import org.exoplatform.services.jcr.dataflow.ItemStateChangesLog;
+import org.exoplatform.services.jcr.dataflow.persistent.PersistedNodeData;
+import org.exoplatform.services.jcr.dataflow.persistent.PersistedPropertyData;
+import org.exoplatform.services.jcr.dataflow.persistent.WorkspaceStorageCache;
+import org.exoplatform.services.jcr.dataflow.persistent.WorkspaceStorageCacheListener;
+import org.exoplatform.services.jcr.datamodel.ItemData;
+import org.exoplatform.services.jcr.datamodel.ItemType;
+import org.exoplatform.services.jcr.datamodel.NodeData;
+import org.exoplatform.services.jcr.datamodel.NullItemData;
+import org.exoplatform.services.jcr.datamodel.PropertyData;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.datamodel.QPathEntry;
+import org.exoplatform.services.jcr.impl.Constants;
+import org.exoplatform.services.jcr.impl.core.itemfilters.QPathEntryFilter;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.picocontainer.Startable;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.WeakHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Lock striped version of the {@link LinkedWorkspaceStorageCacheImpl}, it can be used instead of
+ * it by setting its class name as type of the cache of the workspace.<br>
+ * 
+ * The cache C and the caches of child nodes and properties (CN and CP) are split into segments
+ * protected by their own lock. The cache keys are dispatched among the segments thanks to their
+ * hash code, the child lists of a node are stored into the segment of the identifier of the node
+ * such that they can be removed with it. Each segment is an LRU map bounded to its share of the
+ * maximum size of the cache and the expired items are removed lazily on access and by a cleaner
+ * which sweeps the segments one after the other, so that no operation needs to lock the whole
+ * cache.<br>
+ * 
+ * Like the {@link LinkedWorkspaceStorageCacheImpl}, it implements an OBJECTS cache - i.e. returns
+ * same java object that was cached before.
+ *
+ * @version $Id$
+ */
+public class SegmentedWorkspaceStorageCacheImpl implements WorkspaceStorageCache, Startable
+{
+
+   /**
+    * segments parameter name.
+    */
+   public static final String SEGMENTS_PARAMETER_NAME = "segments";
+
+   /**
+    * The maximum amount of segments.
+    */
+   public static final int MAX_SEGMENTS = 1 << 10;
+
+   /**
+    * Cache implementation logger.
+    */
+   protected static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.SegmentedWorkspaceStorageCacheImpl");
+
+   /**
+    * The segments of the cache.
+    */
+   private final Segment[] segments;
+
+   /**
+    * The mask used to compute the index of a segment from a hash code.
+    */
+   private final int segmentMask;
+
+   /**
+    * Cache name.
+    */
+   private final String name;
+
+   /**
+    * Enable flag.
+    */
+   private volatile boolean enabled;
+
+   /**
+    * Worker timer (statistics and cleaner).
+    */
+   private final Timer workerTimer;
+
+   /**
+    * Last gathering cache statistic.
+    */
+   private volatile SegmentedCacheStatistic statistic;
+
+   /**
+    * Cache C item live time.
+    */
+   private volatile long liveTime;
+
+   /**
+    * Cache C maximum size.
+    */
+   private final int maxSize;
+
+   /**
+    * cleanStatistics configuration.
+    */
+   private final boolean cleanStatistics;
+
+   /**
+    * showStatistic configuration.
+    */
+   private final boolean showStatistic;
+
+   /**
+    * A segment of the cache, all its content and its counters are guarded by its lock.
+    */
+   class Segment extends ReentrantLock
+   {
+
+      /**
+       * Cache C of the segment, in access order to evict the least recently used items first.
+       */
+      final Map<CacheKey, CacheValue> items;
+
+      /**
+       * Cache CN of the segment.
+       */
+      final WeakHashMap<String, List<NodeData>> nodes = new WeakHashMap<String, List<NodeData>>();
+
+      /**
+       * Cache CP of the segment.
+       */
+      final WeakHashMap<String, List<PropertyData>> properties = new WeakHashMap<String, List<PropertyData>>();
+
+      long hits;
+
+      long miss;
+
+      long getTime;
+
+      long evictions;
+
+      long acquisitions;
+
+      long contentions;
+
+      Segment(final int maxSize)
+      {
+         this.items =
+            new LinkedHashMap<CacheKey, CacheValue>(Math.round(maxSize / LinkedWorkspaceStorageCacheImpl.LOAD_FACTOR)
+               + 16, LinkedWorkspaceStorageCacheImpl.LOAD_FACTOR, true)
+            {
+               private static final long serialVersionUID = 1L;
+
+               @Override
+               protected boolean removeEldestEntry(Map.Entry<CacheKey, CacheValue> eldest)
+               {
+                  if (size() > maxSize)
+                  {
+                     if (eldest.getKey() instanceof CacheId)
+                     {
+                        // the child lists of the node are stored in this segment too
+                        nodes.remove(eldest.getValue().getItem().getIdentifier());
+                        properties.remove(eldest.getValue().getItem().getIdentifier());
+                     }
+                     evictions++;
+                     return true;
+                  }
+                  return false;
+               }
+            };
+      }
+
+      /**
+       * Acquires the lock of the segment and counts the contention.
+       */
+      void acquire()
+      {
+         if (!tryLock())
+         {
+            lock();
+            contentions++;
+         }
+         acquisitions++;
+      }
+
+      /**
+       * Removes the expired items, should be called with the lock held.
+       */
+      int removeExpired(long now)
+      {
+         int expired = 0;
+         for (Iterator<Map.Entry<CacheKey, CacheValue>> citer = items.entrySet().iterator(); citer.hasNext();)
+         {
+            Map.Entry<CacheKey, CacheValue> ce = citer.next();
+            if (ce.getValue().getExpiredTime() <= now)
+            {
+               ItemData item = ce.getValue().getItem();
+               if (ce.getKey() instanceof CacheId && item.isNode())
+               {
+                  nodes.remove(item.getIdentifier());
+                  properties.remove(item.getIdentifier());
+               }
+               citer.remove();
+               expired++;
+            }
+         }
+         return expired;
+      }
+   }
+
+   /**
+    * Cleaner task, removes the expired items segment by segment.
+    */
+   class CleanerTask extends TimerTask
+   {
+      @Override
+      public void run()
+      {
+         try
+         {
+            long start = System.currentTimeMillis();
+            int expired = 0;
+            for (Segment segment : segments)
+            {
+               segment.acquire();
+               try
+               {
+                  expired += segment.removeExpired(System.currentTimeMillis());
+               }
+               finally
+               {
+                  segment.unlock();
+               }
+            }
+
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug(name + ", cleaner task done in " + (System.currentTimeMillis() - start) + "ms, " + expired
+                  + " expired items removed.");
+            }
+         }
+         catch (Throwable e) //NOSONAR
+         {
+            LOG.error(name + ", cleaner task error " + e + ". Will try next time.", e);
+         }
+      }
+   }
+
+   /**
+    * Gathering statistic task.
+    */
+   class StatisticTask extends TimerTask
+   {
+      @Override
+      public void run()
+      {
+         gatherStatistic();
+      }
+   }
+
+   /**
+    * For debug/testing.
+    * 
+    * @param name
+    * @param enabled
+    * @param maxSize
+    * @param liveTimeSec
+    * @param cleanerPeriodMillis
+    * @param statisticPeriodMillis
+    * @param cleanStatistics
+    * @param segments the amount of segments, 0 to compute it from the amount of processors
+    * @param showStatistic
+    */
+   public SegmentedWorkspaceStorageCacheImpl(String name, boolean enabled, int maxSize, long liveTimeSec,
+      long cleanerPeriodMillis, long statisticPeriodMillis, boolean cleanStatistics, int segments,
+      boolean showStatistic)
+   {
+      this.name = name;
+      this.enabled = enabled;
+      this.maxSize = maxSize;
+      this.liveTime = liveTimeSec * 1000; // seconds
+      this.cleanStatistics = cleanStatistics;
+      this.showStatistic = showStatistic;
+
+      this.segments = createSegments(segments);
+      this.segmentMask = this.segments.length - 1;
+
+      this.workerTimer = new Timer(this.name + "_CacheWorker", true);
+      scheduleTask(new CleanerTask(), 5, cleanerPeriodMillis); // start after 5 sec
+
+      gatherStatistic();
+      scheduleTask(new StatisticTask(), 5, statisticPeriodMillis); // start after 5 sec
+   }
+
+   /**
+    * Create cache using container configuration entry.
+    * 
+    * @param wsConfig
+    *          workspace configuration
+    * @throws RepositoryConfigurationException
+    *           in case of missconfiguration
+    */
+   public SegmentedWorkspaceStorageCacheImpl(WorkspaceEntry wsConfig) throws RepositoryConfigurationException
+   {
+      this.name = "jcr." + wsConfig.getUniqueName();
+
+      CacheEntry cacheConfig = wsConfig.getCache();
+
+      long statisticPeriod;
+      long cleanerPeriod;
+      int segmentsCount;
+
+      if (cacheConfig != null)
+      {
+         this.enabled = cacheConfig.isEnabled();
+
+         int maxSizeConf;
+         try
+         {
+            maxSizeConf = cacheConfig.getParameterInteger(MAX_SIZE_PARAMETER_NAME);
+         }
+         catch (RepositoryConfigurationException e)
+         {
+            maxSizeConf = cacheConfig.getParameterInteger("maxSize");
+         }
+         this.maxSize = maxSizeConf;
+
+         try
+         {
+            // apply in milliseconds
+            this.liveTime = cacheConfig.getParameterTime(LIVE_TIME_PARAMETER_NAME);
+         }
+         catch (RepositoryConfigurationException e)
+         {
+            this.liveTime = cacheConfig.getParameterTime("liveTime");
+         }
+
+         segmentsCount = cacheConfig.getParameterInteger(SEGMENTS_PARAMETER_NAME, 0);
+         cleanerPeriod =
+            cacheConfig.getParameterTime(LinkedWorkspaceStorageCacheImpl.CLEANER_PERIOD_PARAMETER_NAME,
+               LinkedWorkspaceStorageCacheImpl.DEF_CLEANER_PERIOD);
+         this.cleanStatistics =
+            cacheConfig.getParameterBoolean(LinkedWorkspaceStorageCacheImpl.STATISTIC_CLEAN_PARAMETER_NAME, true);
+         statisticPeriod =
+            cacheConfig.getParameterTime(LinkedWorkspaceStorageCacheImpl.STATISTIC_PERIOD_PARAMETER_NAME,
+               LinkedWorkspaceStorageCacheImpl.DEF_STATISTIC_PERIOD);
+         this.showStatistic =
+            cacheConfig.getParameterBoolean(LinkedWorkspaceStorageCacheImpl.STATISTIC_LOG_PARAMETER_NAME, false);
+      }
+      else
+      {
+         this.maxSize = LinkedWorkspaceStorageCacheImpl.MAX_CACHE_SIZE;
+         this.liveTime = LinkedWorkspaceStorageCacheImpl.MAX_CACHE_LIVETIME;
+         this.enabled = true;
+         this.cleanStatistics = true;
+         this.showStatistic = false;
+
+         segmentsCount = 0;
+         statisticPeriod = LinkedWorkspaceStorageCacheImpl.DEF_STATISTIC_PERIOD;
+         cleanerPeriod = LinkedWorkspaceStorageCacheImpl.DEF_CLEANER_PERIOD;
+      }
+
+      this.segments = createSegments(segmentsCount);
+      this.segmentMask = this.segments.length - 1;
+
+      this.workerTimer = new Timer(this.name + "_CacheWorker", true);
+
+      // cleaner
+      int start = ((int)cleanerPeriod) / 2; // half or period
+      start = start > 60000 ? start : 60000; // don't start now
+      scheduleTask(new CleanerTask(), start, cleanerPeriod);
+
+      // statistic collector
+      gatherStatistic();
+      start = ((int)statisticPeriod) / 2; // half or period
+      start = start > 15000 ? start : 15000; // don't start now
+      scheduleTask(new StatisticTask(), start, statisticPeriod);
+   }
+
+   /**
+    * Creates the segments, their amount is rounded up to a power of two.
+    */
+   private Segment[] createSegments(int count)
+   {
+      if (count <= 0)
+      {
+         count = Runtime.getRuntime().availableProcessors() * 4;
+      }
+      // no need to have more segments than items
+      count = Math.max(1, Math.min(Math.min(count, MAX_SEGMENTS), maxSize));
+
+      int size = 1;
+      while (size < count)
+      {
+         size <<= 1;
+      }
+
+      int segmentMaxSize = Math.max(1, (maxSize + size - 1) / size);
+      Segment[] result = new Segment[size];
+      for (int i = 0; i < size; i++)
+      {
+         result[i] = new Segment(segmentMaxSize);
+      }
+
+      if (LOG.isDebugEnabled())
+      {
+         LOG.debug(name + " Create cache with " + size + " segments of " + segmentMaxSize + " items.");
+      }
+      return result;
+   }
+
+   private void scheduleTask(TimerTask task, int start, long period)
+   {
+      if (period < 30000)
+      {
+         // warn and use 30sec.
+         LOG.warn("Cache worker schedule period too short " + period + ". Will use 30sec.");
+         period = 30000;
+      }
+
+      workerTimer.schedule(task, start, period);
+   }
+
+   /**
+    * Gives the segment of the given hash code.
+    */
+   private Segment segmentFor(int hash)
+   {
+      // spread the higher bits since only the lower ones are used
+      hash ^= (hash >>> 16);
+      return segments[hash & segmentMask];
+   }
+
+   /**
+    * Gives the segment of an item identifier, which holds its {@link CacheId} and its child lists.
+    */
+   private Segment segmentFor(String identifier)
+   {
+      return segmentFor(identifier.hashCode());
+   }
+
+   void gatherStatistic()
+   {
+      long miss = 0, hits = 0, getTime = 0, size = 0, nodesSize = 0, propertiesSize = 0;
+      long evictions = 0, acquisitions = 0, contentions = 0;
+
+      for (Segment segment : segments)
+      {
+         segment.lock();
+         try
+         {
+            miss += segment.miss;
+            hits += segment.hits;
+            getTime += segment.getTime;
+            size += segment.items.size();
+            nodesSize += segment.nodes.size();
+            propertiesSize += segment.properties.size();
+            evictions += segment.evictions;
+            acquisitions += segment.acquisitions;
+            contentions += segment.contentions;
+
+            if (cleanStatistics)
+            {
+               segment.miss = 0;
+               segment.hits = 0;
+               segment.getTime = 0;
+               segment.evictions = 0;
+               segment.acquisitions = 0;
+               segment.contentions = 0;
+            }
+         }
+         finally
+         {
+            segment.unlock();
+         }
+      }
+
+      final SegmentedCacheStatistic st =
+         new SegmentedCacheStatistic(miss, hits, size, nodesSize, propertiesSize, maxSize, liveTime,
+            getTime / 1000000, evictions, acquisitions, contentions, segments.length);
+
+      if (showStatistic && LOG.isDebugEnabled())
+      {
+         LOG.debug("Cache " + name + ": hit ratio " + Math.round(st.getHitRatio() * 10000) / 10000d + " (hits:"
+            + st.getHits() + ", miss:" + st.getMiss() + "), size:" + st.getSize() + " (max " + st.getMaxSize()
+            + "), evictions:" + st.getEvictions() + ", childs(nodes:" + st.getNodesSize() + ", properties:"
+            + st.getPropertiesSize() + "), segments:" + st.getSegments() + ", lock contention "
+            + Math.round(st.getContentionRatio() * 10000) / 10000d + " (" + st.getLockContentions() + " of "
+            + st.getLockAcquisitions() + ")");
+      }
+
+      this.statistic = st;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getSize()
+   {
+      long size = 0;
+      for (Segment segment : segments)
+      {
+         size += segment.items.size();
+      }
+      return size;
+   }
+
+   /**
+    * getName.
+    * 
+    * @return
+    */
+   public String getName()
+   {
+      return name;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ItemData get(final String identifier)
+   {
+      if (enabled && identifier != null)
+      {
+         try
+         {
+            return getItem(identifier);
+         }
+         catch (Exception e)
+         {
+            LOG.error("GET operation fails. Item ID=" + identifier + ". Error " + e + ". NULL returned.", e);
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ItemData get(final String parentId, final QPathEntry name, ItemType itemType)
+   {
+      if (enabled && parentId != null && name != null)
+      {
+         try
+         {
+            ItemData itemData = null;
+            if (itemType == ItemType.NODE || itemType == ItemType.UNKNOWN)
+            {
+               itemData = getItem(parentId, name, ItemType.NODE);
+            }
+
+            if (itemType == ItemType.PROPERTY || itemType == ItemType.UNKNOWN && itemData == null)
+            {
+               itemData = getItem(parentId, name, ItemType.PROPERTY);
+            }
+
+            return itemData;
+         }
+         catch (Exception e)
+         {
+            LOG.error("GET operation fails. Parent ID=" + parentId + " name "
+               + (name != null ? name.getAsString() : name) + ". Error " + e + ". NULL returned.", e);
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Get item from cache C by the given key. Checks is it expired, calcs statistics.
+    * 
+    * @param key the key of the item
+    * @param segment the segment of the key
+    * @return the item or <code>null</code> if the item is not cached or expired
+    */
+   private ItemData getItem(final CacheKey key, final Segment segment)
+   {
+      final long start = System.nanoTime();
+      final CacheValue v;
+      final boolean expired;
+      segment.acquire();
+      try
+      {
+         v = segment.items.get(key);
+         expired = v != null && v.getExpiredTime() <= System.currentTimeMillis();
+         if (v == null || expired)
+         {
+            segment.miss++;
+            if (expired)
+            {
+               segment.items.remove(key);
+            }
+         }
+         else
+         {
+            segment.hits++;
+         }
+         segment.getTime += System.nanoTime() - start;
+      }
+      finally
+      {
+         segment.unlock();
+      }
+
+      if (expired)
+      {
+         // remove the other key and the child lists from their segments
+         removeItem(v.getItem());
+         if (v.getItem().isNode())
+         {
+            removeChildLists(v.getItem().getIdentifier());
+         }
+         return null;
+      }
+
+      return v == null ? null : v.getItem();
+   }
+
+   /**
+    * Get item from cache C by item id. Checks is it expired, calcs statistics.
+    * 
+    * @param identifier
+    * @return item
+    */
+   protected ItemData getItem(final String identifier)
+   {
+      ItemData c = getItem(new CacheId(identifier), segmentFor(identifier));
+      if (c != null && LOG.isDebugEnabled())
+      {
+         LOG.debug(name + ", getItem() " + identifier + " --> " + c.getQPath().getAsString() + " parent:"
+            + c.getParentIdentifier());
+      }
+      return c;
+   }
+
+   /**
+    * Get item from cache C by item parent and name. Checks is it expired, calcs statistics.
+    * 
+    * @param parentUuid
+    * @param qname
+    * @param itemType
+    */
+   protected ItemData getItem(final String parentUuid, final QPathEntry qname, ItemType itemType)
+   {
+      CacheQPath k = new CacheQPath(parentUuid, qname, itemType);
+      ItemData c = getItem(k, segmentFor(k.hashCode()));
+      if (c != null && LOG.isDebugEnabled())
+      {
+         LOG.debug(name + ", getItem() " + c.getQPath().getAsString() + " --> " + c.getIdentifier() + " parent:"
+            + c.getParentIdentifier());
+      }
+      return c;
+   }
+
+   /**
+    * Put item in cache C.
+    * 
+    * @param data
+    */
+   protected void putItem(final ItemData data)
+   {
+      putItem(new CacheId(data.getIdentifier()), new CacheValue(data, System.currentTimeMillis() + liveTime));
+      putItem(new CacheQPath(data.getParentIdentifier(), data.getQPath(), ItemType.getItemType(data)), new CacheValue(
+         data, System.currentTimeMillis() + liveTime));
+   }
+
+   private void putItem(final CacheKey key, final CacheValue value)
+   {
+      Segment segment = segmentFor(key.hashCode());
+      segment.acquire();
+      try
+      {
+         segment.items.put(key, value);
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * Remove item from cache C.
+    * 
+    * @param item
+    */
+   protected void removeItem(final ItemData item)
+   {
+      final String itemId = item.getIdentifier();
+
+      removeItem(new CacheId(itemId));
+
+      final CacheValue v2 =
+         removeItem(new CacheQPath(item.getParentIdentifier(), item.getQPath(), ItemType.getItemType(item)));
+      if (v2 != null && !v2.getItem().getIdentifier().equals(itemId))
+      {
+         // same path but diff identifier node... phantom
+         removeItem(v2.getItem());
+      }
+   }
+
+   private CacheValue removeItem(final CacheKey key)
+   {
+      Segment segment = segmentFor(key.hashCode());
+      segment.acquire();
+      try
+      {
+         return segment.items.remove(key);
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * Removes the cached child nodes and properties of the given node.
+    */
+   private void removeChildLists(final String identifier)
+   {
+      Segment segment = segmentFor(identifier);
+      segment.acquire();
+      try
+      {
+         segment.nodes.remove(identifier);
+         segment.properties.remove(identifier);
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void put(final ItemData item)
+   {
+      if (enabled && item != null)
+      {
+
+         if (item instanceof NullItemData)
+         {
+            // skip null values
+            return;
+         }
+
+         try
+         {
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug(name + ", put()    " + item.getQPath().getAsString() + "    " + item.getIdentifier()
+                  + "  --  " + item);
+            }
+
+            putItem(item);
+
+            // add child item data to list of childs of the parent
+            Segment segment = segmentFor(item.getParentIdentifier());
+            segment.acquire();
+            try
+            {
+               if (item.isNode())
+               {
+                  putChildNode(segment, (NodeData)item);
+               }
+               else
+               {
+                  putChildProperty(segment, (PropertyData)item);
+               }
+            }
+            finally
+            {
+               segment.unlock();
+            }
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error put item data in cache: "
+               + (item != null ? item.getQPath().getAsString() : "[null]"), e);
+         }
+      }
+   }
+
+   /**
+    * Adds or updates the node in the cached child nodes of its parent, should be called with the
+    * lock of the segment of the parent held.
+    */
+   private void putChildNode(final Segment segment, final NodeData nodeData)
+   {
+      List<NodeData> cachedParentChilds = segment.nodes.get(nodeData.getParentIdentifier());
+      if (cachedParentChilds == null)
+      {
+         return;
+      }
+
+      // Playing for orderable work
+      int orderNumber = nodeData.getOrderNumber();
+
+      synchronized (cachedParentChilds)
+      {
+         int index = cachedParentChilds.indexOf(nodeData);
+         if (index >= 0)
+         {
+            if (orderNumber != cachedParentChilds.get(index).getOrderNumber())
+            {
+               // replace and reorder
+               List<NodeData> newChilds = new ArrayList<NodeData>(cachedParentChilds);
+               newChilds.set(index, nodeData); // place in new position
+
+               segment.nodes.put(nodeData.getParentIdentifier(), newChilds); // cache new list
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.debug(name + ", put()    update child node  " + nodeData.getIdentifier() + "  order #"
+                     + orderNumber);
+               }
+            }
+            else
+            {
+               cachedParentChilds.set(index, nodeData); // replace at current position
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.debug(name + ", put()    update child node  " + nodeData.getIdentifier() + "  at index #"
+                     + index);
+               }
+            }
+         }
+         else
+         {
+            // add new to the end
+            List<NodeData> newChilds = new ArrayList<NodeData>(cachedParentChilds.size() + 1);
+            newChilds.addAll(cachedParentChilds);
+            newChilds.add(nodeData);
+
+            segment.nodes.put(nodeData.getParentIdentifier(), newChilds); // cache new list
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug(name + ", put()    add child node  " + nodeData.getIdentifier());
+            }
+         }
+      }
+   }
+
+   /**
+    * Adds or updates the property in the cached child properties of its parent, should be called
+    * with the lock of the segment of the parent held.
+    */
+   private void putChildProperty(final Segment segment, final PropertyData propertyData)
+   {
+      final List<PropertyData> cachedParentChilds = segment.properties.get(propertyData.getParentIdentifier());
+      if (cachedParentChilds == null)
+      {
+         return;
+      }
+
+      if (cachedParentChilds.get(0).getValues().size() > 0)
+      {
+         synchronized (cachedParentChilds)
+         {
+            // if it's a props list with values, update it
+            int index = cachedParentChilds.indexOf(propertyData);
+            if (index >= 0)
+            {
+               // update already cached in list
+               cachedParentChilds.set(index, propertyData); // replace at current position
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.debug(name + ", put()    update child property  " + propertyData.getIdentifier()
+                     + "  at index #" + index);
+               }
+            }
+            else
+            {
+               // add new
+               List<PropertyData> newChilds = new ArrayList<PropertyData>(cachedParentChilds.size() + 1);
+               newChilds.addAll(cachedParentChilds);
+               newChilds.add(propertyData);
+
+               segment.properties.put(propertyData.getParentIdentifier(), newChilds); // cache new list
+               if (LOG.isDebugEnabled())
+               {
+                  LOG.debug(name + ", put()    add child property  " + propertyData.getIdentifier());
+               }
+            }
+         }
+      }
+      else
+      {
+         // if it's a props list with empty values, remove cached list
+         segment.properties.remove(propertyData.getParentIdentifier());
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void addChildProperties(final NodeData parentData, final List<PropertyData> childItems)
+   {
+      if (enabled && parentData != null && childItems != null)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug(name + ", addChildProperties() parent:   " + parentData.getQPath().getAsString() + "    "
+               + parentData.getIdentifier() + " " + childItems.size());
+         }
+
+         try
+         {
+            cacheParent(parentData);
+
+            synchronized (childItems)
+            {
+               putChildProperties(parentData.getIdentifier(), childItems);
+
+               // put childs in cache C
+               for (ItemData p : childItems)
+               {
+                  putItem(p);
+               }
+            }
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error in addChildProperties(): parent " + parentData.getQPath().getAsString(), e);
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void addChildPropertiesList(final NodeData parentData, final List<PropertyData> childItems)
+   {
+      if (enabled && parentData != null && childItems != null)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug(name + ", addChildPropertiesList() parent:   " + parentData.getQPath().getAsString() + "    "
+               + parentData.getIdentifier() + " " + childItems.size());
+         }
+
+         try
+         {
+            cacheParent(parentData);
+
+            synchronized (childItems)
+            {
+               putChildProperties(parentData.getIdentifier(), childItems);
+            }
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error in addChildPropertiesList(): parent " + parentData.getQPath().getAsString(), e);
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void addChildNodes(final NodeData parentData, final List<NodeData> childItems)
+   {
+      if (enabled && parentData != null && childItems != null)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug(name + ", addChildNodes() parent:   " + parentData.getQPath().getAsString() + "    "
+               + parentData.getIdentifier() + " " + childItems.size());
+         }
+
+         try
+         {
+            cacheParent(parentData);
+
+            synchronized (childItems)
+            {
+               Segment segment = segmentFor(parentData.getIdentifier());
+               segment.acquire();
+               try
+               {
+                  segment.nodes.put(parentData.getIdentifier(), childItems);
+               }
+               finally
+               {
+                  segment.unlock();
+               }
+
+               // put childs in cache C
+               for (ItemData n : childItems)
+               {
+                  putItem(n);
+               }
+            }
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error in addChildNodes(): parent " + parentData.getQPath().getAsString(), e);
+         }
+      }
+   }
+
+   /**
+    * Replaces the parent in the cache C before caching its child lists.
+    */
+   private void cacheParent(final NodeData parentData)
+   {
+      removeItem(parentData);
+      putItem(parentData);
+   }
+
+   private void putChildProperties(final String parentIdentifier, final List<PropertyData> childItems)
+   {
+      Segment segment = segmentFor(parentIdentifier);
+      segment.acquire();
+      try
+      {
+         segment.properties.put(parentIdentifier, childItems);
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * Removes data and its children in cache.<br>
+    * Implementation details<br>
+    * Remove Item from cache C, for Node removes lists in CN and CP (only lists).<br>
+    * Remove Item from parent's child lists (CN for Node, CP for Property).
+    * 
+    * @param item
+    */
+   public void remove(final ItemData item)
+   {
+      if (enabled && item != null)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug(name + ", remove() " + item.getQPath().getAsString() + " " + item.getIdentifier());
+         }
+
+         try
+         {
+            final String itemId = item.getIdentifier();
+
+            removeItem(item);
+
+            if (item.isNode())
+            {
+               // removing childs of the node
+               removeChildLists(itemId);
+
+               // removing child from the node's parent child nodes list
+               removeChildNode(item.getParentIdentifier(), itemId);
+            }
+            else
+            {
+               removeChildProperty(item.getParentIdentifier(), itemId);
+            }
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error remove item data from cache: " + item.getQPath().getAsString(), e);
+         }
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void remove(String identifier, ItemData item)
+   {
+      CacheId key = new CacheId(identifier);
+      Segment segment = segmentFor(identifier);
+      segment.acquire();
+      try
+      {
+         CacheValue v = segment.items.get(key);
+         if (v != null && v.getItem().equals(item))
+         {
+            segment.items.remove(key);
+         }
+      }
+      catch (Exception e)
+      {
+         LOG.error(name + ", Error remove item data from cache: " + item.getQPath().getAsString(), e);
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * Remove property by id if parent properties are cached in CP.
+    * 
+    * @param parentIdentifier
+    *          - parent id
+    * @param childIdentifier
+    *          - property id
+    * @return removed property or null if property not cached or parent properties are not cached
+    */
+   protected PropertyData removeChildProperty(final String parentIdentifier, final String childIdentifier)
+   {
+      Segment segment = segmentFor(parentIdentifier);
+      segment.acquire();
+      try
+      {
+         final List<PropertyData> childProperties = segment.properties.get(parentIdentifier);
+         if (childProperties != null)
+         {
+            synchronized (childProperties)
+            {
+               for (Iterator<PropertyData> i = childProperties.iterator(); i.hasNext();)
+               {
+                  PropertyData cn = i.next();
+                  if (cn.getIdentifier().equals(childIdentifier))
+                  {
+                     i.remove();
+                     if (childProperties.size() <= 0)
+                     {
+                        segment.properties.remove(parentIdentifier);
+                     }
+                     return cn;
+                  }
+               }
+            }
+         }
+         return null;
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * Remove child node by id if parent child nodes are cached in CN.
+    * 
+    * @param parentIdentifier
+    *          - parent id
+    * @param childIdentifier
+    *          - node id
+    * @return removed node or null if node not cached or parent child nodes are not cached
+    */
+   protected NodeData removeChildNode(final String parentIdentifier, final String childIdentifier)
+   {
+      Segment segment = segmentFor(parentIdentifier);
+      segment.acquire();
+      try
+      {
+         final List<NodeData> childNodes = segment.nodes.get(parentIdentifier);
+         if (childNodes != null)
+         {
+            synchronized (childNodes)
+            {
+               for (Iterator<NodeData> i = childNodes.iterator(); i.hasNext();)
+               {
+                  NodeData cn = i.next();
+                  if (cn.getIdentifier().equals(childIdentifier))
+                  {
+                     i.remove();
+                     return cn;
+                  }
+               }
+            }
+         }
+         return null;
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<NodeData> getChildNodes(final NodeData parentData)
+   {
+      if (enabled && parentData != null)
+      {
+         try
+         {
+            final List<NodeData> cn = getChildList(parentData, true);
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug(name + ", getChildNodes() " + parentData.getQPath().getAsString() + " "
+                  + parentData.getIdentifier() + " --> " + (cn == null ? "null" : cn.size() + " nodes"));
+            }
+            return cn;
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error in getChildNodes() parentData: " + parentData.getQPath().getAsString(), e);
+         }
+      }
+
+      return null; // nothing cached
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public int getChildNodesCount(NodeData parentData)
+   {
+      if (enabled && parentData != null)
+      {
+         try
+         {
+            final List<NodeData> cn = getChildList(parentData, true);
+            return cn != null ? cn.size() : -1;
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error in getChildNodesCount() parentData: " + parentData.getQPath().getAsString(), e);
+         }
+      }
+
+      return -1; // nothing cached
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<PropertyData> getChildProperties(final NodeData parentData)
+   {
+      if (enabled && parentData != null)
+      {
+         try
+         {
+            final List<PropertyData> cp = getChildList(parentData, false);
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug(name + ", getChildProperties() " + parentData.getQPath().getAsString() + " "
+                  + parentData.getIdentifier() + " --> " + (cp == null ? "null" : cp.size() + " properties"));
+            }
+            // don't return list of empty-valued props (but listChildProperties() can)
+            return cp != null && cp.get(0).getValues().size() > 0 ? cp : null;
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error in getChildProperties() parentData: " + parentData.getQPath().getAsString(), e);
+         }
+      }
+
+      return null; // nothing cached
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<PropertyData> listChildProperties(final NodeData parentData)
+   {
+      if (enabled && parentData != null)
+      {
+         try
+         {
+            return getChildList(parentData, false);
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error in listChildProperties() parentData: " + parentData.getQPath().getAsString(),
+               e);
+         }
+      }
+
+      return null; // nothing cached
+   }
+
+   /**
+    * Gives the cached child nodes or properties of the given node and calcs statistics.
+    */
+   @SuppressWarnings("unchecked")
+   private <T extends ItemData> List<T> getChildList(final NodeData parentData, boolean nodes)
+   {
+      final long start = System.nanoTime();
+      final Segment segment = segmentFor(parentData.getIdentifier());
+      segment.acquire();
+      try
+      {
+         final List<T> list =
+            (List<T>)(nodes ? segment.nodes.get(parentData.getIdentifier()) : segment.properties.get(parentData
+               .getIdentifier()));
+         if (list == null || (!nodes && ((PropertyData)list.get(0)).getValues().size() == 0))
+         {
+            segment.miss++;
+         }
+         else
+         {
+            segment.hits++;
+         }
+         segment.getTime += System.nanoTime() - start;
+         return list;
+      }
+      finally
+      {
+         segment.unlock();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<PropertyData> getReferencedProperties(String identifier)
+   {
+      return null;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void addReferencedProperties(String identifier, List<PropertyData> refProperties)
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isEnabled()
+   {
+      return enabled;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isPatternSupported()
+   {
+      return false;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isChildNodesByPageSupported()
+   {
+      return false;
+   }
+
+   /**
+    * Enable cache.
+    * 
+    * @param enabled
+    */
+   public void setEnabled(boolean enabled)
+   {
+      this.enabled = enabled;
+   }
+
+   /**
+    * Not supported now.
+    * 
+    * @param maxSize
+    */
+   public void setMaxSize(int maxSize)
+   {
+      LOG.warn("setMaxSize not supported now");
+   }
+
+   /**
+    * Set liveTime of newly cached items.
+    * 
+    * @param liveTime
+    */
+   public void setLiveTime(long liveTime)
+   {
+      this.liveTime = liveTime;
+      LOG.info(name + " : set liveTime=" + liveTime + "ms. New value will be applied to items cached from this moment.");
+   }
+
+   /**
+    * Remove sibling's subtrees from cache C, CN, CP.<br> For update (order-before) usecase.<br>
+    * The work does remove of all descendants of the item parent. I.e. the node and its siblings (for
+    * SNS case).<br>
+    */
+   protected void removeSiblings(final NodeData node)
+   {
+      if (node.getIdentifier().equals(Constants.ROOT_UUID))
+      {
+         return;
+      }
+
+      // remove on-parent child nodes list
+      Segment parentSegment = segmentFor(node.getParentIdentifier());
+      parentSegment.acquire();
+      try
+      {
+         parentSegment.nodes.remove(node.getParentIdentifier());
+      }
+      finally
+      {
+         parentSegment.unlock();
+      }
+
+      // go through the segments and remove every descendant of the node parent
+      final QPath path = node.getQPath().makeParentPath();
+      final List<String> toRemove = new ArrayList<String>();
+
+      for (Segment segment : segments)
+      {
+         segment.acquire();
+         try
+         {
+            for (Iterator<Map.Entry<CacheKey, CacheValue>> citer = segment.items.entrySet().iterator(); citer
+               .hasNext();)
+            {
+               Map.Entry<CacheKey, CacheValue> ce = citer.next();
+               if (ce.getKey().isDescendantOf(path))
+               {
+                  // will remove by id and the child lists too
+                  toRemove.add(ce.getValue().getItem().getIdentifier());
+                  citer.remove();
+               }
+            }
+         }
+         finally
+         {
+            segment.unlock();
+         }
+      }
+
+      for (String id : toRemove)
+      {
+         removeItem(new CacheId(id));
+         removeChildLists(id);
+      }
+   }
+
+   /**
+    * Updates the path of the cached descendants of a moved node.
+    */
+   private void updatePath(final ItemState state)
+   {
+      final QPath oldPath = state.getOldPath();
+      final List<ItemData[]> updatedChilds = new ArrayList<ItemData[]>();
+
+      for (Segment segment : segments)
+      {
+         segment.acquire();
+         try
+         {
+            for (Map.Entry<CacheKey, CacheValue> cacheEntry : segment.items.entrySet())
+            {
+               CacheValue cacheValue = cacheEntry.getValue();
+
+               ItemData oldItemData = cacheValue.getItem();
+               if (oldItemData.getQPath().isDescendantOf(oldPath))
+               {
+                  int relativeDegree = oldItemData.getQPath().getDepth() - oldPath.getDepth();
+                  QPath newQPath =
+                     QPath.makeChildPath(state.getData().getQPath(), oldItemData.getQPath().getRelPath(relativeDegree));
+
+                  ItemData newItemData;
+                  if (oldItemData.isNode())
+                  {
+                     NodeData nodeData = (NodeData)oldItemData;
+                     newItemData =
+                        new PersistedNodeData(nodeData.getIdentifier(), newQPath, nodeData.getParentIdentifier(),
+                           nodeData.getPersistedVersion(), nodeData.getOrderNumber(), nodeData.getPrimaryTypeName(),
+                           nodeData.getMixinTypeNames(), nodeData.getACL());
+                  }
+                  else
+                  {
+                     PersistedPropertyData oldPropertyData = (PersistedPropertyData)oldItemData;
+                     newItemData =
+                        new PersistedPropertyData(oldPropertyData.getIdentifier(), newQPath,
+                           oldPropertyData.getParentIdentifier(), oldPropertyData.getPersistedVersion(),
+                           oldPropertyData.getType(), oldPropertyData.isMultiValued(), oldPropertyData.getValues(),
+                           new SimplePersistedSize(oldPropertyData.getPersistedSize()));
+                  }
+
+                  // setValue() does not change the access order, so the iteration can go on
+                  cacheEntry.setValue(new CacheValue(newItemData, cacheValue.getExpiredTime()));
+                  updatedChilds.add(new ItemData[]{oldItemData, newItemData});
+               }
+            }
+         }
+         finally
+         {
+            segment.unlock();
+         }
+      }
+
+      // update in children lists of the parents
+      for (ItemData[] updated : updatedChilds)
+      {
+         Segment segment = segmentFor(updated[0].getParentIdentifier());
+         segment.acquire();
+         try
+         {
+            if (updated[0].isNode())
+            {
+               List<NodeData> cachedChildNodes = segment.nodes.get(updated[0].getParentIdentifier());
+               int index = cachedChildNodes == null ? -1 : cachedChildNodes.indexOf(updated[0]);
+               if (index >= 0)
+               {
+                  cachedChildNodes.set(index, (NodeData)updated[1]);
+               }
+            }
+            else
+            {
+               List<PropertyData> cachedChildProps = segment.properties.get(updated[0].getParentIdentifier());
+               int index = cachedChildProps == null ? -1 : cachedChildProps.indexOf(updated[0]);
+               if (index >= 0)
+               {
+                  cachedChildProps.set(index, (PropertyData)updated[1]);
+               }
+            }
+         }
+         finally
+         {
+            segment.unlock();
+         }
+      }
+   }
+
+   /**
+    * Removes the cached descendant nodes of a node whose permissions changed.
+    */
+   private void removeDescendantNodes(final ItemData parent)
+   {
+      // delete parent containing child nodes list
+      Segment parentSegment = segmentFor(parent.getParentIdentifier());
+      parentSegment.acquire();
+      try
+      {
+         parentSegment.nodes.remove(parent.getParentIdentifier());
+      }
+      finally
+      {
+         parentSegment.unlock();
+      }
+
+      for (Segment segment : segments)
+      {
+         segment.acquire();
+         try
+         {
+            // traverse item cache
+            Iterator<CacheValue> cacheIterator = segment.items.values().iterator();
+            while (cacheIterator.hasNext())
+            {
+               ItemData cachedItem = cacheIterator.next().getItem();
+               if (cachedItem.isNode() && cachedItem.getQPath().isDescendantOf(parent.getQPath()))
+               {
+                  cacheIterator.remove();
+               }
+            }
+
+            // traverse child node cache
+            Iterator<List<NodeData>> childNodesIterator = segment.nodes.values().iterator();
+            while (childNodesIterator.hasNext())
+            {
+               List<NodeData> list = childNodesIterator.next();
+               if (list != null && list.size() > 0 && list.get(0).getQPath().isDescendantOf(parent.getQPath()))
+               {
+                  childNodesIterator.remove();
+               }
+            }
+         }
+         finally
+         {
+            segment.unlock();
+         }
+      }
+   }
+
+   // --------------------- ItemsPersistenceListener --------------
+
+   /**
+    * {@inheritDoc}
+    */
+   public void onSaveItems(final ItemStateChangesLog changesLog)
+   {
+      if (!enabled)
+      {
+         return;
+      }
+
+      ItemState prevState = null;
+      for (Iterator<ItemState> iter = changesLog.getAllStates().iterator(); iter.hasNext();)
+      {
+         ItemState state = iter.next();
+         ItemData item = state.getData();
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug(name + ", onSaveItems() " + ItemState.nameFromValue(state.getState()) + " "
+               + item.getQPath().getAsString() + " " + item.getIdentifier() + " parent:" + item.getParentIdentifier());
+         }
+
+         try
+         {
+            if (state.isAdded())
+            {
+               put(item);
+            }
+            else if (state.isDeleted())
+            {
+               remove(item);
+            }
+            else if (state.isRenamed())
+            {
+               // MOVE operation (DESTENATION changes, same as ADDED), states for whole subtree!
+               // RENAME goes before DELETE
+               put(item);
+            }
+            else if (state.isPathChanged())
+            {
+               updatePath(state);
+            }
+            else if (state.isUpdated())
+            {
+               // UPDATE occurs on reordered (no subtree!) and merged nodes (for each
+               // merged-updated)
+               if (item.isNode())
+               {
+                  if (prevState != null)
+                  {
+                     // play only for reorder, UPDATE goes after DELETE of same path
+                     // item
+                     // we have to unload node and its parent child nodes to be loaded
+                     // back from the persistence
+                     if (prevState.isDeleted()
+                        && prevState.getData().getParentIdentifier().equals(item.getParentIdentifier()))
+                     {
+                        removeSiblings((NodeData)item);
+                     }
+                  }
+               }
+               else if (item.getQPath().getName().equals(Constants.EXO_PERMISSIONS))
+               {
+                  // get parent Node
+                  ItemData parent = get(item.getParentIdentifier());
+                  if (parent != null)
+                  {
+                     // delete parent
+                     remove(parent);
+                     removeDescendantNodes(parent);
+                  }
+               }
+               put(item);
+            }
+            else if (state.isMixinChanged())
+            {
+               // MIXIN_CHANGED, on Node
+               put(item);
+            }
+         }
+         catch (Exception e)
+         {
+            LOG.error(name + ", Error process onSaveItems action for item data: "
+               + (item != null ? item.getQPath().getAsString() : "[null]"), e);
+         }
+
+         prevState = state;
+      }
+   }
+
+   // ---------------------------------------------------
+
+   /**
+    * Return last gathered statistic.<br>
+    * 
+    * @return SegmentedCacheStatistic
+    */
+   public SegmentedCacheStatistic getStatistic()
+   {
+      return statistic;
+   }
+
+   public void beginTransaction()
+   {
+
+   }
+
+   public void commitTransaction()
+   {
+
+   }
+
+   public void rollbackTransaction()
+   {
+
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isTXAware()
+   {
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void start()
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void stop()
+   {
+      try
+      {
+         workerTimer.cancel();
+      }
+      catch (Throwable e) //NOSONAR
+      {
+         LOG.warn(this.name + " cache, stop error " + e.getMessage());
+      }
+
+      for (Segment segment : segments)
+      {
+         segment.lock();
+         try
+         {
+            segment.items.clear();
+            segment.nodes.clear();
+            segment.properties.clear();
+         }
+         finally
+         {
+            segment.unlock();
+         }
+      }
+   }
+
+   public void addChildProperties(NodeData parent, QPathEntryFilter pattern, List<PropertyData> childProperties)
+   {
+   }
+
+   public List<PropertyData> getChildProperties(NodeData parent, QPathEntryFilter pattern)
+   {
+      return null;
+   }
+
+   public void addChildNodes(NodeData parent, QPathEntryFilter pattern, List<NodeData> childNodes)
+   {
+   }
+
+   public List<NodeData> getChildNodes(NodeData parent, QPathEntryFilter pattern)
+   {
+      return null;
+   }
+
+   public List<NodeData> getChildNodesByPage(NodeData parent, int fromOrderNum)
+   {
+      return null;
+   }
+
+   public void addChildNodesByPage(NodeData parent, List<NodeData> childs, int fromOrderNum)
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void addListener(WorkspaceStorageCacheListener listener) throws UnsupportedOperationException
+   {
+      throw new UnsupportedOperationException(
+         "The cache listeners are not supported by the SegmentedWorkspaceStorageCacheImpl");
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void removeListener(WorkspaceStorageCacheListener listener) throws UnsupportedOperationException
+   {
+      throw new UnsupportedOperationException(
+         "The cache listeners are not supported by the SegmentedWorkspaceStorageCacheImpl");
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void addChildNodesCount(NodeData parent, int count)
+   {
+   }
+}
@@ -19,6 +19,7 @@
 package org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan;
 
 import org.exoplatform.services.jcr.datamodel.ItemData;
+import org.exoplatform.services.jcr.datamodel.QPath;
 import org.exoplatform.services.jcr.impl.core.itemfilters.QPathEntryFilter;
 import org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan.ISPNCacheWorkspaceStorageCache.FakeValueSet;
 import org.exoplatform.services.jcr.infinispan.CacheKey;
@@ -44,6 +45,8 @@ import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.SystemException;
 import javax.transaction.TransactionManager;
 
 /**
@@ -70,8 +73,31 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
     */
    private final Boolean allowLocalChanges;
 
+   /**
+    * The optional cache kept on the local node in front of the parent cache, <code>null</code> if disabled.
+    */
+   private final NearCache nearCache;
+
+   /**
+    * Notified of the keys of the committed changes in order to invalidate them in the near cache of the
+    * other cluster nodes, <code>null</code> if there is no other node to notify.
+    */
+   private volatile NearCacheInvalidator nearCacheInvalidator;
+
    private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.BufferedISPNCache");//NOSONAR
 
+   /**
+    * Invalidates the near cache of the other cluster nodes.
+    */
+   public static interface NearCacheInvalidator
+   {
+      /**
+       * Removes the given keys from the near cache of the other cluster nodes, this is called
+       * once the changes are visible in the parent cache.
+       */
+      void invalidate(CacheKey[] keys);
+   }
+
    public static enum ChangesType {
       REMOVE, PUT;
    }
@@ -368,6 +394,59 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
       }
    }
 
+   /**
+    * Adds the previous path of a moved node to the {@link TreeMoveLog} found by given key, the
+    * log is created if it doesn't exist yet.
+    */
+   public static class AddTreeMoveContainer extends ChangesContainer
+   {
+      private final QPath prevPath;
+
+      private final Collection<QPath> removedPaths;
+
+      private final TreeMoveLog localLog;
+
+      public AddTreeMoveContainer(CacheKey key, QPath prevPath, Collection<QPath> removedPaths, TreeMoveLog localLog,
+         AdvancedCache<CacheKey, Object> cache, int historicalIndex, boolean local, Boolean allowLocalChanges)
+      {
+         super(key, ChangesType.PUT, cache, historicalIndex, local, allowLocalChanges);
+         this.prevPath = prevPath;
+         this.removedPaths = removedPaths;
+         this.localLog = localLog;
+      }
+
+      @Override
+      public void apply()
+      {
+         // force writeLock on next read
+         Object existingObject = cache.withFlags(Flag.FORCE_WRITE_LOCK).get(key);
+         TreeMoveLog log;
+         if (existingObject instanceof TreeMoveLog)
+         {
+            log = (TreeMoveLog)existingObject;
+         }
+         else
+         {
+            if (existingObject != null)
+            {
+               LOG.error("Unexpected object found by key " + key.toString() + ". Expected TreeMoveLog, but found:"
+                  + existingObject.getClass().getName());
+            }
+            // the log may have been evicted, the local copy is then the most recent one
+            log = localLog == null ? new TreeMoveLog() : localLog;
+         }
+         // the log must always be shared with the other cluster nodes
+         cache.withFlags(Flag.SKIP_REMOTE_LOOKUP, Flag.IGNORE_RETURN_VALUES).put(key,
+            log.add(prevPath, removedPaths));
+      }
+
+      @Override
+      public boolean isTxRequired()
+      {
+         return true;
+      }
+   }
+
    /**
     * It tries to get set by given key. If it is set then removes value and puts new modified set
     * back.
@@ -528,9 +607,36 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
    }
 
    public BufferedISPNCache(Cache<CacheKey, Object> parentCache, Boolean allowLocalChanges)
+   {
+      this(parentCache, allowLocalChanges, null);
+   }
+
+   /**
+    * @param nearCache the cache to keep on the local node in front of the parent cache,
+    * <code>null</code> to disable it
+    */
+   public BufferedISPNCache(Cache<CacheKey, Object> parentCache, Boolean allowLocalChanges, NearCache nearCache)
    {
       this.parentCache = parentCache.getAdvancedCache();
       this.allowLocalChanges = allowLocalChanges;
+      this.nearCache = nearCache;
+   }
+
+   /**
+    * @return the near cache or <code>null</code> if it is disabled
+    */
+   public NearCache getNearCache()
+   {
+      return nearCache;
+   }
+
+   /**
+    * @param nearCacheInvalidator the invalidator to notify of the keys of the committed changes,
+    * <code>null</code> if there is no other node to notify
+    */
+   public void setNearCacheInvalidator(NearCacheInvalidator nearCacheInvalidator)
+   {
+      this.nearCacheInvalidator = nearCacheInvalidator;
    }
 
    /**
@@ -571,6 +677,7 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
    public void evict(CacheKey key)
    {
       parentCache.evict(key);
+      invalidate(key);
    }
 
    /**
@@ -924,6 +1031,7 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
    public void clear()
    {
       parentCache.clear();
+      invalidateAll();
    }
 
    /**
@@ -947,7 +1055,132 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
     */
    public Object get(final Object key)
    {
-      return parentCache.get(key);
+      if (nearCache == null || isInGlobalTransaction())
+      {
+         // the values read within a transaction could be not committed yet
+         return parentCache.get(key);
+      }
+      Object value = nearCache.get(key);
+      if (value == null)
+      {
+         long stamp = nearCache.getStamp(key);
+         value = parentCache.get(key);
+         if (value != null)
+         {
+            nearCache.put((CacheKey)key, value, stamp);
+         }
+      }
+      return value;
+   }
+
+   /**
+    * Indicates whether the current thread is associated to a transaction
+    */
+   private boolean isInGlobalTransaction()
+   {
+      TransactionManager tm = getTransactionManager();
+      try
+      {
+         return tm != null && tm.getStatus() != Status.STATUS_NO_TRANSACTION;
+      }
+      catch (SystemException e)
+      {
+         if (LOG.isTraceEnabled())
+         {
+            LOG.trace("Could not get the status of the transaction", e);
+         }
+         return true;
+      }
+   }
+
+   /**
+    * Removes the given keys from the near cache once the current transaction if any is completed, they
+    * are also removed immediately to prevent other threads from reading values that have just been modified.
+    * The other cluster nodes are notified once the changes are visible in the parent cache.
+    */
+   private void invalidateNearCache(TransactionManager tm, final List<ChangesContainer> containers)
+   {
+      for (ChangesContainer cacheChange : containers)
+      {
+         nearCache.remove(cacheChange.getKey());
+      }
+      try
+      {
+         if (tm == null || tm.getStatus() != Status.STATUS_ACTIVE)
+         {
+            invalidateRemoteNearCaches(containers);
+            return;
+         }
+         tm.getTransaction().registerSynchronization(new Synchronization()
+         {
+            public void beforeCompletion()
+            {
+            }
+
+            public void afterCompletion(int status)
+            {
+               for (ChangesContainer cacheChange : containers)
+               {
+                  nearCache.remove(cacheChange.getKey());
+               }
+               if (status == Status.STATUS_COMMITTED)
+               {
+                  invalidateRemoteNearCaches(containers);
+               }
+            }
+         });
+      }
+      catch (Exception e)//NOSONAR
+      {
+         // we cannot know when the changes will be visible so we clear everything
+         LOG.warn("Could not register the synchronization of the near cache, it will be cleared", e);
+         nearCache.clear();
+         invalidateRemoteNearCaches(containers);
+      }
+   }
+
+   /**
+    * Notifies the {@link NearCacheInvalidator} if any of the keys of the given changes
+    */
+   private void invalidateRemoteNearCaches(List<ChangesContainer> containers)
+   {
+      NearCacheInvalidator invalidator = nearCacheInvalidator;
+      if (invalidator == null || containers.isEmpty())
+      {
+         return;
+      }
+      Set<CacheKey> keys = new HashSet<CacheKey>();
+      for (ChangesContainer cacheChange : containers)
+      {
+         keys.add(cacheChange.getKey());
+      }
+      if (!keys.isEmpty())
+      {
+         invalidator.invalidate(keys.toArray(new CacheKey[keys.size()]));
+      }
+   }
+
+   /**
+    * Removes the given key from the near cache if any, this is called when the key has been
+    * modified by another node or by a global operation
+    */
+   public void invalidate(Object key)
+   {
+      if (nearCache != null)
+      {
+         nearCache.remove(key);
+      }
+   }
+
+   /**
+    * Removes all the entries from the near cache if any
+    */
+   public void invalidateAll()
+   {
+      if (nearCache != null)
+      {
+         nearCache.clear();
+      }
    }
 
    /**
@@ -1109,7 +1342,17 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
       try
       {
          final List<ChangesContainer> containers = changesContainer.getSortedList();
-         commitChanges(tm, containers);
+         try
+         {
+            commitChanges(tm, containers);
+         }
+         finally
+         {
+            if (nearCache != null)
+            {
+               invalidateNearCache(tm, containers);
+            }
+         }
       }
       finally
       {
@@ -1277,6 +1520,21 @@ public class BufferedISPNCache implements Cache<CacheKey, Object>
          local.get(), allowLocalChanges));
    }
 
+   /**
+    * Registers the move of a node into the log found by the given key
+    *
+    * @param prevPath the previous path of the moved node
+    * @param removedPaths the previous paths to remove from the log, can be <code>null</code>
+    * @param localLog the local copy of the log used if the log cannot be found in the cache, can be
+    *          <code>null</code>
+    */
+   public void addTreeMove(CacheKey key, QPath prevPath, Collection<QPath> removedPaths, TreeMoveLog localLog)
+   {
+      CompressedISPNChangesBuffer changesContainer = getChangesBufferSafe();
+      changesContainer.add(new AddTreeMoveContainer(key, prevPath, removedPaths, localLog, parentCache,
+         changesContainer.getHistoryIndex(), local.get(), allowLocalChanges));
+   }
+
    public void removeFromPatternList(CacheKey key, ItemData value)
    {
       CompressedISPNChangesBuffer changesContainer = getChangesBufferSafe();
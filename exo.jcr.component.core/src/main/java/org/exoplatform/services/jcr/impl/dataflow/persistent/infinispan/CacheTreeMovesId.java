@@ -0,0 +1,45 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan;
+
+import org.exoplatform.services.jcr.infinispan.CacheKey;
+
+/**
+ * Cache record used to store the {@link TreeMoveLog} of a workspace.
+ *
+ * @version $Id$
+ */
+public class CacheTreeMovesId extends CacheKey
+{
+
+   /**
+    * The id of the unique record of a workspace
+    */
+   private static final String ID = "$treeMoves";
+
+   public CacheTreeMovesId()
+   {
+      super();
+   }
+
+   CacheTreeMovesId(String ownerId)
+   {
+      super(ownerId, ID);
+   }
+}
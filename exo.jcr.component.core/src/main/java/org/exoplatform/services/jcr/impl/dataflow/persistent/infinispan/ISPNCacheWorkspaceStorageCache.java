@@ -60,6 +60,9 @@ import org.exoplatform.services.jcr.infinispan.CacheKey;
 import org.exoplatform.services.jcr.infinispan.ISPNCacheFactory;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.RPCService;
+import org.exoplatform.services.rpc.RemoteCommand;
 import org.exoplatform.services.transaction.ActionNonTxAware;
 import org.exoplatform.services.transaction.TransactionService;
 import org.infinispan.Cache;
@@ -71,16 +74,23 @@ import org.infinispan.distexec.mapreduce.MapReduceTask;
 import org.infinispan.distexec.mapreduce.Reducer;
 import org.infinispan.lifecycle.ComponentStatus;
 import org.infinispan.notifications.Listener;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryInvalidated;
 import org.infinispan.notifications.cachelistener.annotation.CacheEntryModified;
+import org.infinispan.notifications.cachelistener.annotation.CacheEntryRemoved;
+import org.infinispan.notifications.cachelistener.event.CacheEntryEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryInvalidatedEvent;
 import org.infinispan.notifications.cachelistener.event.CacheEntryModifiedEvent;
+import org.infinispan.notifications.cachelistener.event.CacheEntryRemovedEvent;
 import org.picocontainer.Startable;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.ObjectInput;
 import java.io.ObjectOutput;
+import java.io.Serializable;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
@@ -133,6 +143,34 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
     */
    private static final String CACHE_NAME = "JCRCache";
 
+   /**
+    * The name of the parameter defining the maximum amount of entries of the near cache, the near
+    * cache is disabled if the value is 0 or less which is the default value. The near cache can only
+    * be used in case of the distributed mode.
+    */
+   public static final String NEAR_CACHE_MAX_SIZE_PARAMETER_NAME = "near-cache-max-size";
+
+   /**
+    * The name of the parameter defining the live time of the entries of the near cache
+    */
+   public static final String NEAR_CACHE_LIVE_TIME_PARAMETER_NAME = "near-cache-live-time";
+
+   /**
+    * The default live time of the entries of the near cache in milliseconds
+    */
+   public static final long DEFAULT_NEAR_CACHE_LIVE_TIME = 30000;
+
+   /**
+    * The name of the parameter defining the maximum amount of moves kept in the {@link TreeMoveLog}, once
+    * reached the cached descendants of the oldest half of the moved nodes are removed from the cache.
+    */
+   public static final String TREE_MOVES_MAX_SIZE_PARAMETER_NAME = "tree-moves-max-size";
+
+   /**
+    * The default maximum amount of moves kept in the {@link TreeMoveLog}
+    */
+   public static final int DEFAULT_TREE_MOVES_MAX_SIZE = 256;
+
    /**
     * This id will be the unique identifier of the workspace in case the
     * distributed mode is enabled as the cache will be then shared so we
@@ -148,6 +186,35 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
    
    private final GlobalOperationCaller caller;
 
+   /**
+    * The maximum amount of moves kept in the {@link TreeMoveLog}
+    */
+   private final int treeMovesMaxSize;
+
+   /**
+    * The local copy of the {@link TreeMoveLog} of the workspace, <code>null</code> if empty. It is updated
+    * each time the log is modified in the cache, locally or by another cluster node, so that the reads never
+    * need to look it up and an eviction of the log from the cache does not make it lost. It is always
+    * <code>null</code> in distributed mode.
+    */
+   private volatile TreeMoveLog treeMoves;
+
+   /**
+    * The listener used to invalidate the near cache, <code>null</code> if the near cache is disabled
+    */
+   private NearCacheInvalidationListener nearCacheListener;
+
+   /**
+    * The service used to invalidate the near cache of the other cluster nodes, <code>null</code> if the
+    * near cache is disabled or if the service is not available
+    */
+   private RPCService rpcService;
+
+   /**
+    * The command that invalidates the given keys or the whole near cache of a cluster node
+    */
+   private RemoteCommand invalidateNearCache;
+
    /**
     * The list of all the listeners
     */
@@ -170,7 +237,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
          @Override
          protected ItemData execute(String id)
          {
-            return id == null ? null : (ItemData)cache.get(new CacheId(getOwnerId(), id));
+            return id == null ? null : resolvePath((ItemData)cache.get(new CacheId(getOwnerId(), id)));
          }
       };
 
@@ -200,6 +267,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
                   return null;
                }
                final List<NodeData> childs = new ArrayList<NodeData>();
+               final TreeMoveLog moves = getTreeMoves();
 
                for (String childId : set)
                {
@@ -209,7 +277,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
                      return null;
                   }
 
-                  childs.add(child);
+                  childs.add((NodeData)resolvePath(child, parent, moves));
                }
 
                // order children by orderNumber, as HashSet returns children in other order
@@ -305,6 +373,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
             if (set != null)
             {
                final List<PropertyData> childs = new ArrayList<PropertyData>();
+               final TreeMoveLog moves = getTreeMoves();
 
                for (String childId : set)
                {
@@ -318,6 +387,11 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
                   {
                      return null;
                   }
+                  child = (PropertyData)resolvePath(child, null, moves);
+                  if (child == null)
+                  {
+                     return null;
+                  }
                   childs.add(child);
                }
                return childs;
@@ -340,6 +414,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
             if (set != null)
             {
                final List<PropertyData> props = new ArrayList<PropertyData>();
+               final TreeMoveLog moves = getTreeMoves();
 
                for (String childId : set)
                {
@@ -349,6 +424,11 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
                   {
                      return null;
                   }
+                  prop = (PropertyData)resolvePath(prop, null, moves);
+                  if (prop == null)
+                  {
+                     return null;
+                  }
                   // add property as many times as has referenced values 
                   List<ValueData> lData = prop.getValues();
                   for (int i = 0, length = lData.size(); i < length; i++)
@@ -636,10 +716,31 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       }
       Boolean allowLocalChanges =
          useDistributedCache ? cacheEntry.getParameterBoolean("allow-local-changes", Boolean.TRUE) : Boolean.TRUE;
-      this.cache = new BufferedISPNCache(parentCache, allowLocalChanges);
+      int nearCacheMaxSize =
+         useDistributedCache ? cacheEntry.getParameterInteger(NEAR_CACHE_MAX_SIZE_PARAMETER_NAME, 0) : 0;
+      NearCache nearCache = null;
+      if (nearCacheMaxSize > 0)
+      {
+         long liveTime = cacheEntry.getParameterTime(NEAR_CACHE_LIVE_TIME_PARAMETER_NAME, DEFAULT_NEAR_CACHE_LIVE_TIME);
+         nearCache = new NearCache(nearCacheMaxSize, liveTime);
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("A near cache of " + nearCacheMaxSize + " entries with a live time of " + liveTime
+               + " ms has been enabled for the workspace whose unique id is " + ownerId);
+         }
+      }
+      this.cache = new BufferedISPNCache(parentCache, allowLocalChanges, nearCache);
+      this.treeMovesMaxSize =
+         Math.max(1, cacheEntry.getParameterInteger(TREE_MOVES_MAX_SIZE_PARAMETER_NAME, DEFAULT_TREE_MOVES_MAX_SIZE));
       if (useDistributedCache)
       {
          this.caller = new DistributedOperationCaller();
+         if (nearCache != null)
+         {
+            this.nearCacheListener = new NearCacheInvalidationListener();
+            cache.addListener(nearCacheListener);
+            initNearCacheInvalidation((RPCService)ctx.getContainer().getComponentInstanceOfType(RPCService.class));
+         }
       }
       else
       {
@@ -648,6 +749,38 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       }
 
       this.cache.start();
+      if (!useDistributedCache)
+      {
+         initTreeMoves(parentCache);
+      }
+   }
+
+   /**
+    * Loads the {@link TreeMoveLog} of the workspace. If there is none while the cache already contains items
+    * received from the other cluster nodes, the log may have been evicted from the cache and those items may
+    * have outdated paths, so they are removed from the local node.
+    */
+   private void initTreeMoves(Cache<CacheKey, Object> parentCache)
+   {
+      Object moves = cache.get(new CacheTreeMovesId(getOwnerId()));
+      if (moves instanceof TreeMoveLog)
+      {
+         setTreeMoves((TreeMoveLog)moves);
+      }
+      else if (cache.size() > 0)
+      {
+         LOG.info("No log of the moves of the nodes could be found for the workspace " + getOwnerId()
+            + ", the items received from the other cluster nodes are removed from the local cache");
+         parentCache.getAdvancedCache().withFlags(Flag.CACHE_MODE_LOCAL).clear();
+      }
+   }
+
+   /**
+    * Sets the local copy of the {@link TreeMoveLog} of the workspace.
+    */
+   private void setTreeMoves(TreeMoveLog moves)
+   {
+      treeMoves = moves != null && moves.size() > 0 ? moves : null;
    }
 
    private boolean isDistributedMode()
@@ -1112,6 +1245,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       }
 
       final List<NodeData> childs = new ArrayList<NodeData>();
+      final TreeMoveLog moves = getTreeMoves();
       for (String childId : set)
       {
          NodeData child = (NodeData)cache.get(new CacheId(getOwnerId(), childId));
@@ -1120,7 +1254,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
             return null;
          }
 
-         childs.add(child);
+         childs.add((NodeData)resolvePath(child, parent, moves));
       }
 
       // order children by orderNumber, as HashSet returns children in other order
@@ -1150,6 +1284,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
 
       final List<NodeData> childs = new ArrayList<NodeData>();
 
+      final TreeMoveLog moves = getTreeMoves();
       for (String childId : set)
       {
          NodeData child = (NodeData)cache.get(new CacheId(getOwnerId(), childId));
@@ -1158,7 +1293,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
             return null;
          }
 
-         childs.add(child);
+         childs.add((NodeData)resolvePath(child, parent, moves));
       }
 
       // order children by orderNumber, as HashSet returns children in other order
@@ -1201,6 +1336,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       }
 
       final List<PropertyData> childs = new ArrayList<PropertyData>();
+      final TreeMoveLog moves = getTreeMoves();
 
       for (String childId : set)
       {
@@ -1214,7 +1350,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
          {
             return null;
          }
-         childs.add(child);
+         childs.add((PropertyData)resolvePath(child, parent, moves));
       }
       return childs;
 
@@ -1560,8 +1696,8 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
    }
 
    /**
-    * Check all items in cache if it is a descendant of the previous root path, and if so update the path according 
-    * the new root path.
+    * Handles the move of a node whose cached descendants may have outdated paths, see
+    * {@link GlobalOperationCaller#updateTreePath(QPath, QPath, Set)}.
     * 
     * @param prevRootPath previous root path
     * @param newRootPath new root path
@@ -1573,6 +1709,88 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       return caller.updateTreePath(prevRootPath, newRootPath, idsToSkip);
    }
 
+   /**
+    * @return the log of the moves of the workspace or <code>null</code> if it is empty
+    */
+   private TreeMoveLog getTreeMoves()
+   {
+      return treeMoves;
+   }
+
+   /**
+    * Gives the given item with a path consistent with the current path of its parent.
+    */
+   private ItemData resolvePath(ItemData item)
+   {
+      if (item == null || item instanceof NullItemData || item.getParentIdentifier() == null)
+      {
+         return item;
+      }
+      return resolvePath(item, null, getTreeMoves());
+   }
+
+   /**
+    * Gives the given item with a path consistent with the current path of its parent, if one of its ancestors
+    * has been moved since it has been cached, its path is rebuilt from the path of its parent and the outdated
+    * entry is removed from the cache. The entry is removed rather than replaced to never override a concurrent
+    * update of the item.
+    *
+    * @param item the cached item
+    * @param parent the parent of the item if known, <code>null</code> otherwise
+    * @param moves the log of the moves, <code>null</code> if empty
+    * @return the item with an up to date path or <code>null</code> if the path cannot be resolved from the cache
+    */
+   private ItemData resolvePath(ItemData item, NodeData parent, TreeMoveLog moves)
+   {
+      if (moves == null || item == null || item instanceof NullItemData || item.getParentIdentifier() == null
+         || !moves.isAffected(item.getQPath()))
+      {
+         return item;
+      }
+      if (parent == null)
+      {
+         ItemData parentData =
+            resolvePath((ItemData)cache.get(new CacheId(getOwnerId(), item.getParentIdentifier())), null, moves);
+         if (!(parentData instanceof NodeData) || parentData instanceof NullItemData)
+         {
+            // the parent is not in the cache anymore, so the item will be reloaded
+            removeOutdatedItem(item.getIdentifier());
+            return null;
+         }
+         parent = (NodeData)parentData;
+      }
+      QPathEntry[] entries = item.getQPath().getEntries();
+      QPath path = QPath.makeChildPath(parent.getQPath(), entries[entries.length - 1]);
+      if (path.equals(item.getQPath()))
+      {
+         return item;
+      }
+      removeOutdatedItem(item.getIdentifier());
+      return copyWithPath(item, path);
+   }
+
+   /**
+    * Removes the cached item whose path is outdated unless a transaction is in progress
+    */
+   private void removeOutdatedItem(String identifier)
+   {
+      if (cache.isTransactionActive())
+      {
+         return;
+      }
+      try
+      {
+         cache.beginTransaction();
+         cache.setLocal(true);
+         cache.remove(new CacheId(getOwnerId(), identifier));
+      }
+      finally
+      {
+         cache.setLocal(false);
+         dedicatedTxCommit();
+      }
+   }
+
    /**
     * Apply rename operation on cache. Parent node will be re-added into the cache since
     * parent or name might changing. For other children only item data will be replaced.
@@ -1734,6 +1952,50 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       }
    }
 
+   /**
+    * @return the amount of lookups served by the near cache, -1 if the near cache is disabled
+    */
+   @Managed
+   @ManagedDescription("The total amount of lookups served by the near cache, -1 if disabled")
+   public long getNearCacheHits()
+   {
+      NearCache nearCache = cache.getNearCache();
+      return nearCache == null ? -1 : nearCache.getHits();
+   }
+
+   /**
+    * @return the amount of lookups that could not be served by the near cache, -1 if the near cache is disabled
+    */
+   @Managed
+   @ManagedDescription("The total amount of lookups that could not be served by the near cache, -1 if disabled")
+   public long getNearCacheMisses()
+   {
+      NearCache nearCache = cache.getNearCache();
+      return nearCache == null ? -1 : nearCache.getMisses();
+   }
+
+   /**
+    * @return the hit ratio of the near cache, -1 if the near cache is disabled
+    */
+   @Managed
+   @ManagedDescription("The hit ratio of the near cache between 0 and 1, -1 if disabled")
+   public double getNearCacheHitRatio()
+   {
+      NearCache nearCache = cache.getNearCache();
+      return nearCache == null ? -1 : nearCache.getHitRatio();
+   }
+
+   /**
+    * @return the amount of entries of the near cache, -1 if the near cache is disabled
+    */
+   @Managed
+   @ManagedDescription("The amount of entries of the near cache, -1 if disabled")
+   public int getNearCacheSize()
+   {
+      NearCache nearCache = cache.getNearCache();
+      return nearCache == null ? -1 : nearCache.size();
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -1898,6 +2160,48 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       return false;
    }
 
+   /**
+    * Creates a copy of the given item with the given path
+    */
+   private static ItemData copyWithPath(ItemData data, QPath newPath)
+   {
+      if (data.isNode())
+      {
+         NodeData prevNode = (NodeData)data;
+         return new PersistedNodeData(prevNode.getIdentifier(), newPath, prevNode.getParentIdentifier(),
+            prevNode.getPersistedVersion(), prevNode.getOrderNumber(), prevNode.getPrimaryTypeName(),
+            prevNode.getMixinTypeNames(), prevNode.getACL());
+      }
+      PropertyData prevProp = (PropertyData)data;
+      return new PersistedPropertyData(prevProp.getIdentifier(), newPath, prevProp.getParentIdentifier(),
+         prevProp.getPersistedVersion(), prevProp.getType(), prevProp.isMultiValued(), prevProp.getValues(),
+         new SimplePersistedSize(((PersistedPropertyData)prevProp).getPersistedSize()));
+   }
+
+   /**
+    * Indicates whether the given value is an item located under one of the given paths
+    */
+   private static boolean isDescendantOf(Object value, Collection<QPath> rootPaths)
+   {
+      if (!(value instanceof ItemData) || value instanceof NullItemData)
+      {
+         return false;
+      }
+      QPath path = ((ItemData)value).getQPath();
+      if (path == null)
+      {
+         return false;
+      }
+      for (QPath rootPath : rootPaths)
+      {
+         if (path.isDescendantOf(rootPath))
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
    /**
     * Actions that are not supposed to be called within a transaction
     * 
@@ -1930,6 +2234,124 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
             final ItemData value = (ItemData)evt.getValue();
             onCacheEntryUpdated(value);
          }
+         else if (!evt.isPre() && evt.getKey() instanceof CacheTreeMovesId && evt.getValue() instanceof TreeMoveLog)
+         {
+            setTreeMoves((TreeMoveLog)evt.getValue());
+         }
+      }
+   }
+
+   /**
+    * Registers the command used to invalidate the near cache of all the cluster nodes, the keys of the
+    * changes committed locally are sent to the other nodes once committed. Without {@link RPCService}
+    * the near cache of the other nodes is only refreshed when its entries expire.
+    */
+   private void initNearCacheInvalidation(RPCService rpcService)
+   {
+      if (rpcService == null)
+      {
+         LOG.warn("No RPCService could be found, the near cache of the workspace whose unique id is " + ownerId
+            + " will only be invalidated by the other cluster nodes when its entries expire.");
+         return;
+      }
+      this.rpcService = rpcService;
+      this.invalidateNearCache = rpcService.registerCommand(new RemoteCommand()
+      {
+         public String getId()
+         {
+            return "org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan.ISPNCacheWorkspaceStorageCache"
+               + "-invalidateNearCache-" + ownerId;
+         }
+
+         public Serializable execute(Serializable[] args) throws Throwable
+         {
+            if (args == null || args.length == 0)
+            {
+               cache.invalidateAll();
+            }
+            else
+            {
+               for (int i = 0; i < args.length; i++)
+               {
+                  cache.invalidate(args[i]);
+               }
+            }
+            return null;
+         }
+      });
+      cache.setNearCacheInvalidator(new BufferedISPNCache.NearCacheInvalidator()
+      {
+         public void invalidate(CacheKey[] keys)
+         {
+            invalidateNearCaches(keys);
+         }
+      });
+   }
+
+   /**
+    * Removes the given keys from the near cache of all the cluster nodes, or all the entries if no
+    * key is given. The other nodes are notified asynchronously, a failure is only logged since their
+    * entries will expire anyway.
+    */
+   private void invalidateNearCaches(CacheKey... keys)
+   {
+      if (keys.length == 0)
+      {
+         cache.invalidateAll();
+      }
+      if (invalidateNearCache == null)
+      {
+         return;
+      }
+      try
+      {
+         rpcService.executeCommandOnAllNodes(invalidateNearCache, false, (Serializable[])keys);
+      }
+      catch (SecurityException e)
+      {
+         LOG.warn("Could not invalidate the near cache of the other cluster nodes", e);
+      }
+      catch (RPCException e)
+      {
+         LOG.warn("Could not invalidate the near cache of the other cluster nodes", e);
+      }
+   }
+
+   /**
+    * Removes from the near cache the entries modified or removed by the other nodes. The listener is
+    * only notified of the changes of the keys owned by the local node, the other changes are received
+    * through {@link RPCService}.
+    */
+   @SuppressWarnings("rawtypes")
+   @Listener
+   public class NearCacheInvalidationListener
+   {
+
+      @CacheEntryModified
+      public void cacheEntryModified(CacheEntryModifiedEvent evt)
+      {
+         invalidate(evt);
+      }
+
+      @CacheEntryRemoved
+      public void cacheEntryRemoved(CacheEntryRemovedEvent evt)
+      {
+         invalidate(evt);
+      }
+
+      @CacheEntryInvalidated
+      public void cacheEntryInvalidated(CacheEntryInvalidatedEvent evt)
+      {
+         invalidate(evt);
+      }
+
+      private void invalidate(CacheEntryEvent evt)
+      {
+         if (!evt.isPre() && evt.getKey() instanceof CacheKey
+            && ownerId.equals(((CacheKey)evt.getKey()).getOwnerId()))
+         {
+            cache.invalidate(evt.getKey());
+         }
       }
    }
 
@@ -1948,6 +2370,31 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       protected void clearCache()
       {
          cache.clear();
+         setTreeMoves(null);
+      }
+
+      /**
+       * Registers the previous root path into the {@link TreeMoveLog} of the workspace, the cached descendants
+       * are not modified, their path will be resolved again from their parent chain when they are read. If the
+       * log is full, the cached items located under the oldest previous paths are removed and those paths are
+       * removed from the log.
+       *
+       * @param prevRootPath previous root path
+       * @param newRootPath new root path
+       * @param idsToSkip set of ids to skip, unused since no cached item is modified
+       * @return <code>null</code> since no cached item is modified
+       */
+      protected Set<String> updateTreePath(QPath prevRootPath, QPath newRootPath, Set<String> idsToSkip)
+      {
+         TreeMoveLog moves = treeMoves;
+         List<QPath> removedPaths = null;
+         if (moves != null && moves.size() >= treeMovesMaxSize)
+         {
+            removedPaths = new ArrayList<QPath>(moves.getOldest(Math.max(1, treeMovesMaxSize / 2)));
+            removeTrees(removedPaths);
+         }
+         cache.addTreeMove(new CacheTreeMovesId(getOwnerId()), prevRootPath, removedPaths, moves);
+         return null;
       }
 
       /**
@@ -2017,45 +2464,28 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
       }
 
       /**
-       * Check all items in cache if it is a descendant of the previous root path, and if so update the path according 
-       * the new root path.
+       * Removes all the items of the cache that are descendants of one of the given root paths.
        * 
-       * @param prevRootPath previous root path
-       * @param newRootPath new root path
-       * @param idsToSkip set of ids to skip, this is needed to avoid modifying the path twice in case of an OrderBefore
-       * @return the ids to skip for the next operation 
+       * @param rootPaths the root paths of the trees to remove
        */
-      protected Set<String> updateTreePath(QPath prevRootPath, QPath newRootPath, Set<String> idsToSkip)
+      protected void removeTrees(Collection<QPath> rootPaths)
       {
-         Set<String> result = new HashSet<String>();
          Map<CacheKey, Object> changes = cache.getLastChanges();
          for (CacheKey key : changes.keySet())
          {
-            if (key instanceof CacheId)
+            if (key instanceof CacheId && isDescendantOf(changes.get(key), rootPaths))
             {
-               ItemData data = (ItemData)changes.get(key);
-               if (data != null
-                  && (idsToSkip == null || !idsToSkip.contains(data.getIdentifier()))
-                  && ISPNCacheWorkspaceStorageCache
-                     .updateTreePath(cache, getOwnerId(), data, prevRootPath, newRootPath))
-               {
-                  result.add(data.getIdentifier());
-               }
+               cache.remove(key);
             }
          }
          // check all ITEMS in cache 
          for (CacheKey key : cache.keySet())
          {
-            if (key instanceof CacheId && !changes.containsKey(key))
+            if (key instanceof CacheId && !changes.containsKey(key) && isDescendantOf(cache.get(key), rootPaths))
             {
-               ItemData data = (ItemData)cache.get(key);
-               if (ISPNCacheWorkspaceStorageCache.updateTreePath(cache, getOwnerId(), data, prevRootPath, newRootPath))
-               {
-                  result.add(data.getIdentifier());
-               }
+               cache.remove(key);
             }
          }
-         return result;
       }
    }
 
@@ -2108,6 +2538,7 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
                return null;
             }
          });
+         invalidateNearCaches();
       }
 
       /**
@@ -2179,6 +2610,8 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
                return null;
             }
          });
+         // the paths of the whole sub tree have changed
+         invalidateNearCaches();
       }
 
       /**
@@ -2205,6 +2638,8 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
                return null;
             }
          });
+         // the ACL of the whole sub tree have changed
+         invalidateNearCaches();
       }
    }
 
@@ -2538,6 +2973,15 @@ public class ISPNCacheWorkspaceStorageCache implements WorkspaceStorageCache, Ba
     */
    public void stop()
    {
+      if (nearCacheListener != null)
+      {
+         cache.removeListener(nearCacheListener);
+      }
+      if (invalidateNearCache != null)
+      {
+         cache.setNearCacheInvalidator(null);
+         rpcService.unregisterCommand(invalidateNearCache);
+      }
       cache.stop();
    }
 
@@ -0,0 +1,280 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan;
+
+import org.exoplatform.services.jcr.infinispan.CacheKey;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded on-heap cache kept on each cluster node in front of the distributed cache, it is used
+ * to serve the hot items and child lists without any remote call. The entries are evicted in LRU
+ * order once the maximum size is reached and expire after the live time which is the upper bound
+ * of staleness when an invalidation sent by another cluster node is lost.
+ * <p>
+ * The cache is split into segments each protected by its own lock. Each segment counts the
+ * invalidations it received, a value loaded from the distributed cache is only stored if no
+ * invalidation occurred in its segment since the load started, this way a concurrent
+ * invalidation cannot be overridden by a stale value.
+ *
+ * @version $Id$
+ */
+public class NearCache
+{
+   /**
+    * The maximum amount of segments
+    */
+   private static final int MAX_SEGMENTS = 64;
+
+   private final Segment[] segments;
+
+   private final int segmentMask;
+
+   /**
+    * The live time of an entry in milliseconds, 0 or less means that the entries never expire
+    */
+   private final long liveTime;
+
+   /**
+    * @param maxSize the maximum amount of entries
+    * @param liveTime the live time of an entry in milliseconds, 0 or less to disable the expiration
+    */
+   public NearCache(int maxSize, long liveTime)
+   {
+      if (maxSize <= 0)
+      {
+         throw new IllegalArgumentException("The maximum size of the near cache must be positive");
+      }
+      int count = 1;
+      while (count < MAX_SEGMENTS && count < Runtime.getRuntime().availableProcessors() * 4
+         && maxSize / (count << 1) >= 16)
+      {
+         count <<= 1;
+      }
+      this.segments = new Segment[count];
+      int segmentSize = Math.max(1, maxSize / count);
+      for (int i = 0; i < count; i++)
+      {
+         segments[i] = new Segment(segmentSize);
+      }
+      this.segmentMask = count - 1;
+      this.liveTime = liveTime;
+   }
+
+   private Segment segmentFor(Object key)
+   {
+      int h = key.hashCode();
+      h ^= (h >>> 20) ^ (h >>> 12);
+      h ^= (h >>> 7) ^ (h >>> 4);
+      return segments[h & segmentMask];
+   }
+
+   /**
+    * Gives the value corresponding to the given key
+    * @return the cached value or <code>null</code> if it could not be found or has expired
+    */
+   public Object get(Object key)
+   {
+      return segmentFor(key).get(key);
+   }
+
+   /**
+    * Gives the stamp to provide to {@link #put(CacheKey, Object, long)} once the value of the given
+    * key has been loaded.
+    */
+   public long getStamp(Object key)
+   {
+      return segmentFor(key).getStamp();
+   }
+
+   /**
+    * Stores the given value unless the key has been invalidated since the stamp has been retrieved
+    * @param stamp the value returned by {@link #getStamp(Object)} before loading the value
+    */
+   public void put(CacheKey key, Object value, long stamp)
+   {
+      segmentFor(key).put(key, value, stamp, liveTime <= 0 ? Long.MAX_VALUE : System.currentTimeMillis() + liveTime);
+   }
+
+   /**
+    * Invalidates the given key
+    */
+   public void remove(Object key)
+   {
+      segmentFor(key).remove(key);
+   }
+
+   /**
+    * Invalidates all the entries
+    */
+   public void clear()
+   {
+      for (int i = 0; i < segments.length; i++)
+      {
+         segments[i].clear();
+      }
+   }
+
+   /**
+    * @return the total amount of entries
+    */
+   public int size()
+   {
+      int size = 0;
+      for (int i = 0; i < segments.length; i++)
+      {
+         size += segments[i].size();
+      }
+      return size;
+   }
+
+   /**
+    * @return the total amount of successful lookups
+    */
+   public long getHits()
+   {
+      long hits = 0;
+      for (int i = 0; i < segments.length; i++)
+      {
+         hits += segments[i].hits;
+      }
+      return hits;
+   }
+
+   /**
+    * @return the total amount of unsuccessful lookups
+    */
+   public long getMisses()
+   {
+      long misses = 0;
+      for (int i = 0; i < segments.length; i++)
+      {
+         misses += segments[i].misses;
+      }
+      return misses;
+   }
+
+   /**
+    * @return the ratio of successful lookups between 0 and 1
+    */
+   public double getHitRatio()
+   {
+      long hits = getHits();
+      long total = hits + getMisses();
+      return total == 0 ? 0d : (double)hits / total;
+   }
+
+   /**
+    * A cached value with its expiration date
+    */
+   private static class Entry
+   {
+      private final Object value;
+
+      private final long expirationTime;
+
+      Entry(Object value, long expirationTime)
+      {
+         this.value = value;
+         this.expirationTime = expirationTime;
+      }
+   }
+
+   /**
+    * A LRU map protected by its own lock
+    */
+   private static class Segment
+   {
+      private final Map<Object, Entry> map;
+
+      /**
+       * The amount of invalidations since the creation of the segment
+       */
+      private long invalidations;
+
+      private volatile long hits;
+
+      private volatile long misses;
+
+      Segment(final int maxSize)
+      {
+         this.map = new LinkedHashMap<Object, Entry>(16, 0.75f, true)
+         {
+            /**
+             * The serial version UID
+             */
+            private static final long serialVersionUID = -2538436529104468387L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Entry> eldest)
+            {
+               return size() > maxSize;
+            }
+         };
+      }
+
+      synchronized Object get(Object key)
+      {
+         Entry entry = map.get(key);
+         if (entry != null && entry.expirationTime < System.currentTimeMillis())
+         {
+            map.remove(key);
+            entry = null;
+         }
+         if (entry == null)
+         {
+            misses++;
+            return null;
+         }
+         hits++;
+         return entry.value;
+      }
+
+      synchronized long getStamp()
+      {
+         return invalidations;
+      }
+
+      synchronized void put(Object key, Object value, long stamp, long expirationTime)
+      {
+         if (stamp == invalidations)
+         {
+            map.put(key, new Entry(value, expirationTime));
+         }
+      }
+
+      synchronized void remove(Object key)
+      {
+         invalidations++;
+         map.remove(key);
+      }
+
+      synchronized void clear()
+      {
+         invalidations++;
+         map.clear();
+      }
+
+      synchronized int size()
+      {
+         return map.size();
+      }
+   }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan;
+
+import org.exoplatform.services.jcr.datamodel.IllegalPathException;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.datamodel.QPathEntry;
+import org.exoplatform.services.jcr.impl.Constants;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * The list of the previous paths of the nodes that have been moved or renamed since the items
+ * that they contained have been put in the cache. The cached items are never rewritten when one of
+ * their ancestors is moved, instead the path of any item located under one of those paths is
+ * resolved again from its parent chain when it is read, so a move only modifies the moved node and
+ * this log whatever the total amount of descendants.
+ * <p>
+ * The instances are immutable. Checking if a path is affected by a move is done without any
+ * allocation thanks to the hash codes of the ancestors of the path that are computed incrementally.
+ *
+ * @version $Id$
+ */
+public class TreeMoveLog implements Externalizable
+{
+   /**
+    * The serial version UID
+    */
+   private static final long serialVersionUID = -3916546432189520432L;
+
+   private static final QPath[] EMPTY = new QPath[0];
+
+   /**
+    * The previous paths of the moved nodes from the oldest to the newest
+    */
+   private QPath[] paths;
+
+   /**
+    * The sorted hash codes of the previous paths
+    */
+   private transient int[] hashes;
+
+   /**
+    * The length of the shortest previous path
+    */
+   private transient int minLength;
+
+   public TreeMoveLog()
+   {
+      this(EMPTY);
+   }
+
+   private TreeMoveLog(QPath[] paths)
+   {
+      init(paths);
+   }
+
+   private void init(QPath[] paths)
+   {
+      this.paths = paths;
+      this.hashes = new int[paths.length];
+      int min = Integer.MAX_VALUE;
+      for (int i = 0; i < paths.length; i++)
+      {
+         QPathEntry[] entries = paths[i].getEntries();
+         hashes[i] = hash(entries, entries.length);
+         min = Math.min(min, entries.length);
+      }
+      Arrays.sort(hashes);
+      this.minLength = min;
+   }
+
+   /**
+    * Computes the hash code of the first entries of a path
+    */
+   private static int hash(QPathEntry[] entries, int length)
+   {
+      int hash = 1;
+      for (int i = 0; i < length; i++)
+      {
+         hash = updateHash(hash, entries[i]);
+      }
+      return hash;
+   }
+
+   private static int updateHash(int hash, QPathEntry entry)
+   {
+      return 31 * (31 * hash + entry.hashCode()) + entry.getIndex();
+   }
+
+   /**
+    * @return the amount of moves in the log
+    */
+   public int size()
+   {
+      return paths.length;
+   }
+
+   /**
+    * @return the oldest previous paths of the log
+    */
+   public List<QPath> getOldest(int count)
+   {
+      return Arrays.asList(paths).subList(0, Math.min(count, paths.length));
+   }
+
+   /**
+    * Indicates whether the given path is located under one of the previous paths of the log, which
+    * means that it could be outdated.
+    */
+   public boolean isAffected(QPath path)
+   {
+      if (paths.length == 0)
+      {
+         return false;
+      }
+      QPathEntry[] entries = path.getEntries();
+      int hash = 1;
+      for (int i = 0, length = entries.length - 1; i < length; i++)
+      {
+         hash = updateHash(hash, entries[i]);
+         if (i + 1 >= minLength && Arrays.binarySearch(hashes, hash) >= 0)
+         {
+            for (int j = 0; j < paths.length; j++)
+            {
+               if (paths[j].getEntries().length == i + 1 && path.isDescendantOf(paths[j]))
+               {
+                  return true;
+               }
+            }
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Creates a new log without the given previous paths and with the given one appended
+    * @param path the previous path of the moved node
+    * @param removed the previous paths to remove from the log
+    */
+   public TreeMoveLog add(QPath path, Collection<QPath> removed)
+   {
+      List<QPath> result = new ArrayList<QPath>(paths.length + 1);
+      for (int i = 0; i < paths.length; i++)
+      {
+         if (removed == null || !removed.contains(paths[i]))
+         {
+            result.add(paths[i]);
+         }
+      }
+      if (!result.contains(path))
+      {
+         result.add(path);
+      }
+      return new TreeMoveLog(result.toArray(new QPath[result.size()]));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void writeExternal(ObjectOutput out) throws IOException
+   {
+      out.writeInt(paths.length);
+      for (int i = 0; i < paths.length; i++)
+      {
+         byte[] buf = paths[i].getAsString().getBytes(Constants.DEFAULT_ENCODING);
+         out.writeInt(buf.length);
+         out.write(buf);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException
+   {
+      QPath[] paths = new QPath[in.readInt()];
+      try
+      {
+         for (int i = 0; i < paths.length; i++)
+         {
+            byte[] buf = new byte[in.readInt()];
+            in.readFully(buf);
+            paths[i] = QPath.parse(new String(buf, Constants.DEFAULT_ENCODING));
+         }
+      }
+      catch (IllegalPathException e)
+      {
+         throw new IOException("Deserialization error. ", e);
+      }
+      init(paths);
+   }
+}
@@ -60,6 +60,7 @@ import org.exoplatform.services.jcr.impl.storage.jdbc.init.MSSQLDBInitializer;
 import org.exoplatform.services.jcr.impl.storage.jdbc.init.MysqlDBInitializer;
 import org.exoplatform.services.jcr.impl.storage.jdbc.init.SybaseDBInitializer;
 import org.exoplatform.services.jcr.impl.storage.jdbc.db.SybaseConnectionFactory;
+import org.exoplatform.services.jcr.impl.storage.jdbc.indexing.JdbcKeyRangeNodeDataIndexingIterator;
 import org.exoplatform.services.jcr.impl.storage.jdbc.indexing.JdbcNodeDataIndexingIterator;
 import org.exoplatform.services.jcr.impl.storage.jdbc.init.IngresSQLDBInitializer;
 import org.exoplatform.services.jcr.impl.storage.jdbc.init.OracleDBInitializer;
@@ -93,6 +94,7 @@ import java.security.PrivilegedExceptionAction;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -164,10 +166,46 @@ public class JDBCWorkspaceDataContainer extends WorkspaceDataContainerBase imple
 
    public final static int DEFAULT_BATCHING_DISABLED = -1;
 
+   /**
+    * Comma separated names of the data sources of the read replicas on which the read-only connections
+    * are opened.
+    */
+   public final static String REPLICA_SOURCE_NAMES = "replica-source-names";
+
+   /**
+    * The maximum allowed replication lag of a replica.
+    */
+   public final static String REPLICA_MAX_LAG = "replica-max-lag";
+
+   /**
+    * The interval between two checks of the replicas.
+    */
+   public final static String REPLICA_CHECK_INTERVAL = "replica-check-interval";
+
+   /**
+    * The query returning the replication lag of a replica in seconds.
+    */
+   public final static String REPLICA_LAG_QUERY = "replica-lag-query";
+
+   /**
+    * The default maximum allowed replication lag in milliseconds.
+    */
+   public final static long DEFAULT_REPLICA_MAX_LAG = 5000;
+
+   /**
+    * The default interval between two checks of the replicas in milliseconds.
+    */
+   public final static long DEFAULT_REPLICA_CHECK_INTERVAL = 5000;
+
    protected JDBCDataContainerConfig containerConfig;
 
    public GenericConnectionFactory connFactory;
 
+   /**
+    * Routes the read-only connections to the read replicas, <code>null</code> if there is no replica.
+    */
+   protected ReadReplicaRouter replicaRouter;
+
    /**
     * Workspace configuration.
     */
@@ -325,6 +363,88 @@ public class JDBCWorkspaceDataContainer extends WorkspaceDataContainerBase imple
       LOG.info(getInfo());
 
       initDatabase();
+      initReplicas();
+   }
+
+   /**
+    * Creates the router of the read-only connections if some read replicas have been configured.
+    *
+    * @throws RepositoryException
+    *           if a replica data source cannot be found
+    */
+   protected void initReplicas() throws RepositoryException
+   {
+      String names = wsConfig.getContainer().getParameterValue(REPLICA_SOURCE_NAMES, null);
+      if (names == null || names.trim().length() == 0)
+      {
+         return;
+      }
+      if (containerConfig.isManaged)
+      {
+         // the reads of a global transaction must see its uncommitted changes
+         LOG.warn("The read replicas of the workspace " + containerConfig.containerName
+            + " are ignored since the data source " + containerConfig.dbSourceName + " is managed");
+         return;
+      }
+      Map<String, DataSource> replicas = new LinkedHashMap<String, DataSource>();
+      for (String name : names.split(","))
+      {
+         name = name.trim();
+         if (name.length() > 0)
+         {
+            try
+            {
+               replicas.put(name, containerConfig.dsProvider.getDataSource(name));
+            }
+            catch (NamingException e)
+            {
+               throw new RepositoryException("Datasource '" + name + "' is not bound in this context.", e);
+            }
+         }
+      }
+      long maxLag = wsConfig.getContainer().getParameterTime(REPLICA_MAX_LAG, DEFAULT_REPLICA_MAX_LAG);
+      long checkInterval =
+         wsConfig.getContainer().getParameterTime(REPLICA_CHECK_INTERVAL, DEFAULT_REPLICA_CHECK_INTERVAL);
+      String lagQuery = wsConfig.getContainer().getParameterValue(REPLICA_LAG_QUERY, null);
+      if (lagQuery == null)
+      {
+         lagQuery = defaultReplicaLagQuery();
+      }
+      this.replicaRouter =
+         new ReadReplicaRouter(containerConfig.uniqueName, connFactory, getDataSource(), replicas, maxLag,
+            checkInterval, lagQuery);
+      LOG.info("The read-only connections of the workspace " + containerConfig.containerName
+         + " are routed to the replicas " + replicas.keySet() + " with a maximum lag of " + maxLag + " ms");
+   }
+
+   /**
+    * Gives the query returning the replication lag of a replica in seconds according to the dialect.
+    *
+    * @return the query or <code>null</code> if the lag cannot be measured with this dialect
+    */
+   protected String defaultReplicaLagQuery()
+   {
+      if (containerConfig.dbDialect.startsWith(DBConstants.DB_DIALECT_PGSQL))
+      {
+         // the lag is 0 when all the received changes have been replayed
+         return "SELECT CASE WHEN pg_last_xlog_receive_location() = pg_last_xlog_replay_location() THEN 0"
+            + " ELSE EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()) END";
+      }
+      else if (containerConfig.dbDialect.startsWith(DBConstants.DB_DIALECT_MYSQL))
+      {
+         return "SHOW SLAVE STATUS";
+      }
+      return null;
+   }
+
+   /**
+    * Gives the status of the read replicas.
+    *
+    * @return the status of each replica, or <code>null</code> if there is no replica
+    */
+   public String getReplicasStatus()
+   {
+      return replicaRouter == null ? null : replicaRouter.getStatus();
    }
 
    /**
@@ -560,7 +680,9 @@ public class JDBCWorkspaceDataContainer extends WorkspaceDataContainerBase imple
     */
    public WorkspaceStorageConnection openConnection() throws RepositoryException
    {
-      WorkspaceStorageConnection con = connFactory.openConnection();
+      WorkspaceStorageConnection con =
+         replicaRouter == null ? connFactory.openConnection() : replicaRouter.openConnection(connFactory
+            .isReadOnlyByDefault());
       if (STATISTICS_ENABLED)
       {
          con = new StatisticsJDBCStorageConnection(con);
@@ -573,7 +695,8 @@ public class JDBCWorkspaceDataContainer extends WorkspaceDataContainerBase imple
     */
    public WorkspaceStorageConnection openConnection(boolean readOnly) throws RepositoryException
    {
-      WorkspaceStorageConnection con = connFactory.openConnection(readOnly);
+      WorkspaceStorageConnection con =
+         replicaRouter == null ? connFactory.openConnection(readOnly) : replicaRouter.openConnection(readOnly);
       if (STATISTICS_ENABLED)
       {
          con = new StatisticsJDBCStorageConnection(con);
@@ -780,6 +903,10 @@ public class JDBCWorkspaceDataContainer extends WorkspaceDataContainerBase imple
     */
    public void stop()
    {
+      if (replicaRouter != null)
+      {
+         replicaRouter.stop();
+      }
    }
 
    /**
@@ -904,10 +1031,35 @@ public class JDBCWorkspaceDataContainer extends WorkspaceDataContainerBase imple
                + " I where I.ID=R.PROPERTY_ID and I.CONTAINER_NAME='" + containerConfig.containerName + "'");
          }
 
-         // using existing DataSource to get a JDBC Connection.
+         // split the value table, usually the largest one, into ranges of IDs dumped concurrently
+         Map<String, List<String>> partitionScripts = new LinkedHashMap<String, List<String>>();
          Connection jdbcConn = connFactory.getJdbcConnection();
+         try
+         {
+            for (Map.Entry<String, String> entry : scripts.entrySet())
+            {
+               if (entry.getKey().equals(valueTable))
+               {
+                  partitionScripts.put(entry.getKey(), DBBackup.getPartitionScripts(jdbcConn, valueTable,
+                     entry.getValue(), containerConfig.dbStructureType.isMultiDatabase() ? "ID" : "V.ID",
+                     DBBackup.PARTITION_SIZE));
+               }
+               else
+               {
+                  partitionScripts.put(entry.getKey(), Collections.singletonList(entry.getValue()));
+               }
+            }
+         }
+         catch (SQLException e)
+         {
+            throw new BackupException("SQL Exception: " + JDBCUtils.getFullMessage(e), e);
+         }
+         finally
+         {
+            JDBCUtils.freeResources(null, null, jdbcConn);
+         }
 
-         DBBackup.backup(storageDir, jdbcConn, scripts);
+         DBBackup.backup(storageDir, connFactory, partitionScripts, DBBackup.THREADS);
 
          // backup value storage
          if (wsConfig.getContainer().getValueStorages() != null)
@@ -1140,6 +1292,11 @@ public class JDBCWorkspaceDataContainer extends WorkspaceDataContainerBase imple
    {
       if (isReindexingSupported())
       {
+         if (connFactory.isIDNeededForPaging())
+         {
+            // the pages can be found from the last node id without any offset
+            return new JdbcKeyRangeNodeDataIndexingIterator(connFactory, pageSize);
+         }
          return new JdbcNodeDataIndexingIterator(connFactory, pageSize);
       }
       throw new UnsupportedOperationException(
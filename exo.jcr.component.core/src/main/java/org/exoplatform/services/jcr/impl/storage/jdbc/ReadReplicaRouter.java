@@ -0,0 +1,652 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.jdbc;
+
+import org.exoplatform.services.database.utils.JDBCUtils;
+import org.exoplatform.services.jcr.impl.storage.jdbc.db.GenericConnectionFactory;
+import org.exoplatform.services.jcr.storage.WorkspaceStorageConnection;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+import org.exoplatform.services.security.ConversationState;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.jcr.RepositoryException;
+import javax.sql.DataSource;
+
+/**
+ * Routes the read-only connections of a {@link JDBCWorkspaceDataContainer} to read replicas of the
+ * database. The replicas are checked periodically, a replica is only used if a connection can be opened
+ * and if its replication lag, when it can be measured, does not exceed the maximum allowed lag, otherwise
+ * the connections are opened on the primary data source.
+ * <p>
+ * To make sure that a user always reads its own writes, the read-only connections of a user are opened
+ * on the primary data source as long as the user has a read-write connection opened and until the
+ * maximum allowed lag plus the check interval has elapsed since it has been closed, which is the longest
+ * time a healthy replica can need to replay the changes.
+ * <p>
+ * The reads whose results are put into the shared cache of the workspace, see {@link #beginCachedRead()},
+ * can be served to all the users, so they only go to a replica if nobody has written anything within the
+ * same window, otherwise a replica could put in the cache the previous state of data that a user has
+ * just modified.
+ *
+ * @version $Id$
+ */
+public class ReadReplicaRouter
+{
+   /**
+    * Logger.
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.ReadReplicaRouter");
+
+   /**
+    * The name of the column giving the lag in the result of <code>SHOW SLAVE STATUS</code> on MySQL.
+    */
+   private static final String MYSQL_LAG_COLUMN = "Seconds_Behind_Master";
+
+   /**
+    * The amount of nested reads of the current thread whose results are put into the shared cache.
+    */
+   private static final ThreadLocal<int[]> CACHED_READS = new ThreadLocal<int[]>()
+   {
+      @Override
+      protected int[] initialValue()
+      {
+         return new int[1];
+      }
+   };
+
+   /**
+    * The factory of the connections opened on the primary data source.
+    */
+   private final GenericConnectionFactory primary;
+
+   /**
+    * The factory of the read-write connections, it tracks the writes of the users.
+    */
+   private final GenericConnectionFactory writer;
+
+   /**
+    * The replicas.
+    */
+   private final List<Replica> replicas;
+
+   /**
+    * The maximum allowed replication lag in milliseconds.
+    */
+   private final long maxLag;
+
+   /**
+    * The time in milliseconds during which the reads of a user go to the primary once its last
+    * read-write connection has been closed.
+    */
+   private final long readYourWritesWindow;
+
+   /**
+    * The query returning the replication lag in seconds, or <code>null</code> if it cannot be measured.
+    */
+   private final String lagQuery;
+
+   /**
+    * The writes of the users, indexed by owner.
+    */
+   private final ConcurrentHashMap<String, WriteTracker> writes = new ConcurrentHashMap<String, WriteTracker>();
+
+   /**
+    * The writes of all the users.
+    */
+   private final WriteTracker allWrites = new WriteTracker();
+
+   /**
+    * The counter used to choose the replicas in a round-robin fashion.
+    */
+   private final AtomicInteger next = new AtomicInteger();
+
+   /**
+    * The executor checking the replicas.
+    */
+   private final ScheduledExecutorService checker;
+
+   /**
+    * ReadReplicaRouter constructor.
+    *
+    * @param name the name of the container, used to name the checker thread
+    * @param primary the factory of the connections opened on the primary data source
+    * @param primaryDataSource the primary data source
+    * @param replicaDataSources the data sources of the replicas, indexed by name
+    * @param maxLag the maximum allowed replication lag in milliseconds
+    * @param checkInterval the interval in milliseconds between two checks of the replicas
+    * @param lagQuery the query returning the replication lag in seconds, or <code>null</code> if it
+    *          cannot be measured
+    */
+   public ReadReplicaRouter(final String name, GenericConnectionFactory primary, DataSource primaryDataSource,
+      Map<String, DataSource> replicaDataSources, long maxLag, long checkInterval, String lagQuery)
+   {
+      this.primary = primary;
+      this.maxLag = maxLag;
+      this.readYourWritesWindow = maxLag + checkInterval;
+      this.lagQuery = lagQuery;
+      this.replicas = new ArrayList<Replica>(replicaDataSources.size());
+      for (Map.Entry<String, DataSource> entry : replicaDataSources.entrySet())
+      {
+         replicas.add(new Replica(entry.getKey(), primary.cloneWith(entry.getValue())));
+      }
+      this.writer = primary.cloneWith(trackWrites(primaryDataSource));
+      if (lagQuery == null)
+      {
+         LOG.warn("The replication lag of the replicas of " + name
+            + " cannot be measured, they will only be checked for availability");
+      }
+      check();
+      this.checker = Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+         public Thread newThread(Runnable r)
+         {
+            Thread t = new Thread(r, "JCR replica checker " + name);
+            t.setDaemon(true);
+            return t;
+         }
+      });
+      checker.scheduleWithFixedDelay(new Runnable()
+      {
+         public void run()
+         {
+            try
+            {
+               check();
+            }
+            catch (Throwable e) //NOSONAR
+            {
+               LOG.error("Could not check the replicas of " + name, e);
+            }
+         }
+      }, checkInterval, checkInterval, TimeUnit.MILLISECONDS);
+   }
+
+   /**
+    * Opens a connection, the read-only connections are opened on a healthy replica if the current
+    * user has not written anything recently, or if nobody has in case of a read filling the shared
+    * cache, the other ones on the primary data source.
+    *
+    * @param readOnly indicates whether the connection is read-only
+    * @return the connection
+    * @throws RepositoryException if the connection could not be opened
+    */
+   public WorkspaceStorageConnection openConnection(boolean readOnly) throws RepositoryException
+   {
+      if (!readOnly)
+      {
+         return writer.openConnection(false);
+      }
+      boolean writtenRecently =
+         CACHED_READS.get()[0] > 0 ? !allWrites.isExpired(System.currentTimeMillis())
+            : hasWrittenRecently(getOwner());
+      if (!writtenRecently)
+      {
+         Replica replica = nextReplica();
+         if (replica != null)
+         {
+            try
+            {
+               return replica.factory.openConnection(true);
+            }
+            catch (RepositoryException e)
+            {
+               replica.setUnavailable(e);
+            }
+         }
+      }
+      return primary.openConnection(true);
+   }
+
+   /**
+    * Indicates that the next reads of the current thread fill the shared cache of the workspace until
+    * {@link #endCachedRead()} is called. They go to the primary data source as long as any user has
+    * written recently, otherwise a lagging replica could put in the cache data that would then be served
+    * to all the users, the writer included.
+    */
+   public static void beginCachedRead()
+   {
+      CACHED_READS.get()[0]++;
+   }
+
+   /**
+    * Ends the reads started by {@link #beginCachedRead()}.
+    */
+   public static void endCachedRead()
+   {
+      CACHED_READS.get()[0]--;
+   }
+
+   /**
+    * Stops checking the replicas.
+    */
+   public void stop()
+   {
+      checker.shutdownNow();
+   }
+
+   /**
+    * Gives the status of the replicas.
+    *
+    * @return the status of each replica
+    */
+   public String getStatus()
+   {
+      StringBuilder status = new StringBuilder();
+      for (Replica replica : replicas)
+      {
+         if (status.length() > 0)
+         {
+            status.append(", ");
+         }
+         status.append(replica.name).append(": ");
+         if (replica.healthy)
+         {
+            status.append("healthy");
+            if (replica.lag >= 0)
+            {
+               status.append(" (lag ").append(replica.lag).append(" ms)");
+            }
+         }
+         else
+         {
+            status.append("unavailable");
+         }
+      }
+      return status.toString();
+   }
+
+   /**
+    * Gives the next healthy replica in a round-robin fashion.
+    *
+    * @return the replica or <code>null</code> if none is healthy
+    */
+   private Replica nextReplica()
+   {
+      int size = replicas.size();
+      int start = next.getAndIncrement() & Integer.MAX_VALUE;
+      for (int i = 0; i < size; i++)
+      {
+         Replica replica = replicas.get((start + i) % size);
+         if (replica.healthy)
+         {
+            return replica;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Checks all the replicas and forgets the writes that are older than the read your writes window.
+    */
+   void check()
+   {
+      for (Replica replica : replicas)
+      {
+         replica.check();
+      }
+      long now = System.currentTimeMillis();
+      for (Iterator<Map.Entry<String, WriteTracker>> it = writes.entrySet().iterator(); it.hasNext();)
+      {
+         if (it.next().getValue().discardIfExpired(now))
+         {
+            it.remove();
+         }
+      }
+   }
+
+   /**
+    * Indicates whether the given owner has a read-write connection opened or closed it recently.
+    */
+   private boolean hasWrittenRecently(String owner)
+   {
+      WriteTracker tracker = writes.get(owner);
+      return tracker != null && !tracker.isExpired(System.currentTimeMillis());
+   }
+
+   /**
+    * Gives the owner of the connections opened by the current thread, which is the current user if any,
+    * the current thread otherwise.
+    */
+   private static String getOwner()
+   {
+      ConversationState state = ConversationState.getCurrent();
+      if (state != null && state.getIdentity() != null)
+      {
+         return "user:" + state.getIdentity().getUserId();
+      }
+      return "thread:" + Thread.currentThread().getId();
+   }
+
+   /**
+    * Wraps the given data source in order to track the read-write connections of the users.
+    */
+   private DataSource trackWrites(final DataSource dataSource)
+   {
+      return (DataSource)Proxy.newProxyInstance(GenericConnectionFactory.class.getClassLoader(),
+         new Class[]{DataSource.class}, new InvocationHandler()
+         {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+               Object result = invokeTarget(dataSource, method, args);
+               if ("getConnection".equals(method.getName()))
+               {
+                  return trackWrites((Connection)result);
+               }
+               return result;
+            }
+         });
+   }
+
+   /**
+    * Wraps the given read-write connection to know when the current user stops writing.
+    */
+   private Connection trackWrites(final Connection connection)
+   {
+      String owner = getOwner();
+      WriteTracker tracker;
+      do
+      {
+         tracker = writes.get(owner);
+         if (tracker == null)
+         {
+            tracker = new WriteTracker();
+            WriteTracker existing = writes.putIfAbsent(owner, tracker);
+            if (existing != null)
+            {
+               tracker = existing;
+            }
+         }
+      }
+      // the tracker may have been discarded by a check in the meantime
+      while (!tracker.begin());
+      allWrites.begin();
+      final WriteTracker writeTracker = tracker;
+      final AtomicBoolean closed = new AtomicBoolean();
+      return (Connection)Proxy.newProxyInstance(GenericConnectionFactory.class.getClassLoader(),
+         new Class[]{Connection.class}, new InvocationHandler()
+         {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+               try
+               {
+                  return invokeTarget(connection, method, args);
+               }
+               finally
+               {
+                  if ("close".equals(method.getName()) && closed.compareAndSet(false, true))
+                  {
+                     writeTracker.end();
+                     allWrites.end();
+                  }
+               }
+            }
+         });
+   }
+
+   /**
+    * Invokes the given method on the given target and unwraps the exception thrown if any.
+    */
+   private static Object invokeTarget(Object target, Method method, Object[] args) throws Throwable
+   {
+      try
+      {
+         return method.invoke(target, args);
+      }
+      catch (InvocationTargetException e)
+      {
+         throw e.getCause();
+      }
+   }
+
+   /**
+    * The writes of an owner.
+    */
+   private class WriteTracker
+   {
+      /**
+       * The total amount of read-write connections currently opened.
+       */
+      private int opened;
+
+      /**
+       * The last time a read-write connection has been closed.
+       */
+      private long lastWrite;
+
+      /**
+       * Indicates whether the tracker has been removed from the map of writes, the tracker of all the
+       * writes is never removed.
+       */
+      private boolean discarded;
+
+      /**
+       * Called when a read-write connection is opened.
+       *
+       * @return <code>false</code> if the tracker has been discarded and cannot be used anymore
+       */
+      synchronized boolean begin()
+      {
+         if (discarded)
+         {
+            return false;
+         }
+         opened++;
+         return true;
+      }
+
+      /**
+       * Called when a read-write connection is closed.
+       */
+      synchronized void end()
+      {
+         lastWrite = System.currentTimeMillis();
+         opened--;
+      }
+
+      /**
+       * Indicates whether the reads of the owner can go to the replicas again.
+       */
+      synchronized boolean isExpired(long now)
+      {
+         return opened <= 0 && now - lastWrite > readYourWritesWindow;
+      }
+
+      /**
+       * Marks the tracker as discarded if it is expired.
+       *
+       * @return <code>true</code> if the tracker has been discarded and must be removed
+       */
+      synchronized boolean discardIfExpired(long now)
+      {
+         discarded = isExpired(now);
+         return discarded;
+      }
+   }
+
+   /**
+    * A read replica.
+    */
+   private class Replica
+   {
+      /**
+       * The name of the data source of the replica.
+       */
+      private final String name;
+
+      /**
+       * The factory of the connections opened on the replica.
+       */
+      private final GenericConnectionFactory factory;
+
+      /**
+       * Indicates whether the replica can be used.
+       */
+      private volatile boolean healthy;
+
+      /**
+       * The last measured lag in milliseconds, -1 if it cannot be measured.
+       */
+      private volatile long lag = -1;
+
+      /**
+       * Replica constructor.
+       */
+      Replica(String name, GenericConnectionFactory factory)
+      {
+         this.name = name;
+         this.factory = factory;
+      }
+
+      /**
+       * Checks the availability and the lag of the replica.
+       */
+      void check()
+      {
+         Connection con = null;
+         try
+         {
+            con = factory.getJdbcConnection(true);
+            if (lagQuery != null)
+            {
+               lag = measureLag(con);
+               if (lag > maxLag)
+               {
+                  setHealthy(false, "its replication lag is " + lag + " ms");
+                  return;
+               }
+            }
+            setHealthy(true, null);
+         }
+         catch (RepositoryException e)
+         {
+            setUnavailable(e);
+         }
+         catch (SQLException e)
+         {
+            setUnavailable(e);
+         }
+         finally
+         {
+            if (con != null)
+            {
+               try
+               {
+                  con.close();
+               }
+               catch (SQLException e)
+               {
+                  LOG.debug("Could not close the connection of the replica " + name, e);
+               }
+            }
+         }
+      }
+
+      /**
+       * Executes the lag query, the lag is read from the column <code>Seconds_Behind_Master</code> if it
+       * exists, from the first column otherwise.
+       *
+       * @return the lag in milliseconds or {@link Long#MAX_VALUE} if the replication is stopped
+       */
+      private long measureLag(Connection con) throws SQLException
+      {
+         Statement st = con.createStatement();
+         try
+         {
+            ResultSet rs = st.executeQuery(lagQuery);
+            try
+            {
+               if (!rs.next())
+               {
+                  // not a replica or not replicating
+                  return Long.MAX_VALUE;
+               }
+               int column = 1;
+               ResultSetMetaData metaData = rs.getMetaData();
+               for (int i = 1; i <= metaData.getColumnCount(); i++)
+               {
+                  if (MYSQL_LAG_COLUMN.equalsIgnoreCase(metaData.getColumnLabel(i)))
+                  {
+                     column = i;
+                     break;
+                  }
+               }
+               double seconds = rs.getDouble(column);
+               return rs.wasNull() ? Long.MAX_VALUE : Math.max(0L, (long)(seconds * 1000));
+            }
+            finally
+            {
+               rs.close();
+            }
+         }
+         finally
+         {
+            st.close();
+         }
+      }
+
+      /**
+       * Marks the replica as unavailable because of the given error.
+       */
+      void setUnavailable(Exception e)
+      {
+         setHealthy(false, e instanceof SQLException ? JDBCUtils.getFullMessage((SQLException)e) : e.getMessage());
+      }
+
+      /**
+       * Changes the health of the replica and logs the transitions.
+       */
+      private void setHealthy(boolean healthy, String reason)
+      {
+         if (this.healthy != healthy)
+         {
+            if (healthy)
+            {
+               LOG.info("The replica " + name + " is available, the read-only connections will be opened on it");
+            }
+            else
+            {
+               LOG.warn("The replica " + name + " cannot be used, the read-only connections will be opened on the"
+                  + " primary data source until it recovers: " + reason);
+            }
+         }
+         this.healthy = healthy;
+      }
+   }
+}
@@ -81,6 +81,16 @@ public class GenericConnectionFactory implements WorkspaceStorageConnectionFacto
       return openConnection(false);
    }
 
+   /**
+    * Indicates whether the connections opened by {@link #openConnection()} are read-only.
+    *
+    * @return <code>true</code> if they are read-only, <code>false</code> otherwise
+    */
+   public boolean isReadOnlyByDefault()
+   {
+      return false;
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.jdbc.indexing;
+
+import org.exoplatform.commons.utils.PropertyManager;
+import org.exoplatform.services.jcr.datamodel.NodeDataIndexing;
+import org.exoplatform.services.jcr.impl.core.query.ResumableNodeDataIndexingIterator;
+import org.exoplatform.services.jcr.impl.storage.jdbc.JDBCStorageConnection;
+import org.exoplatform.services.jcr.impl.storage.jdbc.db.GenericConnectionFactory;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * Iterator for fetching NodeData from database with all properties and its values, without any offset.
+ * <p>
+ * The space of the node identifiers is split into {@link #DEFAULT_RANGES} key ranges according to their
+ * first hexadecimal digits. Each range is read page by page from the last identifier read in this range,
+ * so each page is found thanks to the primary key whatever its position. The ranges are independent from
+ * each other so the pages of different ranges are read concurrently by the threads calling {@link #next()},
+ * each one with its own connection, while the pages of a given range are read one after the other. The last
+ * page of a range may contain the first nodes of the next range, they are ignored as they are read again with
+ * the next range. The identifiers are compared the same way by the database and by this iterator, which is
+ * the case of the identifiers generated by the JCR.
+ * <p>
+ * The position of the iteration is made of the last identifier read in each range, so that an interrupted
+ * re-indexing can be resumed from it.
+ *
+ * @version $Id$
+ */
+public class JdbcKeyRangeNodeDataIndexingIterator implements ResumableNodeDataIndexingIterator
+{
+   /**
+    * The default amount of key ranges, it bounds the amount of pages that can be read concurrently.
+    */
+   public static final int DEFAULT_RANGES = 64;
+
+   /**
+    * The value of the position of a range whose nodes have all been read.
+    */
+   private static final String DONE = "-";
+
+   /**
+    * The amount of hexadecimal digits of the bounds of the ranges.
+    */
+   private static final int BOUND_DIGITS = 4;
+
+   /**
+    * Logger.
+    */
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.JdbcKeyRangeNodeDataIndexingIterator");
+
+   /**
+    * Connection factory. Allows to open jdbc storage connection.
+    */
+   private final GenericConnectionFactory connFactory;
+
+   /**
+    * The amount of the rows which could be retrieved from database for once.
+    */
+   private final int pageSize;
+
+   /**
+    * All the ranges ordered by identifiers.
+    */
+   private final Range[] ranges;
+
+   /**
+    * The ranges that still have nodes to read and that are not being read, guarded by this iterator.
+    */
+   private final LinkedList<Range> pending = new LinkedList<Range>();
+
+   /**
+    * The amount of ranges being read, guarded by this iterator.
+    */
+   private int reading;
+
+   /**
+    * Constructor JdbcKeyRangeNodeDataIndexingIterator.
+    *
+    * @param connFactory the factory of the connections to the database
+    * @param pageSize the amount of nodes to read at once
+    */
+   public JdbcKeyRangeNodeDataIndexingIterator(GenericConnectionFactory connFactory, int pageSize)
+   {
+      this(connFactory, pageSize, DEFAULT_RANGES);
+   }
+
+   /**
+    * Constructor JdbcKeyRangeNodeDataIndexingIterator.
+    *
+    * @param connFactory the factory of the connections to the database
+    * @param pageSize the amount of nodes to read at once
+    * @param rangesCount the amount of key ranges
+    */
+   public JdbcKeyRangeNodeDataIndexingIterator(GenericConnectionFactory connFactory, int pageSize, int rangesCount)
+   {
+      if (pageSize <= 0)
+      {
+         throw new IllegalArgumentException("The page size must be positive");
+      }
+      if (rangesCount <= 0 || rangesCount > 1 << (4 * BOUND_DIGITS))
+      {
+         throw new IllegalArgumentException("The amount of ranges must be between 1 and " + (1 << (4 * BOUND_DIGITS)));
+      }
+      this.connFactory = connFactory;
+      this.pageSize = pageSize;
+      this.ranges = new Range[rangesCount];
+      String lower = "";
+      for (int i = 0; i < rangesCount; i++)
+      {
+         String upper = i == rangesCount - 1 ? null : getBound((i + 1) * (1L << (4 * BOUND_DIGITS)) / rangesCount);
+         ranges[i] = new Range(i, lower, upper);
+         lower = upper;
+      }
+      for (Range range : ranges)
+      {
+         pending.add(range);
+      }
+   }
+
+   /**
+    * Gives the bound of a range as an hexadecimal string of {@link #BOUND_DIGITS} digits.
+    */
+   private static String getBound(long value)
+   {
+      StringBuilder bound = new StringBuilder(Long.toHexString(value));
+      while (bound.length() < BOUND_DIGITS)
+      {
+         bound.insert(0, '0');
+      }
+      return bound.toString();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<NodeDataIndexing> next() throws RepositoryException
+   {
+      Range range;
+      try
+      {
+         range = acquire();
+      }
+      catch (InterruptedException e)
+      {
+         Thread.currentThread().interrupt();
+         return new ArrayList<NodeDataIndexing>();
+      }
+      if (range == null)
+      {
+         // avoid unnecessary request to database
+         return new ArrayList<NodeDataIndexing>();
+      }
+
+      boolean done = false;
+      try
+      {
+         List<NodeDataIndexing> result;
+         long time = 0;
+         if (PropertyManager.isDevelopping())
+         {
+            time = System.currentTimeMillis();
+         }
+         JDBCStorageConnection conn = (JDBCStorageConnection)connFactory.openConnection();
+         try
+         {
+            result = conn.getNodesAndProperties(range.last, 0, pageSize);
+         }
+         finally
+         {
+            conn.close();
+         }
+         if (PropertyManager.isDevelopping())
+         {
+            LOG.info("Range = " + range.index + " LastNodeId = '" + range.last + "', query time = "
+               + (System.currentTimeMillis() - time) + " ms, from '"
+               + (result.isEmpty() ? "unknown" : result.get(0).getIdentifier()) + "' to '"
+               + (result.isEmpty() ? "unknown" : result.get(result.size() - 1).getIdentifier()) + "'");
+         }
+
+         done = result.size() < pageSize;
+         if (range.upper != null)
+         {
+            // the nodes after the upper bound belong to the next range
+            while (!result.isEmpty() && result.get(result.size() - 1).getIdentifier().compareTo(range.upper) > 0)
+            {
+               result.remove(result.size() - 1);
+               done = true;
+            }
+         }
+         if (!done)
+         {
+            range.last = result.get(result.size() - 1).getIdentifier();
+         }
+         return result;
+      }
+      finally
+      {
+         release(range, done);
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized boolean hasNext()
+   {
+      return reading > 0 || !pending.isEmpty();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized String getCheckpoint()
+   {
+      StringBuilder checkpoint = new StringBuilder();
+      checkpoint.append(ranges.length);
+      for (Range range : ranges)
+      {
+         checkpoint.append('\n').append(range.isDone() ? DONE : range.last);
+      }
+      return checkpoint.toString();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public synchronized void resume(String checkpoint) throws RepositoryException
+   {
+      String[] positions = checkpoint.split("\n", -1);
+      if (positions.length != ranges.length + 1 || !positions[0].equals(Integer.toString(ranges.length)))
+      {
+         throw new RepositoryException("The checkpoint doesn't match the " + ranges.length + " key ranges");
+      }
+      pending.clear();
+      for (int i = 0; i < ranges.length; i++)
+      {
+         Range range = ranges[i];
+         String position = positions[i + 1];
+         if (position.equals(DONE))
+         {
+            range.last = null;
+         }
+         else if (position.compareTo(range.lower) < 0 || (range.upper != null && position.compareTo(range.upper) > 0))
+         {
+            throw new RepositoryException("The position '" + position + "' is out of the key range " + i);
+         }
+         else
+         {
+            range.last = position;
+            pending.add(range);
+         }
+      }
+   }
+
+   /**
+    * Waits for a range to read.
+    *
+    * @return the range or <code>null</code> if all the nodes have been read
+    */
+   private synchronized Range acquire() throws InterruptedException
+   {
+      while (pending.isEmpty() && reading > 0)
+      {
+         // the remaining ranges are being read
+         wait();
+      }
+      Range range = pending.poll();
+      if (range != null)
+      {
+         reading++;
+      }
+      return range;
+   }
+
+   /**
+    * Makes a range available again, or removes it if all its nodes have been read.
+    */
+   private synchronized void release(Range range, boolean done)
+   {
+      reading--;
+      if (done)
+      {
+         range.last = null;
+      }
+      else
+      {
+         pending.add(range);
+      }
+      notifyAll();
+   }
+
+   /**
+    * A range of node identifiers.
+    */
+   private static class Range
+   {
+      /**
+       * The index of the range.
+       */
+      private final int index;
+
+      /**
+       * The lower bound of the range, excluded.
+       */
+      private final String lower;
+
+      /**
+       * The upper bound of the range, included, <code>null</code> for the last range.
+       */
+      private final String upper;
+
+      /**
+       * The identifier of the last node read, <code>null</code> once all the nodes have been read.
+       */
+      private String last;
+
+      Range(int index, String lower, String upper)
+      {
+         this.index = index;
+         this.lower = lower;
+         this.upper = upper;
+         this.last = lower;
+      }
+
+      boolean isDone()
+      {
+         return last == null;
+      }
+   }
+}
@@ -57,6 +57,15 @@ public class GenericCQConnectionFactory extends GenericConnectionFactory
       return openConnection(true);
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public boolean isReadOnlyByDefault()
+   {
+      return true;
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -36,6 +36,7 @@ import org.exoplatform.services.jcr.storage.value.ValueStoragePluginProvider;
 import org.exoplatform.services.jcr.storage.value.ValueStorageURLConnection;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
+import org.picocontainer.Startable;
 
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
@@ -56,7 +57,7 @@ import javax.jcr.PropertyType;
  */
 
 public class StandaloneStoragePluginProvider extends ArrayList<ValueStoragePlugin> implements
-   ValueStoragePluginProvider
+   ValueStoragePluginProvider, Startable
 {
 
    private static final long serialVersionUID = 4537116106932443262L;
@@ -248,4 +249,31 @@ public class StandaloneStoragePluginProvider extends ArrayList<ValueStoragePlugi
       }
       throw new ValueStorageNotFoundException("No value storage found with id " + storageId);
    }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void start()
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void stop()
+   {
+      Iterator<ValueStoragePlugin> plugins = iterator();
+      while (plugins.hasNext())
+      {
+         ValueStoragePlugin plugin = plugins.next();
+         try
+         {
+            plugin.close();
+         }
+         catch (RuntimeException e)
+         {
+            log.error("Cannot close the value storage " + plugin.getId(), e);
+         }
+      }
+   }
 }
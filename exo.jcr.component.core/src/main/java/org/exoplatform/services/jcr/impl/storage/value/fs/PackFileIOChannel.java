@@ -0,0 +1,367 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.value.fs;
+
+import org.exoplatform.services.jcr.datamodel.ValueData;
+import org.exoplatform.services.jcr.impl.dataflow.SpoolConfig;
+import org.exoplatform.services.jcr.impl.dataflow.ValueDataUtil;
+import org.exoplatform.services.jcr.impl.dataflow.ValueDataUtil.ValueDataWrapper;
+import org.exoplatform.services.jcr.impl.dataflow.persistent.ChangedSizeHandler;
+import org.exoplatform.services.jcr.impl.dataflow.persistent.StreamPersistedValueData;
+import org.exoplatform.services.jcr.impl.storage.value.ValueDataNotFoundException;
+import org.exoplatform.services.jcr.impl.storage.value.fs.PackFileStore.Block;
+import org.exoplatform.services.jcr.impl.storage.value.fs.PackFileStore.Record;
+import org.exoplatform.services.jcr.impl.storage.value.fs.operations.ValueFileIOHelper;
+import org.exoplatform.services.jcr.impl.util.io.FileCleaner;
+import org.exoplatform.services.jcr.storage.value.ValueIOChannel;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The channel of a {@link PackFileValueStorage}. The changes are kept in memory until {@link #prepare()}
+ * which appends them to the current segment as a single block, they become visible on commit.
+ *
+ * @version $Id$
+ */
+public class PackFileIOChannel extends ValueFileIOHelper implements ValueIOChannel
+{
+
+   /**
+    * The value storage.
+    */
+   protected final PackFileValueStorage storage;
+
+   /**
+    * Temporary directory used to spool the streamed values.
+    */
+   protected final File tempDir;
+
+   /**
+    * File cleaner used to clean the spooled files that could not be removed.
+    */
+   protected final FileCleaner cleaner;
+
+   /**
+    * Storage Id.
+    */
+   protected final String storageId;
+
+   /**
+    * The written values.
+    */
+   private final List<WrittenValue> written = new ArrayList<WrittenValue>();
+
+   /**
+    * The changes in their order: the written values and the ids of the deleted properties.
+    */
+   private final List<Object> changes = new ArrayList<Object>();
+
+   /**
+    * The block written by {@link #prepare()}.
+    */
+   private Block block;
+
+   /**
+    * PackFileIOChannel constructor.
+    */
+   public PackFileIOChannel(File rootDir, FileCleaner cleaner, String storageId, PackFileValueStorage storage)
+   {
+      this.storage = storage;
+      this.cleaner = cleaner;
+      this.storageId = storageId;
+      this.tempDir = new File(rootDir, FileValueStorage.TEMP_DIR_NAME);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void write(String propertyId, ValueData value, ChangedSizeHandler sizeHandler) throws IOException
+   {
+      WrittenValue w = new WrittenValue(propertyId, value, sizeHandler);
+      written.add(w);
+      changes.add(w);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void delete(String propertyId) throws IOException
+   {
+      changes.add(propertyId);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void prepare() throws IOException
+   {
+      if (block != null || changes.isEmpty())
+      {
+         return;
+      }
+      List<Record> records = new ArrayList<Record>();
+      try
+      {
+         for (Object change : changes)
+         {
+            if (change instanceof WrittenValue)
+            {
+               records.add(((WrittenValue)change).toRecord());
+            }
+            else
+            {
+               String propertyId = (String)change;
+               for (Integer orderNumber : storage.getStore().getOrderNumbers(propertyId))
+               {
+                  records.add(Record.delete(propertyId, orderNumber));
+               }
+            }
+         }
+         block = storage.getStore().prepare(records);
+      }
+      finally
+      {
+         for (WrittenValue w : written)
+         {
+            w.release();
+         }
+      }
+      for (WrittenValue w : written)
+      {
+         w.persisted();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void commit() throws IOException
+   {
+      twoPhaseCommit();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void twoPhaseCommit() throws IOException
+   {
+      try
+      {
+         prepare();
+         if (block != null)
+         {
+            storage.getStore().commit(block);
+         }
+      }
+      finally
+      {
+         clear();
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void rollback() throws IOException
+   {
+      try
+      {
+         if (block != null)
+         {
+            storage.getStore().abort(block);
+         }
+      }
+      finally
+      {
+         clear();
+      }
+   }
+
+   private void clear()
+   {
+      block = null;
+      written.clear();
+      changes.clear();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void close()
+   {
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public ValueDataWrapper read(String propertyId, int orderNumber, int type, SpoolConfig spoolConfig)
+      throws IOException
+   {
+      long length = storage.getStore().getLength(propertyId, orderNumber);
+      if (length < 0)
+      {
+         throw new FileNotFoundException("The value " + PackFileValueStorage.getResourceId(propertyId, orderNumber)
+            + " doesn't exist in the value storage " + storageId);
+      }
+      return ValueDataUtil.readValueData(type, orderNumber,
+         storage.createURL(PackFileValueStorage.getResourceId(propertyId, orderNumber)), length, spoolConfig);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void checkValueData(String propertyId, int orderNumber) throws ValueDataNotFoundException, IOException
+   {
+      if (!storage.getStore().exists(propertyId, orderNumber))
+      {
+         throw new ValueDataNotFoundException("Value data corresponding to property with [id=" + propertyId
+            + ", ordernum=" + orderNumber + "] does not exist.");
+      }
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void repairValueData(String propertyId, int orderNumber) throws IOException
+   {
+      PackFileStore store = storage.getStore();
+      store.commit(store.prepare(Collections.singletonList(Record.put(propertyId, orderNumber, new byte[0]))));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getValueSize(String propertyId, int orderNumber) throws IOException
+   {
+      return Math.max(0, storage.getStore().getLength(propertyId, orderNumber));
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public long getValueSize(String propertyId) throws IOException
+   {
+      long size = 0;
+      for (Integer orderNumber : storage.getStore().getOrderNumbers(propertyId))
+      {
+         size += getValueSize(propertyId, orderNumber);
+      }
+      return size;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public String getStorageId()
+   {
+      return storageId;
+   }
+
+   /**
+    * A value to write.
+    */
+   private class WrittenValue
+   {
+      private final String propertyId;
+
+      private final ValueData value;
+
+      private final ChangedSizeHandler sizeHandler;
+
+      /**
+       * The file into which the value has been spooled.
+       */
+      private File spoolFile;
+
+      WrittenValue(String propertyId, ValueData value, ChangedSizeHandler sizeHandler)
+      {
+         this.propertyId = propertyId;
+         this.value = value;
+         this.sizeHandler = sizeHandler;
+      }
+
+      /**
+       * Gives the record of the value, the content of the streamed values is spooled into a file if needed.
+       */
+      Record toRecord() throws IOException
+      {
+         Record record;
+         if (value.isByteArray())
+         {
+            record = Record.put(propertyId, value.getOrderNumber(), value.getAsByteArray());
+         }
+         else
+         {
+            File file = null;
+            if (value instanceof StreamPersistedValueData && !((StreamPersistedValueData)value).isPersisted())
+            {
+               file = ((StreamPersistedValueData)value).getTempFile();
+            }
+            if (file == null)
+            {
+               spoolFile = File.createTempFile("pack", null, tempDir);
+               OutputStream out = new FileOutputStream(spoolFile);
+               try
+               {
+                  writeOutput(out, value);
+               }
+               finally
+               {
+                  out.close();
+               }
+               file = spoolFile;
+            }
+            record = Record.put(propertyId, value.getOrderNumber(), file);
+         }
+         sizeHandler.accumulateNewSize(record.length);
+         return record;
+      }
+
+      /**
+       * Links the value to its content in the value storage.
+       */
+      void persisted() throws IOException
+      {
+         if (value instanceof StreamPersistedValueData && !((StreamPersistedValueData)value).isPersisted())
+         {
+            ((StreamPersistedValueData)value).setPersistedURL(
+               storage.createURL(PackFileValueStorage.getResourceId(propertyId, value.getOrderNumber())), false);
+         }
+      }
+
+      /**
+       * Removes the spooled file.
+       */
+      void release()
+      {
+         if (spoolFile != null && !spoolFile.delete())
+         {
+            cleaner.addFile(spoolFile);
+         }
+         spoolFile = null;
+      }
+   }
+}
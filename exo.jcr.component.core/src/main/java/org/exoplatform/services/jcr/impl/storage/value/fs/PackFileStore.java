@@ -0,0 +1,2147 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.value.fs;
+
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * The storage of the {@link PackFileValueStorage}: the values are appended into a few large segment
+ * files instead of having one file per value, and an index file per segment gives the location of each
+ * value.
+ * <p>
+ * A segment is a sequence of blocks, one block per transaction. A block starts with a header giving
+ * its status and its length, followed by the records of the transaction: one record per written value
+ * with the content of the value and one record per deleted value. A block is written as follows: the
+ * space of the block is reserved at the end of the current segment and its header is written with the
+ * status <i>pending</i>, then the records are written and forced to the disk, and finally the status is
+ * set to <i>committed</i>. The changes are visible once {@link #commit(Block)} has been called, a
+ * rolled back block gets the status <i>aborted</i>. Each record has a sequence number, when several
+ * records exist for the same value only the one with the highest sequence number is used, so that the
+ * index can be rebuilt at startup by reading the records of all the blocks that are committed.
+ * </p>
+ * <p>
+ * Once a segment is full, it is sealed and the last record of each of its values is written into an
+ * index file next to it, sorted by property id and order number and preceded by a filter telling
+ * whether a property may have records in the segment. The lookups read the index files with positional
+ * reads, only the records of the segments that are not indexed yet and a bounded cache of the last
+ * looked up locations are kept in memory. The space used by the records that are no longer used is
+ * reclaimed by {@link #compact(double)} which copies the records that are still used into the current
+ * segment and then removes the old segment. The record of a deleted value is copied as long as an older
+ * record of the same value still exists in another segment, so that the older record cannot be used
+ * again after a restart.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class PackFileStore
+{
+
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.PackFileStore");
+
+   /**
+    * The prefix of the segment files.
+    */
+   static final String SEGMENT_PREFIX = "segment-";
+
+   /**
+    * The suffix of the segment files.
+    */
+   static final String SEGMENT_SUFFIX = ".pack";
+
+   /**
+    * The suffix of the index files of the sealed segments.
+    */
+   static final String INDEX_SUFFIX = ".idx";
+
+   /**
+    * The name of the file locked to prevent two stores from using the same directory.
+    */
+   private static final String LOCK_FILE_NAME = ".lock";
+
+   /**
+    * The magic number of a block header.
+    */
+   private static final int BLOCK_MAGIC = 0x4A435042;
+
+   /**
+    * The magic number of an index file.
+    */
+   private static final int INDEX_MAGIC = 0x4A435058;
+
+   /**
+    * The size of a block header: magic (4), status (1), transaction (8), length (8) and CRC (4).
+    */
+   static final int BLOCK_HEADER_SIZE = 25;
+
+   /**
+    * The position of the status into a block header.
+    */
+   private static final int STATUS_OFFSET = 4;
+
+   /**
+    * The status of a block that is being written.
+    */
+   static final byte PENDING = 0;
+
+   /**
+    * The status of a block whose records are valid.
+    */
+   static final byte COMMITTED = 1;
+
+   /**
+    * The status of a block that has been rolled back.
+    */
+   static final byte ABORTED = 2;
+
+   /**
+    * The type of record of a written value.
+    */
+   static final byte PUT = 1;
+
+   /**
+    * The type of record of a deleted value.
+    */
+   static final byte DELETE = 2;
+
+   /**
+    * The maximum amount of bytes of the records of the same block written by a compaction.
+    */
+   private static final long MAX_COMPACTION_BLOCK_SIZE = 8 * 1024 * 1024;
+
+   /**
+    * The size of the header of an index file: magic (4), segment size (8), highest sequence number (8),
+    * highest transaction id (8), amount of entries (4) and length of the filter (4).
+    */
+   private static final int INDEX_HEADER_SIZE = 36;
+
+   /**
+    * The amount of bits of the filter of an index file per entry.
+    */
+   private static final int FILTER_BITS_PER_ENTRY = 10;
+
+   /**
+    * The default maximum amount of locations kept in the cache.
+    */
+   public static final int DEFAULT_CACHE_SIZE = 100000;
+
+   /**
+    * The location of a value that does not exist in the cache.
+    */
+   private static final Entry NOT_FOUND = new Entry(null, 0, 0, 0, 0, true);
+
+   /**
+    * The order of the records by property id and order number.
+    */
+   private static final Comparator<Record> KEY_ORDER = new Comparator<Record>()
+   {
+      public int compare(Record r1, Record r2)
+      {
+         int result = r1.propertyId.compareTo(r2.propertyId);
+         return result != 0 ? result : (r1.orderNumber < r2.orderNumber ? -1 : (r1.orderNumber == r2.orderNumber
+            ? 0 : 1));
+      }
+   };
+
+   /**
+    * The root directory of the segments.
+    */
+   private final File rootDir;
+
+   /**
+    * The size after which a new segment is created.
+    */
+   private final long maxSegmentSize;
+
+   /**
+    * The last looked up locations of the values, guarded by itself.
+    */
+   private final Map<String, Entry> cache;
+
+   /**
+    * All the segments sorted by id, guarded by this.
+    */
+   private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+
+   /**
+    * The segment into which the blocks are appended, guarded by this.
+    */
+   private Segment active;
+
+   /**
+    * The next sequence number of a record, guarded by this.
+    */
+   private long nextSeq;
+
+   /**
+    * The next transaction id, guarded by this.
+    */
+   private long nextTxn;
+
+   /**
+    * The file used to lock the root directory.
+    */
+   private final RandomAccessFile lockFile;
+
+   /**
+    * The lock of the root directory.
+    */
+   private final FileLock lock;
+
+   /**
+    * Opens the store of the given directory with the default size of cache.
+    *
+    * @param rootDir the root directory of the segments
+    * @param maxSegmentSize the size after which a new segment is created
+    * @throws IOException if the segments cannot be read or if the directory is used by another store
+    */
+   public PackFileStore(File rootDir, long maxSegmentSize) throws IOException
+   {
+      this(rootDir, maxSegmentSize, DEFAULT_CACHE_SIZE);
+   }
+
+   /**
+    * Opens the store of the given directory, the missing index files of the existing segments are
+    * rebuilt.
+    *
+    * @param rootDir the root directory of the segments
+    * @param maxSegmentSize the size after which a new segment is created
+    * @param cacheSize the maximum amount of locations of values kept in memory
+    * @throws IOException if the segments cannot be read or if the directory is used by another store
+    */
+   public PackFileStore(File rootDir, long maxSegmentSize, final int cacheSize) throws IOException
+   {
+      this.rootDir = rootDir;
+      this.maxSegmentSize = maxSegmentSize;
+      this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+      {
+         /**
+          * The serial version UID
+          */
+         private static final long serialVersionUID = 4193386231745032452L;
+
+         @Override
+         protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+         {
+            return size() > cacheSize;
+         }
+      };
+      this.lockFile = new RandomAccessFile(new File(rootDir, LOCK_FILE_NAME), "rw");
+      FileLock lock = null;
+      try
+      {
+         lock = lockFile.getChannel().tryLock();
+      }
+      catch (OverlappingFileLockException e)
+      {
+         // already locked by this JVM
+      }
+      finally
+      {
+         if (lock == null)
+         {
+            lockFile.close();
+         }
+      }
+      if (lock == null)
+      {
+         throw new IOException("The directory " + rootDir.getAbsolutePath() + " is already used by another store");
+      }
+      this.lock = lock;
+      try
+      {
+         load();
+      }
+      catch (IOException e)
+      {
+         close();
+         throw e;
+      }
+   }
+
+   /**
+    * Opens the index files of the existing segments, the segments without a valid index file are read
+    * and indexed, then creates a new active segment.
+    */
+   private synchronized void load() throws IOException
+   {
+      File[] files = rootDir.listFiles();
+      int maxId = 0;
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            String name = file.getName();
+            if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+            {
+               int id;
+               try
+               {
+                  id =
+                     Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+               }
+               catch (NumberFormatException e)
+               {
+                  LOG.warn("Unexpected file in the value storage " + file.getAbsolutePath());
+                  continue;
+               }
+               segments.put(id, new Segment(id, file, getIndexFile(id)));
+               maxId = Math.max(maxId, id);
+            }
+         }
+      }
+      long maxSeq = 0;
+      long maxTxn = 0;
+      for (Iterator<Segment> it = segments.values().iterator(); it.hasNext();)
+      {
+         Segment segment = it.next();
+         segment.sealed = true;
+         SegmentIndex index = openIndex(segment);
+         if (index == null)
+         {
+            List<Record> records = scan(segment, true);
+            if (segment.size == 0)
+            {
+               it.remove();
+               segment.markObsolete();
+               continue;
+            }
+            index = writeIndex(segment, records);
+         }
+         else
+         {
+            segment.size = segment.channel.size();
+         }
+         segment.setIndex(index);
+         maxSeq = Math.max(maxSeq, index.maxSeq);
+         maxTxn = Math.max(maxTxn, index.maxTxn);
+      }
+      initLiveSizes();
+      this.nextSeq = maxSeq + 1;
+      this.nextTxn = maxTxn + 1;
+      this.active = createSegment(maxId + 1);
+      if (LOG.isDebugEnabled())
+      {
+         LOG.debug("The value storage " + rootDir.getAbsolutePath() + " has been loaded, "
+            + (segments.size() - 1) + " segments found");
+      }
+   }
+
+   /**
+    * Computes the size of the records that are still used of each segment by merging the index files
+    * of all the segments, guarded by this.
+    */
+   private void initLiveSizes() throws IOException
+   {
+      PriorityQueue<IndexCursor> queue = new PriorityQueue<IndexCursor>(Math.max(1, segments.size()));
+      try
+      {
+         for (Segment segment : segments.values())
+         {
+            advance(queue, segment.index.openCursor(segment));
+         }
+         while (!queue.isEmpty())
+         {
+            IndexCursor cursor = queue.poll();
+            Record latest = cursor.record;
+            Segment segment = cursor.segment;
+            int count = 1;
+            advance(queue, cursor);
+            while (!queue.isEmpty() && KEY_ORDER.compare(queue.peek().record, latest) == 0)
+            {
+               cursor = queue.poll();
+               count++;
+               if (cursor.record.seq > latest.seq)
+               {
+                  latest = cursor.record;
+                  segment = cursor.segment;
+               }
+               advance(queue, cursor);
+            }
+            // a deleted value is only used while it hides an older record of another segment
+            if (latest.type == PUT || count > 1)
+            {
+               segment.live += latest.getSize();
+            }
+         }
+      }
+      finally
+      {
+         for (IndexCursor cursor : queue)
+         {
+            cursor.close();
+         }
+      }
+   }
+
+   /**
+    * Moves the given cursor to its next record and adds it to the given queue unless there are no more
+    * records.
+    */
+   private static void advance(PriorityQueue<IndexCursor> queue, IndexCursor cursor) throws IOException
+   {
+      boolean added = false;
+      try
+      {
+         if (cursor.next())
+         {
+            added = queue.add(cursor);
+         }
+      }
+      finally
+      {
+         if (!added)
+         {
+            cursor.close();
+         }
+      }
+   }
+
+   /**
+    * Creates a new empty segment.
+    */
+   private Segment createSegment(int id) throws IOException
+   {
+      Segment segment = new Segment(id, getSegmentFile(id), getIndexFile(id));
+      segments.put(id, segment);
+      return segment;
+   }
+
+   private File getSegmentFile(int id)
+   {
+      return new File(rootDir, SEGMENT_PREFIX + id + SEGMENT_SUFFIX);
+   }
+
+   private File getIndexFile(int id)
+   {
+      return new File(rootDir, SEGMENT_PREFIX + id + INDEX_SUFFIX);
+   }
+
+   /**
+    * Gives the key of the given value in the cache.
+    */
+   private static String getKey(String propertyId, int orderNumber)
+   {
+      return propertyId + "." + orderNumber;
+   }
+
+   /**
+    * Removes the location of the given value from the cache.
+    */
+   private void invalidate(String propertyId, int orderNumber)
+   {
+      synchronized (cache)
+      {
+         cache.remove(getKey(propertyId, orderNumber));
+      }
+   }
+
+   /**
+    * Gives the location of the given value.
+    *
+    * @return the location of the value or <code>null</code> if it does not exist
+    */
+   Entry get(String propertyId, int orderNumber) throws IOException
+   {
+      String key = getKey(propertyId, orderNumber);
+      Entry entry;
+      synchronized (cache)
+      {
+         entry = cache.get(key);
+      }
+      if (entry == null)
+      {
+         synchronized (this)
+         {
+            entry = find(propertyId, orderNumber);
+            if (entry == null)
+            {
+               entry = NOT_FOUND;
+            }
+            synchronized (cache)
+            {
+               cache.put(key, entry);
+            }
+         }
+      }
+      return entry.deleted ? null : entry;
+   }
+
+   /**
+    * Gives the last record of the given value among all the segments, guarded by this.
+    *
+    * @return the location of the record or <code>null</code> if there is no record of the value
+    */
+   private Entry find(String propertyId, int orderNumber) throws IOException
+   {
+      Entry result = null;
+      // the copies made by a compaction are in a newer segment than the copied records
+      for (Segment segment : segments.descendingMap().values())
+      {
+         if (result != null && segment.maxSeq <= result.seq)
+         {
+            continue;
+         }
+         Entry entry = segment.find(propertyId, orderNumber);
+         if (entry != null && (result == null || entry.seq > result.seq))
+         {
+            result = entry;
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Indicates whether a record of the given value exists in another segment than the given ones,
+    * guarded by this.
+    */
+   private boolean hasRecord(String propertyId, int orderNumber, Segment excluded1, Segment excluded2)
+      throws IOException
+   {
+      for (Segment segment : segments.values())
+      {
+         if (segment != excluded1 && segment != excluded2 && segment.find(propertyId, orderNumber) != null)
+         {
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Indicates whether the given last record of a value is counted in the size of the records that are
+    * still used of its segment, guarded by this. The record of a deleted value is only used while it
+    * hides an older record of another segment.
+    *
+    * @param removed a segment being removed whose records must be ignored, if any
+    */
+   private boolean isLive(String propertyId, int orderNumber, Entry entry, Segment removed) throws IOException
+   {
+      return !entry.deleted || hasRecord(propertyId, orderNumber, entry.segment, removed);
+   }
+
+   /**
+    * Gives the order numbers of the existing values of the given property.
+    */
+   synchronized List<Integer> getOrderNumbers(String propertyId) throws IOException
+   {
+      List<Entry> latest = new ArrayList<Entry>();
+      for (Segment segment : segments.values())
+      {
+         Entry[] entries = segment.findAll(propertyId);
+         if (entries == null)
+         {
+            continue;
+         }
+         for (int i = 0; i < entries.length; i++)
+         {
+            if (entries[i] == null)
+            {
+               continue;
+            }
+            while (latest.size() <= i)
+            {
+               latest.add(null);
+            }
+            if (latest.get(i) == null || entries[i].seq > latest.get(i).seq)
+            {
+               latest.set(i, entries[i]);
+            }
+         }
+      }
+      List<Integer> result = new ArrayList<Integer>();
+      for (int i = 0; i < latest.size(); i++)
+      {
+         if (latest.get(i) != null && !latest.get(i).deleted)
+         {
+            result.add(i);
+         }
+      }
+      return result;
+   }
+
+   /**
+    * Indicates whether the given value exists.
+    */
+   public boolean exists(String propertyId, int orderNumber) throws IOException
+   {
+      return get(propertyId, orderNumber) != null;
+   }
+
+   /**
+    * Gives the size of the given value.
+    *
+    * @return the size of the value or -1 if it does not exist
+    */
+   public long getLength(String propertyId, int orderNumber) throws IOException
+   {
+      Entry entry = get(propertyId, orderNumber);
+      return entry == null ? -1 : entry.length;
+   }
+
+   /**
+    * Opens a stream on the content of the given value. The content is read with positional reads of the
+    * segment, so the stream supports the skip of any amount of bytes without reading them.
+    *
+    * @return the stream or <code>null</code> if the value does not exist
+    */
+   public InputStream openStream(String propertyId, int orderNumber) throws IOException
+   {
+      while (true)
+      {
+         Entry entry = get(propertyId, orderNumber);
+         if (entry == null)
+         {
+            return null;
+         }
+         if (entry.segment.acquire())
+         {
+            return new SegmentInputStream(entry.segment, entry.dataOffset, entry.dataOffset + entry.length, true);
+         }
+         // the segment has just been compacted so the value has been moved
+         invalidate(propertyId, orderNumber);
+      }
+   }
+
+   /**
+    * Writes the given records into a new block whose changes become visible once {@link #commit(Block)}
+    * has been called. The records are forced to the disk before returning.
+    *
+    * @param records the records to write
+    * @return the written block
+    * @throws IOException if the block could not be written
+    */
+   public Block prepare(List<Record> records) throws IOException
+   {
+      long length = 0;
+      for (Record record : records)
+      {
+         length += record.getSize();
+      }
+      Block block;
+      synchronized (this)
+      {
+         if (active.size > 0 && active.size + BLOCK_HEADER_SIZE + length > maxSegmentSize)
+         {
+            active.sealed = true;
+            active = createSegment(active.id + 1);
+         }
+         block = new Block(active, active.size, nextTxn++, length, records);
+         active.size += BLOCK_HEADER_SIZE + length;
+         active.pending++;
+         for (Record record : records)
+         {
+            if (record.seq == 0)
+            {
+               record.seq = nextSeq++;
+            }
+            record.txn = block.txn;
+         }
+         // the header is written before any other block is reserved, so it is always forced to the disk
+         // with any block written after this one
+         writeFully(active.channel, block.getHeader(PENDING), block.offset);
+      }
+      try
+      {
+         long position = block.offset + BLOCK_HEADER_SIZE;
+         for (Record record : records)
+         {
+            record.offset = position;
+            position = record.write(block.segment.channel, position);
+         }
+         block.segment.channel.force(false);
+         setStatus(block, COMMITTED);
+      }
+      catch (IOException e)
+      {
+         abort(block);
+         throw e;
+      }
+      return block;
+   }
+
+   /**
+    * Makes the changes of the given block visible.
+    */
+   public synchronized void commit(Block block)
+   {
+      for (Record record : block.records)
+      {
+         Entry entry = record.toEntry(block.segment);
+         invalidate(record.propertyId, record.orderNumber);
+         try
+         {
+            apply(record.propertyId, record.orderNumber, entry);
+         }
+         catch (IOException e)
+         {
+            // only the size of the records that are still used may be wrong
+            block.segment.put(record.propertyId, record.orderNumber, entry);
+            LOG.warn("Cannot read the index files of the value storage " + rootDir.getAbsolutePath(), e);
+         }
+      }
+      block.segment.pending--;
+   }
+
+   /**
+    * Rolls back the given block, its changes will never be visible.
+    */
+   public void abort(Block block) throws IOException
+   {
+      try
+      {
+         setStatus(block, ABORTED);
+      }
+      finally
+      {
+         synchronized (this)
+         {
+            block.segment.pending--;
+         }
+      }
+   }
+
+   /**
+    * Writes the status of the given block and forces it to the disk.
+    */
+   private void setStatus(Block block, byte status) throws IOException
+   {
+      writeFully(block.segment.channel, ByteBuffer.wrap(new byte[]{status}), block.offset + STATUS_OFFSET);
+      block.segment.channel.force(false);
+   }
+
+   /**
+    * Applies a committed record and updates the size of the records that are still used of the
+    * segments, guarded by this.
+    *
+    * @param candidate the location of the record
+    */
+   private void apply(String propertyId, int orderNumber, Entry candidate) throws IOException
+   {
+      Entry current = find(propertyId, orderNumber);
+      boolean currentLive = current != null && isLive(propertyId, orderNumber, current, null);
+      candidate.segment.put(propertyId, orderNumber, candidate);
+      if (current != null && candidate.seq <= current.seq)
+      {
+         // an older record, it is not used
+         return;
+      }
+      if (currentLive)
+      {
+         current.segment.live -= current.getRecordSize();
+      }
+      if (isLive(propertyId, orderNumber, candidate, null))
+      {
+         candidate.segment.live += candidate.getRecordSize();
+      }
+   }
+
+   /**
+    * Writes the index files of the sealed segments that don't have one yet.
+    */
+   public void writeIndexes() throws IOException
+   {
+      List<Segment> toIndex = new ArrayList<Segment>();
+      synchronized (this)
+      {
+         for (Segment segment : segments.values())
+         {
+            if (segment.sealed && segment.pending == 0 && segment.index == null)
+            {
+               toIndex.add(segment);
+            }
+         }
+      }
+      for (Segment segment : toIndex)
+      {
+         if (segment.acquire())
+         {
+            try
+            {
+               index(segment);
+            }
+            finally
+            {
+               segment.release();
+            }
+         }
+      }
+   }
+
+   /**
+    * Writes the index file of the given sealed segment and uses it instead of the records kept in memory.
+    */
+   private void index(Segment segment) throws IOException
+   {
+      SegmentIndex index = writeIndex(segment, scan(segment, false));
+      synchronized (this)
+      {
+         segment.setIndex(index);
+      }
+   }
+
+   /**
+    * Compacts the sealed segments whose ratio of unused space is greater or equal to the given ratio.
+    *
+    * @return the amount of compacted segments
+    */
+   public int compact(double ratio) throws IOException
+   {
+      List<Segment> candidates = new ArrayList<Segment>();
+      synchronized (this)
+      {
+         for (Segment segment : segments.values())
+         {
+            if (segment.sealed && segment.pending == 0 && segment.size - segment.live >= ratio * segment.size)
+            {
+               candidates.add(segment);
+            }
+         }
+      }
+      for (Segment segment : candidates)
+      {
+         compact(segment);
+      }
+      return candidates.size();
+   }
+
+   /**
+    * Copies the records of the given segment that are still used into the active segment, then
+    * removes the segment.
+    */
+   private void compact(Segment segment) throws IOException
+   {
+      if (!segment.acquire())
+      {
+         return;
+      }
+      try
+      {
+         if (segment.index == null)
+         {
+            index(segment);
+         }
+         List<Record> copies = new ArrayList<Record>();
+         long copiesSize = 0;
+         IndexCursor cursor = segment.index.openCursor(segment);
+         try
+         {
+            while (cursor.next())
+            {
+               Record record = cursor.record;
+               boolean copy = false;
+               synchronized (this)
+               {
+                  Entry current = find(record.propertyId, record.orderNumber);
+                  if (current != null && current.segment == segment)
+                  {
+                     copy = isLive(record.propertyId, record.orderNumber, current, null);
+                  }
+                  else if (current != null && current.deleted
+                     && !hasRecord(record.propertyId, record.orderNumber, current.segment, segment))
+                  {
+                     // the deleted value doesn't hide anything anymore
+                     current.segment.live -= current.getRecordSize();
+                  }
+               }
+               if (copy)
+               {
+                  copies.add(record.copyFrom(segment));
+                  copiesSize += record.getSize();
+                  if (copiesSize >= MAX_COMPACTION_BLOCK_SIZE)
+                  {
+                     copy(segment, copies);
+                     copies.clear();
+                     copiesSize = 0;
+                  }
+               }
+            }
+         }
+         finally
+         {
+            cursor.close();
+         }
+         if (!copies.isEmpty())
+         {
+            copy(segment, copies);
+         }
+         synchronized (this)
+         {
+            segments.remove(segment.id);
+         }
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("The segment " + segment.file.getAbsolutePath() + " has been compacted");
+         }
+      }
+      finally
+      {
+         segment.release();
+      }
+      segment.markObsolete();
+   }
+
+   /**
+    * Writes the given copies of records of a segment into a new block and moves their location
+    * if they have not been changed in the meantime.
+    */
+   private void copy(Segment from, List<Record> copies) throws IOException
+   {
+      Block block = prepare(copies);
+      synchronized (this)
+      {
+         for (Record copy : copies)
+         {
+            Entry moved = copy.toEntry(block.segment);
+            invalidate(copy.propertyId, copy.orderNumber);
+            Entry current = find(copy.propertyId, copy.orderNumber);
+            // otherwise the value has been changed, the copy is an older record
+            boolean source = current != null && current.segment == from && current.offset == copy.sourceOffset;
+            block.segment.put(copy.propertyId, copy.orderNumber, moved);
+            if (source)
+            {
+               from.live -= current.getRecordSize();
+               if (isLive(copy.propertyId, copy.orderNumber, moved, from))
+               {
+                  moved.segment.live += moved.getRecordSize();
+               }
+            }
+            else if (current != null && current.deleted
+               && !hasRecord(copy.propertyId, copy.orderNumber, current.segment, from))
+            {
+               // the copy is in the segment of the deleted value, it doesn't hide anything anymore
+               current.segment.live -= current.getRecordSize();
+            }
+         }
+         block.segment.pending--;
+      }
+   }
+
+   /**
+    * Reads the committed records of the given segment.
+    *
+    * @param loading indicates whether the store is being opened, in which case the size of the segment
+    * is initialized and the segment is truncated after its last valid block
+    */
+   private List<Record> scan(Segment segment, boolean loading) throws IOException
+   {
+      List<Record> records = new ArrayList<Record>();
+      FileChannel channel = segment.channel;
+      long fileLength = channel.size();
+      long position = 0;
+      ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+      while (position + BLOCK_HEADER_SIZE <= fileLength)
+      {
+         header.clear();
+         readFully(channel, header, position);
+         header.flip();
+         int magic = header.getInt();
+         byte status = header.get();
+         long txn = header.getLong();
+         long length = header.getLong();
+         int crc = header.getInt();
+         if (magic != BLOCK_MAGIC || crc != Block.crc(magic, txn, length) || length < 0
+            || position + BLOCK_HEADER_SIZE + length > fileLength)
+         {
+            break;
+         }
+         long start = position + BLOCK_HEADER_SIZE;
+         long end = start + length;
+         if (status == COMMITTED)
+         {
+            DataInputStream in =
+               new DataInputStream(new BufferedInputStream(new SegmentInputStream(segment, start, end, false), 8192));
+            long offset = start;
+            while (offset < end)
+            {
+               Record record = Record.read(in, offset);
+               record.txn = txn;
+               records.add(record);
+               skipFully(in, record.length);
+               offset = record.getDataOffset() + record.length;
+            }
+         }
+         position = end;
+      }
+      if (loading)
+      {
+         segment.size = position;
+         if (position < fileLength)
+         {
+            LOG.warn("The segment " + segment.file.getAbsolutePath() + " is truncated to its last valid block at "
+               + position + " instead of " + fileLength);
+            channel.truncate(position);
+         }
+      }
+      return records;
+   }
+
+   /**
+    * Writes the index file of the given segment from all its committed records: the last record of each
+    * value is kept and the records are sorted by property id and order number.
+    *
+    * @return the opened index file
+    */
+   private SegmentIndex writeIndex(Segment segment, List<Record> records) throws IOException
+   {
+      long maxSeq = 0;
+      long maxTxn = 0;
+      Map<String, Record> last = new HashMap<String, Record>();
+      for (Record record : records)
+      {
+         maxSeq = Math.max(maxSeq, record.seq);
+         maxTxn = Math.max(maxTxn, record.txn);
+         String key = getKey(record.propertyId, record.orderNumber);
+         Record previous = last.get(key);
+         if (previous == null || record.seq > previous.seq)
+         {
+            last.put(key, record);
+         }
+      }
+      List<Record> entries = new ArrayList<Record>(last.values());
+      Collections.sort(entries, KEY_ORDER);
+      long[] filter = new long[(int)Math.max(1, ((long)entries.size() * FILTER_BITS_PER_ENTRY + 63) / 64)];
+      for (Record record : entries)
+      {
+         long hash = SegmentIndex.hash(record.propertyId);
+         filter[SegmentIndex.getFilterWord(hash, filter.length)] |= SegmentIndex.getFilterMask(hash);
+      }
+
+      // the records must be on the disk before an index that points to them
+      segment.channel.force(false);
+
+      File tmp = new File(rootDir, segment.indexFile.getName() + ".tmp");
+      FileOutputStream file = new FileOutputStream(tmp);
+      DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+      try
+      {
+         out.writeInt(INDEX_MAGIC);
+         out.writeLong(segment.channel.size());
+         out.writeLong(maxSeq);
+         out.writeLong(maxTxn);
+         out.writeInt(entries.size());
+         out.writeInt(filter.length);
+         for (long word : filter)
+         {
+            out.writeLong(word);
+         }
+         long position = INDEX_HEADER_SIZE + 8L * filter.length + 8L * entries.size();
+         for (Record record : entries)
+         {
+            out.writeLong(position);
+            position += record.getIndexEntrySize();
+         }
+         for (Record record : entries)
+         {
+            out.writeByte(record.type);
+            out.writeShort(record.key.length);
+            out.write(record.key);
+            out.writeInt(record.orderNumber);
+            out.writeLong(record.seq);
+            out.writeLong(record.offset);
+            out.writeLong(record.length);
+         }
+         out.writeInt(INDEX_MAGIC);
+         out.flush();
+         // the index must be entirely on the disk before being renamed, otherwise a crash could leave
+         // a truncated index file under its final name
+         file.getFD().sync();
+      }
+      finally
+      {
+         out.close();
+      }
+      if (!tmp.renameTo(segment.indexFile))
+      {
+         tmp.delete();
+         throw new IOException("Cannot create the index file " + segment.indexFile.getAbsolutePath());
+      }
+      SegmentIndex index = SegmentIndex.open(segment);
+      if (index == null)
+      {
+         throw new IOException("The index file " + segment.indexFile.getAbsolutePath() + " cannot be read");
+      }
+      return index;
+   }
+
+   /**
+    * Opens the index file of the given segment if it exists and is valid, an invalid index file is
+    * removed.
+    *
+    * @return the index file or <code>null</code> if the segment must be read
+    */
+   private SegmentIndex openIndex(Segment segment) throws IOException
+   {
+      if (!segment.indexFile.exists())
+      {
+         return null;
+      }
+      SegmentIndex index = SegmentIndex.open(segment);
+      if (index == null)
+      {
+         LOG.warn("The index file " + segment.indexFile.getAbsolutePath() + " is invalid, the segment will be read");
+         if (!segment.indexFile.delete())
+         {
+            LOG.warn("The index file " + segment.indexFile.getAbsolutePath() + " could not be removed");
+         }
+      }
+      return index;
+   }
+
+   /**
+    * Gives the amount of segments.
+    */
+   public synchronized int getSegmentCount()
+   {
+      return segments.size();
+   }
+
+   /**
+    * Gives the total size of the segments.
+    */
+   public synchronized long getSize()
+   {
+      long size = 0;
+      for (Segment segment : segments.values())
+      {
+         size += segment.size;
+      }
+      return size;
+   }
+
+   /**
+    * Gives the size of the records that are still used.
+    */
+   public synchronized long getLiveSize()
+   {
+      long size = 0;
+      for (Segment segment : segments.values())
+      {
+         size += segment.live;
+      }
+      return size;
+   }
+
+   /**
+    * Closes all the segments and releases the lock of the root directory.
+    */
+   public synchronized void close()
+   {
+      for (Segment segment : segments.values())
+      {
+         segment.close();
+      }
+      segments.clear();
+      synchronized (cache)
+      {
+         cache.clear();
+      }
+      try
+      {
+         if (lock != null)
+         {
+            lock.release();
+         }
+         lockFile.close();
+      }
+      catch (IOException e)
+      {
+         LOG.warn("Cannot release the lock of the value storage " + rootDir.getAbsolutePath(), e);
+      }
+   }
+
+   static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         position += channel.write(buffer, position);
+      }
+   }
+
+   static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException
+   {
+      while (buffer.hasRemaining())
+      {
+         int read = channel.read(buffer, position);
+         if (read < 0)
+         {
+            throw new EOFException();
+         }
+         position += read;
+      }
+   }
+
+   private static void skipFully(InputStream in, long length) throws IOException
+   {
+      while (length > 0)
+      {
+         long skipped = in.skip(length);
+         if (skipped <= 0)
+         {
+            throw new EOFException();
+         }
+         length -= skipped;
+      }
+   }
+
+   /**
+    * A segment file.
+    */
+   static final class Segment
+   {
+      final int id;
+
+      final File file;
+
+      final File indexFile;
+
+      final RandomAccessFile raf;
+
+      final FileChannel channel;
+
+      /**
+       * The size of the segment including the reserved blocks, guarded by the store.
+       */
+      long size;
+
+      /**
+       * The size of the records that are still used, guarded by the store.
+       */
+      long live;
+
+      /**
+       * The amount of blocks that are neither committed nor aborted, guarded by the store.
+       */
+      int pending;
+
+      /**
+       * Indicates whether no block can be added anymore, guarded by the store.
+       */
+      boolean sealed;
+
+      /**
+       * The highest sequence number of the records, guarded by the store.
+       */
+      long maxSeq;
+
+      /**
+       * The last record of each value of the segment while it has no index file, the array is indexed by
+       * order number, guarded by the store.
+       */
+      private Map<String, Entry[]> entries = new HashMap<String, Entry[]>();
+
+      /**
+       * The index file of the segment once it has been written, guarded by the store.
+       */
+      SegmentIndex index;
+
+      /**
+       * The amount of readers, guarded by this.
+       */
+      private int readers;
+
+      /**
+       * Indicates whether the segment must be removed once there are no more readers, guarded by this.
+       */
+      private boolean obsolete;
+
+      /**
+       * Indicates whether the segment is closed, guarded by this.
+       */
+      private boolean closed;
+
+      Segment(int id, File file, File indexFile) throws IOException
+      {
+         this.id = id;
+         this.file = file;
+         this.indexFile = indexFile;
+         this.raf = new RandomAccessFile(file, "rw");
+         this.channel = raf.getChannel();
+      }
+
+      /**
+       * Adds a record of the segment unless a newer record of the same value exists in the segment,
+       * guarded by the store.
+       */
+      void put(String propertyId, int orderNumber, Entry entry)
+      {
+         maxSeq = Math.max(maxSeq, entry.seq);
+         if (entries == null)
+         {
+            // already indexed
+            return;
+         }
+         Entry[] values = entries.get(propertyId);
+         if (values == null || orderNumber >= values.length)
+         {
+            Entry[] result = new Entry[orderNumber + 1];
+            if (values != null)
+            {
+               System.arraycopy(values, 0, result, 0, values.length);
+            }
+            values = result;
+            entries.put(propertyId, values);
+         }
+         if (values[orderNumber] == null || entry.seq > values[orderNumber].seq)
+         {
+            values[orderNumber] = entry;
+         }
+      }
+
+      /**
+       * Gives the last records of the values of the given property in this segment, guarded by the store.
+       *
+       * @return the records indexed by order number or <code>null</code> if there are none
+       */
+      Entry[] findAll(String propertyId) throws IOException
+      {
+         return entries != null ? entries.get(propertyId) : index.find(this, propertyId);
+      }
+
+      /**
+       * Gives the last record of the given value in this segment, guarded by the store.
+       *
+       * @return the record or <code>null</code> if there is none
+       */
+      Entry find(String propertyId, int orderNumber) throws IOException
+      {
+         Entry[] values = findAll(propertyId);
+         return values == null || orderNumber >= values.length ? null : values[orderNumber];
+      }
+
+      /**
+       * Uses the given index file instead of the records kept in memory, guarded by the store.
+       */
+      void setIndex(SegmentIndex index)
+      {
+         this.index = index;
+         this.entries = null;
+         this.maxSeq = Math.max(maxSeq, index.maxSeq);
+      }
+
+      synchronized boolean acquire()
+      {
+         if (closed)
+         {
+            return false;
+         }
+         readers++;
+         return true;
+      }
+
+      synchronized void release()
+      {
+         if (--readers == 0 && obsolete)
+         {
+            delete();
+         }
+      }
+
+      synchronized void markObsolete()
+      {
+         obsolete = true;
+         if (readers == 0)
+         {
+            delete();
+         }
+      }
+
+      synchronized void close()
+      {
+         if (closed)
+         {
+            return;
+         }
+         closed = true;
+         try
+         {
+            raf.close();
+         }
+         catch (IOException e)
+         {
+            LOG.warn("Cannot close the segment " + file.getAbsolutePath(), e);
+         }
+         if (index != null)
+         {
+            index.close();
+         }
+      }
+
+      private void delete()
+      {
+         close();
+         if (indexFile.exists() && !indexFile.delete())
+         {
+            LOG.warn("Cannot remove the index file " + indexFile.getAbsolutePath());
+         }
+         if (!file.delete())
+         {
+            LOG.warn("Cannot remove the segment " + file.getAbsolutePath());
+         }
+      }
+   }
+
+   /**
+    * The location of the last record of a value.
+    */
+   static final class Entry
+   {
+      final Segment segment;
+
+      /**
+       * The position of the record.
+       */
+      final long offset;
+
+      /**
+       * The position of the content of the value.
+       */
+      final long dataOffset;
+
+      final long length;
+
+      final long seq;
+
+      final boolean deleted;
+
+      Entry(Segment segment, long offset, long dataOffset, long length, long seq, boolean deleted)
+      {
+         this.segment = segment;
+         this.offset = offset;
+         this.dataOffset = dataOffset;
+         this.length = length;
+         this.seq = seq;
+         this.deleted = deleted;
+      }
+
+      long getRecordSize()
+      {
+         return dataOffset - offset + length;
+      }
+   }
+
+   /**
+    * A record of a block: the header of the record is followed by the content of the value.
+    */
+   public static final class Record
+   {
+      final byte type;
+
+      final String propertyId;
+
+      final int orderNumber;
+
+      /**
+       * The encoded property id.
+       */
+      private final byte[] key;
+
+      long seq;
+
+      long txn;
+
+      /**
+       * The position of the record into its segment.
+       */
+      long offset;
+
+      /**
+       * The length of the content of the value.
+       */
+      long length;
+
+      /**
+       * The content of the value if it is in memory.
+       */
+      private byte[] bytes;
+
+      /**
+       * The file that contains the content of the value if it is not in memory.
+       */
+      private File file;
+
+      /**
+       * The segment that contains the content of the value in case of a copy.
+       */
+      private Segment source;
+
+      /**
+       * The position of the copied record.
+       */
+      long sourceOffset;
+
+      private Record(byte type, String propertyId, int orderNumber)
+      {
+         this.type = type;
+         this.propertyId = propertyId;
+         this.orderNumber = orderNumber;
+         try
+         {
+            this.key = propertyId.getBytes("UTF-8");
+         }
+         catch (java.io.UnsupportedEncodingException e)
+         {
+            throw new IllegalStateException(e);
+         }
+      }
+
+      /**
+       * Creates the record of a written value whose content is in memory.
+       */
+      public static Record put(String propertyId, int orderNumber, byte[] bytes)
+      {
+         Record record = new Record(PUT, propertyId, orderNumber);
+         record.bytes = bytes;
+         record.length = bytes.length;
+         return record;
+      }
+
+      /**
+       * Creates the record of a written value whose content is in a file.
+       */
+      public static Record put(String propertyId, int orderNumber, File file)
+      {
+         Record record = new Record(PUT, propertyId, orderNumber);
+         record.file = file;
+         record.length = file.length();
+         return record;
+      }
+
+      /**
+       * Creates the record of a deleted value.
+       */
+      public static Record delete(String propertyId, int orderNumber)
+      {
+         return new Record(DELETE, propertyId, orderNumber);
+      }
+
+      /**
+       * Creates a copy of this record whose content will be read from the given segment.
+       */
+      Record copyFrom(Segment segment)
+      {
+         Record copy = new Record(type, propertyId, orderNumber);
+         copy.seq = seq;
+         copy.length = length;
+         copy.source = segment;
+         copy.sourceOffset = offset;
+         return copy;
+      }
+
+      /**
+       * The size of the header of the record: type (1), order number (4), key length (2), key,
+       * sequence number (8) and length (8).
+       */
+      private int getHeaderSize()
+      {
+         return 23 + key.length;
+      }
+
+      long getSize()
+      {
+         return getHeaderSize() + length;
+      }
+
+      long getDataOffset()
+      {
+         return offset + getHeaderSize();
+      }
+
+      /**
+       * The size of the entry of the record in an index file: the fields of its header followed by its
+       * position (8).
+       */
+      int getIndexEntrySize()
+      {
+         return getHeaderSize() + 8;
+      }
+
+      Entry toEntry(Segment segment)
+      {
+         return new Entry(segment, offset, getDataOffset(), length, seq, type == DELETE);
+      }
+
+      /**
+       * Writes the record at the given position.
+       *
+       * @return the position after the record
+       */
+      long write(FileChannel channel, long position) throws IOException
+      {
+         ByteBuffer header = ByteBuffer.allocate(getHeaderSize());
+         header.put(type);
+         header.putInt(orderNumber);
+         header.putShort((short)key.length);
+         header.put(key);
+         header.putLong(seq);
+         header.putLong(length);
+         header.flip();
+         writeFully(channel, header, position);
+         position += header.capacity();
+         if (bytes != null)
+         {
+            writeFully(channel, ByteBuffer.wrap(bytes), position);
+         }
+         else if (file != null)
+         {
+            FileInputStream in = new FileInputStream(file);
+            try
+            {
+               transfer(in.getChannel(), 0, channel, position, length);
+            }
+            finally
+            {
+               in.close();
+            }
+         }
+         else if (source != null)
+         {
+            transfer(source.channel, sourceOffset + getHeaderSize(), channel, position, length);
+         }
+         return position + length;
+      }
+
+      private static void transfer(FileChannel from, long fromPosition, FileChannel to, long position, long length)
+         throws IOException
+      {
+         ByteBuffer buffer = ByteBuffer.allocate((int)Math.min(length, 64 * 1024));
+         while (length > 0)
+         {
+            buffer.clear();
+            if (buffer.remaining() > length)
+            {
+               buffer.limit((int)length);
+            }
+            readFully(from, buffer, fromPosition);
+            buffer.flip();
+            int count = buffer.remaining();
+            writeFully(to, buffer, position);
+            fromPosition += count;
+            position += count;
+            length -= count;
+         }
+      }
+
+      /**
+       * Reads the header of a record.
+       */
+      static Record read(DataInputStream in, long offset) throws IOException
+      {
+         byte type = in.readByte();
+         int orderNumber = in.readInt();
+         byte[] key = new byte[in.readShort() & 0xFFFF];
+         in.readFully(key);
+         Record record = new Record(type, new String(key, "UTF-8"), orderNumber);
+         record.seq = in.readLong();
+         record.length = in.readLong();
+         record.offset = offset;
+         return record;
+      }
+   }
+
+   /**
+    * A block of records written by a transaction.
+    */
+   public static final class Block
+   {
+      final Segment segment;
+
+      final long offset;
+
+      final long txn;
+
+      final long length;
+
+      final List<Record> records;
+
+      Block(Segment segment, long offset, long txn, long length, List<Record> records)
+      {
+         this.segment = segment;
+         this.offset = offset;
+         this.txn = txn;
+         this.length = length;
+         this.records = records;
+      }
+
+      ByteBuffer getHeader(byte status)
+      {
+         ByteBuffer header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+         header.putInt(BLOCK_MAGIC);
+         header.put(status);
+         header.putLong(txn);
+         header.putLong(length);
+         header.putInt(crc(BLOCK_MAGIC, txn, length));
+         header.flip();
+         return header;
+      }
+
+      /**
+       * The CRC of the header of a block, the status is excluded since it is changed afterwards.
+       */
+      static int crc(int magic, long txn, long length)
+      {
+         ByteBuffer buffer = ByteBuffer.allocate(20);
+         buffer.putInt(magic);
+         buffer.putLong(txn);
+         buffer.putLong(length);
+         CRC32 crc = new CRC32();
+         crc.update(buffer.array());
+         return (int)crc.getValue();
+      }
+   }
+
+   /**
+    * The index file of a sealed segment read with positional reads: a header, a filter of the property
+    * ids, the positions of the entries and the entries sorted by property id and order number.
+    */
+   static final class SegmentIndex
+   {
+      private final RandomAccessFile raf;
+
+      private final FileChannel channel;
+
+      /**
+       * The length of the index file.
+       */
+      private final long fileLength;
+
+      /**
+       * The amount of entries.
+       */
+      private final int count;
+
+      /**
+       * The amount of words of the filter.
+       */
+      private final int filterLength;
+
+      /**
+       * The position of the first entry.
+       */
+      private final long entriesOffset;
+
+      final long maxSeq;
+
+      final long maxTxn;
+
+      private SegmentIndex(RandomAccessFile raf, long fileLength, int count, int filterLength, long maxSeq,
+         long maxTxn)
+      {
+         this.raf = raf;
+         this.channel = raf.getChannel();
+         this.fileLength = fileLength;
+         this.count = count;
+         this.filterLength = filterLength;
+         this.entriesOffset = INDEX_HEADER_SIZE + 8L * filterLength + 8L * count;
+         this.maxSeq = maxSeq;
+         this.maxTxn = maxTxn;
+      }
+
+      /**
+       * Opens the index file of the given segment.
+       *
+       * @return the index file or <code>null</code> if it is not valid
+       */
+      static SegmentIndex open(Segment segment) throws IOException
+      {
+         RandomAccessFile raf = new RandomAccessFile(segment.indexFile, "r");
+         SegmentIndex index = null;
+         try
+         {
+            FileChannel channel = raf.getChannel();
+            long fileLength = channel.size();
+            if (fileLength < INDEX_HEADER_SIZE + 4)
+            {
+               return null;
+            }
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER_SIZE);
+            readFully(channel, header, 0);
+            header.flip();
+            ByteBuffer trailer = ByteBuffer.allocate(4);
+            readFully(channel, trailer, fileLength - 4);
+            trailer.flip();
+            if (header.getInt() != INDEX_MAGIC || header.getLong() != segment.channel.size()
+               || trailer.getInt() != INDEX_MAGIC)
+            {
+               return null;
+            }
+            long maxSeq = header.getLong();
+            long maxTxn = header.getLong();
+            int count = header.getInt();
+            int filterLength = header.getInt();
+            if (count < 0 || filterLength <= 0 || INDEX_HEADER_SIZE + 8L * filterLength + 8L * count > fileLength - 4)
+            {
+               return null;
+            }
+            index = new SegmentIndex(raf, fileLength, count, filterLength, maxSeq, maxTxn);
+            return index;
+         }
+         finally
+         {
+            if (index == null)
+            {
+               raf.close();
+            }
+         }
+      }
+
+      /**
+       * Gives the last records of the values of the given property in the segment.
+       *
+       * @return the records indexed by order number or <code>null</code> if there are none
+       */
+      Entry[] find(Segment segment, String propertyId) throws IOException
+      {
+         long hash = hash(propertyId);
+         ByteBuffer word = ByteBuffer.allocate(8);
+         readFully(channel, word, INDEX_HEADER_SIZE + 8L * getFilterWord(hash, filterLength));
+         word.flip();
+         long mask = getFilterMask(hash);
+         if ((word.getLong() & mask) != mask)
+         {
+            return null;
+         }
+         // the first entry of the property
+         int low = 0;
+         int high = count;
+         while (low < high)
+         {
+            int middle = (low + high) >>> 1;
+            if (readEntry(middle).propertyId.compareTo(propertyId) < 0)
+            {
+               low = middle + 1;
+            }
+            else
+            {
+               high = middle;
+            }
+         }
+         List<Record> records = new ArrayList<Record>();
+         for (int i = low; i < count; i++)
+         {
+            Record record = readEntry(i);
+            if (!record.propertyId.equals(propertyId))
+            {
+               break;
+            }
+            records.add(record);
+         }
+         if (records.isEmpty())
+         {
+            return null;
+         }
+         Entry[] entries = new Entry[records.get(records.size() - 1).orderNumber + 1];
+         for (Record record : records)
+         {
+            entries[record.orderNumber] = record.toEntry(segment);
+         }
+         return entries;
+      }
+
+      /**
+       * Reads the entry of the given rank.
+       */
+      private Record readEntry(int rank) throws IOException
+      {
+         ByteBuffer buffer = ByteBuffer.allocate(8);
+         readFully(channel, buffer, INDEX_HEADER_SIZE + 8L * filterLength + 8L * rank);
+         buffer.flip();
+         long position = buffer.getLong();
+         // most of the property ids are short enough to be read at once
+         buffer = ByteBuffer.allocate(256);
+         buffer.limit((int)Math.min(buffer.capacity(), fileLength - position));
+         readFully(channel, buffer, position);
+         buffer.flip();
+         int size = 31 + (buffer.getShort(1) & 0xFFFF);
+         if (size > buffer.limit())
+         {
+            buffer = ByteBuffer.allocate(size);
+            readFully(channel, buffer, position);
+            buffer.flip();
+         }
+         return readEntry(new DataInputStream(new ByteArrayInputStream(buffer.array(), 0, size)));
+      }
+
+      /**
+       * Reads an entry from the given stream.
+       */
+      static Record readEntry(DataInputStream in) throws IOException
+      {
+         byte type = in.readByte();
+         byte[] key = new byte[in.readShort() & 0xFFFF];
+         in.readFully(key);
+         Record record = new Record(type, new String(key, "UTF-8"), in.readInt());
+         record.seq = in.readLong();
+         record.offset = in.readLong();
+         record.length = in.readLong();
+         return record;
+      }
+
+      /**
+       * Opens a cursor on the entries in their order.
+       */
+      IndexCursor openCursor(Segment segment)
+      {
+         return new IndexCursor(segment, new DataInputStream(new BufferedInputStream(new SegmentInputStream(null,
+            channel, entriesOffset, Long.MAX_VALUE, false), 8192)), count);
+      }
+
+      void close()
+      {
+         try
+         {
+            raf.close();
+         }
+         catch (IOException e)
+         {
+            LOG.warn("Cannot close the index file of a segment", e);
+         }
+      }
+
+      /**
+       * The hash of a property id used by the filter.
+       */
+      static long hash(String propertyId)
+      {
+         long hash = 0xCBF29CE484222325L;
+         for (int i = 0; i < propertyId.length(); i++)
+         {
+            hash ^= propertyId.charAt(i);
+            hash *= 0x100000001B3L;
+         }
+         return hash;
+      }
+
+      /**
+       * Gives the word of the filter that contains the bits of the given hash.
+       */
+      static int getFilterWord(long hash, int filterLength)
+      {
+         return (int)((hash >>> 32) % filterLength);
+      }
+
+      /**
+       * Gives the 4 bits of the given hash in its word of the filter.
+       */
+      static long getFilterMask(long hash)
+      {
+         long mask = 0;
+         for (int i = 0; i < 4; i++)
+         {
+            mask |= 1L << ((hash >>> (6 * i)) & 63);
+         }
+         return mask;
+      }
+   }
+
+   /**
+    * A cursor on the entries of an index file.
+    */
+   static final class IndexCursor implements Comparable<IndexCursor>
+   {
+      final Segment segment;
+
+      private final DataInputStream in;
+
+      /**
+       * The amount of entries that have not been read.
+       */
+      private int remaining;
+
+      /**
+       * The current entry.
+       */
+      Record record;
+
+      IndexCursor(Segment segment, DataInputStream in, int count)
+      {
+         this.segment = segment;
+         this.in = in;
+         this.remaining = count;
+      }
+
+      /**
+       * Moves to the next entry.
+       *
+       * @return <code>false</code> if there are no more entries
+       */
+      boolean next() throws IOException
+      {
+         if (remaining == 0)
+         {
+            record = null;
+            return false;
+         }
+         remaining--;
+         record = SegmentIndex.readEntry(in);
+         return true;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public int compareTo(IndexCursor cursor)
+      {
+         return KEY_ORDER.compare(record, cursor.record);
+      }
+
+      void close()
+      {
+         try
+         {
+            in.close();
+         }
+         catch (IOException e)
+         {
+            LOG.warn("Cannot close the index file of the segment " + segment.file.getAbsolutePath(), e);
+         }
+      }
+   }
+
+   /**
+    * A stream on a range of a segment or of its index file read with positional reads.
+    */
+   static final class SegmentInputStream extends InputStream
+   {
+      private final Segment segment;
+
+      private final FileChannel channel;
+
+      private final long end;
+
+      private final boolean release;
+
+      private long position;
+
+      private boolean closed;
+
+      SegmentInputStream(Segment segment, long start, long end, boolean release)
+      {
+         this(segment, segment.channel, start, end, release);
+      }
+
+      /**
+       * @param segment the segment to release once the stream is closed, if any
+       */
+      SegmentInputStream(Segment segment, FileChannel channel, long start, long end, boolean release)
+      {
+         this.segment = segment;
+         this.channel = channel;
+         this.position = start;
+         this.end = end;
+         this.release = release;
+      }
+
+      @Override
+      public int read() throws IOException
+      {
+         byte[] b = new byte[1];
+         return read(b, 0, 1) == -1 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException
+      {
+         if (closed)
+         {
+            throw new IOException("The stream is closed");
+         }
+         if (position >= end)
+         {
+            return -1;
+         }
+         if (len == 0)
+         {
+            return 0;
+         }
+         ByteBuffer buffer = ByteBuffer.wrap(b, off, (int)Math.min(len, end - position));
+         int read = 0;
+         while (buffer.hasRemaining())
+         {
+            int count = channel.read(buffer, position + read);
+            if (count < 0)
+            {
+               break;
+            }
+            read += count;
+         }
+         if (read == 0)
+         {
+            return -1;
+         }
+         position += read;
+         return read;
+      }
+
+      @Override
+      public long skip(long n)
+      {
+         long skipped = Math.max(0, Math.min(n, end - position));
+         position += skipped;
+         return skipped;
+      }
+
+      @Override
+      public int available()
+      {
+         return (int)Math.min(Integer.MAX_VALUE, end - position);
+      }
+
+      @Override
+      public void close()
+      {
+         if (!closed)
+         {
+            closed = true;
+            if (release)
+            {
+               segment.release();
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,326 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.value.fs;
+
+import org.exoplatform.services.jcr.config.RepositoryConfigurationException;
+import org.exoplatform.services.jcr.impl.proccess.WorkerThread;
+import org.exoplatform.services.jcr.impl.storage.value.ValueDataResourceHolder;
+import org.exoplatform.services.jcr.impl.util.io.FileCleaner;
+import org.exoplatform.services.jcr.storage.value.ValueIOChannel;
+import org.exoplatform.services.jcr.storage.value.ValueStorageURLConnection;
+import org.exoplatform.services.jcr.storage.value.ValueStorageURLStreamHandler;
+import org.exoplatform.services.jcr.util.StringNumberParser;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Properties;
+
+/**
+ * A value storage that appends the values into a few large segment files instead of having one file
+ * per value like {@link TreeFileValueStorage}, which avoids to exhaust the inodes of the file system and
+ * makes the backup of the storage much faster. The location of each value is given by an index file per
+ * segment, only the last looked up locations are kept in memory up to <code>index-cache-size</code>
+ * (100000 by default), see {@link PackFileStore} for the format of the segments.
+ * <p>
+ * The space of the deleted and updated values is reclaimed by a background thread which compacts the
+ * segments whose ratio of unused space exceeds the parameter <code>compaction-ratio</code> (0.5 by
+ * default) every <code>compaction-interval</code> (5 minutes by default). A new segment is created once
+ * the current one exceeds <code>segment-size</code> (128 MB by default).
+ * </p>
+ * <p>
+ * The directory of the storage must not be shared between several cluster nodes since the locations of
+ * the values of the current segment are only kept in memory, a lock prevents two instances from using
+ * the same directory.
+ * </p>
+ *
+ * @version $Id$
+ */
+public class PackFileValueStorage extends FileValueStorage
+{
+
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.PackFileValueStorage");
+
+   /**
+    * The parameter giving the size after which a new segment is created.
+    */
+   public static final String SEGMENT_SIZE = "segment-size";
+
+   /**
+    * The parameter giving the ratio of unused space of a segment from which it is compacted.
+    */
+   public static final String COMPACTION_RATIO = "compaction-ratio";
+
+   /**
+    * The parameter giving the period of the compaction.
+    */
+   public static final String COMPACTION_INTERVAL = "compaction-interval";
+
+   /**
+    * The parameter giving the maximum amount of locations of values kept in memory.
+    */
+   public static final String INDEX_CACHE_SIZE = "index-cache-size";
+
+   /**
+    * The default size after which a new segment is created.
+    */
+   public static final long DEFAULT_SEGMENT_SIZE = 128L * 1024 * 1024;
+
+   /**
+    * The default ratio of unused space of a segment from which it is compacted.
+    */
+   public static final double DEFAULT_COMPACTION_RATIO = 0.5;
+
+   /**
+    * The default period of the compaction.
+    */
+   public static final long DEFAULT_COMPACTION_INTERVAL = 5 * 60 * 1000;
+
+   /**
+    * The store of the values.
+    */
+   private PackFileStore store;
+
+   /**
+    * The thread that compacts the segments.
+    */
+   private Compactor compactor;
+
+   /**
+    * The handler of the URLs of the values.
+    */
+   private final ValueStorageURLStreamHandler handler = new PackFileURLStreamHandler();
+
+   /**
+    * PackFileValueStorage constructor.
+    */
+   public PackFileValueStorage(FileCleaner cleaner)
+   {
+      super(cleaner);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void init(Properties props, ValueDataResourceHolder resources) throws IOException,
+      RepositoryConfigurationException
+   {
+      super.init(props, resources);
+      long segmentSize;
+      double ratio;
+      long interval;
+      int cacheSize;
+      try
+      {
+         String value = props.getProperty(SEGMENT_SIZE);
+         segmentSize = value == null ? DEFAULT_SEGMENT_SIZE : StringNumberParser.parseLong(value);
+         value = props.getProperty(INDEX_CACHE_SIZE);
+         cacheSize = value == null ? PackFileStore.DEFAULT_CACHE_SIZE : StringNumberParser.parseInt(value);
+         value = props.getProperty(COMPACTION_RATIO);
+         ratio = value == null ? DEFAULT_COMPACTION_RATIO : Double.parseDouble(value);
+         value = props.getProperty(COMPACTION_INTERVAL);
+         interval = value == null ? DEFAULT_COMPACTION_INTERVAL : StringNumberParser.parseTime(value);
+      }
+      catch (NumberFormatException e)
+      {
+         throw new RepositoryConfigurationException("Invalid parameter of the value storage " + getId() + ": "
+            + e.getMessage(), e);
+      }
+      if (segmentSize <= 0 || ratio <= 0 || ratio > 1 || interval <= 0 || cacheSize < 0)
+      {
+         throw new RepositoryConfigurationException("Invalid parameter of the value storage " + getId()
+            + ", the segment size and the compaction interval must be positive, the index cache size must not be"
+            + " negative and the compaction ratio must be between 0 excluded and 1");
+      }
+      this.store = new PackFileStore(rootDir, segmentSize, cacheSize);
+      this.compactor = new Compactor(ratio, interval);
+      compactor.start();
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public ValueIOChannel openIOChannel() throws IOException
+   {
+      return new PackFileIOChannel(rootDir, cleaner, getId(), this);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected ValueStorageURLStreamHandler getURLStreamHandler()
+   {
+      return handler;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public void close()
+   {
+      if (compactor != null)
+      {
+         compactor.halt();
+         compactor.interrupt();
+         try
+         {
+            compactor.join();
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+         }
+      }
+      if (store != null)
+      {
+         store.close();
+      }
+   }
+
+   /**
+    * Gives the store of the values.
+    */
+   PackFileStore getStore()
+   {
+      return store;
+   }
+
+   /**
+    * Gives the id of the resource of the given value.
+    */
+   static String getResourceId(String propertyId, int orderNumber)
+   {
+      return propertyId + "." + orderNumber;
+   }
+
+   /**
+    * The thread that writes the index files of the sealed segments and compacts them.
+    */
+   private class Compactor extends WorkerThread
+   {
+      private final double ratio;
+
+      Compactor(double ratio, long interval)
+      {
+         super("Pack File Compactor " + rootDir.getName(), interval);
+         this.ratio = ratio;
+         setDaemon(true);
+         setPriority(Thread.MIN_PRIORITY);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected void callPeriodically() throws Exception
+      {
+         if (stopped)
+         {
+            return;
+         }
+         store.writeIndexes();
+         int count = store.compact(ratio);
+         if (count > 0 && LOG.isDebugEnabled())
+         {
+            LOG.debug(count + " segments of the value storage " + rootDir.getAbsolutePath() + " have been compacted");
+         }
+      }
+   }
+
+   /**
+    * The handler that gives directly the connections of this value storage.
+    */
+   private class PackFileURLStreamHandler extends ValueStorageURLStreamHandler
+   {
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      protected ValueStorageURLConnection createURLConnection(URL u, String repository, String workspace,
+         String valueStorageId) throws IOException
+      {
+         return new PackFileURLConnection(u);
+      }
+   }
+
+   /**
+    * The connection to a value of this value storage.
+    */
+   private class PackFileURLConnection extends ValueStorageURLConnection
+   {
+      PackFileURLConnection(URL url)
+      {
+         super(url);
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public void connect() throws IOException
+      {
+         connected = true;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public InputStream getInputStream() throws IOException
+      {
+         int index = idResource.lastIndexOf('.');
+         InputStream in =
+            store.openStream(idResource.substring(0, index), Integer.parseInt(idResource.substring(index + 1)));
+         if (in == null)
+         {
+            throw new FileNotFoundException("The value " + idResource + " doesn't exist in the value storage "
+               + getId());
+         }
+         return in;
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      @Override
+      public int getContentLength()
+      {
+         int index = idResource.lastIndexOf('.');
+         long length;
+         try
+         {
+            length =
+               store.getLength(idResource.substring(0, index), Integer.parseInt(idResource.substring(index + 1)));
+         }
+         catch (IOException e)
+         {
+            LOG.warn("Cannot get the length of the value " + idResource + " of the value storage " + getId(), e);
+            return -1;
+         }
+         return length > Integer.MAX_VALUE ? -1 : (int)length;
+      }
+   }
+}
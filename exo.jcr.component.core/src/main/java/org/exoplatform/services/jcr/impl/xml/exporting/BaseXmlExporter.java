@@ -96,6 +96,11 @@ public abstract class BaseXmlExporter extends ItemDataTraversingVisitor
     */
    private final ValueFactoryImpl systemValueFactory;
 
+   /**
+    * Loads ahead the next nodes to export, <code>null</code> if disabled.
+    */
+   private final SubtreePrefetcher prefetcher;
+
    /**
     * @param dataManager - ItemDataConsumer
     * @param namespaceRegistry - NamespaceRegistry
@@ -117,6 +122,7 @@ public abstract class BaseXmlExporter extends ItemDataTraversingVisitor
       this.svNamespaceUri = namespaceRegistry.getURI("sv");
 
       this.systemValueFactory = systemValueFactory;
+      this.prefetcher = SubtreePrefetcher.create(dataManager, !noRecurse);
 
    }
 
@@ -186,9 +192,13 @@ public abstract class BaseXmlExporter extends ItemDataTraversingVisitor
                List<NodeData> nodes = new ArrayList<NodeData>(dataManager.getChildNodesData(node));
                // Sorting nodes
                Collections.sort(nodes, new NodeDataOrderComparator());
-               for (NodeData data : nodes)
+               for (int i = 0, next = 0; i < nodes.size(); i++)
                {
-                  data.accept(this);
+                  if (prefetcher != null)
+                  {
+                     next = prefetcher.prefetch(nodes, i, next);
+                  }
+                  nodes.get(i).accept(this);
                }
             }
             currentLevel--;
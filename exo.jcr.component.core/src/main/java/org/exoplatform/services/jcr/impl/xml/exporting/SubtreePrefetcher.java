@@ -0,0 +1,279 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.xml.exporting;
+
+import org.exoplatform.commons.utils.PropertyManager;
+import org.exoplatform.services.jcr.dataflow.ItemDataConsumer;
+import org.exoplatform.services.jcr.datamodel.NodeData;
+import org.exoplatform.services.jcr.impl.core.SessionDataManager;
+import org.exoplatform.services.log.ExoLogger;
+import org.exoplatform.services.log.Log;
+
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jcr.RepositoryException;
+
+/**
+ * Loads ahead of an export the properties and the child nodes of the next sibling nodes to export. The
+ * items are loaded on worker threads through the data manager of the workspace, which puts them into the
+ * cache of the workspace where the exporter finds them when it reaches these nodes. The exporter still
+ * reads everything through its own data manager so the exported content is exactly the same, only the
+ * round-trips to the storage are done concurrently.
+ * <p>
+ * The prefetching is disabled by default, it is enabled by setting the amount of worker threads with the
+ * property {@value #PREFETCH_THREADS}. The amount of nodes being loaded ahead of a given export is bounded
+ * by the property {@value #PREFETCH_LOOKAHEAD}.
+ *
+ * @version $Id$
+ */
+class SubtreePrefetcher
+{
+   /**
+    * The name of the property that defines the amount of threads loading the nodes ahead of the exports,
+    * the prefetching is disabled if not set
+    */
+   static final String PREFETCH_THREADS = "org.exoplatform.jcr.export.prefetch.threads";
+
+   /**
+    * The name of the property that defines the maximum amount of nodes being loaded ahead of an export
+    */
+   static final String PREFETCH_LOOKAHEAD = "org.exoplatform.jcr.export.prefetch.lookahead";
+
+   private static final int DEFAULT_LOOKAHEAD = 32;
+
+   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.SubtreePrefetcher");
+
+   /**
+    * The pool shared by all the exports, its threads stop once idle
+    */
+   private static ThreadPoolExecutor executor;
+
+   /**
+    * The total amount of nodes loaded ahead
+    */
+   private static final AtomicLong LOADED_NODES = new AtomicLong();
+
+   /**
+    * The data manager of the workspace
+    */
+   private final ItemDataConsumer dataManager;
+
+   /**
+    * The permits of the nodes that can still be loaded ahead of the export
+    */
+   private final Semaphore permits;
+
+   /**
+    * The maximum amount of nodes being loaded ahead of the export
+    */
+   private final int lookahead;
+
+   /**
+    * The pool loading the nodes of this export
+    */
+   private final ThreadPoolExecutor workers;
+
+   private SubtreePrefetcher(ThreadPoolExecutor workers, ItemDataConsumer dataManager, int lookahead)
+   {
+      this.workers = workers;
+      this.dataManager = dataManager;
+      this.lookahead = lookahead;
+      this.permits = new Semaphore(lookahead);
+   }
+
+   /**
+    * Gives the prefetcher to use for an export done through the given data manager.
+    *
+    * @param dataManager the data manager used by the exporter
+    * @param recurse indicates whether the child nodes are exported
+    * @return the prefetcher or <code>null</code> if the prefetching is disabled or not supported by the
+    *         data manager
+    */
+   static SubtreePrefetcher create(ItemDataConsumer dataManager, boolean recurse)
+   {
+      if (!recurse || !(dataManager instanceof SessionDataManager))
+      {
+         return null;
+      }
+      ThreadPoolExecutor executor = getExecutor();
+      if (executor == null)
+      {
+         return null;
+      }
+      return new SubtreePrefetcher(executor, ((SessionDataManager)dataManager).getWorkspaceDataManager(),
+         getIntProperty(PREFETCH_LOOKAHEAD, DEFAULT_LOOKAHEAD));
+   }
+
+   /**
+    * Loads ahead the nodes that follow the node about to be exported in the given list of sibling nodes.
+    *
+    * @param nodes the sibling nodes sorted in the order of the export
+    * @param current the index of the node about to be exported
+    * @param next the index of the first node that has not been loaded ahead yet
+    * @return the index of the first node that has not been loaded ahead yet
+    */
+   int prefetch(List<NodeData> nodes, int current, int next)
+   {
+      next = Math.max(next, current + 1);
+      for (int limit = Math.min(nodes.size(), current + 1 + lookahead); next < limit && permits.tryAcquire(); next++)
+      {
+         final NodeData node = nodes.get(next);
+         try
+         {
+            workers.execute(new Runnable()
+            {
+               public void run()
+               {
+                  try
+                  {
+                     dataManager.getChildPropertiesData(node);
+                     dataManager.getChildNodesData(node);
+                     LOADED_NODES.incrementAndGet();
+                  }
+                  catch (RepositoryException e)
+                  {
+                     // the exporter will get the error itself if any
+                     if (LOG.isDebugEnabled())
+                     {
+                        LOG.debug("Could not load ahead the node " + node.getQPath().getAsString(), e);
+                     }
+                  }
+                  finally
+                  {
+                     permits.release();
+                  }
+               }
+            });
+         }
+         catch (RejectedExecutionException e)
+         {
+            permits.release();
+            break;
+         }
+      }
+      return next;
+   }
+
+   /**
+    * Gives the pool of threads shared by the exports, it is created the first time it is needed.
+    *
+    * @return the pool or <code>null</code> if the prefetching is disabled
+    */
+   private static synchronized ThreadPoolExecutor getExecutor()
+   {
+      if (executor == null)
+      {
+         int threads = getIntProperty(PREFETCH_THREADS, 0);
+         if (threads == 0)
+         {
+            return null;
+         }
+         executor = newExecutor(threads);
+      }
+      return executor;
+   }
+
+   /**
+    * Creates the pool of threads shared by the exports whatever the value of the property
+    * {@value #PREFETCH_THREADS}, used by the tests.
+    *
+    * @param threads the amount of threads of the pool
+    */
+   static synchronized void startExecutor(int threads)
+   {
+      if (executor == null)
+      {
+         executor = newExecutor(threads);
+      }
+   }
+
+   /**
+    * Stops the pool of threads shared by the exports once the nodes being loaded ahead have been loaded,
+    * used by the tests.
+    *
+    * @throws InterruptedException if interrupted while waiting for the threads to stop
+    */
+   static synchronized void stopExecutor() throws InterruptedException
+   {
+      if (executor != null)
+      {
+         executor.shutdown();
+         executor.awaitTermination(1, TimeUnit.MINUTES);
+         executor = null;
+      }
+   }
+
+   /**
+    * @return the total amount of nodes loaded ahead
+    */
+   static long getLoadedNodes()
+   {
+      return LOADED_NODES.get();
+   }
+
+   private static ThreadPoolExecutor newExecutor(int threads)
+   {
+      ThreadPoolExecutor executor =
+         new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+            new ThreadFactory()
+            {
+               private final AtomicInteger count = new AtomicInteger(1);
+
+               public Thread newThread(Runnable r)
+               {
+                  Thread t = new Thread(r, "JCR export prefetch thread-" + count.getAndIncrement());
+                  t.setDaemon(true);
+                  return t;
+               }
+            });
+      executor.allowCoreThreadTimeOut(true);
+      return executor;
+   }
+
+   private static int getIntProperty(String name, int defaultValue)
+   {
+      String value = PropertyManager.getProperty(name);
+      if (value != null)
+      {
+         try
+         {
+            int result = Integer.valueOf(value);
+            if (result > 0)
+            {
+               return result;
+            }
+         }
+         catch (NumberFormatException e)
+         {
+            // use the default value
+         }
+         LOG.warn("The value of the property '" + name
+            + "' must be a positive integer, the default value will be used.");
+      }
+      return defaultValue;
+   }
+}
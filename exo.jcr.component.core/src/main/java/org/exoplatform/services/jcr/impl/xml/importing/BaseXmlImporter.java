@@ -52,9 +52,12 @@ import org.exoplatform.services.security.ConversationState;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Stack;
 
 import javax.jcr.ImportUUIDBehavior;
@@ -107,6 +110,12 @@ public abstract class BaseXmlImporter implements ContentImporter
 
    protected final ValueFactoryImpl valueFactory;
 
+   /**
+    * The highest order number of the child nodes already detached from the changes log, only kept for the
+    * nodes that are still being imported since they are the only ones that can still get new child nodes.
+    */
+   private final Map<String, Integer> detachedOrderNumbers = new HashMap<String, Integer>();
+
    private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.core.ImporterBase");
 
    public BaseXmlImporter(NodeData parent, QPath ancestorToSave, int uuidBehavior, ItemDataConsumer dataConsumer,
@@ -183,13 +192,87 @@ public abstract class BaseXmlImporter implements ContentImporter
       return changesLog;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   public PlainChangesLog detachChanges(int threshold) throws RepositoryException
+   {
+      if (changesLog.getSize() < threshold || !canDetachChanges())
+      {
+         return null;
+      }
+      // the removals and the path reloading of the other behaviors may affect the items already collected
+      if (uuidBehavior != ImportUUIDBehavior.IMPORT_UUID_CREATE_NEW
+         && uuidBehavior != ImportUUIDBehavior.IMPORT_UUID_COLLISION_THROW)
+      {
+         return null;
+      }
+
+      Set<String> openNodes = new HashSet<String>();
+      for (NodeData node : tree)
+      {
+         // the properties of the frozen nodes are only checked at the end of the node
+         if (node.getQPath().equals(Constants.JCR_VERSION_STORAGE_PATH)
+            || node.getQPath().isDescendantOf(Constants.JCR_VERSION_STORAGE_PATH))
+         {
+            return null;
+         }
+         openNodes.add(node.getIdentifier());
+      }
+
+      // the nodes still being imported are saved now while their properties are already known, so their ACL
+      // has to be set as it will be at the end of the node
+      for (NodeData node : tree)
+      {
+         if (node instanceof ImportNodeData)
+         {
+            ImportNodeData nodeData = (ImportNodeData)node;
+            nodeData.setACL(ACLInitializationHelper.initAcl(nodeData.getACL(), nodeData.getExoOwner(),
+               nodeData.getExoPrivileges()));
+         }
+      }
+
+      PlainChangesLog changes = getChanges();
+      PlainChangesLogImpl detached = new PlainChangesLogImpl(SESSION_ID);
+      for (ItemState itemState : changes.getAllStates())
+      {
+         ItemData stateData = itemState.getData();
+         if (stateData.isNode() && openNodes.contains(stateData.getParentIdentifier()))
+         {
+            Integer max = detachedOrderNumbers.get(stateData.getParentIdentifier());
+            int cur = ((NodeData)stateData).getOrderNumber();
+            if (max == null || cur > max)
+            {
+               detachedOrderNumbers.put(stateData.getParentIdentifier(), cur);
+            }
+         }
+         detached.add(itemState);
+      }
+      detachedOrderNumbers.keySet().retainAll(openNodes);
+      changesLog.clear();
+
+      return detached;
+   }
+
+   /**
+    * Indicates whether the changes collected so far can be saved, in other words whether none of them will
+    * be modified by the next elements.
+    *
+    * @return <code>true</code> if the changes can be detached, <code>false</code> otherwise
+    */
+   protected boolean canDetachChanges()
+   {
+      return false;
+   }
+
    /**
     * @param parentData
     * @return next child order number.
     */
    public int getNextChildOrderNum(NodeData parentData)
    {
-      int max = -1;
+      Integer detached = detachedOrderNumbers.get(parentData.getIdentifier());
+      int max = detached == null ? -1 : detached;
 
       for (ItemState itemState : changesLog.getAllStates())
       {
@@ -37,6 +37,24 @@ public interface ContentImporter
 
    public final String LIST_OF_IMPORTED_VERSION_HISTORIES = "importedSubversions";
 
+   /**
+    * The context key of the amount of items (an {@link Integer}) from which the items already imported are
+    * saved before the end of the document, so that the memory used by the import stays bounded whatever the
+    * size of the document. Only meaningful when the changes are saved straight into the workspace, and only
+    * applied with the {@link javax.jcr.ImportUUIDBehavior#IMPORT_UUID_CREATE_NEW} and
+    * {@link javax.jcr.ImportUUIDBehavior#IMPORT_UUID_COLLISION_THROW} behaviors, the other behaviors may
+    * remove or move existing items so their changes are always saved at the end of the document. The batches
+    * already saved are kept if the import fails, the import cannot be resumed, it has to be restarted from
+    * scratch once these items have been removed.
+    */
+   public final String IMPORT_BATCH_SIZE = "importBatchSize";
+
+   /**
+    * The context key under which the total amount of items (a {@link Long}) already saved by a batched
+    * import is kept up to date.
+    */
+   public final String IMPORT_SAVED_ITEMS = "importSavedItems";
+
    /**
     * Receive notification of character data.
     * 
@@ -82,6 +100,17 @@ public interface ContentImporter
    // public void save() throws RepositoryException;
    public PlainChangesLog getChanges();
 
+   /**
+    * Detaches the changes collected so far once they are at least <code>threshold</code> and can be saved
+    * before the end of the import, the importer keeps only what it needs to go on with the next elements.
+    * It is expected to be called between two elements.
+    *
+    * @param threshold the minimum amount of changes to detach
+    * @return the detached changes or <code>null</code> if they cannot be saved yet
+    * @throws RepositoryException if the changes cannot be detached
+    */
+   public PlainChangesLog detachChanges(int threshold) throws RepositoryException;
+
    /**
     * Receive notification of the beginning of an element.
     * <p>
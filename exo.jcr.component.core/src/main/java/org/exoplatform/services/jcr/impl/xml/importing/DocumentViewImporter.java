@@ -179,6 +179,16 @@ public class DocumentViewImporter extends BaseXmlImporter
       xmlCharactersProperty = null;
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected boolean canDetachChanges()
+   {
+      // every element is a node whose properties are all given by its attributes
+      return xmlCharactersProperty == null;
+   }
+
    public void startElement(String namespaceURI, String localName, String qName, Map<String, String> atts)
       throws RepositoryException
    {
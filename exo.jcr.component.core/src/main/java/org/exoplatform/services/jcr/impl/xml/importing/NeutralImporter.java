@@ -90,6 +90,17 @@ public class NeutralImporter extends BaseXmlImporter
       return super.getChanges();
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   public PlainChangesLog detachChanges(int threshold) throws RepositoryException
+   {
+      if (contentImporter != null)
+         return contentImporter.detachChanges(threshold);
+      return super.detachChanges(threshold);
+   }
+
    /**
     * {@inheritDoc}
     */
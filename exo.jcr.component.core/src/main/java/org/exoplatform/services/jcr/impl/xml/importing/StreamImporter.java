@@ -22,6 +22,7 @@ import org.exoplatform.services.jcr.access.AccessManager;
 import org.exoplatform.services.jcr.core.nodetype.NodeTypeDataManager;
 import org.exoplatform.services.jcr.dataflow.ItemDataConsumer;
 import org.exoplatform.services.jcr.dataflow.ItemDataKeeper;
+import org.exoplatform.services.jcr.dataflow.PlainChangesLog;
 import org.exoplatform.services.jcr.datamodel.NodeData;
 import org.exoplatform.services.jcr.impl.core.LocationFactory;
 import org.exoplatform.services.jcr.impl.core.RepositoryImpl;
@@ -64,6 +65,22 @@ public class StreamImporter implements RawDataImporter
 
    private final ItemDataKeeper dataKeeper;
 
+   /**
+    * The context of the import
+    */
+   private final Map<String, Object> context;
+
+   /**
+    * The amount of items from which the changes are saved before the end of the document, 0 to save them
+    * all at once
+    */
+   private final int batchSize;
+
+   /**
+    * The total amount of items saved by the batches
+    */
+   private long savedItems;
+
    /**
     *
     */
@@ -74,6 +91,9 @@ public class StreamImporter implements RawDataImporter
    {
       super();
       this.dataKeeper = dataKeeper;
+      this.context = context;
+      Object size = context == null ? null : context.get(ContentImporter.IMPORT_BATCH_SIZE);
+      this.batchSize = size instanceof Number ? Math.max(0, ((Number)size).intValue()) : 0;
       this.importer =
          createContentImporter(parent, uuidBehavior, dataConsumer, ntManager, locationFactory, valueFactory,
             namespaceRegistry, accessManager, userState, context, repository, currentWorkspaceName);
@@ -138,6 +158,14 @@ public class StreamImporter implements RawDataImporter
                   EndElement endElement = event.asEndElement();
                   importer.endElement(endElement.getName().getNamespaceURI(), endElement.getName().getLocalPart(),
                      endElement.getName().getPrefix() + ":" + endElement.getName().getLocalPart());
+                  if (batchSize > 0)
+                  {
+                     PlainChangesLog changes = importer.detachChanges(batchSize);
+                     if (changes != null)
+                     {
+                        saveBatch(changes);
+                     }
+                  }
                   break;
                case XMLStreamConstants.PROCESSING_INSTRUCTION :
                   break;
@@ -150,7 +178,14 @@ public class StreamImporter implements RawDataImporter
                case XMLStreamConstants.START_DOCUMENT :
                   break;
                case XMLStreamConstants.END_DOCUMENT :
-                  dataKeeper.save(importer.getChanges());
+                  if (batchSize > 0)
+                  {
+                     saveBatch(importer.getChanges());
+                  }
+                  else
+                  {
+                     dataKeeper.save(importer.getChanges());
+                  }
                   break;
                case XMLStreamConstants.ENTITY_REFERENCE :
                   break;
@@ -176,6 +211,25 @@ public class StreamImporter implements RawDataImporter
       }
    }
 
+   /**
+    * Saves a batch of changes and updates the total amount of saved items in the context of the import.
+    *
+    * @param changes the changes to save
+    * @throws RepositoryException if the changes cannot be saved
+    */
+   private void saveBatch(PlainChangesLog changes) throws RepositoryException
+   {
+      if (changes.getSize() == 0)
+      {
+         return;
+      }
+      dataKeeper.save(changes);
+      savedItems += changes.getSize();
+      context.put(ContentImporter.IMPORT_SAVED_ITEMS, savedItems);
+      if (log.isDebugEnabled())
+         log.debug(changes.getSize() + " items saved, " + savedItems + " items saved so far");
+   }
+
    /**
     * @param event
     */
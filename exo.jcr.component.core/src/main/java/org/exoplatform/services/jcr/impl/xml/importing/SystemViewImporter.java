@@ -87,6 +87,12 @@ public class SystemViewImporter extends BaseXmlImporter
     */
    protected String ROOT_NODE_NAME = "jcr:root";
 
+   /**
+    * Indicates whether the last element ended is a node, the properties of the nodes still being imported
+    * are then all known since they come before the child nodes.
+    */
+   private boolean nodeEnded;
+
    /**
     *
     */
@@ -142,11 +148,13 @@ public class SystemViewImporter extends BaseXmlImporter
    public void endElement(String uri, String localName, String name) throws RepositoryException
    {
       InternalQName elementName = locationFactory.parseJCRName(name).getInternalName();
+      nodeEnded = false;
 
       if (Constants.SV_NODE_NAME.equals(elementName))
       {
          // sv:node element
          endNode();
+         nodeEnded = true;
       }
       else if (Constants.SV_PROPERTY_NAME.equals(elementName))
       {
@@ -182,6 +190,15 @@ public class SystemViewImporter extends BaseXmlImporter
       }
    }
 
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected boolean canDetachChanges()
+   {
+      return nodeEnded;
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -40,8 +40,8 @@ import java.util.Map;
 
 /**
  * This class manages all the statistics of eXo JCR. This will print all the metrics value into a file in csv format 
- * for all the registered statistics. It will provide metrics of type minimum, maximum, total, times and average 
- * for each method of {@link WorkspaceStorageConnection} and the global values. It will add data into the file 
+ * for all the registered statistics. It will provide metrics of type minimum, maximum, total, times, average 
+ * and percentiles for each method of {@link WorkspaceStorageConnection} and the global values. It will add data into the file 
  * every 5 seconds and add the last line at JVM exit. This class will also expose all the statistics through JMX.
  * 
  * Created by The eXo Platform SAS
@@ -455,6 +455,25 @@ public class JCRStatisticsManager
       return statistics == null ? 0l : statistics.getAvg();
    }
 
+   /**
+    * @return the time below which the given percentage of the calls have been done for the statistics
+    * corresponding to the given category and name.
+    */
+   @Managed
+   @ManagedDescription("The time spent by the given percentage of the calls, for example 99 gives the time "
+      + "below which 99% of the calls have been done.")
+   public static float getPercentile(
+      @ManagedDescription("The name of the category of the statistics") 
+      @ManagedName("categoryName") String category,
+      @ManagedDescription("The name of the expected method or global for the global value") 
+      @ManagedName("statisticsName") String name,
+      @ManagedDescription("The expected percentile between 0 and 100") 
+      @ManagedName("percentile") double percentile)
+   {
+      Statistics statistics = getStatistics(category, name);
+      return statistics == null ? 0l : statistics.getPercentile(percentile);
+   }
+
    /**
     * Allows to reset the statistics corresponding to the given category and name.
     * @param category
@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.statistics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock free histogram of durations expressed in nanoseconds. The buckets are log-linear: the
+ * values lower than 2^{@value #SUB_BUCKET_BITS} have their own bucket, then each power of 2 is split
+ * into 2^{@value #SUB_BUCKET_BITS} buckets of the same width, so that the relative error of the
+ * percentiles is lower than 1/2^{@value #SUB_BUCKET_BITS}. The values greater than 2^{@value #MAX_BITS}
+ * nanoseconds (about 18 minutes) are recorded into the last bucket. Recording a value is a single
+ * atomic increment and does not allocate anything.
+ *
+ * @version $Id$
+ */
+final class LatencyHistogram
+{
+   /**
+    * The amount of bits of precision of the buckets
+    */
+   private static final int SUB_BUCKET_BITS = 4;
+
+   /**
+    * The amount of buckets per power of 2
+    */
+   private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+   /**
+    * The amount of bits of the highest value that can be recorded without being truncated
+    */
+   private static final int MAX_BITS = 40;
+
+   /**
+    * The highest value that can be recorded without being truncated
+    */
+   private static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+
+   /**
+    * The total amount of buckets
+    */
+   static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (MAX_BITS - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT;
+
+   /**
+    * The amount of values recorded into each bucket
+    */
+   private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+   /**
+    * Records the given duration.
+    * @param value the duration in nanoseconds
+    */
+   void record(long value)
+   {
+      counts.incrementAndGet(bucket(value));
+   }
+
+   /**
+    * Gives the bucket of the given value.
+    */
+   static int bucket(long value)
+   {
+      if (value < SUB_BUCKET_COUNT)
+      {
+         return value < 0 ? 0 : (int)value;
+      }
+      if (value > MAX_VALUE)
+      {
+         value = MAX_VALUE;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int shift = exponent - SUB_BUCKET_BITS;
+      return SUB_BUCKET_COUNT + shift * SUB_BUCKET_COUNT + (int)(value >>> shift) - SUB_BUCKET_COUNT;
+   }
+
+   /**
+    * Gives the highest value that is recorded into the given bucket.
+    */
+   static long highestValue(int bucket)
+   {
+      if (bucket < SUB_BUCKET_COUNT)
+      {
+         return bucket;
+      }
+      int shift = bucket / SUB_BUCKET_COUNT - 1;
+      long lowest = (long)(SUB_BUCKET_COUNT + bucket % SUB_BUCKET_COUNT) << shift;
+      return lowest + (1L << shift) - 1;
+   }
+
+   /**
+    * Gives a copy of the amount of values recorded into each bucket. The copy is not atomic, the values
+    * recorded concurrently may be partially included.
+    */
+   long[] snapshot()
+   {
+      long[] snapshot = new long[BUCKET_COUNT];
+      for (int i = 0; i < BUCKET_COUNT; i++)
+      {
+         snapshot[i] = counts.get(i);
+      }
+      return snapshot;
+   }
+
+   /**
+    * Removes all the recorded values. The reset is not atomic, the values recorded concurrently may
+    * be partially kept.
+    */
+   void reset()
+   {
+      for (int i = 0; i < BUCKET_COUNT; i++)
+      {
+         counts.set(i, 0L);
+      }
+   }
+
+   /**
+    * Gives the value below which the given percentage of the values of a snapshot have been recorded.
+    * @param snapshot the amount of values recorded into each bucket
+    * @param percentile the expected percentile between 0 and 100
+    * @return the highest value of the bucket that contains the percentile or -1 if the snapshot is empty
+    */
+   static long getValueAtPercentile(long[] snapshot, double percentile)
+   {
+      long total = 0;
+      for (int i = 0; i < snapshot.length; i++)
+      {
+         total += snapshot[i];
+      }
+      if (total == 0)
+      {
+         return -1;
+      }
+      long rank = Math.max(1, (long)Math.ceil(Math.min(100d, Math.max(0d, percentile)) * total / 100d));
+      long count = 0;
+      for (int i = 0; i < snapshot.length; i++)
+      {
+         count += snapshot[i];
+         if (count >= rank)
+         {
+            return highestValue(i);
+         }
+      }
+      return highestValue(snapshot.length - 1);
+   }
+
+   /**
+    * Gives the amount of values recorded into each bucket between two snapshots.
+    * @param current the current snapshot
+    * @param previous the previous snapshot, can be <code>null</code>
+    */
+   static long[] difference(long[] current, long[] previous)
+   {
+      if (previous == null)
+      {
+         return current;
+      }
+      long[] difference = new long[current.length];
+      for (int i = 0; i < current.length; i++)
+      {
+         // the counts can decrease in case of reset
+         difference[i] = Math.max(0, current[i] - previous[i]);
+      }
+      return difference;
+   }
+}
@@ -17,12 +17,12 @@
 package org.exoplatform.services.jcr.statistics;
 
 import java.io.PrintWriter;
-import java.util.LinkedList;
-import java.util.Queue;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * The class used to manage all the metrics such as minimum, maximum, total, times and average.
+ * The class used to manage all the metrics such as minimum, maximum, total, times, average and
+ * percentiles. The durations are measured in nanoseconds and exposed in milliseconds, the percentiles
+ * are computed from a {@link LatencyHistogram}.
  * 
  * Created by The eXo Platform SAS
  * Author : Nicolas Filotto 
@@ -43,17 +43,32 @@ public class Statistics
    private final String description;
 
    /**
-    * The min value of the time spent for one call
+    * The percentiles printed into the csv file
+    */
+   private static final double[] PRINTED_PERCENTILES = {50, 90, 99, 99.9};
+
+   /**
+    * The names of the percentiles printed into the csv file
+    */
+   private static final String[] PRINTED_PERCENTILE_NAMES = {"-P50", "-P90", "-P99", "-P999"};
+
+   /**
+    * The amount of nanoseconds in one millisecond
+    */
+   private static final double NANOS_PER_MILLI = 1000000d;
+
+   /**
+    * The min value of the time spent for one call in nanoseconds
     */
    private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
 
    /**
-    * The max value of the time spent for one call
+    * The max value of the time spent for one call in nanoseconds
     */
    private final AtomicLong max = new AtomicLong(-1);
 
    /**
-    * The total time spent for all the calls
+    * The total time spent for all the calls in nanoseconds
     */
    private final AtomicLong total = new AtomicLong();
 
@@ -63,13 +78,23 @@ public class Statistics
    private final AtomicLong times = new AtomicLong();
 
    /**
-    * The {@link ThreadLocal} used to keep the initial timestamp
+    * The distribution of the time spent for one call
+    */
+   private final LatencyHistogram histogram = new LatencyHistogram();
+
+   /**
+    * The snapshot of the histogram taken when the data has been printed for the last time
     */
-   private final ThreadLocal<Queue<Long>> currentTime = new ThreadLocal<Queue<Long>>()
+   private long[] lastPrintedSnapshot;
+
+   /**
+    * The {@link ThreadLocal} used to keep the initial timestamps of the nested calls
+    */
+   private final ThreadLocal<TimeStack> currentTime = new ThreadLocal<TimeStack>()
    {
-      protected Queue<Long> initialValue()
+      protected TimeStack initialValue()
       {
-         return new LinkedList<Long>();
+         return new TimeStack();
       }
    };
 
@@ -90,20 +115,20 @@ public class Statistics
     */
    public void begin()
    {
+      long now = System.nanoTime();
       if (parent != null)
       {
-         parent.onBegin();         
+         parent.onBegin(now);         
       }
-      onBegin();
+      onBegin(now);
    }
 
    /**
-    * Store the current timestamp in the {@link ThreadLocal}
+    * Store the given timestamp in the {@link ThreadLocal}
     */
-   private void onBegin()
+   private void onBegin(long now)
    {
-      Queue<Long> q = currentTime.get();
-      q.add(System.currentTimeMillis());
+      currentTime.get().push(now);
    }
 
    /**
@@ -111,29 +136,32 @@ public class Statistics
     */
    public void end()
    {
-      onEnd();
+      long now = System.nanoTime();
+      onEnd(now);
       if (parent != null)
       {
-         parent.onEnd();         
+         parent.onEnd(now);         
       }
    }
 
    /**
-    * Refresh the values of the metrics (min, max, total and times)
+    * Refresh the values of the metrics (min, max, total, times and histogram)
     */
-   private void onEnd()
+   private void onEnd(long now)
    {
-      long result = System.currentTimeMillis() - currentTime.get().poll();
+      long result = now - currentTime.get().pop();
       times.incrementAndGet();
-      if (result < min.get())
+      long current;
+      while (result < (current = min.get()) && !min.compareAndSet(current, result))
       {
-         min.set(result);
+         // retry
       }
-      if (max.get() < result)
+      while ((current = max.get()) < result && !max.compareAndSet(current, result))
       {
-         max.set(result);
+         // retry
       }
       total.addAndGet(result);
+      histogram.record(result);
    }
 
    /**
@@ -151,22 +179,33 @@ public class Statistics
       pw.print("-Avg,");
       pw.print(description);
       pw.print("-Times");
+      for (int i = 0; i < PRINTED_PERCENTILE_NAMES.length; i++)
+      {
+         pw.print(',');
+         pw.print(description);
+         pw.print(PRINTED_PERCENTILE_NAMES[i]);
+      }
    }
 
    /**
-    * Print the current snapshot of the metrics and evaluate the average value
+    * Print the current snapshot of the metrics and evaluate the average value, the percentiles are
+    * the ones of the calls done since the data has been printed for the last time
     */
    public void printData(PrintWriter pw)
    {
-      long lmin = min.get();
-      if (lmin == Long.MAX_VALUE)
+      long lmin = getMin();
+      long lmax = getMax();
+      long ltotal = getTotal();
+      long ltimes = times.get();
+      float favg = getAvg();
+      long[] snapshot;
+      long[] interval;
+      synchronized (this)
       {
-         lmin = -1;
+         snapshot = histogram.snapshot();
+         interval = LatencyHistogram.difference(snapshot, lastPrintedSnapshot);
+         lastPrintedSnapshot = snapshot;
       }
-      long lmax = max.get();
-      long ltotal = total.get();
-      long ltimes = times.get();
-      float favg = ltimes == 0 ? 0f : (float)ltotal / ltimes;
       pw.print(lmin);
       pw.print(',');
       pw.print(lmax);
@@ -176,35 +215,49 @@ public class Statistics
       pw.print(favg);
       pw.print(',');
       pw.print(ltimes);
+      for (int i = 0; i < PRINTED_PERCENTILES.length; i++)
+      {
+         pw.print(',');
+         pw.print(toMillis(LatencyHistogram.getValueAtPercentile(interval, PRINTED_PERCENTILES[i])));
+      }
    }
 
    /**
-    * @return The min value of the time spent for one call
+    * Converts the given amount of nanoseconds into milliseconds, negative values are kept as -1
+    */
+   private static float toMillis(long nanos)
+   {
+      return nanos < 0 ? -1f : (float)(nanos / NANOS_PER_MILLI);
+   }
+
+   /**
+    * @return The min value of the time spent for one call in milliseconds
     */
    public long getMin()
    {
       long lmin = min.get();
       if (lmin == Long.MAX_VALUE)
       {
-         lmin = -1;
+         return -1;
       }
-      return lmin;
+      return lmin / 1000000;
    }
 
    /**
-    * @return The max value of the time spent for one call
+    * @return The max value of the time spent for one call in milliseconds
     */
    public long getMax()
    {
-      return max.get();
+      long lmax = max.get();
+      return lmax < 0 ? lmax : lmax / 1000000;
    }
 
    /**
-    * @return The total time spent for all the calls
+    * @return The total time spent for all the calls in milliseconds
     */
    public long getTotal()
    {
-      return total.get();
+      return total.get() / 1000000;
    }
 
    /**
@@ -216,15 +269,25 @@ public class Statistics
    }
 
    /**
-    * @return The average time spent for one call
+    * @return The average time spent for one call in milliseconds
     */
    public float getAvg()
    {
       long ltotal = total.get();
       long ltimes = times.get();
-      float favg = ltimes == 0 ? 0f : (float)ltotal / ltimes;      
+      float favg = ltimes == 0 ? 0f : (float)(ltotal / NANOS_PER_MILLI / ltimes);      
       return favg;
    }
+
+   /**
+    * @param percentile the expected percentile between 0 and 100
+    * @return The time in milliseconds below which the given percentage of the calls have been done
+    * since the last reset, -1 if there is no call
+    */
+   public float getPercentile(double percentile)
+   {
+      return toMillis(LatencyHistogram.getValueAtPercentile(histogram.snapshot(), percentile));
+   }
    
    /**
     * Reset the statistics
@@ -235,5 +298,36 @@ public class Statistics
       max.set(0);
       total.set(0);
       times.set(0);
+      histogram.reset();
+      synchronized (this)
+      {
+         lastPrintedSnapshot = null;
+      }
+   }
+
+   /**
+    * A stack of timestamps that does not allocate anything once its capacity has been reached
+    */
+   private static class TimeStack
+   {
+      private long[] values = new long[8];
+
+      private int size;
+
+      void push(long value)
+      {
+         if (size == values.length)
+         {
+            long[] newValues = new long[size * 2];
+            System.arraycopy(values, 0, newValues, 0, size);
+            values = newValues;
+         }
+         values[size++] = value;
+      }
+
+      long pop()
+      {
+         return values[--size];
+      }
    }
 }
\ No newline at end of file
@@ -173,6 +173,13 @@ public abstract class ValueStoragePlugin
    {
    }
 
+   /**
+    * Releases the resources of this plug-in. Used at stop time.
+    */
+   public void close()
+   {
+   }
+
    /**
     * Return true if this storage has same <code>storageId</code>.
     * 
@@ -27,6 +27,8 @@ import org.exoplatform.services.jcr.core.CredentialsImpl;
 import org.exoplatform.services.jcr.core.ExtendedNode;
 import org.exoplatform.services.jcr.impl.core.NodeImpl;
 import org.exoplatform.services.jcr.impl.core.SessionImpl;
+import org.exoplatform.services.jcr.impl.core.WorkspaceImpl;
+import org.exoplatform.services.jcr.impl.xml.importing.ContentImporter;
 import org.exoplatform.services.jcr.util.VersionHistoryImporter;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
@@ -45,6 +47,7 @@ import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 
 import javax.jcr.Credentials;
@@ -2913,4 +2916,63 @@ public class TestImport extends AbstractImportTest
          // Expected
       }
    }
+
+   public void testBatchedWorkspaceImport() throws Exception
+   {
+      Node source = root.addNode("batchSource");
+      for (int i = 0; i < 10; i++)
+      {
+         Node child = source.addNode("child-" + i);
+         child.setProperty("value", i);
+         child.addNode("item").setProperty("value", "first");
+         child.addNode("item").setProperty("value", "second");
+      }
+      for (int i = 0; i < 3; i++)
+      {
+         source.addNode("sns").setProperty("value", i);
+      }
+      session.save();
+
+      for (boolean docView : new boolean[]{false, true})
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         if (docView)
+         {
+            session.exportDocumentView(source.getPath(), out, false, false);
+         }
+         else
+         {
+            session.exportSystemView(source.getPath(), out, false, false);
+         }
+         Node target = root.addNode(docView ? "batchTargetDocView" : "batchTargetSysView");
+         session.save();
+
+         Map<String, Object> context = new HashMap<String, Object>();
+         context.put(ContentImporter.RESPECT_PROPERTY_DEFINITIONS_CONSTRAINTS, true);
+         context.put(ContentImporter.IMPORT_BATCH_SIZE, 5);
+         ((WorkspaceImpl)session.getWorkspace()).importXML(target.getPath(),
+            new ByteArrayInputStream(out.toByteArray()), ImportUUIDBehavior.IMPORT_UUID_CREATE_NEW, context);
+
+         assertNotNull(context.get(ContentImporter.IMPORT_SAVED_ITEMS));
+
+         Node imported = target.getNode("batchSource");
+         NodeIterator sourceChildren = source.getNodes();
+         NodeIterator importedChildren = imported.getNodes();
+         assertEquals(sourceChildren.getSize(), importedChildren.getSize());
+         while (sourceChildren.hasNext())
+         {
+            Node sourceChild = sourceChildren.nextNode();
+            Node importedChild = importedChildren.nextNode();
+            assertEquals(sourceChild.getName(), importedChild.getName());
+            assertEquals(sourceChild.getIndex(), importedChild.getIndex());
+            assertEquals(sourceChild.getProperty("value").getString(), importedChild.getProperty("value")
+               .getString());
+            if (sourceChild.hasNode("item[2]"))
+            {
+               assertEquals("first", importedChild.getNode("item").getProperty("value").getString());
+               assertEquals("second", importedChild.getNode("item[2]").getProperty("value").getString());
+            }
+         }
+      }
+   }
 }
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.access;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.access.AccessControlEntry;
+import org.exoplatform.services.jcr.access.AccessControlList;
+import org.exoplatform.services.jcr.access.AccessManager;
+import org.exoplatform.services.jcr.access.PermissionType;
+import org.exoplatform.services.jcr.impl.core.access.DefaultAccessManagerImpl;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityConstants;
+import org.exoplatform.services.security.MembershipEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Checks that the permissions checked by the {@link AccessManager} against the compiled form of the
+ * access control lists are the same as the ones found with a scan of the entries.
+ *
+ * @version $Id$
+ */
+public class TestCompiledAccessControlList extends TestCase
+{
+   private static final String[] IDENTITIES =
+      {IdentityConstants.ANY, "john", "mary", "*:/platform/users", "manager:/platform/administrators",
+         "*:/organization/management"};
+
+   private static final String[][] PERMISSIONS =
+      {{}, {PermissionType.READ}, {PermissionType.ADD_NODE}, {PermissionType.SET_PROPERTY},
+         {PermissionType.REMOVE}, {PermissionType.READ, PermissionType.READ}, PermissionType.ALL,
+         {PermissionType.ADD_NODE, PermissionType.SET_PROPERTY, PermissionType.REMOVE}};
+
+   private AccessManager accessManager;
+
+   private Identity[] users;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      accessManager = new DefaultAccessManagerImpl(null, null);
+      users =
+         new Identity[]{
+            new Identity(IdentityConstants.ANONIM),
+            new Identity("john"),
+            new Identity("mary", Arrays.asList(new MembershipEntry("/platform/users", "member"))),
+            new Identity("paul", Arrays.asList(new MembershipEntry("/platform/administrators", "manager"),
+               new MembershipEntry("/organization/management", "editor"))),
+            new Identity("peter", Arrays.asList(new MembershipEntry("/platform/administrators", "member")))};
+   }
+
+   public void testRandomLists() throws Exception
+   {
+      Random random = new Random(42);
+      for (int i = 0; i < 500; i++)
+      {
+         List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+         for (int j = random.nextInt(8); j > 0; j--)
+         {
+            entries.add(new AccessControlEntry(IDENTITIES[random.nextInt(IDENTITIES.length)],
+               PermissionType.ALL[random.nextInt(PermissionType.ALL.length)]));
+         }
+         checkAll(new AccessControlList(random.nextBoolean() ? "mary" : null, entries));
+      }
+   }
+
+   public void testModifiedList() throws Exception
+   {
+      AccessControlList acl = new AccessControlList(null, new ArrayList<AccessControlEntry>());
+      acl.addPermissions(IdentityConstants.ANY, new String[]{PermissionType.READ});
+      checkAll(acl);
+
+      acl.addPermissions("*:/platform/users", new String[]{PermissionType.ADD_NODE, PermissionType.REMOVE});
+      checkAll(acl);
+      assertTrue(accessManager.hasPermission(acl, new String[]{PermissionType.REMOVE}, users[2]));
+
+      acl.removePermissions("*:/platform/users", PermissionType.REMOVE);
+      checkAll(acl);
+      assertFalse(accessManager.hasPermission(acl, new String[]{PermissionType.REMOVE}, users[2]));
+
+      acl.addPermissions("mary " + PermissionType.REMOVE);
+      checkAll(acl);
+      assertTrue(accessManager.hasPermission(acl, new String[]{PermissionType.REMOVE}, users[2]));
+
+      acl.removePermissions("mary");
+      acl.removePermissions(IdentityConstants.ANY);
+      checkAll(acl);
+
+      // the list given to the constructor is modified directly
+      List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+      acl = new AccessControlList(null, entries);
+      checkAll(acl);
+      entries.add(new AccessControlEntry("john", PermissionType.READ));
+      checkAll(acl);
+      assertTrue(accessManager.hasPermission(acl, new String[]{PermissionType.READ}, users[1]));
+   }
+
+   public void testUnknownPermissions() throws Exception
+   {
+      List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+      entries.add(new AccessControlEntry(IdentityConstants.ANY, "custom"));
+      entries.add(new AccessControlEntry("john", "custom"));
+      entries.add(new AccessControlEntry("john", PermissionType.READ));
+      AccessControlList acl = new AccessControlList(null, entries);
+      for (Identity user : users)
+      {
+         for (String[] permission : new String[][]{{"custom"}, {"custom", PermissionType.READ}, {"other"},
+            {PermissionType.READ}})
+         {
+            assertEquals(hasPermission(acl, permission, user), accessManager.hasPermission(acl, permission, user));
+         }
+      }
+   }
+
+   private void checkAll(AccessControlList acl)
+   {
+      for (Identity user : users)
+      {
+         for (String[] permission : PERMISSIONS)
+         {
+            assertEquals(acl.dump() + " " + user.getUserId() + " " + Arrays.toString(permission),
+               hasPermission(acl, permission, user), accessManager.hasPermission(acl, permission, user));
+         }
+      }
+   }
+
+   /**
+    * The check of the permissions with a scan of the entries for each permission.
+    */
+   public static boolean hasPermission(AccessControlList acl, String[] permission, Identity user)
+   {
+      String userId = user.getUserId();
+      if (userId.equals(IdentityConstants.SYSTEM) || userId.equals(acl.getOwner()))
+      {
+         return true;
+      }
+      else if (userId.equals(IdentityConstants.ANONIM))
+      {
+         List<String> anyPermissions = acl.getPermissions(IdentityConstants.ANY);
+         if (anyPermissions.size() < permission.length)
+            return false;
+         for (int i = 0; i < permission.length; i++)
+         {
+            if (!anyPermissions.contains(permission[i]))
+               return false;
+         }
+         return true;
+      }
+      else if (acl.getPermissionsSize() > 0 && permission.length > 0)
+      {
+         List<AccessControlEntry> entries = acl.getPermissionEntries();
+         for (int i = 0; i < permission.length; i++)
+         {
+            boolean match = false;
+            for (AccessControlEntry ace : entries)
+            {
+               if (ace.getPermission().equals(permission[i])
+                  && (ace.getIdentity().equals(IdentityConstants.ANY)
+                     || (ace.getIdentity().indexOf(":") == -1 && ace.getIdentity().equals(userId)) || (ace
+                     .getIdentity().indexOf(":") != -1 && user.isMemberOf(ace.getMembershipEntry()))))
+               {
+                  match = true;
+                  break;
+               }
+            }
+            if (!match)
+               return false;
+         }
+         return true;
+      }
+      return false;
+   }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.backup.rdbms;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * @version $Id$
+ */
+public class TestDBBackup extends TestCase
+{
+   public void testEntryNames()
+   {
+      assertEquals("JCR_SVALUE", DBBackup.getEntryName("JCR_SVALUE", 0));
+      assertEquals("JCR_SVALUE#3", DBBackup.getEntryName("JCR_SVALUE", 3));
+
+      assertTrue(DBBackup.isTableEntry("JCR_SVALUE", "JCR_SVALUE"));
+      assertTrue(DBBackup.isTableEntry("JCR_SVALUE#3", "JCR_SVALUE"));
+      assertFalse(DBBackup.isTableEntry("JCR_SVALUE", "JCR_SVAL"));
+      assertFalse(DBBackup.isTableEntry("JCR_SVALUE#3", "JCR_SVAL"));
+      assertFalse(DBBackup.isTableEntry("JCR_SITEM", "JCR_SVALUE"));
+
+      assertEquals(DBBackup.CONTENT_ZIP_FILE, DBBackup.getContentZipFile(0));
+      assertEquals(DBBackup.CONTENT_LEN_ZIP_FILE, DBBackup.getContentLenZipFile(0));
+      assertFalse(DBBackup.getContentZipFile(1).equals(DBBackup.getContentLenZipFile(1)));
+   }
+
+   public void testPartitionScripts() throws Exception
+   {
+      List<String> scripts =
+         DBBackup.getPartitionScripts(connection(1, 35), "JCR_MVALUE", "select * from JCR_MVALUE", "ID", 10);
+      assertEquals(4, scripts.size());
+      assertEquals("select * from JCR_MVALUE where ID < 11", scripts.get(0));
+      assertEquals("select * from JCR_MVALUE where ID < 21 and ID >= 11", scripts.get(1));
+      assertEquals("select * from JCR_MVALUE where ID < 31 and ID >= 21", scripts.get(2));
+      assertEquals("select * from JCR_MVALUE where ID >= 31", scripts.get(3));
+
+      scripts =
+         DBBackup.getPartitionScripts(connection(2, 11), "JCR_SVALUE",
+            "select V.* from JCR_SVALUE V, JCR_SITEM I where I.ID=V.PROPERTY_ID", "V.ID", 10);
+      assertEquals(1, scripts.size());
+      assertEquals("select V.* from JCR_SVALUE V, JCR_SITEM I where I.ID=V.PROPERTY_ID", scripts.get(0));
+
+      scripts =
+         DBBackup.getPartitionScripts(connection(2, 12), "JCR_SVALUE",
+            "select V.* from JCR_SVALUE V, JCR_SITEM I where I.ID=V.PROPERTY_ID", "V.ID", 10);
+      assertEquals(2, scripts.size());
+      assertEquals("select V.* from JCR_SVALUE V, JCR_SITEM I where I.ID=V.PROPERTY_ID and V.ID < 12",
+         scripts.get(0));
+      assertEquals("select V.* from JCR_SVALUE V, JCR_SITEM I where I.ID=V.PROPERTY_ID and V.ID >= 12",
+         scripts.get(1));
+
+      scripts = DBBackup.getPartitionScripts(null, "JCR_MVALUE", "select * from JCR_MVALUE", "ID", 0);
+      assertEquals(1, scripts.size());
+   }
+
+   /**
+    * Returns a connection whose queries return a single row with the given values.
+    */
+   private Connection connection(final long min, final long max)
+   {
+      final ResultSet rs = (ResultSet)proxy(ResultSet.class, new InvocationHandler()
+      {
+         private boolean read;
+
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            if (method.getName().equals("next"))
+            {
+               boolean result = !read;
+               read = true;
+               return result;
+            }
+            else if (method.getName().equals("getLong"))
+            {
+               return ((Integer)args[0]) == 1 ? min : max;
+            }
+            return null;
+         }
+      });
+      final Statement stmt = (Statement)proxy(Statement.class, new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            return method.getName().equals("executeQuery") ? rs : null;
+         }
+      });
+      return (Connection)proxy(Connection.class, new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            return method.getName().equals("createStatement") ? stmt : null;
+         }
+      });
+   }
+
+   private Object proxy(Class<?> type, InvocationHandler handler)
+   {
+      return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, handler);
+   }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.backup.rdbms;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.config.ContainerEntry;
+import org.exoplatform.services.jcr.config.SimpleParameterEntry;
+import org.exoplatform.services.jcr.config.WorkspaceEntry;
+import org.exoplatform.services.jcr.impl.backup.BackupException;
+import org.exoplatform.services.jcr.impl.storage.jdbc.JDBCWorkspaceDataContainer;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * @version $Id$
+ */
+public class TestDBRestore extends TestCase
+{
+   private File storageDir;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      storageDir = File.createTempFile("dbrestore", "");
+      storageDir.delete();
+      storageDir.mkdirs();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      for (File file : storageDir.listFiles())
+      {
+         file.delete();
+      }
+      storageDir.delete();
+   }
+
+   public void testCorruptedDump() throws Exception
+   {
+      // the name of the only column has a negative length
+      DataOutputStream content = newEntry(DBBackup.getContentZipFile(0), "JCR_SITEM");
+      content.writeInt(1);
+      content.writeInt(12);
+      content.writeInt(-1);
+      content.close();
+      newEntry(DBBackup.getContentLenZipFile(0), "JCR_SITEM").close();
+
+      TableTransformationRule rule = new TableTransformationRule();
+      rule.setSrcTableName("JCR_SITEM");
+      Map<String, TableTransformationRule> tables = new HashMap<String, TableTransformationRule>();
+      tables.put("JCR_SITEM", rule);
+      final DBRestore restore = new DBRestore(storageDir, connection(), tables, workspaceEntry(), null, null);
+
+      final Throwable[] failure = new Throwable[1];
+      Thread restorer = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               restore.restore();
+            }
+            catch (Throwable e)
+            {
+               failure[0] = e;
+            }
+         }
+      };
+      restorer.start();
+      restorer.join(10000);
+
+      // the restore must stop instead of waiting forever for the records of the dump
+      assertFalse("The restore should have stopped", restorer.isAlive());
+      assertTrue(failure[0] instanceof BackupException);
+      assertTrue(failure[0].getCause() instanceof IOException);
+      assertTrue(failure[0].getCause().getCause() instanceof NegativeArraySizeException);
+   }
+
+   private DataOutputStream newEntry(String fileName, String entryName) throws IOException
+   {
+      ZipOutputStream out = new ZipOutputStream(new FileOutputStream(new File(storageDir, fileName)));
+      out.putNextEntry(new ZipEntry(entryName));
+      return new DataOutputStream(out);
+   }
+
+   private WorkspaceEntry workspaceEntry()
+   {
+      List<SimpleParameterEntry> params = new ArrayList<SimpleParameterEntry>();
+      params.add(new SimpleParameterEntry(JDBCWorkspaceDataContainer.DB_STRUCTURE_TYPE, "single"));
+      WorkspaceEntry wsConfig = new WorkspaceEntry();
+      wsConfig.setName("ws");
+      wsConfig.setContainer(new ContainerEntry(JDBCWorkspaceDataContainer.class.getName(), params));
+      return wsConfig;
+   }
+
+   /**
+    * Returns a connection to an HSQL database which executes nothing.
+    */
+   private Connection connection()
+   {
+      final DatabaseMetaData metaData = (DatabaseMetaData)proxy(DatabaseMetaData.class, new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            return method.getName().equals("getDatabaseProductName") ? "HSQL Database Engine" : defaultValue(method);
+         }
+      });
+      return (Connection)proxy(Connection.class, new InvocationHandler()
+      {
+         public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+         {
+            return method.getName().equals("getMetaData") ? metaData : defaultValue(method);
+         }
+      });
+   }
+
+   private static Object defaultValue(Method method)
+   {
+      Class<?> type = method.getReturnType();
+      if (type == boolean.class)
+      {
+         return false;
+      }
+      else if (type == int.class)
+      {
+         return 0;
+      }
+      else if (type == long.class)
+      {
+         return 0L;
+      }
+      return null;
+   }
+
+   private Object proxy(Class<?> type, InvocationHandler handler)
+   {
+      return Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type}, handler);
+   }
+}
@@ -207,4 +207,50 @@ public class TestLockImpl extends JcrImplBaseTest
       assertTrue(lockManager.lockExist(node.getUUID()));
    }
 
+   public void testDeepLocksIndex() throws Exception
+   {
+      Node a = root.addNode("testDeepLocksIndex");
+      a.addMixin("mix:lockable");
+      Node b = a.addNode("b");
+      b.addMixin("mix:lockable");
+      Node c = b.addNode("c");
+      root.save();
+
+      AbstractCacheableLockManager lockManager =
+         (AbstractCacheableLockManager)repository.getWorkspaceContainer("ws").getComponent(
+            AbstractCacheableLockManager.class);
+      // the deep locks are not indexed if the lock cache is distributed
+      boolean indexed = lockManager.getNumDeepLocks() >= 0;
+
+      // a lock which is not deep doesn't apply to the descendants
+      a.lock(false, false);
+      long fastLockChecks = lockManager.getFastLockChecks();
+      assertFalse(c.isLocked());
+      if (indexed)
+      {
+         assertEquals(0, lockManager.getNumDeepLocks());
+         assertTrue(lockManager.getFastLockChecks() > fastLockChecks);
+      }
+      a.unlock();
+
+      b.lock(true, false);
+      if (indexed)
+      {
+         assertEquals(1, lockManager.getNumDeepLocks());
+      }
+      assertTrue(c.isLocked());
+      assertFalse(a.isLocked());
+
+      // the lock follows the node when it is moved
+      session.move(b.getPath(), "/testDeepLocksIndexMoved");
+      session.save();
+      assertTrue(root.getNode("testDeepLocksIndexMoved/c").isLocked());
+
+      root.getNode("testDeepLocksIndexMoved").unlock();
+      if (indexed)
+      {
+         assertEquals(0, lockManager.getNumDeepLocks());
+      }
+      assertFalse(root.getNode("testDeepLocksIndexMoved/c").isLocked());
+   }
 }
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.observation;
+
+import org.exoplatform.services.jcr.access.AccessControlList;
+import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.ItemData;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.impl.Constants;
+import org.exoplatform.services.jcr.impl.core.LocationFactory;
+import org.exoplatform.services.jcr.impl.core.NamespaceRegistryImpl;
+import org.exoplatform.services.jcr.impl.dataflow.TransientNodeData;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventListener;
+
+/**
+ * Compares the time needed to find the listeners interested in the items of a big import when the
+ * criteria of all the listeners are evaluated for each item, as done by {@link ActionLauncher} before,
+ * and when the listeners are selected thanks to the {@link ListenerDispatchIndex}.
+ * This benchmark is not part of the test suite, it has to be launched manually.
+ *
+ * @version $Id$
+ */
+public class ListenerDispatchBenchmark
+{
+   private static final int ITEMS = 50000;
+
+   private static final int ITERATIONS = 5;
+
+   public static void main(String[] args) throws Exception
+   {
+      LocationFactory locationFactory = new LocationFactory(new NamespaceRegistryImpl());
+
+      // The imported items: /import/folderX/nodeY
+      List<ItemData> items = new ArrayList<ItemData>(ITEMS);
+      for (int i = 0; i < ITEMS; i++)
+      {
+         QPath path = locationFactory.parseAbsPath("/import/folder" + (i % 100) + "/node" + i).getInternalPath();
+         items.add(new TransientNodeData(path, "node" + i, 0, Constants.NT_UNSTRUCTURED, new InternalQName[0], 0,
+            "folder" + (i % 100), new AccessControlList()));
+      }
+
+      for (int size : new int[]{10, 100, 500, 1000})
+      {
+         // The listeners are spread over the portal sites, only a few of them are interested in the import
+         Map<EventListener, ListenerCriteria> listeners = new LinkedHashMap<EventListener, ListenerCriteria>();
+         for (int i = 0; i < size; i++)
+         {
+            String absPath = i % 50 == 0 ? "/import" : "/sites/site" + i + "/content";
+            String[] ids = i % 7 == 0 ? new String[]{"id" + i} : null;
+            listeners.put(TestListenerDispatchIndex.createListener(), new ListenerCriteria(Event.NODE_ADDED
+               | Event.PROPERTY_ADDED, ids == null ? absPath : null, true, ids, null, false, "session",
+               locationFactory));
+         }
+
+         // Warm up
+         sequential(listeners, items, locationFactory);
+         indexed(listeners, items);
+
+         System.out.println("########################################");
+         long time = 0;
+         int matches = 0;
+         for (int i = 0; i < ITERATIONS; i++)
+         {
+            long start = System.currentTimeMillis();
+            matches = sequential(listeners, items, locationFactory);
+            time += System.currentTimeMillis() - start;
+         }
+         System.out.println("Sequential, listeners " + size + ": avg = " + (time / ITERATIONS) + " ms, matches = "
+            + matches);
+         time = 0;
+         for (int i = 0; i < ITERATIONS; i++)
+         {
+            long start = System.currentTimeMillis();
+            matches = indexed(listeners, items);
+            time += System.currentTimeMillis() - start;
+         }
+         System.out.println("Indexed, listeners " + size + ": avg = " + (time / ITERATIONS) + " ms, matches = "
+            + matches);
+      }
+   }
+
+   /**
+    * Evaluates the criteria of each listener for each item, the absPath being parsed each time
+    */
+   private static int sequential(Map<EventListener, ListenerCriteria> listeners, List<ItemData> items,
+      LocationFactory locationFactory) throws Exception
+   {
+      int matches = 0;
+      for (ListenerCriteria criteria : listeners.values())
+      {
+         for (int i = 0, length = items.size(); i < length; i++)
+         {
+            ItemData item = items.get(i);
+            if ((criteria.getEventTypes() & Event.NODE_ADDED) == 0)
+            {
+               continue;
+            }
+            if (criteria.getAbsPath() != null
+               && !item.getQPath().isDescendantOf(locationFactory.parseAbsPath(criteria.getAbsPath()).getInternalPath(),
+                  !criteria.isDeep()))
+            {
+               continue;
+            }
+            if (criteria.getIdentifier() != null && !criteria.getIdentifier()[0].equals(item.getIdentifier()))
+            {
+               continue;
+            }
+            matches++;
+         }
+      }
+      return matches;
+   }
+
+   /**
+    * Builds the index and gets the candidates of each item from it
+    */
+   private static int indexed(Map<EventListener, ListenerCriteria> listeners, List<ItemData> items)
+   {
+      int matches = 0;
+      ListenerDispatchIndex index = new ListenerDispatchIndex(listeners);
+      List<ListenerDispatchIndex.Entry> candidates = new ArrayList<ListenerDispatchIndex.Entry>();
+      for (int i = 0, length = items.size(); i < length; i++)
+      {
+         candidates.clear();
+         index.collect(items.get(i), Event.NODE_ADDED, candidates);
+         matches += candidates.size();
+      }
+      return matches;
+   }
+}
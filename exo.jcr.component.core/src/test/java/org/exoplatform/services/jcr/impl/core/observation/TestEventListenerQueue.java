@@ -0,0 +1,379 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.observation;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.observation.ExtendedEvent;
+import org.exoplatform.services.security.ConversationState;
+import org.exoplatform.services.security.Identity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.jcr.RepositoryException;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+/**
+ * @version $Id$
+ */
+public class TestEventListenerQueue extends TestCase
+{
+   /**
+    * Executor whose tasks are launched manually
+    */
+   private static class ManualExecutor implements Executor
+   {
+      private final LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+      public void execute(Runnable command)
+      {
+         tasks.add(command);
+      }
+
+      void runAll()
+      {
+         while (!tasks.isEmpty())
+         {
+            tasks.removeFirst().run();
+         }
+      }
+   }
+
+   /**
+    * Listener keeping the paths of the events of each call
+    */
+   private static class RecordingListener implements EventListener
+   {
+      private final List<List<String>> calls = new ArrayList<List<String>>();
+
+      public void onEvent(EventIterator events)
+      {
+         List<String> paths = new ArrayList<String>();
+         while (events.hasNext())
+         {
+            try
+            {
+               paths.add(events.nextEvent().getPath());
+            }
+            catch (RepositoryException e)
+            {
+               fail(e.getMessage());
+            }
+         }
+         calls.add(paths);
+      }
+   }
+
+   public void testCoalescing() throws Exception
+   {
+      ManualExecutor executor = new ManualExecutor();
+      RecordingListener listener = new RecordingListener();
+      EventListenerQueue queue =
+         new EventListenerQueue(listener, executor, 10, EventListenerQueue.OverflowPolicy.BLOCK);
+      queue.offer(events("/a", "/b"));
+      queue.offer(events("/c"));
+      assertEquals(3, queue.getBacklog());
+      executor.runAll();
+
+      assertEquals(1, listener.calls.size());
+      assertEquals(3, listener.calls.get(0).size());
+      assertEquals("/c", listener.calls.get(0).get(2));
+      assertEquals(0, queue.getBacklog());
+      assertEquals(3, queue.getDeliveredEvents());
+      assertEquals(1, queue.getDeliveries());
+      assertEquals(3, queue.getMaxBacklog());
+   }
+
+   public void testDropOldest() throws Exception
+   {
+      ManualExecutor executor = new ManualExecutor();
+      RecordingListener listener = new RecordingListener();
+      EventListenerQueue queue =
+         new EventListenerQueue(listener, executor, 3, EventListenerQueue.OverflowPolicy.DROP_OLDEST);
+      queue.offer(events("/a", "/b"));
+      queue.offer(events("/c"));
+      queue.offer(events("/d", "/e"));
+      executor.runAll();
+
+      assertEquals(1, listener.calls.size());
+      List<String> paths = listener.calls.get(0);
+      assertEquals(3, paths.size());
+      assertEquals("/c", paths.get(0));
+      assertEquals("/e", paths.get(2));
+      assertEquals(2, queue.getDroppedEvents());
+   }
+
+   public void testSpill() throws Exception
+   {
+      ManualExecutor executor = new ManualExecutor();
+      RecordingListener listener = new RecordingListener();
+      EventListenerQueue queue =
+         new EventListenerQueue(listener, executor, 2, EventListenerQueue.OverflowPolicy.SPILL);
+      queue.offer(events("/a", "/b"));
+      queue.offer(events("/c"));
+      queue.offer(events("/d"));
+      Map<String, String> info = new HashMap<String, String>();
+      info.put(ExtendedEvent.SRC_ABS_PATH, "/f");
+      info.put(ExtendedEvent.DEST_ABS_PATH, "/g");
+      List<Event> moved = new ArrayList<Event>();
+      moved.add(new EventImpl(ExtendedEvent.NODE_MOVED, "/g", null, info));
+      queue.offer(moved);
+      assertEquals(3, queue.getSpilledEvents());
+      assertEquals(5, queue.getBacklog());
+      executor.runAll();
+
+      assertEquals(3, listener.calls.size());
+      assertEquals("/a", listener.calls.get(0).get(0));
+      assertEquals(2, listener.calls.get(1).size());
+      assertEquals("/c", listener.calls.get(1).get(0));
+      assertEquals("/d", listener.calls.get(1).get(1));
+      assertEquals("/g", listener.calls.get(2).get(0));
+      assertEquals(0, queue.getBacklog());
+      assertEquals(5, queue.getDeliveredEvents());
+      queue.close();
+   }
+
+   public void testSpilledEventContent() throws Exception
+   {
+      ManualExecutor executor = new ManualExecutor();
+      final List<Event> received = new ArrayList<Event>();
+      EventListenerQueue queue = new EventListenerQueue(new EventListener()
+      {
+         public void onEvent(EventIterator events)
+         {
+            while (events.hasNext())
+            {
+               received.add(events.nextEvent());
+            }
+         }
+      }, executor, 1, EventListenerQueue.OverflowPolicy.SPILL);
+      queue.offer(events("/a"));
+      Map<String, String> info = new HashMap<String, String>();
+      info.put(ExtendedEvent.SRC_ABS_PATH, "/f");
+      info.put(ExtendedEvent.DEST_ABS_PATH, "/g");
+      List<Event> moved = new ArrayList<Event>();
+      moved.add(new EventImpl(ExtendedEvent.NODE_MOVED, "/g", "john", info));
+      queue.offer(moved);
+      executor.runAll();
+
+      assertEquals(2, received.size());
+      ExtendedEvent event = (ExtendedEvent)received.get(1);
+      assertEquals(ExtendedEvent.NODE_MOVED, event.getType());
+      assertEquals("/g", event.getPath());
+      assertEquals("john", event.getUserID());
+      assertEquals(info, event.getInfo());
+      assertNull(((ExtendedEvent)received.get(0)).getInfo());
+      assertNull(received.get(0).getUserID());
+   }
+
+   public void testBlock() throws Exception
+   {
+      ExecutorService executor = Executors.newSingleThreadExecutor();
+      try
+      {
+         final CountDownLatch started = new CountDownLatch(1);
+         final CountDownLatch release = new CountDownLatch(1);
+         final RecordingListener recorder = new RecordingListener();
+         final EventListenerQueue queue = new EventListenerQueue(new EventListener()
+         {
+            public void onEvent(EventIterator events)
+            {
+               started.countDown();
+               try
+               {
+                  release.await();
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               recorder.onEvent(events);
+            }
+         }, executor, 1, EventListenerQueue.OverflowPolicy.BLOCK);
+         queue.offer(events("/a"));
+         assertTrue(started.await(10, TimeUnit.SECONDS));
+         // The queue is empty again, the next batch is accepted
+         queue.offer(events("/b"));
+
+         final CountDownLatch offered = new CountDownLatch(1);
+         Thread writer = new Thread()
+         {
+            public void run()
+            {
+               queue.offer(events("/c"));
+               offered.countDown();
+            }
+         };
+         writer.start();
+         assertFalse("The writer should be blocked", offered.await(200, TimeUnit.MILLISECONDS));
+         release.countDown();
+         assertTrue(offered.await(10, TimeUnit.SECONDS));
+         writer.join();
+
+         for (int i = 0; i < 100 && queue.getDeliveredEvents() < 3; i++)
+         {
+            Thread.sleep(100);
+         }
+         assertEquals(3, queue.getDeliveredEvents());
+         assertEquals(3, recorder.calls.size());
+         assertEquals(0, queue.getDroppedEvents());
+      }
+      finally
+      {
+         executor.shutdownNow();
+      }
+   }
+
+   public void testDeliveryContext() throws Exception
+   {
+      ManualExecutor executor = new ManualExecutor();
+      final List<ConversationState> states = new ArrayList<ConversationState>();
+      RecordingListener listener = new RecordingListener()
+      {
+         @Override
+         public void onEvent(EventIterator events)
+         {
+            states.add(ConversationState.getCurrent());
+            super.onEvent(events);
+         }
+      };
+      EventListenerQueue queue =
+         new EventListenerQueue(listener, executor, 10, EventListenerQueue.OverflowPolicy.BLOCK);
+      ConversationState john = new ConversationState(new Identity("john"));
+      ConversationState mary = new ConversationState(new Identity("mary"));
+      try
+      {
+         ConversationState.setCurrent(john);
+         queue.offer(events("/a"));
+         queue.offer(events("/b"));
+         ConversationState.setCurrent(mary);
+         queue.offer(events("/c"));
+      }
+      finally
+      {
+         ConversationState.setCurrent(null);
+      }
+      executor.runAll();
+
+      // Only the events queued within the same context are coalesced
+      assertEquals(2, listener.calls.size());
+      assertEquals(2, listener.calls.get(0).size());
+      assertSame(john, states.get(0));
+      assertEquals("/c", listener.calls.get(1).get(0));
+      assertSame(mary, states.get(1));
+      assertNull(ConversationState.getCurrent());
+      queue.close();
+   }
+
+   public void testCloseRejectsBlockedWriter() throws Exception
+   {
+      ManualExecutor executor = new ManualExecutor();
+      final RecordingListener listener = new RecordingListener();
+      final EventListenerQueue queue =
+         new EventListenerQueue(listener, executor, 1, EventListenerQueue.OverflowPolicy.BLOCK);
+      queue.offer(events("/a"));
+
+      final CountDownLatch offered = new CountDownLatch(1);
+      Thread writer = new Thread()
+      {
+         public void run()
+         {
+            queue.offer(events("/b"));
+            offered.countDown();
+         }
+      };
+      writer.start();
+      assertFalse("The writer should be blocked", offered.await(200, TimeUnit.MILLISECONDS));
+      queue.close();
+      assertTrue(offered.await(10, TimeUnit.SECONDS));
+      writer.join();
+
+      // The events offered after the close are rejected
+      queue.offer(events("/c"));
+      assertEquals(0, queue.getBacklog());
+      executor.runAll();
+      assertTrue(listener.calls.isEmpty());
+   }
+
+   public void testSpilledDeliveryContext() throws Exception
+   {
+      ManualExecutor executor = new ManualExecutor();
+      final List<ConversationState> states = new ArrayList<ConversationState>();
+      RecordingListener listener = new RecordingListener()
+      {
+         @Override
+         public void onEvent(EventIterator events)
+         {
+            states.add(ConversationState.getCurrent());
+            super.onEvent(events);
+         }
+      };
+      EventListenerQueue queue =
+         new EventListenerQueue(listener, executor, 1, EventListenerQueue.OverflowPolicy.SPILL);
+      ConversationState john = new ConversationState(new Identity("john"));
+      ConversationState mary = new ConversationState(new Identity("mary"));
+      try
+      {
+         ConversationState.setCurrent(john);
+         queue.offer(events("/a"));
+         queue.offer(events("/b"));
+         ConversationState.setCurrent(mary);
+         queue.offer(events("/c"));
+         ConversationState.setCurrent(john);
+         queue.offer(events("/d"));
+      }
+      finally
+      {
+         ConversationState.setCurrent(null);
+      }
+      assertEquals(3, queue.getSpilledEvents());
+      executor.runAll();
+
+      assertEquals(4, listener.calls.size());
+      assertSame(john, states.get(0));
+      assertEquals("/b", listener.calls.get(1).get(0));
+      assertSame(john, states.get(1));
+      assertEquals("/c", listener.calls.get(2).get(0));
+      assertSame(mary, states.get(2));
+      assertEquals("/d", listener.calls.get(3).get(0));
+      assertSame(john, states.get(3));
+      queue.close();
+   }
+
+   private static List<Event> events(String... paths)
+   {
+      List<Event> events = new ArrayList<Event>();
+      for (String path : paths)
+      {
+         events.add(new EventImpl(Event.NODE_ADDED, path, null));
+      }
+      return events;
+   }
+}
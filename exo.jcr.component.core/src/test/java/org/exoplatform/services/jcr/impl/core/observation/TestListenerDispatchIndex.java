@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.observation;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.access.AccessControlList;
+import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.ItemData;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.impl.Constants;
+import org.exoplatform.services.jcr.impl.core.LocationFactory;
+import org.exoplatform.services.jcr.impl.core.NamespaceRegistryImpl;
+import org.exoplatform.services.jcr.impl.dataflow.TransientNodeData;
+import org.exoplatform.services.jcr.impl.dataflow.TransientPropertyData;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import javax.jcr.PropertyType;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
+
+/**
+ * Checks that the {@link ListenerDispatchIndex} selects exactly the same listeners as a
+ * sequential evaluation of the criteria of all the listeners.
+ *
+ * @version $Id$
+ */
+public class TestListenerDispatchIndex extends TestCase
+{
+   private static final int[] EVENT_TYPES = {Event.NODE_ADDED, Event.NODE_REMOVED, Event.PROPERTY_ADDED,
+      Event.PROPERTY_REMOVED, Event.PROPERTY_CHANGED};
+
+   private static final String[] PATHS = {"/", "/a", "/a/b", "/a/b/c", "/a/c", "/b", "/b/a", "/a/b/c/d"};
+
+   private LocationFactory locationFactory;
+
+   @Override
+   public void setUp() throws Exception
+   {
+      locationFactory = new LocationFactory(new NamespaceRegistryImpl());
+   }
+
+   public void testPathMatch() throws Exception
+   {
+      Map<EventListener, ListenerCriteria> listeners = new LinkedHashMap<EventListener, ListenerCriteria>();
+      EventListener deep = createListener();
+      listeners.put(deep, createCriteria(Event.NODE_ADDED, "/a", true, null));
+      EventListener shallow = createListener();
+      listeners.put(shallow, createCriteria(Event.NODE_ADDED, "/a", false, null));
+      EventListener root = createListener();
+      listeners.put(root, createCriteria(Event.NODE_ADDED, "/", false, null));
+      ListenerDispatchIndex index = new ListenerDispatchIndex(listeners);
+
+      assertEquals(set(root), collect(index, node("/a", "a", "root"), Event.NODE_ADDED));
+      assertEquals(set(root), collect(index, node("/b", "b", "root"), Event.NODE_ADDED));
+      assertEquals(set(deep, shallow), collect(index, node("/a/b", "b", "a"), Event.NODE_ADDED));
+      assertEquals(set(deep), collect(index, node("/a/b/c", "c", "b"), Event.NODE_ADDED));
+      assertEquals(set(), collect(index, node("/b/c", "c", "b"), Event.NODE_ADDED));
+      assertEquals(set(), collect(index, node("/a/b", "b", "a"), Event.NODE_REMOVED));
+      assertFalse(index.accept(Event.NODE_REMOVED));
+   }
+
+   public void testIdentifierMatch() throws Exception
+   {
+      Map<EventListener, ListenerCriteria> listeners = new LinkedHashMap<EventListener, ListenerCriteria>();
+      EventListener byId = createListener();
+      listeners.put(byId, createCriteria(Event.NODE_ADDED | Event.PROPERTY_ADDED, null, true, new String[]{"a", "b"}));
+      EventListener byPathAndId = createListener();
+      listeners.put(byPathAndId, createCriteria(Event.NODE_ADDED | Event.PROPERTY_ADDED, "/a", true,
+         new String[]{"c"}));
+      ListenerDispatchIndex index = new ListenerDispatchIndex(listeners);
+
+      assertEquals(set(byId), collect(index, node("/a", "a", "root"), Event.NODE_ADDED));
+      assertEquals(set(byId), collect(index, property("/b/p", "p", "b"), Event.PROPERTY_ADDED));
+      assertEquals(set(), collect(index, node("/c", "c", "root"), Event.NODE_ADDED));
+      assertEquals(set(byPathAndId), collect(index, node("/a/c", "c", "a"), Event.NODE_ADDED));
+      assertEquals(set(byPathAndId), collect(index, property("/a/c/p", "p", "c"), Event.PROPERTY_ADDED));
+   }
+
+   public void testUnresolvedCriteria() throws Exception
+   {
+      Map<EventListener, ListenerCriteria> listeners = new LinkedHashMap<EventListener, ListenerCriteria>();
+      EventListener unresolved = createListener();
+      listeners.put(unresolved, new ListenerCriteria(Event.NODE_ADDED, "/a", true, null, null, false, "session"));
+      EventListener invalid = createListener();
+      listeners.put(invalid, createCriteria(Event.NODE_ADDED, "/unknown:a", true, null));
+      ListenerDispatchIndex index = new ListenerDispatchIndex(listeners);
+
+      assertEquals(1, index.size());
+      assertEquals(1, index.getUnresolved().size());
+      assertSame(unresolved, index.getUnresolved().get(0).listener);
+      assertEquals(set(), collect(index, node("/a/b", "b", "a"), Event.NODE_ADDED));
+   }
+
+   public void testRandomCriteria() throws Exception
+   {
+      Random random = new Random(1);
+      Map<EventListener, ListenerCriteria> listeners = new LinkedHashMap<EventListener, ListenerCriteria>();
+      for (int i = 0; i < 200; i++)
+      {
+         int eventTypes = random.nextInt(1 << EVENT_TYPES.length);
+         String path = random.nextInt(4) == 0 ? null : PATHS[random.nextInt(PATHS.length)];
+         String[] ids = random.nextInt(3) == 0 ? new String[]{"id" + random.nextInt(10)} : null;
+         listeners.put(createListener(), createCriteria(eventTypes, path, random.nextBoolean(), ids));
+      }
+      ListenerDispatchIndex index = new ListenerDispatchIndex(listeners);
+      for (int i = 0; i < 1000; i++)
+      {
+         String path = PATHS[1 + random.nextInt(PATHS.length - 1)];
+         int eventType = EVENT_TYPES[random.nextInt(EVENT_TYPES.length)];
+         ItemData item =
+            random.nextBoolean() ? node(path, "id" + random.nextInt(10), "id" + random.nextInt(10)) : property(
+               path, "id" + random.nextInt(10), "id" + random.nextInt(10));
+         Set<EventListener> expected = new HashSet<EventListener>();
+         for (Map.Entry<EventListener, ListenerCriteria> e : listeners.entrySet())
+         {
+            if (isMatch(e.getValue(), item, eventType))
+            {
+               expected.add(e.getKey());
+            }
+         }
+         assertEquals("Wrong listeners for " + path, expected, collect(index, item, eventType));
+      }
+   }
+
+   /**
+    * The sequential evaluation of the criteria as done before the introduction of the index
+    */
+   private boolean isMatch(ListenerCriteria criteria, ItemData item, int eventType) throws Exception
+   {
+      if ((criteria.getEventTypes() & eventType) == 0)
+      {
+         return false;
+      }
+      if (criteria.getAbsPath() != null
+         && !item.getQPath().isDescendantOf(locationFactory.parseAbsPath(criteria.getAbsPath()).getInternalPath(),
+            !criteria.isDeep()))
+      {
+         return false;
+      }
+      if (criteria.getIdentifier() != null)
+      {
+         String id = item.isNode() ? item.getIdentifier() : item.getParentIdentifier();
+         for (String identifier : criteria.getIdentifier())
+         {
+            if (identifier.equals(id))
+            {
+               return true;
+            }
+         }
+         return false;
+      }
+      return true;
+   }
+
+   private Set<EventListener> collect(ListenerDispatchIndex index, ItemData item, int eventType)
+   {
+      List<ListenerDispatchIndex.Entry> entries = new ArrayList<ListenerDispatchIndex.Entry>();
+      index.collect(item, eventType, entries);
+      Set<EventListener> result = new HashSet<EventListener>();
+      for (ListenerDispatchIndex.Entry entry : entries)
+      {
+         assertTrue("The listener has been selected twice", result.add(entry.listener));
+      }
+      return result;
+   }
+
+   private Set<EventListener> set(EventListener... listeners)
+   {
+      Set<EventListener> result = new HashSet<EventListener>();
+      for (EventListener listener : listeners)
+      {
+         result.add(listener);
+      }
+      return result;
+   }
+
+   private ListenerCriteria createCriteria(int eventTypes, String absPath, boolean isDeep, String[] ids)
+      throws Exception
+   {
+      return new ListenerCriteria(eventTypes, absPath, isDeep, ids, null, false, "session", locationFactory);
+   }
+
+   private ItemData node(String path, String id, String parentId) throws Exception
+   {
+      QPath qPath = locationFactory.parseAbsPath(path).getInternalPath();
+      return new TransientNodeData(qPath, id, 0, Constants.NT_UNSTRUCTURED, new InternalQName[0], 0, parentId,
+         new AccessControlList());
+   }
+
+   private ItemData property(String path, String id, String parentId) throws Exception
+   {
+      QPath qPath = locationFactory.parseAbsPath(path).getInternalPath();
+      return new TransientPropertyData(qPath, id, 0, PropertyType.STRING, parentId, false);
+   }
+
+   static EventListener createListener()
+   {
+      return new EventListener()
+      {
+         public void onEvent(EventIterator events)
+         {
+         }
+      };
+   }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query;
+
+import org.exoplatform.services.rpc.RPCException;
+import org.exoplatform.services.rpc.RPCService;
+import org.exoplatform.services.rpc.RemoteCommand;
+import org.exoplatform.services.rpc.TopologyChangeListener;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A stand-in of the {@link RPCService} for a cluster made of the local node only. The commands are
+ * executed in the current JVM, the local node being the coordinator, but their arguments and their
+ * results are serialized as they would be on the network.
+ *
+ * @version $Id$
+ */
+public class LocalRPCService implements RPCService
+{
+   /**
+    * The registered commands.
+    */
+   private final Map<String, RemoteCommand> commands = new ConcurrentHashMap<String, RemoteCommand>();
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<Object> executeCommandOnAllNodes(RemoteCommand command, boolean synchronous, Serializable... args)
+      throws RPCException, SecurityException
+   {
+      List<Object> results = new ArrayList<Object>();
+      results.add(execute(command, args));
+      return results;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public List<Object> executeCommandOnAllNodes(RemoteCommand command, long timeout, Serializable... args)
+      throws RPCException, SecurityException
+   {
+      return executeCommandOnAllNodes(command, true, args);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Object executeCommandOnCoordinator(RemoteCommand command, boolean synchronous, Serializable... args)
+      throws RPCException, SecurityException
+   {
+      return execute(command, args);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public Object executeCommandOnCoordinator(RemoteCommand command, long timeout, Serializable... args)
+      throws RPCException, SecurityException
+   {
+      return execute(command, args);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public RemoteCommand registerCommand(RemoteCommand command) throws SecurityException
+   {
+      commands.put(command.getId(), command);
+      return command;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void unregisterCommand(RemoteCommand command) throws SecurityException
+   {
+      commands.remove(command.getId());
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public boolean isCoordinator() throws RPCException
+   {
+      return true;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void registerTopologyChangeListener(TopologyChangeListener listener) throws SecurityException
+   {
+      // the topology never changes
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void unregisterTopologyChangeListener(TopologyChangeListener listener) throws SecurityException
+   {
+      // the topology never changes
+   }
+
+   /**
+    * Executes a registered command with serialized copies of its arguments and returns a
+    * serialized copy of its result.
+    */
+   private Object execute(RemoteCommand command, Serializable... args) throws RPCException
+   {
+      RemoteCommand registered = commands.get(command.getId());
+      if (registered == null)
+      {
+         throw new RPCException("Command " + command.getId() + " unknown, please register your command first");
+      }
+      try
+      {
+         return copy(registered.execute((Serializable[])copy(args)));
+      }
+      catch (RPCException e)
+      {
+         throw e;
+      }
+      catch (Throwable e)
+      {
+         throw new RPCException("An error occurred while executing the command " + command.getId(), e);
+      }
+   }
+
+   /**
+    * Gives a copy of the given object as if it was sent on the network.
+    */
+   private Object copy(Object value) throws IOException, ClassNotFoundException
+   {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(value);
+      out.close();
+      return new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+   }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query;
+
+import org.exoplatform.services.jcr.JcrImplBaseTest;
+import org.exoplatform.services.jcr.impl.core.query.lucene.SearchIndex;
+import org.exoplatform.services.jcr.impl.util.io.DirectoryHelper;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import javax.jcr.Node;
+
+/**
+ * @version $Id$
+ */
+public class TestIndexFilesSynchronizer extends JcrImplBaseTest
+{
+   private IndexRecoveryImpl indexRecovery;
+
+   private File coordinatorDirectory;
+
+   private File localDirectory;
+
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      Node testRoot = root.addNode("TestIndexFilesSynchronizer");
+      for (int i = 0; i < 20; i++)
+      {
+         testRoot.addNode("node" + i).setProperty("prop", "value" + i);
+      }
+      session.save();
+
+      SearchManager searchManager =
+         (SearchManager)repository.getWorkspaceContainer(workspace.getName()).getComponent(SearchManager.class);
+      // the index must not change while being retrieved
+      ((SearchIndex)searchManager.getHandler()).getIndex().flush();
+      coordinatorDirectory = searchManager.getIndexDirectory();
+      indexRecovery = new IndexRecoveryImpl(new LocalRPCService(), searchManager);
+
+      localDirectory = new File("target/temp/index-sync-" + System.currentTimeMillis());
+   }
+
+   public void tearDown() throws Exception
+   {
+      indexRecovery.close();
+      if (localDirectory.exists())
+      {
+         DirectoryHelper.removeDirectory(localDirectory);
+      }
+      root.getNode("TestIndexFilesSynchronizer").remove();
+      session.save();
+      super.tearDown();
+   }
+
+   public void testSynchronize() throws Exception
+   {
+      IndexFilesSynchronizer synchronizer = new IndexFilesSynchronizer(indexRecovery, localDirectory, 3);
+      List<IndexFileInfo> remoteFiles = indexRecovery.getIndexFiles();
+      assertTrue(remoteFiles.size() > 1);
+
+      long size = 0;
+      for (IndexFileInfo file : remoteFiles)
+      {
+         size += file.getLength();
+      }
+      assertEquals(size, synchronizer.synchronize());
+      assertSameFiles();
+
+      // nothing is retrieved when the index did not change
+      assertEquals(0, synchronizer.synchronize());
+      assertSameFiles();
+
+      // only the modified and the missing files are retrieved
+      IndexFileInfo modified = remoteFiles.get(0);
+      for (IndexFileInfo file : remoteFiles)
+      {
+         if (file.getLength() > modified.getLength())
+         {
+            modified = file;
+         }
+      }
+      IndexFileInfo removed = remoteFiles.get(0) == modified ? remoteFiles.get(1) : remoteFiles.get(0);
+      RandomAccessFile raf = new RandomAccessFile(new File(localDirectory, modified.getPath()), "rw");
+      try
+      {
+         int b = raf.read();
+         raf.seek(0);
+         raf.write(b ^ 0xFF);
+      }
+      finally
+      {
+         raf.close();
+      }
+      assertTrue(new File(localDirectory, removed.getPath()).delete());
+      File obsoleteIndex = new File(localDirectory, "obsolete");
+      assertTrue(obsoleteIndex.mkdirs());
+      FileOutputStream out = new FileOutputStream(new File(obsoleteIndex, "segments_1"));
+      out.write(new byte[]{1, 2, 3});
+      out.close();
+
+      assertEquals(modified.getLength() + removed.getLength(), synchronizer.synchronize());
+      assertSameFiles();
+      assertFalse(obsoleteIndex.exists());
+   }
+
+   public void testManifest() throws Exception
+   {
+      Map<String, IndexFileInfo> cache = new HashMap<String, IndexFileInfo>();
+      List<IndexFileInfo> files = IndexFileInfo.list(coordinatorDirectory, cache);
+      assertEquals(files.size(), cache.size());
+      for (IndexFileInfo file : files)
+      {
+         assertFalse(file.getPath().startsWith("/"));
+         File ioFile = new File(coordinatorDirectory, file.getPath());
+         assertEquals(ioFile.length(), file.getLength());
+         assertEquals(IndexFileInfo.checksum(ioFile), file.getChecksum());
+      }
+      assertEquals(new HashSet<IndexFileInfo>(files), new HashSet<IndexFileInfo>(IndexFileInfo.list(
+         coordinatorDirectory, cache)));
+   }
+
+   private void assertSameFiles() throws Exception
+   {
+      assertEquals(new HashSet<IndexFileInfo>(indexRecovery.getIndexFiles()), new HashSet<IndexFileInfo>(
+         IndexFileInfo.list(localDirectory, new HashMap<String, IndexFileInfo>())));
+   }
+}
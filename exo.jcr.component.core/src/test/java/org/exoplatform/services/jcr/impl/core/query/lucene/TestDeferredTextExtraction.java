@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TermQuery;
+import org.exoplatform.services.document.DocumentReader;
+import org.exoplatform.services.document.DocumentReaderService;
+import org.exoplatform.services.jcr.impl.core.NodeImpl;
+import org.exoplatform.services.jcr.impl.core.query.BaseQueryTest;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Calendar;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Checks that the documents whose text extraction exceeds the extractor
+ * timeout are first indexed without their text then indexed again once the
+ * text is extracted.
+ *
+ * @version $Id$
+ */
+public class TestDeferredTextExtraction extends BaseQueryTest
+{
+   private static final String WORD = "deferredextraction";
+
+   private DocumentReaderService extractor;
+
+   private long timeout;
+
+   private CountDownLatch release;
+
+   @Override
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      extractor = defaultSearchIndex.getExtractor();
+      timeout = defaultSearchIndex.getExtractorTimeout();
+      release = new CountDownLatch(1);
+      defaultSearchIndex.setExtractor(createBlockingExtractor());
+      defaultSearchIndex.setExtractorTimeout(100);
+   }
+
+   @Override
+   public void tearDown() throws Exception
+   {
+      release.countDown();
+      defaultSearchIndex.setExtractor(extractor);
+      defaultSearchIndex.setExtractorTimeout(timeout);
+      super.tearDown();
+   }
+
+   public void testReindexAfterTimeout() throws Exception
+   {
+      NodeImpl node = (NodeImpl)root.addNode("deferredFile", "nt:file");
+      NodeImpl cont = (NodeImpl)node.addNode("jcr:content", "nt:resource");
+      cont.setProperty("jcr:mimeType", "text/plain");
+      cont.setProperty("jcr:lastModified", Calendar.getInstance());
+      cont.setProperty("jcr:data", new ByteArrayInputStream(WORD.getBytes("UTF-8")));
+      root.save();
+
+      // the document has been indexed without its text
+      String id = cont.getInternalIdentifier();
+      assertNotNull("Node is not indexed", getDocument(id, false));
+      assertEquals(0, countHits());
+      assertTrue(defaultSearchIndex.getReindexingRequiredNodes().contains(id));
+
+      // the document is indexed again once the text is extracted
+      release.countDown();
+      long deadline = System.currentTimeMillis() + 10000;
+      while (countHits() == 0 && System.currentTimeMillis() < deadline)
+      {
+         Thread.sleep(50);
+      }
+      assertEquals(1, countHits());
+      assertFalse(defaultSearchIndex.getReindexingRequiredNodes().contains(id));
+   }
+
+   /**
+    * @return the number of documents whose full text contains {@link #WORD}.
+    */
+   private int countHits() throws Exception
+   {
+      IndexReader reader = defaultSearchIndex.getIndexReader();
+      IndexSearcher is = new IndexSearcher(reader);
+      try
+      {
+         return is.search(new TermQuery(new Term(FieldNames.FULLTEXT, WORD)), null, Integer.MAX_VALUE).totalHits;
+      }
+      finally
+      {
+         is.close();
+         Util.closeOrRelease(reader);
+      }
+   }
+
+   /**
+    * @return an extractor whose plain text reader waits for {@link #release}
+    *         before returning the text.
+    */
+   private DocumentReaderService createBlockingExtractor()
+   {
+      final DocumentReader reader =
+         (DocumentReader)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DocumentReader.class},
+            new InvocationHandler()
+            {
+               public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+               {
+                  if (method.getName().equals("getContentAsText"))
+                  {
+                     release.await();
+                     return WORD;
+                  }
+                  if (method.getName().equals("getMimeTypes"))
+                  {
+                     return new String[]{"text/plain"};
+                  }
+                  return null;
+               }
+            });
+      return (DocumentReaderService)Proxy.newProxyInstance(getClass().getClassLoader(),
+         new Class<?>[]{DocumentReaderService.class}, new InvocationHandler()
+         {
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+               if (method.getName().equals("getDocumentReader"))
+               {
+                  return reader;
+               }
+               try
+               {
+                  return method.invoke(extractor, args);
+               }
+               catch (InvocationTargetException e)
+               {
+                  throw e.getCause();
+               }
+            }
+         });
+   }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.impl.dataflow.persistent.ByteArrayPersistedValueData;
+
+import java.io.File;
+import java.util.Random;
+
+/**
+ * @version $Id$
+ */
+public class TestExtractedTextCache extends TestCase
+{
+   private File directory;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      directory = File.createTempFile("text-cache", "");
+      directory.delete();
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      delete(directory);
+      super.tearDown();
+   }
+
+   public void testGetKey() throws Exception
+   {
+      ExtractedTextCache cache = new ExtractedTextCache(directory, ExtractedTextCache.DEFAULT_MAX_SIZE);
+      String key = cache.getKey(new ByteArrayPersistedValueData(0, "content".getBytes()), "text/plain", null);
+      assertEquals(key, cache.getKey(new ByteArrayPersistedValueData(1, "content".getBytes()), "text/plain", null));
+      assertFalse(key.equals(cache.getKey(new ByteArrayPersistedValueData(0, "content2".getBytes()), "text/plain",
+         null)));
+      assertFalse(key.equals(cache.getKey(new ByteArrayPersistedValueData(0, "content".getBytes()), "text/html",
+         null)));
+      assertFalse(key.equals(cache.getKey(new ByteArrayPersistedValueData(0, "content".getBytes()), "text/plain",
+         "UTF-8")));
+   }
+
+   public void testPutAndGet() throws Exception
+   {
+      ExtractedTextCache cache = new ExtractedTextCache(directory, ExtractedTextCache.DEFAULT_MAX_SIZE);
+      String key = cache.getKey(new ByteArrayPersistedValueData(0, "content".getBytes()), "text/plain", null);
+      assertNull(cache.get(key));
+      assertEquals(1, cache.getMisses());
+      cache.put(key, "extracted text \u00e9\u00e8");
+      assertEquals("extracted text \u00e9\u00e8", cache.get(key));
+      assertEquals(1, cache.getHits());
+      cache.put(key, "");
+      assertEquals("", cache.get(key));
+      assertTrue(cache.getSize() > 0);
+
+      // the texts survive a restart
+      cache = new ExtractedTextCache(directory, ExtractedTextCache.DEFAULT_MAX_SIZE);
+      assertEquals("", cache.get(key));
+      assertTrue(cache.getSize() > 0);
+   }
+
+   public void testEviction() throws Exception
+   {
+      ExtractedTextCache cache = new ExtractedTextCache(directory, 64 * 1024);
+      Random random = new Random(0);
+      String[] keys = new String[20];
+      for (int i = 0; i < keys.length; i++)
+      {
+         keys[i] = cache.getKey(new ByteArrayPersistedValueData(0, ("content" + i).getBytes()), "text/plain", null);
+         // random letters that can hardly be compressed
+         StringBuilder text = new StringBuilder();
+         for (int j = 0; j < 8 * 1024; j++)
+         {
+            text.append((char)('a' + random.nextInt(26)));
+         }
+         cache.put(keys[i], text.toString());
+         assertTrue(cache.getSize() <= 64 * 1024);
+      }
+      assertNotNull(cache.get(keys[keys.length - 1]));
+      int found = 0;
+      for (String key : keys)
+      {
+         if (cache.get(key) != null)
+         {
+            found++;
+         }
+      }
+      assertTrue(found > 0);
+      assertTrue(found < keys.length);
+   }
+
+   private void delete(File file)
+   {
+      File[] files = file.listFiles();
+      if (files != null)
+      {
+         for (File child : files)
+         {
+            delete(child);
+         }
+      }
+      file.delete();
+   }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+import junit.framework.TestCase;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Id$
+ */
+public class TestIntObjectHashMap extends TestCase
+{
+   public void testPutAndGet()
+   {
+      IntObjectHashMap<String> map = new IntObjectHashMap<String>(0);
+      assertNull(map.get(0));
+      for (int i = 0; i < 10000; i++)
+      {
+         map.put(i * 7, "v" + i);
+      }
+      assertEquals(10000, map.size());
+      for (int i = 0; i < 10000; i++)
+      {
+         assertEquals("v" + i, map.get(i * 7));
+         assertNull(map.get(i * 7 + 1));
+      }
+
+      map.put(7, "other");
+      assertEquals(10000, map.size());
+      assertEquals("other", map.get(7));
+
+      map.put(-1, "negative");
+      assertEquals("negative", map.get(-1));
+   }
+
+   public void testConcurrentAccess() throws Exception
+   {
+      final IntObjectHashMap<Integer> map = new IntObjectHashMap<Integer>(16);
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++)
+      {
+         final int offset = t;
+         threads[t] = new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int i = offset; i < 40000; i += 4)
+                  {
+                     map.put(i, i);
+                     Integer value = map.get(i);
+                     if (value == null || value.intValue() != i)
+                     {
+                        throw new AssertionError("Unexpected value " + value + " for " + i);
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  error.set(e);
+               }
+            }
+         };
+         threads[t].start();
+      }
+      startSignal.countDown();
+      for (Thread thread : threads)
+      {
+         thread.join();
+      }
+      if (error.get() != null)
+      {
+         fail(error.get().toString());
+      }
+      assertEquals(40000, map.size());
+      for (int i = 0; i < 40000; i++)
+      {
+         assertEquals(Integer.valueOf(i), map.get(i));
+      }
+   }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.core.query.lucene;
+
+import junit.framework.TestCase;
+
+import org.apache.lucene.analysis.WhitespaceAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.Version;
+import org.exoplatform.services.jcr.access.AccessControlEntry;
+import org.exoplatform.services.jcr.access.AccessControlList;
+import org.exoplatform.services.jcr.access.AccessManager;
+import org.exoplatform.services.jcr.access.PermissionType;
+import org.exoplatform.services.jcr.impl.core.access.DefaultAccessManagerImpl;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityConstants;
+import org.exoplatform.services.security.MembershipEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Checks that the {@link ReadPermissionFilter} accepts exactly the documents that
+ * the default {@link AccessManager} allows to read.
+ *
+ * @version $Id$
+ */
+public class TestReadPermissionFilter extends TestCase
+{
+   private final List<AccessControlList> acls = new ArrayList<AccessControlList>();
+
+   private RAMDirectory directory;
+
+   private IndexReader reader;
+
+   private AccessManager accessManager;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      acls.add(acl("john", IdentityConstants.ANY));
+      acls.add(acl("john", "mary"));
+      acls.add(acl("mary", "john"));
+      acls.add(acl("mary", "manager:/platform/users"));
+      acls.add(acl("mary", "*:/platform/administrators"));
+      acls.add(acl("mary", "member:/platform/web-contributors"));
+      acls.add(acl(IdentityConstants.SYSTEM, IdentityConstants.ANY));
+      acls.add(acl(IdentityConstants.SYSTEM));
+      List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+      entries.add(new AccessControlEntry("john", PermissionType.ADD_NODE));
+      acls.add(new AccessControlList("mary", entries));
+
+      directory = new RAMDirectory();
+      IndexWriter writer =
+         new IndexWriter(directory, new IndexWriterConfig(Version.LUCENE_36, new WhitespaceAnalyzer(Version.LUCENE_36)));
+      try
+      {
+         for (AccessControlList acl : acls)
+         {
+            Document doc = new Document();
+            NodeIndexer.addAccessControlFields(doc, acl);
+            writer.addDocument(doc);
+         }
+      }
+      finally
+      {
+         writer.close();
+      }
+      reader = IndexReader.open(directory);
+      accessManager = new DefaultAccessManagerImpl(null);
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      reader.close();
+      directory.close();
+      acls.clear();
+      super.tearDown();
+   }
+
+   public void testSystem() throws Exception
+   {
+      assertNull(ReadPermissionFilter.create(new Identity(IdentityConstants.SYSTEM)));
+   }
+
+   public void testAnonymous() throws Exception
+   {
+      checkFilter(new Identity(IdentityConstants.ANONIM));
+   }
+
+   public void testUser() throws Exception
+   {
+      checkFilter(new Identity("john"));
+      checkFilter(new Identity("mary"));
+      checkFilter(new Identity("bob"));
+   }
+
+   public void testMemberships() throws Exception
+   {
+      checkFilter(new Identity("bob", new HashSet<MembershipEntry>(Arrays.asList(new MembershipEntry(
+         "/platform/users", "manager")))));
+      checkFilter(new Identity("bob", new HashSet<MembershipEntry>(Arrays.asList(new MembershipEntry(
+         "/platform/users", "member")))));
+      checkFilter(new Identity("bob", new HashSet<MembershipEntry>(Arrays.asList(new MembershipEntry(
+         "/platform/administrators", "member")))));
+      checkFilter(new Identity("bob", new HashSet<MembershipEntry>(Arrays.asList(new MembershipEntry(
+         "/platform/web-contributors", MembershipEntry.ANY_TYPE)))));
+   }
+
+   private void checkFilter(Identity identity) throws Exception
+   {
+      BitSet expected = new BitSet();
+      for (int i = 0; i < acls.size(); i++)
+      {
+         if (accessManager.hasPermission(acls.get(i), new String[]{PermissionType.READ}, identity))
+         {
+            expected.set(i);
+         }
+      }
+      BitSet actual = new BitSet();
+      DocIdSetIterator it = ReadPermissionFilter.create(identity).getDocIdSet(reader).iterator();
+      int doc;
+      while ((doc = it.nextDoc()) != DocIdSetIterator.NO_MORE_DOCS)
+      {
+         actual.set(doc);
+      }
+      assertEquals("Unexpected result for the user " + identity.getUserId(), expected, actual);
+   }
+
+   private static AccessControlList acl(String owner, String... readers)
+   {
+      List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+      for (String identity : readers)
+      {
+         entries.add(new AccessControlEntry(identity, PermissionType.READ));
+         entries.add(new AccessControlEntry(identity, PermissionType.ADD_NODE));
+      }
+      return new AccessControlList(owner, entries);
+   }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.dataflow.ItemState;
+import org.exoplatform.services.jcr.dataflow.PlainChangesLogImpl;
+import org.exoplatform.services.jcr.dataflow.persistent.PersistedNodeData;
+import org.exoplatform.services.jcr.dataflow.persistent.PersistedPropertyData;
+import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.impl.Constants;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.jcr.PropertyType;
+
+/**
+ * Checks that the subtree lookups of {@link PlainChangesLogImpl} give the same result as a scan of the whole log.
+ *
+ * @version $Id$
+ */
+public class TestPlainChangesLogPathIndex extends TestCase
+{
+   private int counter;
+
+   public void testGetDescendantsChanges() throws Exception
+   {
+      PlainChangesLogImpl log = new PlainChangesLogImpl("session");
+      ItemState a = addNode(log, Constants.ROOT_PATH, "a");
+      ItemState b = addNode(log, Constants.ROOT_PATH, "b");
+      ItemState a1 = addNode(log, a.getData().getQPath(), "a1");
+      ItemState p = addProperty(log, a1.getData().getQPath(), "p");
+      ItemState b1 = addNode(log, b.getData().getQPath(), "b1");
+      // a deleted item saved with its ancestor
+      ItemState d =
+         new ItemState(new PersistedNodeData("d", QPath.makeChildPath(b1.getData().getQPath(), new InternalQName("",
+            "d")), b1.getData().getIdentifier(), 0, 0, Constants.NT_UNSTRUCTURED, new InternalQName[0], null),
+            ItemState.DELETED, true, a.getData().getQPath());
+      log.add(d);
+      ItemState a2 = addNode(log, a.getData().getQPath(), "a2");
+
+      assertEquals(Arrays.asList(a, a1, p, d, a2), log.getDescendantsChanges(a.getData().getQPath()));
+      assertEquals(Arrays.asList(a1, p), log.getDescendantsChanges(a1.getData().getQPath()));
+      assertEquals(Arrays.asList(b, b1), log.getDescendantsChanges(b.getData().getQPath()));
+      assertEquals(log.getAllStates(), log.getDescendantsChanges(Constants.ROOT_PATH));
+      assertTrue(log.getDescendantsChanges(QPath.makeChildPath(Constants.ROOT_PATH, new InternalQName("", "c")))
+         .isEmpty());
+      assertEquals(scan(log, a.getData().getQPath()), log.getDescendantsChanges(a.getData().getQPath()));
+   }
+
+   public void testRemoveSubtree() throws Exception
+   {
+      PlainChangesLogImpl log = new PlainChangesLogImpl("session");
+      ItemState a = addNode(log, Constants.ROOT_PATH, "a");
+      ItemState b = addNode(log, Constants.ROOT_PATH, "b");
+      ItemState a1 = addNode(log, a.getData().getQPath(), "a1");
+      ItemState p = addProperty(log, a1.getData().getQPath(), "p");
+      ItemState b1 = addNode(log, b.getData().getQPath(), "b1");
+      ItemState q = addProperty(log, b.getData().getQPath(), "q");
+      // the same state twice
+      log.add(p);
+
+      log.remove(a1.getData().getQPath());
+      assertEquals(Arrays.asList(a, b, b1, q), log.getAllStates());
+      assertNull(log.getItemState(p.getData().getQPath()));
+      assertNull(log.getItemState(a1.getData().getIdentifier()));
+      assertEquals(Arrays.asList(a), log.getDescendantsChanges(a.getData().getQPath()));
+
+      log.remove(q);
+      assertEquals(Arrays.asList(a, b, b1), log.getAllStates());
+      assertEquals(Arrays.asList(b, b1), log.getDescendantsChanges(b.getData().getQPath()));
+
+      ItemState b2 = addNode(log, b.getData().getQPath(), "b2");
+      log.remove(a.getData().getQPath());
+      assertEquals(Arrays.asList(b, b1, b2), log.getAllStates());
+      log.remove(b.getData().getQPath());
+      assertTrue(log.getAllStates().isEmpty());
+      assertTrue(log.getDescendantsChanges(b.getData().getQPath()).isEmpty());
+   }
+
+   public void testLargeLog() throws Exception
+   {
+      PlainChangesLogImpl log = new PlainChangesLogImpl("session");
+      List<ItemState> parents = new ArrayList<ItemState>();
+      for (int i = 0; i < 50; i++)
+      {
+         ItemState parent = addNode(log, Constants.ROOT_PATH, "n" + i);
+         parents.add(parent);
+         for (int j = 0; j < 20; j++)
+         {
+            ItemState child = addNode(log, parents.get(i / 2).getData().getQPath(), "c" + i + "_" + j);
+            addProperty(log, child.getData().getQPath(), "p");
+         }
+      }
+      for (int i = 0; i < parents.size(); i++)
+      {
+         QPath path = parents.get(i).getData().getQPath();
+         assertEquals(scan(log, path), log.getDescendantsChanges(path));
+      }
+
+      List<ItemState> expected = new ArrayList<ItemState>(log.getAllStates());
+      for (int i = 0; i < parents.size(); i += 3)
+      {
+         QPath path = parents.get(i).getData().getQPath();
+         expected.removeAll(scan(log, path));
+         log.remove(path);
+         assertEquals(expected, log.getAllStates());
+      }
+   }
+
+   private ItemState addNode(PlainChangesLogImpl log, QPath parent, String name)
+   {
+      String id = "id" + counter++;
+      ItemState state =
+         ItemState.createAddedState(new PersistedNodeData(id, QPath.makeChildPath(parent, new InternalQName("",
+            name)), parent.getAsString(), 0, 0, Constants.NT_UNSTRUCTURED, new InternalQName[0], null));
+      log.add(state);
+      return state;
+   }
+
+   private ItemState addProperty(PlainChangesLogImpl log, QPath parent, String name)
+   {
+      String id = "id" + counter++;
+      ItemState state =
+         ItemState.createAddedState(new PersistedPropertyData(id, QPath.makeChildPath(parent, new InternalQName("",
+            name)), parent.getAsString(), 0, PropertyType.STRING, false, null, null));
+      log.add(state);
+      return state;
+   }
+
+   /**
+    * The former implementation of {@link PlainChangesLogImpl#getDescendantsChanges(QPath)}.
+    */
+   private List<ItemState> scan(PlainChangesLogImpl log, QPath rootPath)
+   {
+      List<ItemState> list = new ArrayList<ItemState>();
+      for (ItemState item : log.getAllStates())
+      {
+         if (item.isDescendantOf(rootPath))
+         {
+            list.add(item);
+         }
+      }
+      return list;
+   }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent;
+
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Compares the throughput of {@link BloomFilter} and {@link ConcurrentBloomFilter} when they are
+ * accessed concurrently as done by {@link CacheableWorkspaceDataManager} to find the nearest ACL
+ * holder. This benchmark is not part of the test suite, it has to be launched manually.
+ *
+ * @version $Id$
+ */
+public class BloomFilterBenchmark
+{
+   private static final int ELEMENTS = 1000000;
+
+   private static final int INVOCATIONS = 2000000;
+
+   private static final double PROBABILITY = 0.1d;
+
+   public static void main(String[] args) throws Exception
+   {
+      final String[] ids = new String[ELEMENTS];
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         ids[i] = UUID.randomUUID().toString().replace("-", "");
+      }
+      final BloomFilter<String> oldFilter = new BloomFilter<String>(PROBABILITY, ELEMENTS);
+      final ConcurrentBloomFilter<String> newFilter = new ConcurrentBloomFilter<String>(PROBABILITY, ELEMENTS);
+      for (int i = 0; i < ELEMENTS; i += 2)
+      {
+         oldFilter.add(ids[i]);
+         newFilter.add(ids[i]);
+      }
+      Task oldTask = new Task()
+      {
+         boolean execute(String id)
+         {
+            return oldFilter.contains(id);
+         }
+      };
+      Task newTask = new Task()
+      {
+         boolean execute(String id)
+         {
+            return newFilter.contains(id);
+         }
+      };
+      // Warm up
+      benchmark(oldTask, ids, 1);
+      benchmark(newTask, ids, 1);
+
+      for (int threads : new int[]{1, 2, 4, 8, 16, 32})
+      {
+         System.out.println("########################################");
+         long time = benchmark(oldTask, ids, threads);
+         System.out.println("BloomFilter.contains, threads " + threads + ": Total time = " + time + " ms, avg = "
+            + (time * 1000000d / INVOCATIONS) + " ns");
+         time = benchmark(newTask, ids, threads);
+         System.out.println("ConcurrentBloomFilter.contains, threads " + threads + ": Total time = " + time
+            + " ms, avg = " + (time * 1000000d / INVOCATIONS) + " ns");
+      }
+   }
+
+   private static long benchmark(final Task task, final String[] ids, int threads) throws InterruptedException
+   {
+      final int invocationsPerThread = INVOCATIONS / threads;
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      for (int i = 0; i < threads; i++)
+      {
+         final int offset = i * invocationsPerThread;
+         new Thread()
+         {
+            public void run()
+            {
+               int found = 0;
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < invocationsPerThread; j++)
+                  {
+                     if (task.execute(ids[(offset + j) % ids.length]))
+                     {
+                        found++;
+                     }
+                  }
+               }
+               catch (InterruptedException e)
+               {
+                  Thread.currentThread().interrupt();
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+               if (found == -1)
+               {
+                  // Prevents the JIT from removing the loop
+                  System.out.println(found);
+               }
+            }
+         }.start();
+      }
+      long time = System.currentTimeMillis();
+      startSignal.countDown();
+      doneSignal.await();
+      return System.currentTimeMillis() - time;
+   }
+
+   private abstract static class Task
+   {
+      abstract boolean execute(String id);
+   }
+}
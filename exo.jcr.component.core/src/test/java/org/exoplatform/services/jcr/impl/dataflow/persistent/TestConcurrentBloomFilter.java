@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * @version $Id$
+ */
+public class TestConcurrentBloomFilter extends TestCase
+{
+   private static final int ELEMENTS = 100000;
+
+   public void testNoFalseNegative() throws Exception
+   {
+      ConcurrentBloomFilter<String> filter = new ConcurrentBloomFilter<String>(0.1d, ELEMENTS);
+      List<String> ids = new ArrayList<String>(ELEMENTS);
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         String id = UUID.randomUUID().toString();
+         ids.add(id);
+         filter.add(id);
+      }
+      assertEquals(ELEMENTS, filter.count());
+      assertTrue(filter.containsAll(ids));
+   }
+
+   public void testFalsePositiveProbability() throws Exception
+   {
+      ConcurrentBloomFilter<String> filter = new ConcurrentBloomFilter<String>(0.1d, ELEMENTS);
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         filter.add(UUID.randomUUID().toString());
+      }
+      int falsePositives = 0;
+      for (int i = 0; i < ELEMENTS; i++)
+      {
+         if (filter.contains(UUID.randomUUID().toString()))
+         {
+            falsePositives++;
+         }
+      }
+      // We accept a margin of 50% compared to the expected probability
+      assertTrue("Too many false positives: " + falsePositives, falsePositives < ELEMENTS * 0.15d);
+   }
+
+   public void testClear() throws Exception
+   {
+      ConcurrentBloomFilter<String> filter = new ConcurrentBloomFilter<String>(0.1d, 10);
+      filter.add("a");
+      assertTrue(filter.contains("a"));
+      filter.clear();
+      assertEquals(0, filter.count());
+      assertFalse(filter.contains("a"));
+   }
+
+   public void testConcurrentAdd() throws Exception
+   {
+      final int threads = 10;
+      final int elementsPerThread = ELEMENTS / threads;
+      final ConcurrentBloomFilter<String> filter = new ConcurrentBloomFilter<String>(0.1d, ELEMENTS);
+      final CountDownLatch startSignal = new CountDownLatch(1);
+      final CountDownLatch doneSignal = new CountDownLatch(threads);
+      final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+      for (int i = 0; i < threads; i++)
+      {
+         final int t = i;
+         new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  startSignal.await();
+                  for (int j = 0; j < elementsPerThread; j++)
+                  {
+                     String id = t + "-" + j;
+                     filter.add(id);
+                     if (!filter.contains(id))
+                     {
+                        throw new AssertionError("The element " + id + " cannot be found");
+                     }
+                  }
+               }
+               catch (Throwable e)
+               {
+                  error.set(e);
+               }
+               finally
+               {
+                  doneSignal.countDown();
+               }
+            }
+         }.start();
+      }
+      startSignal.countDown();
+      doneSignal.await();
+      if (error.get() != null)
+      {
+         throw new Exception(error.get());
+      }
+      assertEquals(ELEMENTS, filter.count());
+      for (int i = 0; i < threads; i++)
+      {
+         for (int j = 0; j < elementsPerThread; j++)
+         {
+            assertTrue(filter.contains(i + "-" + j));
+         }
+      }
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent;
+
+import org.exoplatform.services.jcr.JcrImplBaseTest;
+import org.exoplatform.services.jcr.access.AccessControlList;
+import org.exoplatform.services.jcr.dataflow.persistent.PersistedNodeData;
+import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.ItemType;
+import org.exoplatform.services.jcr.datamodel.NodeData;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.impl.Constants;
+
+/**
+ * @version $Id$
+ */
+public class TestSegmentedWorkspaceStorageCacheMetrics extends JcrImplBaseTest
+{
+
+   public void testLeastRecentlyUsedEviction() throws Exception
+   {
+      // a single segment of 4 entries, i.e. 2 items since each item is cached by id and by path
+      SegmentedWorkspaceStorageCacheImpl cache =
+         new SegmentedWorkspaceStorageCacheImpl("testEviction_cache", true, 4, 120, 5 * 60000, 30000, false, 1, false);
+      try
+      {
+         NodeData node1 = createNode("node1");
+         NodeData node2 = createNode("node2");
+         NodeData node3 = createNode("node3");
+
+         cache.put(node1);
+         cache.put(node2);
+         assertSame(node1, cache.get(node1.getIdentifier()));
+         assertSame(node1, cache.get(Constants.ROOT_UUID, node1.getQPath().getEntries()[1], ItemType.NODE));
+
+         // node2 is now the least recently used one
+         cache.put(node3);
+         assertNull(cache.get(node2.getIdentifier()));
+         assertSame(node1, cache.get(node1.getIdentifier()));
+         assertSame(node3, cache.get(node3.getIdentifier()));
+         assertEquals(4, cache.getSize());
+      }
+      finally
+      {
+         cache.stop();
+      }
+   }
+
+   public void testStatistic() throws Exception
+   {
+      SegmentedWorkspaceStorageCacheImpl cache =
+         new SegmentedWorkspaceStorageCacheImpl("testStatistic_cache", true, 1024, 120, 5 * 60000, 30000, false, 4,
+            false);
+      try
+      {
+         NodeData node = createNode("node");
+         cache.put(node);
+         cache.get(node.getIdentifier());
+         cache.get(node.getIdentifier());
+         cache.get("unknown");
+
+         // the statistic is gathered periodically, force it
+         cache.gatherStatistic();
+         SegmentedCacheStatistic statistic = cache.getStatistic();
+         assertEquals(2, statistic.getHits());
+         assertEquals(1, statistic.getMiss());
+         assertEquals(2, statistic.getSize());
+         assertEquals(4, statistic.getSegments());
+         assertEquals(2d / 3, statistic.getHitRatio(), 0.0001);
+         assertTrue(statistic.getLockAcquisitions() > 0);
+         assertEquals(0, statistic.getEvictions());
+      }
+      finally
+      {
+         cache.stop();
+      }
+   }
+
+   private NodeData createNode(String name)
+   {
+      QPath path = QPath.makeChildPath(Constants.ROOT_PATH, new InternalQName(Constants.NS_EXO_PREFIX, name));
+      return new PersistedNodeData(name + "-id", path, Constants.ROOT_UUID, 1, 0, Constants.NT_UNSTRUCTURED,
+         new InternalQName[0], new AccessControlList());
+   }
+}
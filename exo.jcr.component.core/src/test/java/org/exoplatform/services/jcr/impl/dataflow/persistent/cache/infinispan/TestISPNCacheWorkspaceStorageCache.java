@@ -41,6 +41,7 @@ import org.exoplatform.services.jcr.impl.dataflow.persistent.CacheableWorkspaceD
 import org.exoplatform.services.jcr.impl.dataflow.persistent.ChangedSizeHandler;
 import org.exoplatform.services.jcr.impl.dataflow.persistent.WorkspaceStorageCacheBaseCase;
 import org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan.ISPNCacheWorkspaceStorageCache;
+import org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan.TesterISPNCacheWorkspaceStorageCache;
 import org.exoplatform.services.jcr.impl.storage.SystemDataContainerHolder;
 import org.exoplatform.services.jcr.impl.storage.WorkspaceDataContainerBase;
 import org.exoplatform.services.jcr.storage.WorkspaceDataContainer;
@@ -95,6 +96,42 @@ public class TestISPNCacheWorkspaceStorageCache extends WorkspaceStorageCacheBas
       assertNotNull(cwdm.getItemData(idNode));
    }
 
+   public void testMoveWithEvictedLog() throws Exception
+   {
+      ISPNCacheWorkspaceStorageCache cache = (ISPNCacheWorkspaceStorageCache)getCacheImpl();
+      try
+      {
+         NodeData node =
+            new PersistedNodeData("testMoveWithEvictedLog", QPath.makeChildPath(Constants.ROOT_PATH,
+               new InternalQName(null, "a")), Constants.ROOT_UUID, 1, 0, Constants.NT_UNSTRUCTURED,
+               new InternalQName[0], null);
+         NodeData child =
+            new PersistedNodeData("testMoveWithEvictedLog-child", QPath.makeChildPath(node.getQPath(),
+               new InternalQName(null, "child")), node.getIdentifier(), 1, 0, Constants.NT_UNSTRUCTURED,
+               new InternalQName[0], null);
+         cache.put(node);
+         cache.put(child);
+
+         NodeData movedNode =
+            new PersistedNodeData(node.getIdentifier(), QPath.makeChildPath(Constants.ROOT_PATH, new InternalQName(
+               null, "b")), Constants.ROOT_UUID, 2, 0, Constants.NT_UNSTRUCTURED, new InternalQName[0], null);
+         PlainChangesLog chlog = new PlainChangesLogImpl();
+         chlog.add(new ItemState(movedNode, ItemState.PATH_CHANGED, false, null, false, false, node.getQPath()));
+         chlog.add(ItemState.createUpdatedState(movedNode));
+         cache.onSaveItems(chlog);
+
+         // the log of the moves is kept by the node even if it has been evicted from the cache
+         TesterISPNCacheWorkspaceStorageCache.evictTreeMoves(cache);
+         ItemData item = cache.get(child.getIdentifier());
+         assertNotNull(item);
+         assertEquals(QPath.makeChildPath(movedNode.getQPath(), new InternalQName(null, "child")), item.getQPath());
+      }
+      finally
+      {
+         TesterISPNCacheWorkspaceStorageCache.stop(cache);
+      }
+   }
+
    public void testGetChildNodesCount() throws Exception
    {
       MyWorkspaceStorageConnection con = new MyWorkspaceStorageConnection();
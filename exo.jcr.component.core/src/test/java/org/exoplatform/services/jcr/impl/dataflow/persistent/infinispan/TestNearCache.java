@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.infinispan.CacheKey;
+import org.infinispan.configuration.cache.ConfigurationBuilder;
+import org.infinispan.configuration.global.GlobalConfigurationBuilder;
+import org.infinispan.manager.DefaultCacheManager;
+import org.infinispan.manager.EmbeddedCacheManager;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * @version $Id$
+ */
+public class TestNearCache extends TestCase
+{
+   public void testGetPutAndInvalidate() throws Exception
+   {
+      NearCache cache = new NearCache(100, 0);
+      CacheId key = new CacheId("ws", "id");
+      assertNull(cache.get(key));
+      cache.put(key, "value", cache.getStamp(key));
+      assertEquals("value", cache.get(new CacheId("ws", "id")));
+      assertNull(cache.get(new CacheId("ws2", "id")));
+      assertEquals(1, cache.getHits());
+      assertEquals(2, cache.getMisses());
+      assertEquals(1d / 3, cache.getHitRatio(), 0.0001d);
+
+      cache.remove(key);
+      assertNull(cache.get(key));
+      cache.put(key, "value", cache.getStamp(key));
+      cache.clear();
+      assertNull(cache.get(key));
+      assertEquals(0, cache.size());
+   }
+
+   public void testStaleValueAfterInvalidation() throws Exception
+   {
+      NearCache cache = new NearCache(100, 0);
+      CacheId key = new CacheId("ws", "id");
+      long stamp = cache.getStamp(key);
+      // the key is modified while its old value is loaded
+      cache.remove(key);
+      cache.put(key, "old value", stamp);
+      assertNull(cache.get(key));
+      cache.put(key, "new value", cache.getStamp(key));
+      assertEquals("new value", cache.get(key));
+   }
+
+   public void testMaxSizeAndLiveTime() throws Exception
+   {
+      NearCache cache = new NearCache(100, 0);
+      for (int i = 0; i < 1000; i++)
+      {
+         CacheId key = new CacheId("ws", "id" + i);
+         cache.put(key, "value", cache.getStamp(key));
+      }
+      assertTrue(cache.size() <= 100);
+      assertTrue(cache.size() > 0);
+
+      cache = new NearCache(100, 50);
+      CacheId key = new CacheId("ws", "id");
+      cache.put(key, "value", cache.getStamp(key));
+      assertEquals("value", cache.get(key));
+      Thread.sleep(100);
+      assertNull(cache.get(key));
+      assertEquals(0, cache.size());
+   }
+
+   public void testRemoteInvalidation() throws Exception
+   {
+      EmbeddedCacheManager manager = new DefaultCacheManager(new GlobalConfigurationBuilder().build());
+      try
+      {
+         manager.defineConfiguration("cache", new ConfigurationBuilder().build());
+         BufferedISPNCache cache =
+            new BufferedISPNCache(manager.<CacheKey, Object> getCache("cache"), Boolean.TRUE, new NearCache(100, 0));
+         final Set<CacheKey> invalidatedKeys = new HashSet<CacheKey>();
+         cache.setNearCacheInvalidator(new BufferedISPNCache.NearCacheInvalidator()
+         {
+            public void invalidate(CacheKey[] keys)
+            {
+               invalidatedKeys.addAll(Arrays.asList(keys));
+            }
+         });
+         CacheId key = new CacheId("ws", "id");
+         cache.beginTransaction();
+         cache.put(key, "value");
+         cache.commitTransaction();
+         assertEquals(1, invalidatedKeys.size());
+         assertTrue(invalidatedKeys.contains(key));
+
+         // the value is now served by the near cache until another node invalidates it
+         assertEquals("value", cache.get(key));
+         assertEquals("value", cache.getNearCache().get(key));
+         cache.invalidate(key);
+         assertNull(cache.getNearCache().get(key));
+      }
+      finally
+      {
+         manager.stop();
+      }
+   }
+}
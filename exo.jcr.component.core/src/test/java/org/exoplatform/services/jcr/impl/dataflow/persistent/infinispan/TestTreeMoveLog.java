@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.dataflow.persistent.infinispan;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.datamodel.QPath;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * @version $Id$
+ */
+public class TestTreeMoveLog extends TestCase
+{
+   public void testIsAffected() throws Exception
+   {
+      TreeMoveLog log = new TreeMoveLog();
+      assertFalse(log.isAffected(QPath.parse("[]:1[]a:1[]b:1")));
+
+      log = log.add(QPath.parse("[]:1[]a:1"), null).add(QPath.parse("[]:1[]c:1[]d:2"), null);
+      assertEquals(2, log.size());
+      assertTrue(log.isAffected(QPath.parse("[]:1[]a:1[]b:1")));
+      assertTrue(log.isAffected(QPath.parse("[]:1[]a:1[]b:1[]e:1")));
+      assertTrue(log.isAffected(QPath.parse("[]:1[]c:1[]d:2[]e:1")));
+      // the moved nodes themselves are not affected
+      assertFalse(log.isAffected(QPath.parse("[]:1[]a:1")));
+      assertFalse(log.isAffected(QPath.parse("[]:1[]c:1[]d:2")));
+      assertFalse(log.isAffected(QPath.parse("[]:1[]c:1[]d:1[]e:1")));
+      assertFalse(log.isAffected(QPath.parse("[]:1[]b:1[]a:1")));
+      assertFalse(log.isAffected(QPath.parse("[]:1")));
+   }
+
+   public void testAddAndRemove() throws Exception
+   {
+      QPath a = QPath.parse("[]:1[]a:1");
+      QPath b = QPath.parse("[]:1[]b:1");
+      QPath c = QPath.parse("[]:1[]c:1");
+      TreeMoveLog log = new TreeMoveLog().add(a, null).add(b, null).add(a, null);
+      assertEquals(2, log.size());
+      assertEquals(Arrays.asList(a), log.getOldest(1));
+      log = log.add(c, log.getOldest(1));
+      assertEquals(Arrays.asList(b, c), log.getOldest(10));
+      assertFalse(log.isAffected(QPath.parse("[]:1[]a:1[]x:1")));
+      assertTrue(log.isAffected(QPath.parse("[]:1[]c:1[]x:1")));
+   }
+
+   public void testSerialization() throws Exception
+   {
+      TreeMoveLog log = new TreeMoveLog().add(QPath.parse("[]:1[]a:1"), null);
+      ByteArrayOutputStream baos = new ByteArrayOutputStream();
+      ObjectOutputStream oos = new ObjectOutputStream(baos);
+      oos.writeObject(log);
+      oos.close();
+      TreeMoveLog result =
+         (TreeMoveLog)new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray())).readObject();
+      assertEquals(1, result.size());
+      assertTrue(result.isAffected(QPath.parse("[]:1[]a:1[]b:1")));
+   }
+}
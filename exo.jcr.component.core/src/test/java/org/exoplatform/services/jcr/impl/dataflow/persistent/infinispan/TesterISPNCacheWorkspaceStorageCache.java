@@ -32,4 +32,12 @@ public class TesterISPNCacheWorkspaceStorageCache
       cache.cache.stop();
    }
 
+   /**
+    * Evicts the log of the moves of the nodes from the cache
+    */
+   public static void evictTreeMoves(ISPNCacheWorkspaceStorageCache cache)
+   {
+      cache.cache.evict(new CacheTreeMovesId(cache.ownerId));
+   }
+
 }
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.jdbc;
+
+import org.exoplatform.services.jcr.JcrAPIBaseTest;
+import org.exoplatform.services.jcr.datamodel.NodeDataIndexing;
+import org.exoplatform.services.jcr.impl.core.query.NodeDataIndexingIterator;
+import org.exoplatform.services.jcr.impl.storage.jdbc.indexing.JdbcKeyRangeNodeDataIndexingIterator;
+import org.exoplatform.services.jcr.impl.storage.jdbc.indexing.JdbcNodeDataIndexingIterator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import javax.jcr.Node;
+
+/**
+ * @version $Id$
+ */
+public class TestKeyRangeNodeDataIndexingIterator extends JcrAPIBaseTest
+{
+   private JDBCWorkspaceDataContainer dataContainer;
+
+   private Node testRoot;
+
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      dataContainer =
+         (JDBCWorkspaceDataContainer)repository.getWorkspaceContainer(workspace.getName()).getComponent(
+            JDBCWorkspaceDataContainer.class);
+      testRoot = root.addNode("TestKeyRangeNodeDataIndexingIterator");
+      for (int i = 0; i < 50; i++)
+      {
+         testRoot.addNode("node" + i).setProperty("prop", "value" + i);
+      }
+      session.save();
+   }
+
+   public void tearDown() throws Exception
+   {
+      testRoot.remove();
+      session.save();
+      super.tearDown();
+   }
+
+   public void testConcurrentIteration() throws Exception
+   {
+      if (!isSupported())
+      {
+         return;
+      }
+      Set<String> expected = readAll(new JdbcNodeDataIndexingIterator(dataContainer.connFactory, 7));
+
+      final JdbcKeyRangeNodeDataIndexingIterator iterator =
+         new JdbcKeyRangeNodeDataIndexingIterator(dataContainer.connFactory, 7, 8);
+      final List<String> ids = Collections.synchronizedList(new ArrayList<String>());
+      final List<Exception> errors = Collections.synchronizedList(new ArrayList<Exception>());
+      final CountDownLatch endSignal = new CountDownLatch(4);
+      for (int i = 0; i < 4; i++)
+      {
+         new Thread()
+         {
+            public void run()
+            {
+               try
+               {
+                  while (iterator.hasNext())
+                  {
+                     for (NodeDataIndexing node : iterator.next())
+                     {
+                        ids.add(node.getIdentifier());
+                     }
+                  }
+               }
+               catch (Exception e)
+               {
+                  errors.add(e);
+               }
+               finally
+               {
+                  endSignal.countDown();
+               }
+            }
+         }.start();
+      }
+      endSignal.await();
+
+      assertTrue(errors.toString(), errors.isEmpty());
+      assertEquals("Some nodes have been read twice", ids.size(), new HashSet<String>(ids).size());
+      assertEquals(expected, new HashSet<String>(ids));
+   }
+
+   public void testResume() throws Exception
+   {
+      if (!isSupported())
+      {
+         return;
+      }
+      Set<String> expected = readAll(new JdbcNodeDataIndexingIterator(dataContainer.connFactory, 5));
+
+      JdbcKeyRangeNodeDataIndexingIterator iterator =
+         new JdbcKeyRangeNodeDataIndexingIterator(dataContainer.connFactory, 5, 4);
+      List<String> ids = new ArrayList<String>();
+      for (int i = 0; i < 3 && iterator.hasNext(); i++)
+      {
+         for (NodeDataIndexing node : iterator.next())
+         {
+            ids.add(node.getIdentifier());
+         }
+      }
+      String checkpoint = iterator.getCheckpoint();
+
+      JdbcKeyRangeNodeDataIndexingIterator resumed =
+         new JdbcKeyRangeNodeDataIndexingIterator(dataContainer.connFactory, 5, 4);
+      resumed.resume(checkpoint);
+      while (resumed.hasNext())
+      {
+         for (NodeDataIndexing node : resumed.next())
+         {
+            ids.add(node.getIdentifier());
+         }
+      }
+
+      assertEquals("Some nodes have been read twice", ids.size(), new HashSet<String>(ids).size());
+      assertEquals(expected, new HashSet<String>(ids));
+
+      try
+      {
+         new JdbcKeyRangeNodeDataIndexingIterator(dataContainer.connFactory, 5, 8).resume(checkpoint);
+         fail("A checkpoint of another amount of ranges should be rejected");
+      }
+      catch (Exception e)
+      {
+         // expected
+      }
+   }
+
+   private boolean isSupported() throws Exception
+   {
+      return dataContainer.isReindexingSupported()
+         && dataContainer.getNodeDataIndexingIterator(10) instanceof JdbcKeyRangeNodeDataIndexingIterator;
+   }
+
+   private Set<String> readAll(NodeDataIndexingIterator iterator) throws Exception
+   {
+      Set<String> ids = new HashSet<String>();
+      while (iterator.hasNext())
+      {
+         for (NodeDataIndexing node : iterator.next())
+         {
+            ids.add(node.getIdentifier());
+         }
+      }
+      return ids;
+   }
+}
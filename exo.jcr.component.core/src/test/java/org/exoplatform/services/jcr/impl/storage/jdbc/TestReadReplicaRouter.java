@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.jdbc;
+
+import org.exoplatform.services.jcr.JcrAPIBaseTest;
+import org.exoplatform.services.jcr.impl.Constants;
+import org.exoplatform.services.jcr.storage.WorkspaceStorageConnection;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.SQLException;
+import java.util.Collections;
+
+import javax.sql.DataSource;
+
+/**
+ * @version $Id$
+ */
+public class TestReadReplicaRouter extends JcrAPIBaseTest
+{
+   private JDBCWorkspaceDataContainer dataContainer;
+
+   private DataSource dataSource;
+
+   /**
+    * Amount of connections opened on the replica by the test thread
+    */
+   private int replicaConnections;
+
+   /**
+    * Indicates whether the replica is down
+    */
+   private volatile boolean replicaDown;
+
+   private ReadReplicaRouter router;
+
+   public void setUp() throws Exception
+   {
+      super.setUp();
+      dataContainer =
+         (JDBCWorkspaceDataContainer)repository.getWorkspaceContainer(workspace.getName()).getComponent(
+            JDBCWorkspaceDataContainer.class);
+      dataSource = dataContainer.getDataSource();
+      replicaConnections = 0;
+      replicaDown = false;
+   }
+
+   public void tearDown() throws Exception
+   {
+      if (router != null)
+      {
+         router.stop();
+      }
+      super.tearDown();
+   }
+
+   public void testReadsGoToReplica() throws Exception
+   {
+      router = createRouter(60000, 60000);
+      int before = replicaConnections;
+      read();
+      read();
+      assertEquals(before + 2, replicaConnections);
+   }
+
+   public void testReadYourWrites() throws Exception
+   {
+      router = createRouter(0, 200);
+      int before = replicaConnections;
+      WorkspaceStorageConnection con = router.openConnection(false);
+      try
+      {
+         read();
+         assertEquals("A read during a write must go to the primary", before, replicaConnections);
+      }
+      finally
+      {
+         con.close();
+      }
+      read();
+      assertEquals("A read just after a write must go to the primary", before, replicaConnections);
+
+      Thread.sleep(500);
+      read();
+      assertEquals("The reads must go to the replica once the lag window has elapsed", before + 1,
+         replicaConnections);
+   }
+
+   public void testCachedReads() throws Exception
+   {
+      router = createRouter(0, 200);
+      int before = replicaConnections;
+      cachedRead();
+      assertEquals("The reads filling the cache must go to the replica if nobody has written", before + 1,
+         replicaConnections);
+
+      // another user writes
+      Thread writer = new Thread()
+      {
+         public void run()
+         {
+            try
+            {
+               router.openConnection(false).close();
+            }
+            catch (Exception e)
+            {
+               throw new RuntimeException(e);
+            }
+         }
+      };
+      writer.start();
+      writer.join();
+
+      before = replicaConnections;
+      read();
+      assertEquals("The reads of the other users must still go to the replica", before + 1, replicaConnections);
+      cachedRead();
+      assertEquals("The reads filling the cache just after any write must go to the primary", before + 1,
+         replicaConnections);
+
+      Thread.sleep(500);
+      cachedRead();
+      assertEquals("The reads filling the cache must go to the replica once the lag window has elapsed",
+         before + 2, replicaConnections);
+   }
+
+   public void testUnavailableReplica() throws Exception
+   {
+      router = createRouter(60000, 60000);
+      replicaDown = true;
+      read();
+      assertTrue(router.getStatus(), router.getStatus().contains("unavailable"));
+
+      replicaDown = false;
+      int before = replicaConnections;
+      read();
+      assertEquals("An unavailable replica must not be used before being checked again", before,
+         replicaConnections);
+      router.check();
+      before = replicaConnections;
+      read();
+      assertEquals(before + 1, replicaConnections);
+   }
+
+   private void read() throws Exception
+   {
+      WorkspaceStorageConnection con = router.openConnection(true);
+      try
+      {
+         assertNotNull(con.getItemData(Constants.ROOT_UUID));
+      }
+      finally
+      {
+         con.close();
+      }
+   }
+
+   private void cachedRead() throws Exception
+   {
+      ReadReplicaRouter.beginCachedRead();
+      try
+      {
+         read();
+      }
+      finally
+      {
+         ReadReplicaRouter.endCachedRead();
+      }
+   }
+
+   private ReadReplicaRouter createRouter(long maxLag, long checkInterval)
+   {
+      final Thread testThread = Thread.currentThread();
+      DataSource replica =
+         (DataSource)Proxy.newProxyInstance(getClass().getClassLoader(), new Class[]{DataSource.class},
+            new InvocationHandler()
+            {
+               public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+               {
+                  if ("getConnection".equals(method.getName()))
+                  {
+                     if (replicaDown)
+                     {
+                        throw new SQLException("The replica is down");
+                     }
+                     if (Thread.currentThread() == testThread)
+                     {
+                        replicaConnections++;
+                     }
+                  }
+                  try
+                  {
+                     return method.invoke(dataSource, args);
+                  }
+                  catch (InvocationTargetException e)
+                  {
+                     throw e.getCause();
+                  }
+               }
+            });
+      return new ReadReplicaRouter("test", dataContainer.connFactory, dataSource, Collections.singletonMap("replica",
+         replica), maxLag, checkInterval, null);
+   }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.storage.value.fs;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.impl.storage.value.fs.PackFileStore.Block;
+import org.exoplatform.services.jcr.impl.storage.value.fs.PackFileStore.Record;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @version $Id$
+ */
+public class TestPackFileStore extends TestCase
+{
+
+   private File rootDir;
+
+   private PackFileStore store;
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void setUp() throws Exception
+   {
+      super.setUp();
+      rootDir = new File(new File("target"), "vs-pack");
+      clean();
+      rootDir.mkdirs();
+      store = new PackFileStore(rootDir, 1024);
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   @Override
+   protected void tearDown() throws Exception
+   {
+      store.close();
+      clean();
+      super.tearDown();
+   }
+
+   private void clean()
+   {
+      File[] files = rootDir.listFiles();
+      if (files != null)
+      {
+         for (File file : files)
+         {
+            file.delete();
+         }
+      }
+   }
+
+   private void reopen() throws IOException
+   {
+      store.close();
+      // the locations are mostly read from the index files
+      store = new PackFileStore(rootDir, 1024, 2);
+   }
+
+   private void put(String propertyId, int orderNumber, String content) throws IOException
+   {
+      List<Record> records = new ArrayList<Record>();
+      records.add(Record.put(propertyId, orderNumber, content.getBytes("UTF-8")));
+      store.commit(store.prepare(records));
+   }
+
+   private void delete(String propertyId, int orderNumber) throws IOException
+   {
+      List<Record> records = new ArrayList<Record>();
+      records.add(Record.delete(propertyId, orderNumber));
+      store.commit(store.prepare(records));
+   }
+
+   private String get(String propertyId, int orderNumber) throws IOException
+   {
+      InputStream in = store.openStream(propertyId, orderNumber);
+      if (in == null)
+      {
+         return null;
+      }
+      try
+      {
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         byte[] buffer = new byte[7];
+         int read;
+         while ((read = in.read(buffer)) != -1)
+         {
+            out.write(buffer, 0, read);
+         }
+         return new String(out.toByteArray(), "UTF-8");
+      }
+      finally
+      {
+         in.close();
+      }
+   }
+
+   public void testWriteRead() throws Exception
+   {
+      put("A", 0, "first value");
+      put("A", 1, "second value");
+      assertEquals("first value", get("A", 0));
+      assertEquals("second value", get("A", 1));
+      assertEquals(11, store.getLength("A", 0));
+      assertEquals(Arrays.asList(0, 1), store.getOrderNumbers("A"));
+      assertNull(get("B", 0));
+      assertEquals(-1, store.getLength("B", 0));
+
+      InputStream in = store.openStream("A", 1);
+      try
+      {
+         assertEquals(7, in.skip(7));
+         assertEquals('v', in.read());
+         assertEquals(4, in.skip(10));
+         assertEquals(-1, in.read());
+      }
+      finally
+      {
+         in.close();
+      }
+
+      put("A", 0, "updated");
+      assertEquals("updated", get("A", 0));
+      delete("A", 1);
+      assertNull(get("A", 1));
+      assertEquals(Arrays.asList(0), store.getOrderNumbers("A"));
+
+      reopen();
+      assertEquals("updated", get("A", 0));
+      assertNull(get("A", 1));
+      assertEquals(Arrays.asList(0), store.getOrderNumbers("A"));
+   }
+
+   public void testRollback() throws Exception
+   {
+      put("A", 0, "committed");
+      List<Record> records = new ArrayList<Record>();
+      records.add(Record.put("A", 0, "rolled back".getBytes("UTF-8")));
+      records.add(Record.put("B", 0, "rolled back".getBytes("UTF-8")));
+      Block block = store.prepare(records);
+      store.abort(block);
+      assertEquals("committed", get("A", 0));
+      assertNull(get("B", 0));
+
+      // a prepared block that has neither been committed nor rolled back before a crash is kept
+      records = new ArrayList<Record>();
+      records.add(Record.put("C", 0, "prepared".getBytes("UTF-8")));
+      store.prepare(records);
+      assertNull(get("C", 0));
+
+      reopen();
+      assertEquals("committed", get("A", 0));
+      assertNull(get("B", 0));
+      assertEquals("prepared", get("C", 0));
+   }
+
+   public void testTruncatedSegment() throws Exception
+   {
+      put("A", 0, "first");
+      put("A", 1, "second");
+      store.close();
+
+      File segment = new File(rootDir, PackFileStore.SEGMENT_PREFIX + 1 + PackFileStore.SEGMENT_SUFFIX);
+      RandomAccessFile raf = new RandomAccessFile(segment, "rw");
+      try
+      {
+         raf.setLength(raf.length() - 3);
+      }
+      finally
+      {
+         raf.close();
+      }
+
+      store = new PackFileStore(rootDir, 1024);
+      assertEquals("first", get("A", 0));
+      assertNull(get("A", 1));
+   }
+
+   public void testCompaction() throws Exception
+   {
+      char[] chars = new char[300];
+      Arrays.fill(chars, 'x');
+      String large = new String(chars);
+      for (int i = 0; i < 10; i++)
+      {
+         put("A", 0, large + i);
+         put("B" + i, 0, "value " + i);
+      }
+      delete("B0", 0);
+      assertTrue(store.getSegmentCount() > 3);
+      long size = store.getSize();
+
+      store.writeIndexes();
+      assertTrue(store.compact(0.5) > 0);
+      assertTrue(store.getSize() < size);
+      assertEquals(large + 9, get("A", 0));
+      assertNull(get("B0", 0));
+      for (int i = 1; i < 10; i++)
+      {
+         assertEquals("value " + i, get("B" + i, 0));
+      }
+
+      reopen();
+      assertEquals(large + 9, get("A", 0));
+      assertNull(get("B0", 0));
+      for (int i = 1; i < 10; i++)
+      {
+         assertEquals("value " + i, get("B" + i, 0));
+      }
+
+      // the compaction of a segment must not remove a value while it is being read
+      store.writeIndexes();
+      InputStream in = store.openStream("B5", 0);
+      try
+      {
+         put("B5", 0, large);
+         put("B5", 0, large);
+         put("B5", 0, large);
+         store.compact(0.1);
+         byte[] buffer = new byte[7];
+         assertEquals(7, in.read(buffer));
+         assertEquals("value 5", new String(buffer, "UTF-8"));
+      }
+      finally
+      {
+         in.close();
+      }
+      assertEquals(large, get("B5", 0));
+   }
+
+   public void testIndexFiles() throws Exception
+   {
+      for (int i = 0; i < 100; i++)
+      {
+         put("P" + i, 0, "value " + i);
+         put("P" + i, 1, "other value " + i);
+      }
+      delete("P7", 1);
+      assertTrue(store.getSegmentCount() > 3);
+      store.writeIndexes();
+      reopen();
+      for (int i = 0; i < 100; i++)
+      {
+         assertEquals("value " + i, get("P" + i, 0));
+         assertEquals(i == 7 ? null : "other value " + i, get("P" + i, 1));
+         assertEquals(i == 7 ? Arrays.asList(0) : Arrays.asList(0, 1), store.getOrderNumbers("P" + i));
+      }
+      assertNull(get("P100", 0));
+      assertEquals(-1, store.getLength("P", 0));
+   }
+
+   public void testCompactionOfDeletedValue() throws Exception
+   {
+      char[] chars = new char[300];
+      Arrays.fill(chars, 'x');
+      String large = new String(chars);
+      String medium = large.substring(100);
+      // the first segment is mostly used
+      put("A", 0, "old");
+      put("K1", 0, large);
+      put("K2", 0, large);
+      put("K3", 0, medium);
+      // the second one is mostly unused, the deleted value must be kept as long as the first segment exists
+      delete("A", 0);
+      put("X", 0, medium);
+      put("X", 0, medium);
+      put("X", 0, medium);
+      put("Y", 0, large);
+      store.writeIndexes();
+      assertEquals(1, store.compact(0.5));
+      assertNull(get("A", 0));
+
+      reopen();
+      assertNull(get("A", 0));
+      assertTrue(store.getOrderNumbers("A").isEmpty());
+      assertEquals(large, get("K1", 0));
+      assertEquals(medium, get("X", 0));
+      assertEquals(large, get("Y", 0));
+   }
+
+   public void testLock() throws Exception
+   {
+      try
+      {
+         new PackFileStore(rootDir, 1024);
+         fail("The directory is already used");
+      }
+      catch (IOException e)
+      {
+         // expected
+      }
+   }
+}
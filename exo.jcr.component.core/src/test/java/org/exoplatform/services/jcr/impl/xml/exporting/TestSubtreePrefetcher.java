@@ -0,0 +1,73 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.impl.xml.exporting;
+
+import org.exoplatform.services.jcr.JcrAPIBaseTest;
+
+import java.io.ByteArrayOutputStream;
+
+import javax.jcr.Node;
+
+/**
+ * @version $Id$
+ */
+public class TestSubtreePrefetcher extends JcrAPIBaseTest
+{
+   public void tearDown() throws Exception
+   {
+      SubtreePrefetcher.stopExecutor();
+      super.tearDown();
+   }
+
+   public void testExportWithPrefetching() throws Exception
+   {
+      Node testRoot = root.addNode("testPrefetch");
+      for (int i = 0; i < 20; i++)
+      {
+         Node child = testRoot.addNode("child");
+         child.setProperty("value", "value " + i);
+         for (int j = 0; j < 3; j++)
+         {
+            child.addNode("subChild" + j).setProperty("value", j);
+         }
+      }
+      session.save();
+
+      ByteArrayOutputStream sysView = new ByteArrayOutputStream();
+      session.exportSystemView(testRoot.getPath(), sysView, false, false);
+      ByteArrayOutputStream docView = new ByteArrayOutputStream();
+      session.exportDocumentView(testRoot.getPath(), docView, false, false);
+
+      long loadedNodes = SubtreePrefetcher.getLoadedNodes();
+      SubtreePrefetcher.startExecutor(4);
+      ByteArrayOutputStream prefetchedSysView = new ByteArrayOutputStream();
+      session.exportSystemView(testRoot.getPath(), prefetchedSysView, false, false);
+      ByteArrayOutputStream prefetchedDocView = new ByteArrayOutputStream();
+      session.exportDocumentView(testRoot.getPath(), prefetchedDocView, false, false);
+      // waits for the nodes being loaded ahead
+      SubtreePrefetcher.stopExecutor();
+
+      assertTrue("No node has been loaded ahead", SubtreePrefetcher.getLoadedNodes() > loadedNodes);
+      assertEquals(sysView.toString("UTF-8"), prefetchedSysView.toString("UTF-8"));
+      assertEquals(docView.toString("UTF-8"), prefetchedDocView.toString("UTF-8"));
+
+      testRoot.remove();
+      session.save();
+   }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.load.access;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.access.AccessControlEntry;
+import org.exoplatform.services.jcr.access.AccessControlList;
+import org.exoplatform.services.jcr.access.AccessManager;
+import org.exoplatform.services.jcr.access.PermissionType;
+import org.exoplatform.services.jcr.impl.access.TestCompiledAccessControlList;
+import org.exoplatform.services.jcr.impl.core.access.DefaultAccessManagerImpl;
+import org.exoplatform.services.security.Identity;
+import org.exoplatform.services.security.IdentityConstants;
+import org.exoplatform.services.security.MembershipEntry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * Compares the time needed to check the permissions of a user with many memberships against access
+ * control lists with many entries, with a scan of the entries for each permission and with the
+ * {@link AccessManager}. The amount of checks can be set with the system property <code>checks</code>.
+ *
+ * @version $Id$
+ */
+public class TestAccessManagerLoad extends TestCase
+{
+   private static Logger log = Logger.getLogger("exo.jcr.component.core.TestAccessManagerLoad");
+
+   private static final int GROUPS = 50;
+
+   private static final int ACLS = 100;
+
+   public void testHasPermission() throws Exception
+   {
+      int checks = Integer.getInteger("checks", 100000);
+      AccessManager accessManager = new DefaultAccessManagerImpl(null, null);
+
+      List<MembershipEntry> memberships = new ArrayList<MembershipEntry>();
+      for (int i = 0; i < GROUPS; i += 2)
+      {
+         memberships.add(new MembershipEntry("/group" + i, "member"));
+      }
+      Identity user = new Identity("john", memberships);
+
+      AccessControlList[] acls = new AccessControlList[ACLS];
+      for (int i = 0; i < ACLS; i++)
+      {
+         List<AccessControlEntry> entries = new ArrayList<AccessControlEntry>();
+         for (int j = 0; j < GROUPS; j++)
+         {
+            // only the last group of each list is one of the groups of the user
+            String identity = "*:/group" + (j == GROUPS - 1 ? 2 * (i % (GROUPS / 2)) : 2 * j + 1);
+            for (String permission : PermissionType.ALL)
+            {
+               entries.add(new AccessControlEntry(identity, permission));
+            }
+         }
+         acls[i] = new AccessControlList(IdentityConstants.SYSTEM, entries);
+      }
+      String[][] permissions = {PermissionType.DEFAULT_AC, PermissionType.ALL};
+
+      for (int round = 0; round < 2; round++)
+      {
+         long start = System.currentTimeMillis();
+         int granted = 0;
+         for (int i = 0; i < checks; i++)
+         {
+            if (TestCompiledAccessControlList.hasPermission(acls[i % ACLS], permissions[i & 1], user))
+               granted++;
+         }
+         long scanTime = System.currentTimeMillis() - start;
+
+         start = System.currentTimeMillis();
+         int compiledGranted = 0;
+         for (int i = 0; i < checks; i++)
+         {
+            if (accessManager.hasPermission(acls[i % ACLS], permissions[i & 1], user))
+               compiledGranted++;
+         }
+         long compiledTime = System.currentTimeMillis() - start;
+
+         assertEquals(checks, granted);
+         assertEquals(granted, compiledGranted);
+         log.info(checks + " checks: " + scanTime + "ms with a scan of the entries, " + compiledTime
+            + "ms with the compiled lists");
+      }
+   }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.load.dataflow;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.dataflow.ItemState;
+import org.exoplatform.services.jcr.dataflow.PlainChangesLogImpl;
+import org.exoplatform.services.jcr.dataflow.persistent.PersistedNodeData;
+import org.exoplatform.services.jcr.dataflow.persistent.PersistedPropertyData;
+import org.exoplatform.services.jcr.datamodel.InternalQName;
+import org.exoplatform.services.jcr.datamodel.QPath;
+import org.exoplatform.services.jcr.impl.Constants;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+import javax.jcr.PropertyType;
+
+/**
+ * Measures how the subtree lookups done on the transient changes log while saving a session scale with
+ * the amount of transient items. Each node has 9 children and one property, for each node the changes of
+ * its subtree are retrieved like before a save, then some subtrees are removed from the log like after a save.
+ * The maximum amount of items can be set with the system property <code>maxItems</code>.
+ *
+ * @version $Id$
+ */
+public class TestPlainChangesLogLoad extends TestCase
+{
+   private static Logger log = Logger.getLogger("exo.jcr.component.core.TestPlainChangesLogLoad");
+
+   private static final int FAN_OUT = 9;
+
+   public void testSaveScaling() throws Exception
+   {
+      int maxItems = Integer.getInteger("maxItems", 1000000);
+      for (int size = 1000; size <= maxItems; size *= 10)
+      {
+         PlainChangesLogImpl changesLog = new PlainChangesLogImpl("session");
+         List<QPath> nodes = new ArrayList<QPath>();
+
+         long start = System.currentTimeMillis();
+         nodes.add(addNode(changesLog, Constants.ROOT_PATH, "root", 1));
+         for (int i = 0; changesLog.getSize() < size; i++)
+         {
+            QPath parent = nodes.get(i / FAN_OUT);
+            QPath node = addNode(changesLog, parent, "n", i % FAN_OUT + 1);
+            nodes.add(node);
+            changesLog.add(ItemState.createAddedState(new PersistedPropertyData("p" + i, QPath.makeChildPath(node,
+               Constants.JCR_PRIMARYTYPE), node.getAsString(), 0, PropertyType.NAME, false, null, null)));
+         }
+         long addTime = System.currentTimeMillis() - start;
+
+         start = System.currentTimeMillis();
+         long changes = 0;
+         for (int i = nodes.size() - 1; i >= 0; i--)
+         {
+            changes += changesLog.getDescendantsChanges(nodes.get(i)).size();
+         }
+         long lookupTime = System.currentTimeMillis() - start;
+
+         // save the subtrees of the grand children of the root node one by one, then the rest
+         start = System.currentTimeMillis();
+         for (int i = FAN_OUT + 1; i <= FAN_OUT * (FAN_OUT + 1) && i < nodes.size(); i++)
+         {
+            changesLog.remove(nodes.get(i));
+         }
+         changesLog.remove(nodes.get(0));
+         long removeTime = System.currentTimeMillis() - start;
+
+         assertEquals(0, changesLog.getSize());
+         log.info(size + " items: added in " + addTime + "ms, " + changes + " descendant changes found in "
+            + lookupTime + "ms, removed in " + removeTime + "ms");
+      }
+   }
+
+   private QPath addNode(PlainChangesLogImpl changesLog, QPath parent, String name, int index)
+   {
+      QPath path = QPath.makeChildPath(parent, new InternalQName("", name), index);
+      changesLog.add(ItemState.createAddedState(new PersistedNodeData(path.getAsString(), path, parent.getAsString(),
+         0, index, Constants.NT_UNSTRUCTURED, new InternalQName[0], null)));
+      return path;
+   }
+}
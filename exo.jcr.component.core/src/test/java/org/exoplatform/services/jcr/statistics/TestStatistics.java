@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.statistics;
+
+import junit.framework.TestCase;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * @version $Id$
+ */
+public class TestStatistics extends TestCase
+{
+
+   public void testBuckets()
+   {
+      int previous = -1;
+      for (long value = 0; value < 100000; value++)
+      {
+         int bucket = LatencyHistogram.bucket(value);
+         assertTrue(bucket == previous || bucket == previous + 1);
+         assertTrue(value <= LatencyHistogram.highestValue(bucket));
+         assertTrue(bucket == 0 || value > LatencyHistogram.highestValue(bucket - 1));
+         // the relative error is lower than 1/16
+         assertTrue(LatencyHistogram.highestValue(bucket) - value <= value / 16);
+         previous = bucket;
+      }
+      assertEquals(0, LatencyHistogram.bucket(-1));
+      assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucket(Long.MAX_VALUE));
+   }
+
+   public void testPercentiles()
+   {
+      LatencyHistogram histogram = new LatencyHistogram();
+      assertEquals(-1, LatencyHistogram.getValueAtPercentile(histogram.snapshot(), 50));
+      for (long value = 1; value <= 1000; value++)
+      {
+         histogram.record(value * 1000);
+      }
+      long[] snapshot = histogram.snapshot();
+      assertInRange(500000, LatencyHistogram.getValueAtPercentile(snapshot, 50));
+      assertInRange(990000, LatencyHistogram.getValueAtPercentile(snapshot, 99));
+      assertInRange(1000000, LatencyHistogram.getValueAtPercentile(snapshot, 100));
+      assertInRange(1000, LatencyHistogram.getValueAtPercentile(snapshot, 0));
+
+      histogram.record(5000000);
+      long[] interval = LatencyHistogram.difference(histogram.snapshot(), snapshot);
+      assertInRange(5000000, LatencyHistogram.getValueAtPercentile(interval, 50));
+
+      histogram.reset();
+      assertEquals(-1, LatencyHistogram.getValueAtPercentile(histogram.snapshot(), 50));
+   }
+
+   public void testNestedCalls() throws Exception
+   {
+      Statistics global = new Statistics(null, "global");
+      Statistics outer = new Statistics(global, "outer");
+      Statistics inner = new Statistics(global, "inner");
+      outer.begin();
+      inner.begin();
+      inner.end();
+      Thread.sleep(20);
+      outer.end();
+      assertEquals(1, inner.getTimes());
+      assertEquals(1, outer.getTimes());
+      assertEquals(2, global.getTimes());
+      assertTrue(inner.getMax() < 20);
+      assertTrue(outer.getMin() >= 20);
+      assertTrue(outer.getPercentile(50) >= 20);
+      assertTrue(global.getPercentile(100) >= 20);
+      assertTrue(global.getPercentile(0) < 20);
+
+      outer.reset();
+      assertEquals(0, outer.getTimes());
+      assertEquals(-1, outer.getMin());
+      assertEquals(-1f, outer.getPercentile(50));
+   }
+
+   public void testPrintData() throws Exception
+   {
+      Statistics statistics = new Statistics(null, "method(String,String)");
+      StringWriter sw = new StringWriter();
+      PrintWriter pw = new PrintWriter(sw);
+      statistics.printHeader(pw);
+      pw.flush();
+      assertEquals("method(String;String)-Min,method(String;String)-Max,method(String;String)-Total,"
+         + "method(String;String)-Avg,method(String;String)-Times,method(String;String)-P50,"
+         + "method(String;String)-P90,method(String;String)-P99,method(String;String)-P999", sw.toString());
+
+      statistics.begin();
+      Thread.sleep(10);
+      statistics.end();
+      String[] values = printData(statistics);
+      assertEquals(9, values.length);
+      assertEquals("1", values[4]);
+      assertTrue(Float.parseFloat(values[5]) >= 10f);
+
+      // the percentiles only cover the calls done since the last print
+      values = printData(statistics);
+      assertEquals("1", values[4]);
+      assertEquals("-1.0", values[5]);
+   }
+
+   private String[] printData(Statistics statistics)
+   {
+      StringWriter sw = new StringWriter();
+      PrintWriter pw = new PrintWriter(sw);
+      statistics.printData(pw);
+      pw.flush();
+      return sw.toString().split(",");
+   }
+
+   private void assertInRange(long expected, long value)
+   {
+      assertTrue(value + " is not close to " + expected, value >= expected && value <= expected + expected / 16);
+   }
+}
@@ -40,7 +40,6 @@ import org.w3c.dom.Document;
 import org.xml.sax.SAXException;
 
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.PrivilegedAction;
@@ -48,19 +47,30 @@ import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.jcr.ItemExistsException;
 import javax.jcr.Node;
 import javax.jcr.PathNotFoundException;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
+import javax.jcr.observation.Event;
+import javax.jcr.observation.EventIterator;
+import javax.jcr.observation.EventListener;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMResult;
+import javax.xml.transform.sax.SAXTransformerFactory;
+import javax.xml.transform.sax.TransformerHandler;
 
 /**
  * Created by The eXo Platform SAS <br>
@@ -77,7 +87,11 @@ import javax.xml.transform.TransformerException;
  *   <property name="repository2" value="workspace2"/>
  * </properties-param>
  * }
- * The implementation hides storage details from end user
+ * The implementation hides storage details from end user. If the <i>entry-cache-enabled</i> value param is
+ * set to <code>true</code>, the entries read with {@link #getEntry(SessionProvider, String)} are cached per
+ * repository and invalidated by an observation listener on the registry node. The invalidation is local to
+ * the node, the observation events not being triggered by the changes made on the other nodes of a cluster,
+ * so the cache is disabled by default and must only be enabled in standalone mode.
  * 
  * 
  * @author Gennady Azarenkov
@@ -109,6 +123,23 @@ public class RegistryService extends Registry implements Startable
 
    public final static String EXO_GROUPS = "exo:groups";
 
+   /**
+    * The name of the value param that allows to enable the cache of the entries, disabled by default since
+    * it is only invalidated by the changes made on the local node.
+    */
+   public final static String ENTRY_CACHE_ENABLED = "entry-cache-enabled";
+
+   /**
+    * The maximum amount of entries cached per repository.
+    */
+   private final static int MAX_CACHED_ENTRIES = 1024;
+
+   /**
+    * The types of events that invalidate the cached entries.
+    */
+   private final static int CHANGE_EVENTS = Event.NODE_ADDED | Event.NODE_REMOVED | Event.PROPERTY_ADDED
+      | Event.PROPERTY_REMOVED | Event.PROPERTY_CHANGED;
+
    protected final Map<String, String> regWorkspaces;
 
    private HashMap<String, String> appConfigurations = new HashMap<String, String>();
@@ -123,6 +154,16 @@ public class RegistryService extends Registry implements Startable
 
    protected boolean started = false;
 
+   /**
+    * Indicates whether the entries are cached.
+    */
+   protected final boolean entryCacheEnabled;
+
+   /**
+    * The cached entries of each repository.
+    */
+   private final Map<String, EntryCache> entryCaches = new ConcurrentHashMap<String, EntryCache>();
+
    /**
     * @param params
     *          accepts <i>locations</i> properties param and <i>mixin-names</i> values param.
@@ -155,6 +196,9 @@ public class RegistryService extends Registry implements Startable
       {
          this.mixinNames = new ArrayList<String>();
       }
+
+      ValueParam cacheEnabled = params.getValueParam(ENTRY_CACHE_ENABLED);
+      this.entryCacheEnabled = cacheEnabled != null && Boolean.valueOf(cacheEnabled.getValue());
    }
 
    /**
@@ -166,20 +210,69 @@ public class RegistryService extends Registry implements Startable
    {
 
       final String fullPath = "/" + EXO_REGISTRY + "/" + entryPath;
-      Session session = session(sessionProvider, repositoryService.getCurrentRepository());
-      try
+      ManageableRepository repository = repositoryService.getCurrentRepository();
+      Session session = session(sessionProvider, repository);
+      EntryCache cache = entryCaches.get(repository.getConfiguration().getName());
+      if (cache == null || session.hasPendingChanges())
       {
-         ByteArrayOutputStream out = new ByteArrayOutputStream();
-         session.exportDocumentView(fullPath, out, true, false);
-         return RegistryEntry.parse(out.toByteArray());
+         return new RegistryEntry(export(session, fullPath));
       }
-      catch (IOException e)
+
+      // the read permission is checked whether the entry is cached or not
+      if (!session.itemExists(fullPath))
       {
-         throw new RepositoryException("Can't export node " + fullPath + " to XML representation " + e);
+         throw new PathNotFoundException("No node exists at " + fullPath);
       }
-      catch (ParserConfigurationException e)
+      String key = session.getUserID() + ":" + entryPath;
+      Document document = cache.get(key);
+      if (document == null)
       {
-         throw new RepositoryException("Can't export node " + fullPath + " to XML representation " + e);
+         long generation = cache.getGeneration();
+         document = export(session, fullPath);
+         cache.put(key, fullPath, document, generation);
+      }
+      // the cached document must not be modified by the caller and the DOM is not thread safe
+      synchronized (document)
+      {
+         return new RegistryEntry((Document)document.cloneNode(true));
+      }
+   }
+
+   /**
+    * Builds the DOM of the given node directly from the events of the exporter.
+    */
+   private Document export(Session session, String fullPath) throws PathNotFoundException, RepositoryException
+   {
+      try
+      {
+         TransformerHandler handler =
+            SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<TransformerHandler>()
+            {
+               public TransformerHandler run() throws Exception
+               {
+                  return ((SAXTransformerFactory)TransformerFactory.newInstance()).newTransformerHandler();
+               }
+            });
+         DOMResult result = new DOMResult();
+         handler.setResult(result);
+         session.exportDocumentView(fullPath, handler, true, false);
+         return (Document)result.getNode();
+      }
+      catch (PrivilegedActionException e)
+      {
+         Throwable cause = e.getCause();
+         if (cause instanceof TransformerConfigurationException)
+         {
+            throw new RepositoryException("Can't export node " + fullPath + " to XML representation " + cause);
+         }
+         else if (cause instanceof RuntimeException)
+         {
+            throw (RuntimeException)cause;
+         }
+         else
+         {
+            throw new RuntimeException(cause);
+         }
       }
       catch (SAXException e)
       {
@@ -187,6 +280,19 @@ public class RegistryService extends Registry implements Startable
       }
    }
 
+   /**
+    * Removes from the cache of the current repository the entries affected by a change of the given item.
+    * The observation listener does the same, but the events may be delivered asynchronously.
+    */
+   private void invalidate(String fullPath) throws RepositoryException
+   {
+      EntryCache cache = entryCaches.get(repositoryService.getCurrentRepository().getConfiguration().getName());
+      if (cache != null)
+      {
+         cache.invalidate(fullPath);
+      }
+   }
+
    /**
     * {@inheritDoc}
     */
@@ -201,6 +307,7 @@ public class RegistryService extends Registry implements Startable
          checkGroup(sessionProvider, groupPath);
          session(sessionProvider, repositoryService.getCurrentRepository()).getWorkspace().importXML(fullPath,
             entry.getAsInputStream(), IMPORT_UUID_CREATE_NEW);
+         invalidate(fullPath + "/" + entry.getName());
       }
       catch (IOException ioe)
       {
@@ -228,6 +335,7 @@ public class RegistryService extends Registry implements Startable
       Node parent = node.getParent();
       node.remove();
       parent.save();
+      invalidate("/" + EXO_REGISTRY + "/" + entryPath);
    }
 
    /**
@@ -263,6 +371,7 @@ public class RegistryService extends Registry implements Startable
          // save recreated changes
          session.save();
          // }
+         invalidate("/" + entryRelPath);
       }
       catch (IOException ioe)
       {
@@ -307,6 +416,7 @@ public class RegistryService extends Registry implements Startable
          // save recreated changes
          session.save();
          // }
+         invalidate("/" + entryRelPath);
       }
       catch (IOException ioe)
       {
@@ -403,6 +513,13 @@ public class RegistryService extends Registry implements Startable
                }
             }
             initStorage(false);
+            if (entryCacheEnabled)
+            {
+               for (RepositoryEntry repConfiguration : repConfigurations())
+               {
+                  addEntryCache(repConfiguration.getName());
+               }
+            }
 
             started = true;
          }
@@ -423,6 +540,59 @@ public class RegistryService extends Registry implements Startable
     */
    public void stop()
    {
+      for (Map.Entry<String, EntryCache> e : entryCaches.entrySet())
+      {
+         removeEntryCache(e.getKey(), regWorkspaces.get(e.getKey()), e.getValue());
+      }
+      entryCaches.clear();
+   }
+
+   /**
+    * Unregisters the listener that invalidates the cache of the entries of the given repository.
+    */
+   private void removeEntryCache(String repositoryName, String workspaceName, EntryCache cache)
+   {
+      try
+      {
+         Session session = repositoryService.getRepository(repositoryName).getSystemSession(workspaceName);
+         try
+         {
+            session.getWorkspace().getObservationManager().removeEventListener(cache);
+         }
+         finally
+         {
+            session.logout();
+         }
+      }
+      catch (RepositoryException ex)
+      {
+         LOG.warn("Cannot remove the listener of the registry of the repository " + repositoryName, ex);
+      }
+      catch (RepositoryConfigurationException ex)
+      {
+         LOG.warn("Cannot remove the listener of the registry of the repository " + repositoryName, ex);
+      }
+   }
+
+   /**
+    * Creates the cache of the entries of the given repository and registers the listener that invalidates it.
+    */
+   private void addEntryCache(String repositoryName) throws RepositoryException, RepositoryConfigurationException
+   {
+      EntryCache cache = new EntryCache();
+      Session session =
+         repositoryService.getRepository(repositoryName).getSystemSession(regWorkspaces.get(repositoryName));
+      try
+      {
+         // the listener remains registered once the session is closed
+         session.getWorkspace().getObservationManager()
+            .addEventListener(cache, CHANGE_EVENTS, "/" + EXO_REGISTRY, true, null, null, false);
+      }
+      finally
+      {
+         session.logout();
+      }
+      entryCaches.put(repositoryName, cache);
    }
 
    /**
@@ -575,7 +745,13 @@ public class RegistryService extends Registry implements Startable
     */
    public void removeRegistryLocation(String repositoryName)
    {
-      regWorkspaces.remove(repositoryName);
+      String workspaceName = regWorkspaces.remove(repositoryName);
+      EntryCache cache = entryCaches.remove(repositoryName);
+      if (cache != null)
+      {
+         cache.clear();
+         removeEntryCache(repositoryName, workspaceName, cache);
+      }
    }
 
    /**
@@ -686,4 +862,129 @@ public class RegistryService extends Registry implements Startable
       }
    }
 
+   /**
+    * The parsed entries of a repository, the key of an entry is the id of the user who read it followed
+    * by its path since the exported content depends on the permissions of the user.
+    */
+   private static class EntryCache implements EventListener
+   {
+      /**
+       * The cached documents with their full path.
+       */
+      private final ConcurrentHashMap<String, CachedEntry> entries = new ConcurrentHashMap<String, CachedEntry>();
+
+      /**
+       * Incremented on each change, an entry read before a change is not cached.
+       */
+      private final AtomicLong generation = new AtomicLong();
+
+      long getGeneration()
+      {
+         return generation.get();
+      }
+
+      Document get(String key)
+      {
+         CachedEntry entry = entries.get(key);
+         return entry == null ? null : entry.document;
+      }
+
+      void put(String key, String fullPath, Document document, long expectedGeneration)
+      {
+         if (generation.get() != expectedGeneration)
+         {
+            return;
+         }
+         if (entries.size() >= MAX_CACHED_ENTRIES)
+         {
+            entries.clear();
+         }
+         entries.put(key, new CachedEntry(normalize(fullPath), document));
+         if (generation.get() != expectedGeneration)
+         {
+            // a change occurred in the meantime
+            entries.remove(key);
+         }
+      }
+
+      /**
+       * Removes the entries that contain the given item or that are contained by it.
+       */
+      void invalidate(String path)
+      {
+         generation.incrementAndGet();
+         path = normalize(path);
+         for (Iterator<CachedEntry> it = entries.values().iterator(); it.hasNext();)
+         {
+            String entryPath = it.next().path;
+            if (path.startsWith(entryPath) || entryPath.startsWith(path))
+            {
+               it.remove();
+            }
+         }
+      }
+
+      void clear()
+      {
+         generation.incrementAndGet();
+         entries.clear();
+      }
+
+      /**
+       * {@inheritDoc}
+       */
+      public void onEvent(EventIterator events)
+      {
+         while (events.hasNext())
+         {
+            try
+            {
+               invalidate(events.nextEvent().getPath());
+            }
+            catch (RepositoryException e)
+            {
+               clear();
+            }
+         }
+      }
+
+      /**
+       * Gives the path without duplicate nor trailing slashes followed by a slash, so that a path starts with the
+       * path of its ancestors.
+       */
+      private static String normalize(String path)
+      {
+         StringBuilder result = new StringBuilder(path.length() + 1);
+         for (int i = 0; i < path.length(); i++)
+         {
+            char c = path.charAt(i);
+            if (c != '/' || result.length() == 0 || result.charAt(result.length() - 1) != '/')
+            {
+               result.append(c);
+            }
+         }
+         if (result.length() == 0 || result.charAt(result.length() - 1) != '/')
+         {
+            result.append('/');
+         }
+         return result.toString();
+      }
+   }
+
+   /**
+    * A cached document.
+    */
+   private static class CachedEntry
+   {
+      final String path;
+
+      final Document document;
+
+      CachedEntry(String path, Document document)
+      {
+         this.path = path;
+         this.document = document;
+      }
+   }
+
 }
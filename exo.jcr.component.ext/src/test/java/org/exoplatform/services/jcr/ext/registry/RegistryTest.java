@@ -230,6 +230,46 @@ public class RegistryTest extends BaseStandaloneTest
       assertEquals("the_xvalue", entry.getDocument().getDocumentElement().getAttribute("name2"));
    }
 
+   public void testCachedEntry() throws Exception
+   {
+      RegistryService regService = (RegistryService)container.getComponentInstanceOfType(RegistryService.class);
+      SessionProvider sessionProvider = sessionProviderService.getSessionProvider(null);
+      String groupPath = RegistryService.EXO_USERS + "/testCachedEntry";
+
+      regService.createEntry(sessionProvider, groupPath,
+         RegistryEntry.parse("<category name1=\"first\"/>".getBytes()));
+      RegistryEntry entry = regService.getEntry(sessionProvider, groupPath + "/category");
+      assertEquals("first", entry.getDocument().getDocumentElement().getAttribute("name1"));
+
+      // the returned entries are copies
+      entry.getDocument().getDocumentElement().setAttribute("name1", "modified");
+      entry = regService.getEntry(sessionProvider, groupPath + "/category");
+      assertEquals("first", entry.getDocument().getDocumentElement().getAttribute("name1"));
+
+      regService.updateEntry(sessionProvider, groupPath,
+         RegistryEntry.parse("<category name1=\"second\"/>".getBytes()));
+      entry = regService.getEntry(sessionProvider, groupPath + "/category");
+      assertEquals("second", entry.getDocument().getDocumentElement().getAttribute("name1"));
+
+      // a change made without the registry service is seen thanks to the observation
+      Node node = regService.getRegistry(sessionProvider).getNode().getNode(groupPath + "/category");
+      node.setProperty("name1", "third");
+      node.save();
+      entry = regService.getEntry(sessionProvider, groupPath + "/category");
+      assertEquals("third", entry.getDocument().getDocumentElement().getAttribute("name1"));
+
+      regService.removeEntry(sessionProvider, groupPath + "/category");
+      try
+      {
+         regService.getEntry(sessionProvider, groupPath + "/category");
+         fail("PathNotFoundException should have been thrown");
+      }
+      catch (PathNotFoundException e)
+      {
+         // ok
+      }
+   }
+
    public void testCreateEntry() throws Exception
    {
       RegistryService regService = (RegistryService)container.getComponentInstanceOfType(RegistryService.class);
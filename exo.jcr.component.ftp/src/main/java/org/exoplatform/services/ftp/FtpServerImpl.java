@@ -35,19 +35,34 @@ import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.BindException;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.security.PrivilegedAction;
 import java.security.PrivilegedExceptionAction;
-import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.jcr.RepositoryException;
 
 /**
  * Created by The eXo Platform SAS Author : Vitaly Guly gavrik-vetal@ukr.net/mail.ru
  * 
+ * The control connections of all the clients are multiplexed by a single selector thread, the
+ * commands are executed by a pool of threads which only grows with the amount of clients
+ * having a command in progress.
+ * 
  * @version $Id: $
  */
 
@@ -64,11 +79,13 @@ public class FtpServerImpl implements FtpServer
 
    private FtpConfig configuration;
 
-   private FtpAcceptThread acceptThread;
+   private FtpSelectorThread selectorThread;
+
+   private ExecutorService commandExecutor;
 
    private FtpDataChannelManager dataChannelManager;
 
-   private ArrayList<FtpClientSession> clients = new ArrayList<FtpClientSession>();
+   private List<FtpClientSession> clients = new CopyOnWriteArrayList<FtpClientSession>();
 
    public FtpServerImpl(FtpConfig configuration, CommandService commandService, RepositoryService repositoryService)
       throws Exception
@@ -124,14 +141,14 @@ public class FtpServerImpl implements FtpServer
       {
          prepareCache();
 
-         ServerSocket serverSocket = null;
+         ServerSocketChannel serverChannel = ServerSocketChannel.open();
          int port = configuration.getCommandPort();
          // Trying to find a port available
-         while (serverSocket == null)
+         while (!serverChannel.socket().isBound())
          {
             try
             {
-               serverSocket = new ServerSocket(port);
+               serverChannel.socket().bind(new InetSocketAddress(port));
                LOG.info("FTPServer started on port '" + port + "'");
             }
             catch (BindException e)
@@ -139,11 +156,31 @@ public class FtpServerImpl implements FtpServer
                LOG.warn("Cannot launch the FTPServer on '" + (port++) + "', we try the next port number");
             }
          }
+         serverChannel.configureBlocking(false);
 
          dataChannelManager = new FtpDataChannelManagerImpl(configuration);
 
-         acceptThread = new FtpAcceptThread(this, serverSocket);
-         acceptThread.start();
+         final String threadName =
+            "Ftp Server"
+               + (configuration.getPortalContainer() == null ? "" : " " + configuration.getPortalContainer().getName());
+         commandExecutor = Executors.newCachedThreadPool(new ThreadFactory()
+         {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable r)
+            {
+               Thread thread = new Thread(r, threadName + " Command-" + count.incrementAndGet());
+               thread.setDaemon(true);
+               return thread;
+            }
+         });
+
+         Selector selector = Selector.open();
+         serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+         selectorThread = new FtpSelectorThread(this, selector, serverChannel);
+         selectorThread.setName(threadName);
+         selectorThread.start();
 
          return true;
       }
@@ -157,7 +194,19 @@ public class FtpServerImpl implements FtpServer
 
    public boolean stop()
    {
-      return false;
+      if (selectorThread == null)
+      {
+         return false;
+      }
+
+      selectorThread.disable();
+      for (FtpClientSession client : clients)
+      {
+         client.logout();
+      }
+      commandExecutor.shutdown();
+      selectorThread = null;
+      return true;
    }
 
    public FtpConfig getConfiguration()
@@ -206,28 +255,37 @@ public class FtpServerImpl implements FtpServer
       return clients.size();
    }
 
-   protected class FtpAcceptThread extends Thread
+   protected class FtpSelectorThread extends Thread
    {
 
       protected FtpServer ftpServer;
 
-      protected ServerSocket serverSocket;
+      protected Selector selector;
+
+      protected ServerSocketChannel serverChannel;
 
-      protected boolean enable = true;
+      protected volatile boolean enable = true;
 
-      public FtpAcceptThread(FtpServer ftpServer, ServerSocket serverSocket)
+      public FtpSelectorThread(FtpServer ftpServer, Selector selector, ServerSocketChannel serverChannel)
       {
          this.ftpServer = ftpServer;
-         this.serverSocket = serverSocket;
-         setName("Ftp Server"
-                  + (configuration.getPortalContainer() == null ? "" : " "
-                           + configuration.getPortalContainer().getName()));
+         this.selector = selector;
+         this.serverChannel = serverChannel;
          setDaemon(true);
       }
 
       public void disable()
       {
          enable = false;
+         try
+         {
+            selector.close();
+            serverChannel.close();
+         }
+         catch (IOException exc)
+         {
+            LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+         }
       }
 
       @Override
@@ -235,21 +293,44 @@ public class FtpServerImpl implements FtpServer
       {
          while (enable)
          {
-            Socket incoming = null;
             try
             {
-               incoming = SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<Socket>()
+               // wakes up at least every second to check the time outs
+               selector.select(1000);
+
+               Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+               while (keys.hasNext())
                {
-                  public Socket run() throws Exception
+                  SelectionKey key = keys.next();
+                  keys.remove();
+
+                  if (!key.isValid())
                   {
-                     return serverSocket.accept();
+                     continue;
                   }
-               });
 
-               FtpClientSession clientSession = new FtpClientSessionImpl(ftpServer, incoming);
-               clients.add(clientSession);
+                  if (key.isAcceptable())
+                  {
+                     accept();
+                  }
+                  else if (key.isReadable() && !((FtpClientSessionImpl)key.attachment()).readCommands())
+                  {
+                     key.cancel();
+                  }
+               }
 
-               LOG.info(">>> New client connected. Clients: " + clients.size());
+               long now = System.currentTimeMillis();
+               for (SelectionKey key : selector.keys())
+               {
+                  if (key.attachment() != null)
+                  {
+                     ((FtpClientSessionImpl)key.attachment()).checkTimeOut(now);
+                  }
+               }
+            }
+            catch (ClosedSelectorException exc)
+            {
+               break;
             }
             catch (Exception exc)
             {
@@ -258,6 +339,37 @@ public class FtpServerImpl implements FtpServer
          }
       }
 
+      protected void accept() throws Exception
+      {
+         SocketChannel incoming = SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<SocketChannel>()
+         {
+            public SocketChannel run() throws Exception
+            {
+               return serverChannel.accept();
+            }
+         });
+
+         if (incoming == null)
+         {
+            return;
+         }
+
+         try
+         {
+            incoming.configureBlocking(false);
+            FtpClientSessionImpl clientSession = new FtpClientSessionImpl(ftpServer, incoming, commandExecutor);
+            clients.add(clientSession);
+            incoming.register(selector, SelectionKey.OP_READ, clientSession);
+         }
+         catch (Exception exc)
+         {
+            incoming.close();
+            throw exc;
+         }
+
+         LOG.info(">>> New client connected. Clients: " + clients.size());
+      }
+
    }
 
 }
@@ -21,7 +21,9 @@ package org.exoplatform.services.ftp.client;
 import org.exoplatform.container.ExoContainer;
 import org.exoplatform.container.ExoContainerContext;
 import org.exoplatform.services.ftp.FtpConst;
+import org.exoplatform.services.ftp.FtpContext;
 import org.exoplatform.services.ftp.FtpServer;
+import org.exoplatform.services.ftp.command.FtpCommand;
 import org.exoplatform.services.ftp.data.FtpDataTransiver;
 import org.exoplatform.services.jcr.ext.common.SessionProvider;
 import org.exoplatform.services.log.ExoLogger;
@@ -38,7 +40,15 @@ import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.Socket;
 import java.net.SocketAddress;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
 
 import javax.jcr.Node;
 import javax.jcr.RepositoryException;
@@ -48,6 +58,11 @@ import javax.security.auth.login.LoginException;
 /**
  * Created by The eXo Platform SAS Author : Vitaly Guly gavrik-vetal@ukr.net/mail.ru
  * 
+ * The control connection is a non-blocking channel owned by the selector of the server which
+ * calls {@link #readCommands()} when some data is available. The received commands are then
+ * executed one after the other by a thread of the command executor, so an idle client does
+ * not hold any thread.
+ * 
  * @version $Id: $
  */
 
@@ -56,20 +71,54 @@ public class FtpClientSessionImpl implements FtpClientSession
 
    private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.ftp.FtpClientSessionImpl");
 
+   /**
+    * The maximum length of a command line
+    */
+   private static final int MAX_COMMAND_LENGTH = 4 * 1024;
+
    private FtpServer ftpServer;
 
-   FtpClientCommandThread commandThread;
+   private FtpDataTransiver transiver = null;
 
-   FtpClientTimeOutThread timeOutThread;
+   private SocketChannel clientChannel;
 
-   private FtpDataTransiver transiver = null;
+   private Executor commandExecutor;
+
+   private final ByteBuffer readBuffer = ByteBuffer.allocate(MAX_COMMAND_LENGTH);
+
+   private final byte[] commandLine = new byte[MAX_COMMAND_LENGTH];
+
+   private int commandLength;
+
+   /**
+    * The commands received and not executed yet, also used as lock for {@link #processing}
+    * and {@link #disconnected}
+    */
+   private final LinkedList<String> commands = new LinkedList<String>();
+
+   private boolean processing;
 
-   private Socket clientSocket;
+   private boolean disconnected;
 
-   // private PrintStream outPrintStream;
+   private final Runnable commandProcessor = new CommandProcessor();
+
+   /**
+    * The thread currently executing a command of this client if any
+    */
+   private volatile Thread commandThread;
+
+   private final Object writeLock = new Object();
+
+   private final int timeOutValue;
+
+   private volatile long lastActivity = System.currentTimeMillis();
+
+   private volatile boolean timedOut;
 
    private SessionProvider sessionFactory;
 
+   private ConversationState conversationState;
+
    private ArrayList<String> path = new ArrayList<String>();
 
    private String serverIp;
@@ -88,13 +137,21 @@ public class FtpClientSessionImpl implements FtpClientSession
 
    private String userId;
 
-   public FtpClientSessionImpl(FtpServer ftpServer, Socket clientSocket) throws Exception
+   /**
+    * @param ftpServer the server
+    * @param clientChannel the control connection of the client, in non-blocking mode
+    * @param commandExecutor the executor of the commands of the client
+    */
+   public FtpClientSessionImpl(FtpServer ftpServer, SocketChannel clientChannel, Executor commandExecutor)
+      throws Exception
    {
       this.ftpServer = ftpServer;
-      this.clientSocket = clientSocket;
-      // outPrintStream = new PrintStream(clientSocket.getOutputStream());
+      this.clientChannel = clientChannel;
+      this.commandExecutor = commandExecutor;
+      this.timeOutValue =
+         ftpServer.getConfiguration().isNeedTimeOut() ? ftpServer.getConfiguration().getTimeOut() : 0;
 
-      SocketAddress addr = clientSocket.getLocalSocketAddress();
+      SocketAddress addr = clientChannel.socket().getLocalSocketAddress();
       String serverAddr = addr.toString();
       if (serverAddr.startsWith("/"))
       {
@@ -104,39 +161,204 @@ public class FtpClientSessionImpl implements FtpClientSession
       serverIp = serverLocations[0];
 
       welcomeClient();
+   }
+
+   public Socket getClientSocket()
+   {
+      return clientChannel.socket();
+   }
+
+   /**
+    * Reads the data available on the control connection and schedules the execution of the
+    * complete commands. Called by the selector thread of the server only.
+    *
+    * @return <code>false</code> if the client closed the connection, <code>true</code> otherwise
+    */
+   public boolean readCommands()
+   {
+      LinkedList<String> received = new LinkedList<String>();
+      boolean open = true;
+      try
+      {
+         readBuffer.clear();
+         int read = clientChannel.read(readBuffer);
+         if (read < 0)
+         {
+            open = false;
+         }
+         else
+         {
+            refreshTimeOut();
+            readBuffer.flip();
+            open = parseCommands(received);
+         }
+      }
+      catch (IOException exc)
+      {
+         open = false;
+      }
+      catch (Exception exc)
+      {
+         LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+         open = false;
+      }
 
-      commandThread = new FtpClientCommandThread(this);
-      commandThread.start();
+      synchronized (commands)
+      {
+         commands.addAll(received);
+         if (!open)
+         {
+            disconnected = true;
+         }
+         if (!processing && (disconnected || !commands.isEmpty()))
+         {
+            processing = true;
+            commandExecutor.execute(commandProcessor);
+         }
+      }
+      return open;
+   }
 
-      if (getFtpServer().getConfiguration().isNeedTimeOut())
+   /**
+    * Splits the content of the read buffer into command lines.
+    *
+    * @return <code>false</code> if a command line is too long
+    */
+   private boolean parseCommands(LinkedList<String> received) throws UnsupportedEncodingException
+   {
+      while (readBuffer.hasRemaining())
       {
-         timeOutThread = new FtpClientTimeOutThread(this);
-         timeOutThread.start();
+         if (commandLength == commandLine.length)
+         {
+            LOG.info("Command line too long, the client is disconnected.");
+            return false;
+         }
+
+         byte curByte = readBuffer.get();
+         commandLine[commandLength++] = curByte;
+
+         if (curByte == '\n' && commandLength > 1 && commandLine[commandLength - 2] == '\r')
+         {
+            String encoding = ftpServer.getConfiguration().getClientSideEncoding();
+            String readyCommand = new String(commandLine, 0, commandLength - 2, encoding);
+            commandLength = 0;
+
+            if (LOG.isDebugEnabled())
+            {
+               LOG.debug("FTP_CMD:[" + readyCommand + "]");
+            }
+
+            received.add(readyCommand);
+         }
       }
+      return true;
    }
 
-   public Socket getClientSocket()
+   /**
+    * Disconnects the client if it has been inactive for too long. Called by the selector thread
+    * of the server only.
+    *
+    * @param now the current time in milliseconds
+    */
+   public void checkTimeOut(long now)
    {
-      return clientSocket;
+      if (timeOutValue <= 0 || timedOut || isLoggedOut || now - lastActivity < timeOutValue * 1000L)
+      {
+         return;
+      }
+
+      timedOut = true;
+      commandExecutor.execute(new Runnable()
+      {
+         public void run()
+         {
+            ExoContainerContext.setCurrentContainer(getContainer());
+            try
+            {
+               reply(String.format(FtpConst.Replyes.REPLY_421, timeOutValue));
+            }
+            catch (IOException ioexc)
+            {
+               LOG.info("Unhandled exception. " + ioexc.getMessage(), ioexc);
+            }
+            try
+            {
+               logout();
+            }
+            finally
+            {
+               ExoContainerContext.setCurrentContainer(null);
+            }
+         }
+      });
+   }
+
+   private ExoContainer getContainer()
+   {
+      ExoContainer container = ftpServer.getConfiguration().getPortalContainer();
+      if (container == null)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("No Portal Container found.");
+         }
+         container = ExoContainerContext.getTopContainer();
+      }
+      return container;
    }
 
    public void reply(String replyString) throws IOException
    {
       String encodingType = ftpServer.getConfiguration().getClientSideEncoding();
+      byte[] data;
       try
       {
-         byte[] data = replyString.getBytes(encodingType);
-         // outPrintStream.println(new String(, encodingType));
-         clientSocket.getOutputStream().write(data);
+         data = replyString.getBytes(encodingType);
       }
       catch (UnsupportedEncodingException eexc)
       {
          LOG.info("Unsupported encoding exception. See for CLIENT-SIDE-ENCODING parameter. " + eexc.getMessage(), eexc);
-         byte[] data = replyString.getBytes();
-         clientSocket.getOutputStream().write(data);
-         // outPrintStream.println(replyString);
+         data = replyString.getBytes();
+      }
+
+      ByteBuffer buffer = ByteBuffer.allocate(data.length + 2);
+      buffer.put(data).put((byte)'\r').put((byte)'\n');
+      buffer.flip();
+      write(buffer);
+   }
+
+   /**
+    * Writes the whole buffer to the non-blocking control connection, waiting for the
+    * connection to be writable when the socket buffer is full.
+    */
+   private void write(ByteBuffer buffer) throws IOException
+   {
+      synchronized (writeLock)
+      {
+         Selector selector = null;
+         try
+         {
+            while (buffer.hasRemaining())
+            {
+               if (clientChannel.write(buffer) == 0)
+               {
+                  if (selector == null)
+                  {
+                     selector = Selector.open();
+                     clientChannel.register(selector, SelectionKey.OP_WRITE);
+                  }
+                  selector.select(1000);
+               }
+            }
+         }
+         finally
+         {
+            if (selector != null)
+            {
+               selector.close();
+            }
+         }
       }
-      clientSocket.getOutputStream().write("\r\n".getBytes());
    }
 
    public FtpServer getFtpServer()
@@ -152,27 +374,30 @@ public class FtpClientSessionImpl implements FtpClientSession
       }
    }
 
-   private boolean isLoggedOut = false;
+   private volatile boolean isLoggedOut = false;
 
    public void logout()
    {
-      if (isLoggedOut)
+      synchronized (this)
       {
-         return;
+         if (isLoggedOut)
+         {
+            return;
+         }
+         isLoggedOut = true;
       }
-      isLoggedOut = true;
 
-      commandThread.interrupt();
-      if (timeOutThread != null)
+      Thread thread = commandThread;
+      if (thread != null && thread != Thread.currentThread())
       {
-         timeOutThread.interrupt();
+         thread.interrupt();
       }
 
       closeDataTransiver();
 
       try
       {
-         clientSocket.close();
+         clientChannel.close();
       }
       catch (IOException exc)
       {
@@ -211,6 +436,7 @@ public class FtpClientSessionImpl implements FtpClientSession
 
       ConversationState state = getConversationState();
       ConversationState.setCurrent(state);
+      this.conversationState = state;
       this.sessionFactory = new SessionProvider(state);
 
       logged = true;
@@ -383,10 +609,7 @@ public class FtpClientSessionImpl implements FtpClientSession
 
    public void refreshTimeOut()
    {
-      if (timeOutThread != null)
-      {
-         timeOutThread.refreshTimeOut();
-      }
+      lastActivity = System.currentTimeMillis();
    }
 
    private ConversationState getConversationState() throws Exception
@@ -428,4 +651,120 @@ public class FtpClientSessionImpl implements FtpClientSession
          identityRegistry.unregister(this.userId);
       }
    }
+
+   /**
+    * Executes the pending commands of the client one after the other and logs the client out
+    * once it is disconnected.
+    */
+   private class CommandProcessor implements Runnable
+   {
+
+      public void run()
+      {
+         ExoContainerContext.setCurrentContainer(getContainer());
+         ConversationState.setCurrent(conversationState);
+         commandThread = Thread.currentThread();
+         try
+         {
+            while (true)
+            {
+               String command;
+               boolean logout;
+               synchronized (commands)
+               {
+                  command = commands.poll();
+                  logout = command == null && disconnected;
+                  if (command == null && !logout)
+                  {
+                     processing = false;
+                     return;
+                  }
+               }
+
+               if (logout || isLoggedOut || !execute(command))
+               {
+                  synchronized (commands)
+                  {
+                     commands.clear();
+                     disconnected = true;
+                  }
+                  try
+                  {
+                     logout();
+                  }
+                  catch (Exception exc)
+                  {
+                     LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+                  }
+                  return;
+               }
+            }
+         }
+         finally
+         {
+            commandThread = null;
+            Thread.interrupted();
+            ConversationState.setCurrent(null);
+            ExoContainerContext.setCurrentContainer(null);
+         }
+      }
+
+      /**
+       * @return <code>false</code> if the client has to be disconnected
+       */
+      private boolean execute(String command)
+      {
+         if ("".equals(command))
+         {
+            return true;
+         }
+
+         try
+         {
+            String[] comms = command.split(" ");
+
+            FtpCommand curCommand = ftpServer.getCommand(comms[0].toUpperCase());
+
+            if (curCommand != null)
+            {
+               if (comms.length > 1)
+               {
+                  for (int i = 2; i < comms.length; i++)
+                  {
+                     if ("".equals(comms[i]))
+                     {
+                        comms[1] += " "; //NOSONAR
+                     }
+                     else
+                     {
+                        comms[1] += " " + comms[i]; //NOSONAR
+                     }
+                  }
+               }
+
+               FtpContext ftpContext = new FtpContext(FtpClientSessionImpl.this, comms);
+               curCommand.execute(ftpContext);
+            }
+            else
+            {
+               reply(String.format(FtpConst.Replyes.REPLY_500, comms[0].toUpperCase()));
+               setPrevCommand(null);
+            }
+            return true;
+         }
+         catch (SocketException exc)
+         {
+            return false;
+         }
+         catch (ClosedChannelException exc)
+         {
+            return false;
+         }
+         catch (Exception exc)
+         {
+            LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+            return false;
+         }
+      }
+   }
 }
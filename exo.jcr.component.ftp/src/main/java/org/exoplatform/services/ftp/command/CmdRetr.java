@@ -22,9 +22,11 @@ import org.exoplatform.services.ftp.FtpConst;
 import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 
 import javax.jcr.NoSuchWorkspaceException;
@@ -97,9 +99,19 @@ public class CmdRetr extends FtpCommandImpl
                return;
             }
 
-            for (int i = 0; i < seekPos; i++)
+            long skipped = 0;
+            while (skipped < seekPos)
             {
-               inStream.read();
+               long curSkipped = inStream.skip(seekPos - skipped);
+               if (curSkipped <= 0)
+               {
+                  if (inStream.read() < 0)
+                  {
+                     break;
+                  }
+                  curSkipped = 1;
+               }
+               skipped += curSkipped;
             }
          }
 
@@ -114,19 +126,27 @@ public class CmdRetr extends FtpCommandImpl
 
          try
          {
-            byte[] buffer = new byte[BUFFER_SIZE];
-            OutputStream outStream = clientSession().getDataTransiver().getOutputStream();
-
-            while (true)
+            if (inStream instanceof FileInputStream)
             {
-               int readed = inStream.read(buffer, 0, BUFFER_SIZE);
-               if (readed < 0)
+               // the value is stored into a file, it can be sent without copying it through the heap
+               FileChannel fileChannel = ((FileInputStream)inStream).getChannel();
+               clientSession().getDataTransiver().transferFrom(fileChannel, fileChannel.position());
+            }
+            else
+            {
+               byte[] buffer = new byte[BUFFER_SIZE];
+               OutputStream outStream = clientSession().getDataTransiver().getOutputStream();
+
+               while (true)
                {
-                  break;
+                  int readed = inStream.read(buffer, 0, BUFFER_SIZE);
+                  if (readed < 0)
+                  {
+                     break;
+                  }
+                  outStream.write(buffer, 0, readed);
                }
-               outStream.write(buffer, 0, readed);
             }
-
          }
          catch (Exception exc)
          {
@@ -136,6 +156,7 @@ public class CmdRetr extends FtpCommandImpl
          finally
          {
             clientSession().closeDataTransiver();
+            inStream.close();
          }
          reply(FtpConst.Replyes.REPLY_226);
          return;
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.ftp.data;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Token bucket used to limit the bandwidth of a data connection. The bucket is refilled
+ * continuously at the configured rate and can hold up to one tenth of a second of traffic,
+ * so the transfer is smoothed instead of being sent by bursts followed by a fixed pause.
+ *
+ * @version $Id$
+ */
+public class FtpBandwidthLimiter
+{
+
+   private static final long NANOS_PER_SECOND = 1000000000L;
+
+   private final long bytesPerSec;
+
+   private final int burstSize;
+
+   private double tokens;
+
+   private long lastRefill;
+
+   /**
+    * @param bytesPerSec the maximum amount of bytes per second allowed
+    */
+   public FtpBandwidthLimiter(int bytesPerSec)
+   {
+      if (bytesPerSec <= 0)
+      {
+         throw new IllegalArgumentException("The bandwidth must be positive: " + bytesPerSec);
+      }
+      this.bytesPerSec = bytesPerSec;
+      this.burstSize = Math.max(1, bytesPerSec / 10);
+      this.tokens = burstSize;
+      this.lastRefill = System.nanoTime();
+   }
+
+   /**
+    * @return the maximum amount of bytes that can be acquired at once
+    */
+   public int getBurstSize()
+   {
+      return burstSize;
+   }
+
+   /**
+    * Waits until the given amount of bytes can be sent or received.
+    *
+    * @param size the amount of bytes to acquire, it cannot exceed {@link #getBurstSize()}
+    * @throws InterruptedIOException if the current thread is interrupted while waiting
+    */
+   public synchronized void acquire(int size) throws InterruptedIOException
+   {
+      if (size > burstSize)
+      {
+         throw new IllegalArgumentException("Cannot acquire " + size + " bytes at once, the limit is " + burstSize);
+      }
+
+      refill();
+      while (tokens < size)
+      {
+         long waitNanos = (long)Math.ceil((size - tokens) * NANOS_PER_SECOND / bytesPerSec);
+         try
+         {
+            Thread.sleep(waitNanos / 1000000, (int)(waitNanos % 1000000));
+         }
+         catch (InterruptedException e)
+         {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the bandwidth");
+         }
+         refill();
+      }
+      tokens -= size;
+   }
+
+   private void refill()
+   {
+      long now = System.nanoTime();
+      tokens = Math.min(burstSize, tokens + (double)(now - lastRefill) * bytesPerSec / NANOS_PER_SECOND);
+      lastRefill = now;
+   }
+}
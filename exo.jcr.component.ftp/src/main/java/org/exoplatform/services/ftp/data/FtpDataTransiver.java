@@ -21,6 +21,7 @@ package org.exoplatform.services.ftp.data;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 
 /**
  * Created by The eXo Platform SAS Author : Vitaly Guly gavrik-vetal@ukr.net/mail.ru
@@ -41,4 +42,15 @@ public interface FtpDataTransiver
 
    OutputStream getOutputStream() throws IOException;
 
+   /**
+    * Sends the content of the given file starting from the given position directly to the
+    * data connection, without copying it through the heap when the platform supports it.
+    *
+    * @param source the file to send
+    * @param position the position in the file of the first byte to send
+    * @return the amount of bytes sent
+    * @throws IOException if the file could not be sent
+    */
+   long transferFrom(FileChannel source, long position) throws IOException;
+
 }
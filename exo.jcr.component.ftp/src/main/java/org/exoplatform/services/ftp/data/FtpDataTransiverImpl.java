@@ -28,14 +28,18 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.InetSocketAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
-import java.net.SocketAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.security.PrivilegedExceptionAction;
 
 /**
  * Created by The eXo Platform SAS Author : Vitaly Guly gavrik-vetal@ukr.net/mail.ru
  * 
+ * The data connection is established lazily by {@link #isConnected()} thanks to non-blocking
+ * channels, so no thread is needed to wait for the client. Once established, the channel is
+ * switched to blocking mode to be used by the commands.
+ * 
  * @version $Id: $
  */
 
@@ -44,21 +48,27 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
 
    private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.ftp.FtpDataTransiverImpl");
 
+   /**
+    * The maximum amount of bytes sent at once by {@link #transferFrom(FileChannel, long)} when
+    * no bandwidth limit is set, the time out of the client is refreshed between two chunks.
+    */
+   private static final int TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
    private FtpClientSession clientSession;
 
    private FtpDataChannelManager dataChannelManager;
 
    private FtpConfig configuration;
 
-   private String host;
-
    private int dataPort = 0;
 
-   private ServerSocket serverSocket;
+   private ServerSocketChannel serverChannel;
+
+   private SocketChannel dataChannel;
 
-   private Socket dataSocket = null;
+   private boolean connected = false;
 
-   private Thread connectionThread;
+   private boolean failed = false;
 
    private boolean isActive = false;
 
@@ -74,9 +84,17 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
       this.dataChannelManager = dataChannelManager;
       this.dataPort = dataPort;
 
-      serverSocket = new ServerSocket(dataPort);
-      connectionThread = new AcceptDataConnect();
-      connectionThread.start();
+      serverChannel = ServerSocketChannel.open();
+      try
+      {
+         serverChannel.socket().bind(new InetSocketAddress(dataPort));
+         serverChannel.configureBlocking(false);
+      }
+      catch (IOException e)
+      {
+         serverChannel.close();
+         throw e;
+      }
    }
 
    public FtpDataTransiverImpl(String host, int dataPort, FtpConfig configuration, FtpClientSession clientSession)
@@ -84,13 +102,21 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
    {
       this.clientSession = clientSession;
       this.configuration = configuration;
-      this.host = host;
       this.dataPort = dataPort;
 
       isActive = true;
 
-      connectionThread = new ConnectDataPort();
-      connectionThread.start();
+      dataChannel = SocketChannel.open();
+      try
+      {
+         dataChannel.configureBlocking(false);
+         dataChannel.connect(new InetSocketAddress(host, dataPort));
+      }
+      catch (IOException e)
+      {
+         dataChannel.close();
+         throw e;
+      }
    }
 
    public int getDataPort()
@@ -98,34 +124,58 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
       return dataPort;
    }
 
-   public boolean isConnected()
+   public synchronized boolean isConnected()
    {
-      if (dataSocket == null)
+      if (connected || failed)
       {
-         return false;
+         return connected;
       }
-      return dataSocket.isConnected();
-   }
 
-   public void close()
-   {
-      if (connectionThread.isAlive())
+      try
       {
-         try
+         if (isActive)
          {
-            connectionThread.stop();
+            if (!dataChannel.finishConnect())
+            {
+               return false;
+            }
          }
-         catch (Exception exc)
+         else
          {
-            LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+            dataChannel = SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<SocketChannel>()
+            {
+               public SocketChannel run() throws Exception
+               {
+                  return serverChannel.accept();
+               }
+            });
+
+            if (dataChannel == null)
+            {
+               return false;
+            }
+            serverChannel.close();
          }
+
+         dataChannel.configureBlocking(true);
+         connected = true;
       }
+      catch (Exception exc)
+      {
+         failed = true;
+         LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+      }
+
+      return connected;
+   }
 
-      if (serverSocket != null)
+   public synchronized void close()
+   {
+      if (serverChannel != null)
       {
          try
          {
-            serverSocket.close();
+            serverChannel.close();
          }
          catch (IOException ioexc)
          {
@@ -140,9 +190,9 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
       }
       try
       {
-         if (dataSocket != null && dataSocket.isConnected())
+         if (dataChannel != null)
          {
-            dataSocket.close();
+            dataChannel.close();
          }
       }
       catch (Exception exc)
@@ -159,11 +209,11 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
 
          if (configuration.isNeedTimeOut())
          {
-            nativeOutputStream = new FtpTimeStampedOutputStream(dataSocket.getOutputStream(), clientSession);
+            nativeOutputStream = new FtpTimeStampedOutputStream(dataChannel.socket().getOutputStream(), clientSession);
          }
          else
          {
-            nativeOutputStream = dataSocket.getOutputStream();
+            nativeOutputStream = dataChannel.socket().getOutputStream();
          }
 
          if (configuration.isNeedSlowDownLoad())
@@ -186,11 +236,11 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
 
          if (configuration.isNeedTimeOut())
          {
-            nativeInputStream = new FtpTimeStampedInputStream(dataSocket.getInputStream(), clientSession);
+            nativeInputStream = new FtpTimeStampedInputStream(dataChannel.socket().getInputStream(), clientSession);
          }
          else
          {
-            nativeInputStream = dataSocket.getInputStream();
+            nativeInputStream = dataChannel.socket().getInputStream();
          }
 
          if (configuration.isNeedSlowUpLoad())
@@ -205,68 +255,36 @@ public class FtpDataTransiverImpl implements FtpDataTransiver
       return dataInputStream;
    }
 
-   protected class AcceptDataConnect extends Thread
+   public long transferFrom(FileChannel source, long position) throws IOException
    {
+      FtpBandwidthLimiter limiter =
+         configuration.isNeedSlowDownLoad() ? new FtpBandwidthLimiter(configuration.getDownLoadSpeed()) : null;
+      int chunkSize = limiter == null ? TRANSFER_CHUNK_SIZE : limiter.getBurstSize();
 
-      public AcceptDataConnect()
+      long size = source.size();
+      long sent = 0;
+      while (position + sent < size)
       {
-         super("AcceptDataConnect"
-                  + (configuration.getPortalContainer() == null ? "" : " "
-                           + configuration.getPortalContainer().getName()));
-      }
-      
-      protected Log acceptLog = ExoLogger.getLogger("exo.jcr.component.ftp.AcceptDataConnect");
-
-      @Override
-      public void run()
-      {
-         try
-         {
-            dataSocket = SecurityHelper.doPrivilegedExceptionAction(new PrivilegedExceptionAction<Socket>()
-            {
-               public Socket run() throws Exception
-               {
-                  return serverSocket.accept();
-               }
-            });
-
-            serverSocket.close();
-         }
-         catch (Exception exc)
+         int count = (int)Math.min(chunkSize, size - position - sent);
+         if (limiter != null)
          {
-            LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+            limiter.acquire(count);
          }
-      }
-
-   }
-
-   protected class ConnectDataPort extends Thread
-   {
-
-      public ConnectDataPort()
-      {
-         super("ConnectDataPort"
-                  + (configuration.getPortalContainer() == null ? "" : " "
-                           + configuration.getPortalContainer().getName()));
-      }
-
-      protected Log connectLog = ExoLogger.getLogger("exo.jcr.component.ftp.ConnectDataPort");
 
-      @Override
-      public void run()
-      {
-         try
+         long transferred = source.transferTo(position + sent, count, dataChannel);
+         if (transferred <= 0)
          {
-            dataSocket = new Socket();
-            SocketAddress sockAddr = new InetSocketAddress(host, dataPort);
-            dataSocket.connect(sockAddr);
+            // the file has been truncated meanwhile
+            break;
          }
-         catch (Exception exc)
+         sent += transferred;
+
+         if (configuration.isNeedTimeOut())
          {
-            LOG.info("Unhandled exception. " + exc.getMessage(), exc);
+            clientSession.refreshTimeOut();
          }
       }
-
+      return sent;
    }
 
 }
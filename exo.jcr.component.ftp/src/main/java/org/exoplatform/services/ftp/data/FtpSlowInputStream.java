@@ -18,10 +18,6 @@
  */
 package org.exoplatform.services.ftp.data;
 
-import org.exoplatform.services.ftp.FtpConst;
-import org.exoplatform.services.log.ExoLogger;
-import org.exoplatform.services.log.Log;
-
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -34,43 +30,22 @@ import java.io.InputStream;
 public class FtpSlowInputStream extends InputStream
 {
 
-   private static final Log LOG = ExoLogger.getLogger(FtpConst.FTP_PREFIX + "FtpSlowInputStream");
-
    private InputStream nativeInputStream;
 
-   private int blockSize = 0;
-
-   private int readed = 0;
+   private FtpBandwidthLimiter limiter;
 
    public FtpSlowInputStream(InputStream nativeInputStream, int bytesPerSec)
    {
       this.nativeInputStream = nativeInputStream;
-      blockSize = bytesPerSec / 10;
-   }
-
-   protected void tryWaiting()
-   {
-      if (readed >= blockSize)
-      {
-         try
-         {
-            Thread.sleep(100);
-         }
-         catch (Exception exc)
-         {
-            LOG.info("Unhandled exception until Thread.sleep(...). " + exc.getMessage(), exc);
-         }
-         readed = 0;
-      }
+      this.limiter = new FtpBandwidthLimiter(bytesPerSec);
    }
 
    public int read() throws IOException
    {
-      tryWaiting();
       int curReaded = nativeInputStream.read();
       if (curReaded >= 0)
       {
-         readed++;
+         limiter.acquire(1);
       }
       return curReaded;
    }
@@ -82,17 +57,12 @@ public class FtpSlowInputStream extends InputStream
 
    public int read(byte[] buffer, int offset, int size) throws IOException
    {
-      tryWaiting();
-
-      int curBlockSize = blockSize - readed;
-      if (curBlockSize > size)
+      int curReaded = nativeInputStream.read(buffer, offset, Math.min(size, limiter.getBurstSize()));
+      if (curReaded > 0)
       {
-         curBlockSize = size;
+         // the received bytes are charged afterwards since we cannot know in advance how many will come
+         limiter.acquire(curReaded);
       }
-
-      int curReaded = nativeInputStream.read(buffer, offset, curBlockSize);
-
-      readed += curReaded;
       return curReaded;
    }
 
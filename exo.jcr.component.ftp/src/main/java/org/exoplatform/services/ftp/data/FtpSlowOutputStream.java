@@ -18,9 +18,6 @@
  */
 package org.exoplatform.services.ftp.data;
 
-import org.exoplatform.services.log.ExoLogger;
-import org.exoplatform.services.log.Log;
-
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -33,41 +30,20 @@ import java.io.OutputStream;
 public class FtpSlowOutputStream extends OutputStream
 {
 
-   private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.ftp.FtpSlowOutputStream");
-
    private OutputStream nativeOutputStream;
 
-   private int blockSize;
-
-   private int writed = 0;
+   private FtpBandwidthLimiter limiter;
 
    public FtpSlowOutputStream(OutputStream nativeOutputStream, int bytesPerSec)
    {
       this.nativeOutputStream = nativeOutputStream;
-      blockSize = bytesPerSec / 10;
-   }
-
-   protected void tryWaiting()
-   {
-      if (writed >= blockSize)
-      {
-         try
-         {
-            Thread.sleep(100);
-         }
-         catch (Exception exc)
-         {
-            LOG.info("Unhandled exception. " + exc.getMessage(), exc);
-         }
-         writed = 0;
-      }
+      this.limiter = new FtpBandwidthLimiter(bytesPerSec);
    }
 
    public void write(int dataByte) throws IOException
    {
-      tryWaiting();
+      limiter.acquire(1);
       nativeOutputStream.write(dataByte);
-      writed++;
    }
 
    public void write(byte[] dataBytes) throws IOException
@@ -82,18 +58,12 @@ public class FtpSlowOutputStream extends OutputStream
 
       while (allWrited < len)
       {
-         tryWaiting();
-
-         int curBlockSize = blockSize - writed;
-         if ((curBlockSize + allWrited) > len)
-         {
-            curBlockSize = len - allWrited;
-         }
+         int curBlockSize = Math.min(limiter.getBurstSize(), len - allWrited);
 
+         limiter.acquire(curBlockSize);
          nativeOutputStream.write(dataBytes, curOffset, curBlockSize);
 
          allWrited += curBlockSize;
-         writed += curBlockSize;
          curOffset += curBlockSize;
       }
    }
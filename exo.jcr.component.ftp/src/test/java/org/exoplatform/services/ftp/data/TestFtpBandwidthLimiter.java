@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.ftp.data;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * @version $Id$
+ */
+public class TestFtpBandwidthLimiter extends TestCase
+{
+
+   public void testBurst() throws Exception
+   {
+      FtpBandwidthLimiter limiter = new FtpBandwidthLimiter(100000);
+      assertEquals(10000, limiter.getBurstSize());
+
+      long start = System.currentTimeMillis();
+      limiter.acquire(limiter.getBurstSize());
+      assertTrue("A full bucket must not wait", System.currentTimeMillis() - start < 50);
+
+      try
+      {
+         limiter.acquire(limiter.getBurstSize() + 1);
+         fail("An IllegalArgumentException was expected");
+      }
+      catch (IllegalArgumentException e)
+      {
+         // expected
+      }
+   }
+
+   public void testRate() throws Exception
+   {
+      FtpBandwidthLimiter limiter = new FtpBandwidthLimiter(100000);
+
+      long start = System.nanoTime();
+      for (int i = 0; i < 50; i++)
+      {
+         limiter.acquire(1000);
+      }
+      long elapsed = (System.nanoTime() - start) / 1000000;
+
+      // the first 10000 bytes are available at once, the 40000 others need 400 ms
+      assertTrue("Too fast: " + elapsed + " ms", elapsed >= 390);
+   }
+
+   public void testSlowStreams() throws Exception
+   {
+      byte[] data = new byte[30000];
+      Arrays.fill(data, (byte)7);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      OutputStream slowOut = new FtpSlowOutputStream(out, 100000);
+      long start = System.nanoTime();
+      slowOut.write(data);
+      long elapsed = (System.nanoTime() - start) / 1000000;
+      assertTrue("Too fast: " + elapsed + " ms", elapsed >= 190);
+      assertTrue(Arrays.equals(data, out.toByteArray()));
+
+      InputStream slowIn = new FtpSlowInputStream(new ByteArrayInputStream(data), 100000);
+      byte[] buffer = new byte[data.length];
+      int total = 0;
+      int read;
+      start = System.nanoTime();
+      while ((read = slowIn.read(buffer, total, buffer.length - total)) > 0)
+      {
+         total += read;
+      }
+      elapsed = (System.nanoTime() - start) / 1000000;
+      assertEquals(data.length, total);
+      assertTrue("Too fast: " + elapsed + " ms", elapsed >= 190);
+      assertTrue(Arrays.equals(data, buffer));
+   }
+}
@@ -29,6 +29,7 @@ import org.exoplatform.services.jcr.webdav.resource.ResourceUtil;
 import org.exoplatform.services.jcr.webdav.resource.VersionResource;
 import org.exoplatform.services.jcr.webdav.resource.VersionedFileResource;
 import org.exoplatform.services.jcr.webdav.resource.VersionedResource;
+import org.exoplatform.services.jcr.webdav.util.FileChannelRangeEntity;
 import org.exoplatform.services.jcr.webdav.util.MultipartByterangesEntity;
 import org.exoplatform.services.jcr.webdav.util.RangedInputStream;
 import org.exoplatform.services.jcr.webdav.util.TextUtil;
@@ -39,6 +40,7 @@ import org.exoplatform.services.rest.ExtHttpHeaders;
 import org.exoplatform.services.rest.ext.provider.XSLTStreamingOutput;
 import org.exoplatform.services.rest.impl.header.MediaTypeHelper;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
@@ -211,7 +213,16 @@ public class GetCommand
                long returnedContentLength = (end - start + 1);
 
                istream = openStream(resource, version != null);
-               RangedInputStream rangedInputStream = new RangedInputStream(istream, start, end);
+               Object entity;
+               if (FileChannelRangeEntity.isSupported(istream))
+               {
+                  // the content is stored into a file, the range is read directly from its position
+                  entity = new FileChannelRangeEntity((FileInputStream)istream, start, end);
+               }
+               else
+               {
+                  entity = new RangedInputStream(istream, start, end);
+               }
 
                return Response.status(HTTPStatus.PARTIAL)
                   .header(HttpHeaders.CONTENT_LENGTH, Long.toString(returnedContentLength))
@@ -219,7 +230,7 @@ public class GetCommand
                   .header(ExtHttpHeaders.LAST_MODIFIED, lastModifiedProperty.getValue())
                   .header(ExtHttpHeaders.ETAG, resourceEntityTag)
                   .header(ExtHttpHeaders.CONTENTRANGE, "bytes " + start + "-" + end + "/" + contentLength)
-                  .entity(rangedInputStream).type(contentType).build();
+                  .entity(entity).type(contentType).build();
             }
 
             // multipart byte ranges as byte:0-100,80-150,210-300
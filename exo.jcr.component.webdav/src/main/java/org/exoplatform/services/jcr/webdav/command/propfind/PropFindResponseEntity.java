@@ -32,8 +32,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.URISyntaxException;
+import java.util.List;
 import java.util.Set;
 
+import javax.jcr.NodeIterator;
 import javax.jcr.RepositoryException;
 import javax.jcr.Session;
 import javax.ws.rs.core.StreamingOutput;
@@ -57,6 +59,16 @@ public class PropFindResponseEntity implements StreamingOutput
     */
    private static final Log LOG = ExoLogger.getLogger("exo.jcr.component.webdav.PropFindResponseEntity");
 
+   /**
+    * The factory of the XML writers, shared by all the responses.
+    */
+   private static final XMLOutputFactory XML_OUTPUT_FACTORY = XMLOutputFactory.newInstance();
+
+   /**
+    * The amount of child resources read at once, the responses are flushed after each page.
+    */
+   protected static final int PAGE_SIZE = 100;
+
    /**
     * XML writer.
     */
@@ -130,7 +142,7 @@ public class PropFindResponseEntity implements StreamingOutput
       try
       {
          this.xmlStreamWriter =
-            XMLOutputFactory.newInstance().createXMLStreamWriter(outputStream, Constants.DEFAULT_ENCODING);
+            XML_OUTPUT_FACTORY.createXMLStreamWriter(outputStream, Constants.DEFAULT_ENCODING);
          xmlStreamWriter.setNamespaceContext(namespaceContext);
 
          xmlStreamWriter.writeStartDocument();
@@ -212,9 +224,16 @@ public class PropFindResponseEntity implements StreamingOutput
          if (counter < d)
          {
             CollectionResource collection = (CollectionResource)resource;
-            for (Resource child : collection.getResources())
+            NodeIterator children = collection.getChildNodes();
+            List<Resource> page;
+            while (!(page = collection.getResources(children, PAGE_SIZE)).isEmpty())
             {
-               traverseResources(child, counter + 1);
+               for (Resource child : page)
+               {
+                  traverseResources(child, counter + 1);
+               }
+               // sends the responses of the page to the client
+               xmlStreamWriter.flush();
             }
          }
       }
@@ -401,33 +401,70 @@ public class CollectionResource extends GenericResource
       List<Resource> resources = new ArrayList<Resource>();
       while (children.hasNext())
       {
-         Node node = children.nextNode();
-         String name = node.getName() + (node.getIndex() > 1 ? "[" + node.getIndex() + "]" : "");
-         if (ResourceUtil.isVersioned(node))
+         resources.add(createResource(children.nextNode()));
+      }
+      return resources;
+   }
+
+   /**
+    * @return the iterator over the child nodes to give to {@link #getResources(NodeIterator, int)}
+    * @throws RepositoryException {@link RepositoryException}
+    */
+   public NodeIterator getChildNodes() throws RepositoryException
+   {
+      return node.getNodes();
+   }
+
+   /**
+    * Returns the next page of child resources, the properties describing the files of the page
+    * are prefetched so that the page can be described without reading them one by one.
+    * 
+    * @param children the iterator over the child nodes
+    * @param pageSize the maximum amount of resources to return
+    * @return the next child resources, an empty list if there is no more child
+    * @throws RepositoryException {@link RepositoryException}
+    * @throws IllegalResourceTypeException {@link IllegalResourceTypeException}
+    */
+   public List<Resource> getResources(NodeIterator children, int pageSize) throws RepositoryException,
+      IllegalResourceTypeException
+   {
+      List<Resource> resources = new ArrayList<Resource>(pageSize);
+      while (resources.size() < pageSize && children.hasNext())
+      {
+         resources.add(createResource(children.nextNode()));
+      }
+      for (Resource resource : resources)
+      {
+         if (resource instanceof FileResource)
          {
-            if (ResourceUtil.isFile(node))
-            {
-               resources.add(new VersionedFileResource(childURI(name), node, namespaceContext));
-            }
-            else
-            {
-               resources.add(new VersionedCollectionResource(childURI(name), node, namespaceContext));
-            }
+            ((FileResource)resource).prefetch();
          }
-         else
+      }
+      return resources;
+   }
+
+   /**
+    * @param node child node
+    * @return the resource corresponding to the child node
+    * @throws RepositoryException {@link RepositoryException}
+    * @throws IllegalResourceTypeException {@link IllegalResourceTypeException}
+    */
+   private Resource createResource(Node node) throws RepositoryException, IllegalResourceTypeException
+   {
+      String name = node.getName() + (node.getIndex() > 1 ? "[" + node.getIndex() + "]" : "");
+      if (ResourceUtil.isVersioned(node))
+      {
+         if (ResourceUtil.isFile(node))
          {
-            if (ResourceUtil.isFile(node))
-            {
-               resources.add(new FileResource(childURI(name), node, namespaceContext));
-            }
-            else
-            {
-               resources.add(new CollectionResource(childURI(name), node, namespaceContext));
-            }
+            return new VersionedFileResource(childURI(name), node, namespaceContext);
          }
-
+         return new VersionedCollectionResource(childURI(name), node, namespaceContext);
       }
-      return resources;
+      if (ResourceUtil.isFile(node))
+      {
+         return new FileResource(childURI(name), node, namespaceContext);
+      }
+      return new CollectionResource(childURI(name), node, namespaceContext);
    }
 
    /**
@@ -29,7 +29,9 @@ import org.exoplatform.services.log.Log;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 
 import javax.jcr.AccessDeniedException;
@@ -87,6 +89,11 @@ public class FileResource extends GenericResource
       CONTENT_SKIP.add("exo:internalUse");
    };
 
+   /**
+    * The pattern of the properties of jcr:content describing the content of a file.
+    */
+   private static final String CONTENT_PROPERTIES = "jcr:data|jcr:mimeType|jcr:encoding|jcr:lastModified";
+
    /**
     * Node.
     */
@@ -102,6 +109,12 @@ public class FileResource extends GenericResource
     */
    private Property contentData;
 
+   /**
+    * The prefetched properties of jcr:content describing the content, indexed by name,
+    * <code>null</code> if they have not been prefetched.
+    */
+   private Map<String, Property> contentProperties;
+
    /**
     * @param identifier resource identifier
     * @param node node
@@ -224,11 +237,10 @@ public class FileResource extends GenericResource
       }
       else if (name.equals(GETCONTENTTYPE))
       {
-         Node contentNode = contentNode();
-         String mimeType = contentNode.getProperty("jcr:mimeType").getString();
-         if (contentNode.hasProperty("jcr:encoding"))
+         String mimeType = contentProperty("jcr:mimeType").getString();
+         if (hasContentProperty("jcr:encoding"))
          {
-            String encoding = contentNode.getProperty("jcr:encoding").getString();
+            String encoding = contentProperty("jcr:encoding").getString();
             if (!encoding.isEmpty())
             {
                return new HierarchicalProperty(name, mimeType + "; charset=" + encoding);
@@ -242,7 +254,7 @@ public class FileResource extends GenericResource
          Calendar modified;
          try
          {
-            modified = contentNode().getProperty("jcr:lastModified").getDate();
+            modified = contentProperty("jcr:lastModified").getDate();
          }
          catch (PathNotFoundException e)
          {
@@ -404,6 +416,71 @@ public class FileResource extends GenericResource
       }
    }
 
+   /**
+    * Reads at once the properties describing the file, that is all the properties of the file node
+    * and the properties of jcr:content matching {@link #CONTENT_PROPERTIES}, instead of reading them one
+    * by one when the WebDAV properties are requested. If they cannot be read, nothing is prefetched and
+    * the errors are reported property by property as usual.
+    */
+   public void prefetch()
+   {
+      try
+      {
+         // loads all the properties of the file node with one request
+         node.getProperties();
+
+         Map<String, Property> properties = new HashMap<String, Property>();
+         PropertyIterator jcrProps = contentNode().getProperties(CONTENT_PROPERTIES);
+         while (jcrProps.hasNext())
+         {
+            Property property = jcrProps.nextProperty();
+            properties.put(property.getName(), property);
+         }
+         contentProperties = properties;
+      }
+      catch (RepositoryException e)
+      {
+         if (LOG.isDebugEnabled())
+         {
+            LOG.debug("Could not prefetch the properties of the file " + identifier, e);
+         }
+      }
+   }
+
+   /**
+    * Returns a property of the content node, the prefetched one if any.
+    *
+    * @param name the name of the property
+    * @return the property
+    * @throws PathNotFoundException if the property does not exist
+    * @throws RepositoryException {@link RepositoryException}
+    */
+   private Property contentProperty(String name) throws PathNotFoundException, RepositoryException
+   {
+      if (contentProperties == null)
+      {
+         return contentNode().getProperty(name);
+      }
+      Property property = contentProperties.get(name);
+      if (property == null)
+      {
+         throw new PathNotFoundException("Property " + name + " not found");
+      }
+      return property;
+   }
+
+   /**
+    * Indicates whether the content node has the given property.
+    *
+    * @param name the name of the property
+    * @return true if the property exists, false otherwise
+    * @throws RepositoryException {@link RepositoryException}
+    */
+   private boolean hasContentProperty(String name) throws RepositoryException
+   {
+      return contentProperties == null ? contentNode().hasProperty(name) : contentProperties.containsKey(name);
+   }
+
    /**
     * Returns the content node.
     * 
@@ -432,7 +509,7 @@ public class FileResource extends GenericResource
    {
       if (contentData == null)
       {
-         return contentData = contentNode().getProperty("jcr:data");
+         return contentData = contentProperty("jcr:data");
       }
       else
       {
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.webdav.util;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a range of the content of a file thanks to {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+ * so that the bytes before the range are never read, which is the case of the binary values stored
+ * into a file value storage or spooled into a temporary file.
+ * 
+ * @version $Id$
+ */
+public class FileChannelRangeEntity implements StreamingOutput
+{
+
+   /**
+    * The stream of the file.
+    */
+   private final FileInputStream istream;
+
+   /**
+    * Start of range.
+    */
+   private final long start;
+
+   /**
+    * End of range.
+    */
+   private final long end;
+
+   /**
+    * @param istream the stream of the file, it will be closed once written
+    * @param start range start
+    * @param end range end, inclusive
+    */
+   public FileChannelRangeEntity(FileInputStream istream, long start, long end)
+   {
+      this.istream = istream;
+      this.start = start;
+      this.end = end;
+   }
+
+   /**
+    * {@inheritDoc}
+    */
+   public void write(OutputStream ostream) throws IOException
+   {
+      try
+      {
+         transfer(istream.getChannel(), start, end, ostream);
+      }
+      finally
+      {
+         istream.close();
+      }
+   }
+
+   /**
+    * Indicates whether the given stream can be written with positional reads.
+    * 
+    * @param istream the stream of the content
+    * @return <code>true</code> if the stream is the stream of a file
+    */
+   public static boolean isSupported(InputStream istream)
+   {
+      return istream instanceof FileInputStream;
+   }
+
+   /**
+    * Writes the bytes of the given channel from start to end inclusive into the given stream.
+    * 
+    * @param channel the channel of the file
+    * @param start range start
+    * @param end range end, inclusive
+    * @param ostream the stream to write to
+    * @throws IOException if the range cannot be read or written
+    */
+   public static void transfer(FileChannel channel, long start, long end, OutputStream ostream) throws IOException
+   {
+      WritableByteChannel target = Channels.newChannel(ostream);
+      long position = start;
+      long remaining = end - start + 1;
+      while (remaining > 0)
+      {
+         long transferred = channel.transferTo(position, remaining, target);
+         if (transferred <= 0)
+         {
+            if (position >= channel.size())
+            {
+               throw new IOException("Unexpected end of file at " + position + ", the range " + start + "-" + end
+                  + " cannot be fully written");
+            }
+            continue;
+         }
+         position += transferred;
+         remaining -= transferred;
+      }
+   }
+}
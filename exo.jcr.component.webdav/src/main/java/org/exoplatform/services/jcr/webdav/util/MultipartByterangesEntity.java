@@ -27,6 +27,7 @@ import org.exoplatform.services.log.ExoLogger;
 import org.exoplatform.services.log.Log;
 import org.exoplatform.services.rest.ExtHttpHeaders;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -109,6 +110,19 @@ public class MultipartByterangesEntity implements StreamingOutput
             println(ostream);
             println(ostream);
             // range data
+            if (FileChannelRangeEntity.isSupported(istream))
+            {
+               try
+               {
+                  FileChannelRangeEntity.transfer(((FileInputStream)istream).getChannel(), range.getStart(),
+                     range.getEnd(), ostream);
+               }
+               finally
+               {
+                  istream.close();
+               }
+               continue;
+            }
             RangedInputStream rangedInputStream = new RangedInputStream(istream, range.getStart(), range.getEnd());
 
             byte buff[] = new byte[0x1000];
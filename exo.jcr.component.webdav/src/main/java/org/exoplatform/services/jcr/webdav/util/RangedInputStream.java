@@ -18,6 +18,7 @@
  */
 package org.exoplatform.services.jcr.webdav.util;
 
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -57,10 +58,25 @@ public class RangedInputStream extends InputStream
       this.nativeInputStream = nativeInputStream;
       this.endRange = endRange;
 
+      if (nativeInputStream instanceof FileInputStream)
+      {
+         // no need to read the beginning of a file
+         ((FileInputStream)nativeInputStream).getChannel().position(startRange);
+         position = startRange;
+         return;
+      }
+
       byte[] buff = new byte[0x1000];
 
-      while (position < (startRange - 1))
+      while (position < startRange)
       {
+         long skipped = nativeInputStream.skip(startRange - position);
+         if (skipped > 0)
+         {
+            position += skipped;
+            continue;
+         }
+
          long needToRead = buff.length;
          if (needToRead > (startRange - position))
          {
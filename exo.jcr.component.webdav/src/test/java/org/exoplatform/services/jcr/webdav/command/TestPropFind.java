@@ -42,6 +42,7 @@ import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.net.URLDecoder;
 import java.security.Principal;
+import java.util.Calendar;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -635,6 +636,44 @@ public class TestPropFind extends BaseStandaloneTest
       assertTrue(find.contains("<jcr:defaultValue xmlns:jcr=\"http://www.jcp.org/jcr/1.0\"></jcr:defaultValue>"));
    }
 
+   public void testPropFindLargeFolder() throws Exception
+   {
+      Node folder = testPropFind.addNode("testPropFindLargeFolder", "nt:folder");
+      int files = 250;
+      for (int i = 0; i < files; i++)
+      {
+         Node content = folder.addNode("file" + i, "nt:file").addNode("jcr:content", "nt:resource");
+         content.setProperty("jcr:mimeType", "text/plain");
+         content.setProperty("jcr:lastModified", Calendar.getInstance());
+         content.setProperty("jcr:data", "content");
+         if (i == files - 1)
+         {
+            content.setProperty("jcr:encoding", "UTF-8");
+         }
+      }
+      session.save();
+
+      String propXML =
+         "<?xml version=\"1.0\" encoding=\"utf-8\" ?><D:propfind xmlns:D=\"DAV:\"><D:prop><D:getcontentlength/>"
+            + "<D:getcontenttype/><D:getlastmodified/></D:prop></D:propfind>";
+      MultivaluedMap<String, String> headers = new MultivaluedMapImpl();
+      headers.add(HttpHeaders.CONTENT_TYPE, "text/xml");
+      headers.add("Depth", "1");
+      ContainerResponse responseFind =
+         service(WebDAVMethods.PROPFIND, getPathWS() + folder.getPath(), "", headers, propXML.getBytes());
+      assertEquals(HTTPStatus.MULTISTATUS, responseFind.getStatus());
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      ((PropFindResponseEntity)responseFind.getEntity()).write(outputStream);
+      String find = outputStream.toString();
+
+      // the folder and all its files, even beyond the first page
+      assertEquals(files + 1, find.split("<D:response>", -1).length - 1);
+      assertTrue(find.contains("/file" + (files - 1) + "</D:href>"));
+      assertEquals(files, find.split(">7</", -1).length - 1);
+      assertEquals(files - 1, find.split(">text/plain</", -1).length - 1);
+      assertTrue(find.contains(">text/plain; charset=UTF-8</"));
+   }
+
    @Override
    protected String getRepositoryName()
    {
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 eXo Platform SAS.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.exoplatform.services.jcr.webdav.utils;
+
+import junit.framework.TestCase;
+
+import org.exoplatform.services.jcr.webdav.util.FileChannelRangeEntity;
+import org.exoplatform.services.jcr.webdav.util.RangedInputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Checks that the ranges of a content are the same whether they are read from a file
+ * channel or from a plain stream.
+ * 
+ * @version $Id$
+ */
+public class TestRangedContent extends TestCase
+{
+   private byte[] content;
+
+   private File file;
+
+   @Override
+   protected void setUp() throws Exception
+   {
+      content = new byte[100000];
+      for (int i = 0; i < content.length; i++)
+      {
+         content[i] = (byte)(i % 251);
+      }
+      file = File.createTempFile("ranged", ".tmp");
+      FileOutputStream out = new FileOutputStream(file);
+      try
+      {
+         out.write(content);
+      }
+      finally
+      {
+         out.close();
+      }
+   }
+
+   @Override
+   protected void tearDown() throws Exception
+   {
+      file.delete();
+   }
+
+   public void testRanges() throws Exception
+   {
+      long[][] ranges = {{0, 0}, {0, 99}, {1, 1}, {1, 5000}, {4095, 4097}, {50000, 99999}, {99999, 99999}};
+      for (long[] range : ranges)
+      {
+         byte[] expected = Arrays.copyOfRange(content, (int)range[0], (int)range[1] + 1);
+
+         ByteArrayOutputStream out = new ByteArrayOutputStream();
+         FileInputStream istream = new FileInputStream(file);
+         assertTrue(FileChannelRangeEntity.isSupported(istream));
+         new FileChannelRangeEntity(istream, range[0], range[1]).write(out);
+         assertTrue("Wrong range " + range[0] + "-" + range[1], Arrays.equals(expected, out.toByteArray()));
+
+         assertTrue("Wrong range " + range[0] + "-" + range[1],
+            Arrays.equals(expected, read(new RangedInputStream(new FileInputStream(file), range[0], range[1]))));
+
+         InputStream memoryStream = new ByteArrayInputStream(content);
+         assertFalse(FileChannelRangeEntity.isSupported(memoryStream));
+         assertTrue("Wrong range " + range[0] + "-" + range[1],
+            Arrays.equals(expected, read(new RangedInputStream(memoryStream, range[0], range[1]))));
+      }
+   }
+
+   public void testRangeBeyondEndOfFile() throws Exception
+   {
+      try
+      {
+         new FileChannelRangeEntity(new FileInputStream(file), 99000, 100999).write(new ByteArrayOutputStream());
+         fail("An IOException is expected here");
+      }
+      catch (IOException e)
+      {
+      }
+   }
+
+   private byte[] read(InputStream istream) throws IOException
+   {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try
+      {
+         byte[] buff = new byte[0x1000];
+         int rd;
+         while ((rd = istream.read(buff)) != -1)
+         {
+            out.write(buff, 0, rd);
+         }
+      }
+      finally
+      {
+         istream.close();
+      }
+      return out.toByteArray();
+   }
+}